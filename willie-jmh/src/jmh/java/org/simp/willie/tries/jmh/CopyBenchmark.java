@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole collection operations: copying, {@code equals} and {@code hashCode}.
+ *
+ * @author Dmytro Ivanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CopyBenchmark {
+
+    /**
+     * Equal copy of the collection under benchmark.
+     */
+    @State(Scope.Thread)
+    public static class CopyState {
+
+        Object mCopy;
+
+        @Setup(Level.Trial)
+        public void setUp(StoreState state) {
+            mCopy = state.mStore.copy();
+        }
+
+    }
+
+    @Benchmark
+    public Object copy(StoreState state) {
+        return state.mStore.copy();
+    }
+
+    @Benchmark
+    public boolean equalsCopy(StoreState state, CopyState copyState) {
+        return state.mStore.collection().equals(copyState.mCopy);
+    }
+
+    @Benchmark
+    public int hashCode(StoreState state) {
+        return state.mStore.collection().hashCode();
+    }
+
+}
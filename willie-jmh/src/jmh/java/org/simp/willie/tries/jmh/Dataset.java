@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries.jmh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Kinds of the keys the benchmarks are run with.  Keys are generated deterministically
+ * from a seed, so every run and every implementation gets the same keys.
+ *
+ * @author Dmytro Ivanov
+ */
+public enum Dataset {
+
+    /**
+     * Random strings of ASCII letters and digits, 4 to 16 symbols long.
+     */
+    ALPHANUMERIC {
+        @Override
+        String prefixOf(String key) {
+            return key.substring(0, 2);
+        }
+
+        @Override
+        String nextKey(Random random) {
+            final int length = 4 + random.nextInt(13);
+
+            final StringBuilder stringBuilder = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                stringBuilder.append(ALPHANUMERIC_SYMBOLS.charAt(random.nextInt(ALPHANUMERIC_SYMBOLS.length())));
+            }
+
+            return stringBuilder.toString();
+        }
+    },
+
+    /**
+     * English-like lower case words, that are built from syllables of common English letters,
+     * so they share short prefixes the way words of a dictionary do.
+     */
+    WORDS {
+        @Override
+        String prefixOf(String key) {
+            return key.substring(0, Math.min(3, key.length()));
+        }
+
+        @Override
+        String nextKey(Random random) {
+            final int syllables = 1 + random.nextInt(4);
+
+            final StringBuilder stringBuilder = new StringBuilder(syllables * 3);
+            for (int i = 0; i < syllables; i++) {
+                stringBuilder.append(pick(ONSETS, random)).append(pick(VOWELS, random));
+
+                if (random.nextInt(3) == 0) {
+                    stringBuilder.append(pick(CODAS, random));
+                }
+            }
+
+            return stringBuilder.toString();
+        }
+    },
+
+    /**
+     * Long identifiers that share long prefixes, e.g. {@code acmeEu00017order000123456}.
+     */
+    SHARED_PREFIX_IDS {
+        /**
+         * Returns tenant, region and shard of the identifier.
+         */
+        @Override
+        String prefixOf(String key) {
+            int shardStart = 0;
+            while (!Character.isDigit(key.charAt(shardStart))) {
+                shardStart++;
+            }
+
+            return key.substring(0, shardStart + SHARD_LENGTH);
+        }
+
+        @Override
+        String nextKey(Random random) {
+            return pick(TENANTS, random) + pick(REGIONS, random) + pad(random.nextInt(64), SHARD_LENGTH)
+                    + pick(ENTITIES, random) + pad(random.nextInt(1000000), 9);
+        }
+    };
+
+    /**
+     * Seed of the keys that are put into collections.
+     */
+    static final long KEYS_SEED = 20160101L;
+
+    /**
+     * Seed of the keys that are looked up but are not expected to be in collections.
+     */
+    static final long MISSING_KEYS_SEED = 20160202L;
+
+    /**
+     * Number of digits of the shard of the identifiers.
+     */
+    static final int SHARD_LENGTH = 5;
+
+    private static final String ALPHANUMERIC_SYMBOLS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private static final String[] ONSETS = {"b", "c", "d", "f", "g", "h", "l", "m", "n", "p", "r", "s", "t", "w",
+            "br", "ch", "cl", "cr", "dr", "fl", "gr", "pl", "pr", "sh", "sp", "st", "str", "th", "tr", ""};
+
+    private static final String[] VOWELS = {"a", "e", "i", "o", "u", "ea", "ee", "ai", "ou", "oo", "y"};
+
+    private static final String[] CODAS = {"n", "r", "s", "t", "l", "d", "ng", "st", "nd", "rt", "ck", "m"};
+
+    private static final String[] TENANTS = {"acme", "globex", "initech", "umbrella"};
+
+    private static final String[] REGIONS = {"Eu", "Us", "Ap"};
+
+    private static final String[] ENTITIES = {"order", "invoice", "customer", "shipment"};
+
+    /**
+     * Returns the given number of distinct keys generated from the seed.
+     */
+    public String[] keys(int count, long seed) {
+        final Random random = new Random(seed);
+
+        final Set<String> keys = new LinkedHashSet<>(count * 2);
+        while (keys.size() < count) {
+            keys.add(nextKey(random));
+        }
+
+        return keys.toArray(new String[count]);
+    }
+
+    /**
+     * Returns the given number of keys that are picked from {@code keys} in random order,
+     * with repetitions if there are fewer keys than requested.
+     */
+    public static String[] sample(String[] keys, int count, long seed) {
+        final List<String> shuffled = new ArrayList<>(count);
+        while (shuffled.size() < count) {
+            for (String key : keys) {
+                shuffled.add(key);
+            }
+        }
+
+        Collections.shuffle(shuffled, new Random(seed));
+        return shuffled.subList(0, count).toArray(new String[count]);
+    }
+
+    /**
+     * Returns the given number of keys that have the same shape as the dataset keys but
+     * are not contained in {@code keys}.
+     */
+    public String[] missingKeys(String[] keys, int count) {
+        final Set<String> existingKeys = new LinkedHashSet<>(keys.length * 2);
+        Collections.addAll(existingKeys, keys);
+
+        final Random random = new Random(MISSING_KEYS_SEED);
+
+        final Set<String> missingKeys = new LinkedHashSet<>(count * 2);
+        while (missingKeys.size() < count) {
+            final String key = nextKey(random);
+            if (!existingKeys.contains(key)) {
+                missingKeys.add(key);
+            }
+        }
+
+        return missingKeys.toArray(new String[count]);
+    }
+
+    /**
+     * Generates next key of the dataset.
+     */
+    abstract String nextKey(Random random);
+
+    /**
+     * Returns prefix of the key that is shared with a group of the keys of the dataset.
+     */
+    abstract String prefixOf(String key);
+
+    static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    static String pad(int value, int length) {
+        final StringBuilder stringBuilder = new StringBuilder(length).append(value);
+        while (stringBuilder.length() < length) {
+            stringBuilder.insert(0, '0');
+        }
+
+        return stringBuilder.toString();
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries.jmh;
+
+import org.simp.willie.tries.HashTrie;
+import org.simp.willie.tries.PrefixTree;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Benchmarked collections: the tries and the {@code Map} baselines.
+ *
+ * @author Dmytro Ivanov
+ */
+public enum Implementation {
+
+    HASH_TRIE {
+        @Override
+        Store create(String[] keys) {
+            final HashTrie<Integer> trie = new HashTrie<>();
+            for (int i = 0; i < keys.length; i++) {
+                trie.put(keys[i], i);
+            }
+
+            return new Store() {
+                @Override
+                public Object get(String key) {
+                    return trie.get(key);
+                }
+
+                @Override
+                public Object put(String key, Integer value) {
+                    return trie.put(key, value);
+                }
+
+                @Override
+                public Object remove(String key) {
+                    return trie.remove(key);
+                }
+
+                @Override
+                public int countWithPrefix(String prefix) {
+                    int count = 0;
+                    for (String key : trie.keysWithPrefix(prefix)) {
+                        count += key.length();
+                    }
+                    return count;
+                }
+
+                @Override
+                public Object copy() {
+                    return trie.clone();
+                }
+
+                @Override
+                public Object collection() {
+                    return trie;
+                }
+            };
+        }
+    },
+
+    PREFIX_TREE {
+        @Override
+        Store create(String[] keys) {
+            final PrefixTree tree = new PrefixTree();
+            for (String key : keys) {
+                tree.add(key);
+            }
+
+            return new Store() {
+                @Override
+                public Object get(String key) {
+                    return tree.contains(key);
+                }
+
+                @Override
+                public Object put(String key, Integer value) {
+                    tree.add(key);
+                    return value;
+                }
+
+                @Override
+                public Object remove(String key) {
+                    tree.remove(key);
+                    return key;
+                }
+
+                @Override
+                public int countWithPrefix(String prefix) {
+                    int count = 0;
+                    for (String key : tree.valuesWithPrefix(prefix)) {
+                        count += key.length();
+                    }
+                    return count;
+                }
+
+                @Override
+                public Object copy() {
+                    return tree.clone();
+                }
+
+                @Override
+                public Object collection() {
+                    return tree;
+                }
+            };
+        }
+    },
+
+    /**
+     * Baseline with O(1) lookups, prefix queries scan all of the keys.
+     */
+    HASH_MAP {
+        @Override
+        Store create(String[] keys) {
+            final HashMap<String, Integer> map = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                map.put(keys[i], i);
+            }
+
+            return new MapStore(map) {
+                @Override
+                public int countWithPrefix(String prefix) {
+                    int count = 0;
+                    for (String key : map.keySet()) {
+                        if (key.startsWith(prefix)) {
+                            count += key.length();
+                        }
+                    }
+                    return count;
+                }
+
+                @Override
+                public Object copy() {
+                    return new HashMap<>(map);
+                }
+            };
+        }
+    },
+
+    /**
+     * Baseline with ordered keys, prefix queries are range queries.
+     */
+    TREE_MAP {
+        @Override
+        Store create(String[] keys) {
+            final TreeMap<String, Integer> map = new TreeMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                map.put(keys[i], i);
+            }
+
+            return new MapStore(map) {
+                @Override
+                public int countWithPrefix(String prefix) {
+                    int count = 0;
+                    for (String key : map.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet()) {
+                        count += key.length();
+                    }
+                    return count;
+                }
+
+                @Override
+                public Object copy() {
+                    return new TreeMap<>(map);
+                }
+            };
+        }
+    };
+
+    /**
+     * Creates the collection that contains the given keys.
+     */
+    abstract Store create(String[] keys);
+
+    /**
+     * Store that delegates single key operations to a {@code Map}.
+     */
+    abstract static class MapStore implements Store {
+
+        final Map<String, Integer> mMap;
+
+        MapStore(Map<String, Integer> map) {
+            mMap = map;
+        }
+
+        @Override
+        public Object get(String key) {
+            return mMap.get(key);
+        }
+
+        @Override
+        public Object put(String key, Integer value) {
+            return mMap.put(key, value);
+        }
+
+        @Override
+        public Object remove(String key) {
+            return mMap.remove(key);
+        }
+
+        @Override
+        public Object collection() {
+            return mMap;
+        }
+
+    }
+
+}
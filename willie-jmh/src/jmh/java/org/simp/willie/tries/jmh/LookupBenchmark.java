@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single key operations: {@code get}, {@code put} and {@code remove}.
+ *
+ * @author Dmytro Ivanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LookupBenchmark {
+
+    @Benchmark
+    public Object getHit(StoreState state) {
+        return state.mStore.get(state.mHits[state.nextIndex()]);
+    }
+
+    @Benchmark
+    public Object getMiss(StoreState state) {
+        return state.mStore.get(state.mMisses[state.nextIndex()]);
+    }
+
+    /**
+     * Replaces value of a key that is in the collection, so the collection does not grow.
+     */
+    @Benchmark
+    public Object putExisting(StoreState state) {
+        final int index = state.nextIndex();
+        return state.mStore.put(state.mHits[index], index);
+    }
+
+    /**
+     * Removes a key and puts it back, so the collection keeps its size.
+     */
+    @Benchmark
+    public Object removeAndPut(StoreState state) {
+        final int index = state.nextIndex();
+        state.mStore.remove(state.mHits[index]);
+        return state.mStore.put(state.mHits[index], index);
+    }
+
+}
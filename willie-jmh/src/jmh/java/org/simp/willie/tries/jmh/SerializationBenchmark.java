@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries.jmh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java serialization of the whole collection, that goes through {@code writeObject} and
+ * {@code readObject} of the tries.
+ *
+ * @author Dmytro Ivanov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    /**
+     * Serialized form of the collection under benchmark.
+     */
+    @State(Scope.Thread)
+    public static class SerializedState {
+
+        byte[] mBytes;
+
+        @Setup(Level.Trial)
+        public void setUp(StoreState state) throws IOException {
+            mBytes = serialize(state.mStore.collection());
+        }
+
+    }
+
+    @Benchmark
+    public byte[] writeObject(StoreState state) throws IOException {
+        return serialize(state.mStore.collection());
+    }
+
+    @Benchmark
+    public Object readObject(SerializedState serializedState) throws IOException, ClassNotFoundException {
+        final ObjectInputStream inStream = new ObjectInputStream(new ByteArrayInputStream(serializedState.mBytes));
+        try {
+            return inStream.readObject();
+        } finally {
+            inStream.close();
+        }
+    }
+
+    static byte[] serialize(Object object) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final ObjectOutputStream outStream = new ObjectOutputStream(bos);
+        try {
+            outStream.writeObject(object);
+        } finally {
+            outStream.close();
+        }
+
+        return bos.toByteArray();
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries.jmh;
+
+/**
+ * Common face of the benchmarked collections, so every benchmark runs the same code
+ * against each of them.  Each fork benchmarks a single implementation, so calls
+ * through this interface stay monomorphic.
+ *
+ * @author Dmytro Ivanov
+ */
+interface Store {
+
+    Object get(String key);
+
+    Object put(String key, Integer value);
+
+    Object remove(String key);
+
+    /**
+     * Iterates over the keys that start with the prefix and returns their number.
+     */
+    int countWithPrefix(String prefix);
+
+    /**
+     * Returns a copy of the backing collection.
+     */
+    Object copy();
+
+    /**
+     * Returns the backing collection.
+     */
+    Object collection();
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries.jmh;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Collection under benchmark filled with a dataset, along with the keys to query it.
+ * Is thread scoped, so every benchmark thread modifies its own collection.
+ *
+ * @author Dmytro Ivanov
+ */
+@State(Scope.Thread)
+public class StoreState {
+
+    /**
+     * Number of the query keys, is a power of two so the next key is picked by a mask.
+     */
+    static final int PROBES = 1024;
+
+    @Param({"HASH_TRIE", "PREFIX_TREE", "HASH_MAP", "TREE_MAP"})
+    public Implementation implementation;
+
+    @Param({"WORDS", "ALPHANUMERIC", "SHARED_PREFIX_IDS"})
+    public Dataset dataset;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    Store mStore;
+
+    String[] mKeys;
+
+    String[] mHits;
+
+    String[] mMisses;
+
+    String[] mPrefixes;
+
+    int mIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mKeys = dataset.keys(size, Dataset.KEYS_SEED);
+        mHits = Dataset.sample(mKeys, PROBES, Dataset.KEYS_SEED);
+        mMisses = dataset.missingKeys(mKeys, PROBES);
+
+        mPrefixes = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            mPrefixes[i] = dataset.prefixOf(mHits[i]);
+        }
+
+        mStore = implementation.create(mKeys);
+    }
+
+    /**
+     * Returns index of the next query key.
+     */
+    final int nextIndex() {
+        mIndex = mIndex + 1 & PROBES - 1;
+        return mIndex;
+    }
+
+}
@@ -15,6 +15,8 @@
  */
 package org.simp.willie.tries;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -46,6 +48,40 @@ public abstract class AbstractTrie<V> implements Trie<V> {
         // This constructor is intentionally empty. Nothing special is needed here.
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(N*S), where N is number of mappings in the
+     * specified trie and S is average length of the key.
+     *
+     * @implSpec
+     * This implementation iterates over the specified trie's {@code entrySet}
+     * collection and for each mapping calls {@code get} and then {@code put} or
+     * {@code remove} on this trie.  If the specified trie is this trie, its
+     * mappings are copied before the iteration starts.
+     */
+    @Override
+    public void merge(Trie<? extends V> trie, MergeFunction<V> function) {
+        if (trie == null || function == null) {
+            throw new NullPointerException();
+        }
+
+        final Collection<? extends Map.Entry<String, ? extends V>> entries = trie == this
+                ? new ArrayList<>(trie.entrySet())
+                : trie.entrySet();
+
+        for (Map.Entry<String, ? extends V> entry : entries) {
+            final V oldValue = get(entry.getKey());
+            final V newValue = oldValue == null ? entry.getValue() : function.merge(oldValue, entry.getValue());
+
+            if (newValue == null) {
+                remove(entry.getKey());
+            } else {
+                put(entry.getKey(), newValue);
+            }
+        }
+    }
+
     /**
      * Compares the specified object with this trie for equality.  Returns
      * {@code true} if the given object is also a trie and the two tries
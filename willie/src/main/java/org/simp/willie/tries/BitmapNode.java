@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.simp.willie.tries.HashTrie.Node;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Node that keeps references to the children in a dense array, that is ordered as the
+ * symbols of the {@link KeyAlphabet}, and a bitmap that has a bit set for every symbol
+ * that has a child.  Position of the child in the array is the number of bits set below
+ * the bit of its symbol.  Is used by tries with bitmap indexed alphabets, the alphabet
+ * is not kept by the node and is passed by the trie to the methods that map symbols.
+ *
+ * @param <V> the type of stored values
+ * @author Dmytro Ivanov
+ */
+final class BitmapNode<V> extends Node<V> {
+
+    /**
+     * Bit per symbol of the alphabet, the bit is set if there is a child for the symbol.
+     */
+    long mBitmap;
+
+    /**
+     * References to the children, never is {@code null}, length is number of bits in the bitmap.
+     */
+    Node<V>[] mChildren;
+
+    BitmapNode() {
+        mChildren = newChildren(0);
+    }
+
+    @Override
+    int childrenCount() {
+        return mChildren.length;
+    }
+
+    @Override
+    Node<V> getChildFor(KeyAlphabet alphabet, char character) {
+        final int index = alphabet.indexOf(character);
+        if (index < 0) {
+            return null;
+        }
+
+        final long bit = 1L << index;
+        return (mBitmap & bit) == 0 ? null : mChildren[Long.bitCount(mBitmap & bit - 1)];
+    }
+
+    @Override
+    void addChild(KeyAlphabet alphabet, char character, Node<V> child) {
+        final long bit = 1L << alphabet.indexOf(character);
+        final int position = Long.bitCount(mBitmap & bit - 1);
+
+        if ((mBitmap & bit) == 0) {
+            final Node<V>[] children = newChildren(mChildren.length + 1);
+            System.arraycopy(mChildren, 0, children, 0, position);
+            System.arraycopy(mChildren, position, children, position + 1, mChildren.length - position);
+
+            mChildren = children;
+            mBitmap |= bit;
+        }
+
+        mChildren[position] = child;
+    }
+
+    @Override
+    void removeChild(KeyAlphabet alphabet, char character) {
+        final int index = alphabet.indexOf(character);
+        if (index < 0 || (mBitmap & 1L << index) == 0) {
+            return;
+        }
+
+        final long bit = 1L << index;
+        final int position = Long.bitCount(mBitmap & bit - 1);
+
+        final Node<V>[] children = newChildren(mChildren.length - 1);
+        System.arraycopy(mChildren, 0, children, 0, position);
+        System.arraycopy(mChildren, position + 1, children, position, children.length - position);
+
+        mChildren = children;
+        mBitmap &= ~bit;
+    }
+
+    @Override
+    Set<Map.Entry<Character, Node<V>>> children(KeyAlphabet alphabet) {
+        return new Children(alphabet);
+    }
+
+    @Override
+    Collection<Node<V>> childNodes() {
+        return Arrays.asList(mChildren);
+    }
+
+    @Override
+    void copyChildren(KeyAlphabet alphabet, char[] symbols, Node<?>[] children, int offset) {
+        long remaining = mBitmap;
+        for (int i = 0; i < mChildren.length; i++) {
+            symbols[offset + i] = alphabet.symbolAt(Long.numberOfTrailingZeros(remaining));
+            children[offset + i] = mChildren[i];
+            remaining &= remaining - 1;
+        }
+    }
+
+    @Override
+    TrieStats.NodeType nodeType() {
+        return TrieStats.NodeType.BITMAP;
+    }
+
+    @Override
+    long nodeBytes() {
+        return MemoryLayout.object(3 * MemoryLayout.REFERENCE + Long.SIZE / Byte.SIZE);
+    }
+
+    @Override
+    long childrenBytes() {
+        return mChildren.length == 0 ? 0 : MemoryLayout.array(mChildren.length, MemoryLayout.REFERENCE);
+    }
+
+    /**
+     * Returns this node, its array of the children always fits them.
+     */
+    @Override
+    Node<V> compacted() {
+        return this;
+    }
+
+    /**
+     * View of the children, that are iterated in order of the symbols of the alphabet.
+     */
+    final class Children extends AbstractSet<Map.Entry<Character, Node<V>>> {
+
+        /**
+         * Alphabet of the trie the node belongs to.
+         */
+        final KeyAlphabet mAlphabet;
+
+        Children(KeyAlphabet alphabet) {
+            mAlphabet = alphabet;
+        }
+
+        @Override
+        public int size() {
+            return mChildren.length;
+        }
+
+        @Override
+        public Iterator<Map.Entry<Character, Node<V>>> iterator() {
+            return new ChildIterator(mAlphabet);
+        }
+
+    }
+
+    /**
+     * Iterator over the children, supports removal of the last returned child.
+     */
+    final class ChildIterator implements Iterator<Map.Entry<Character, Node<V>>> {
+
+        /**
+         * Alphabet of the trie the node belongs to.
+         */
+        final KeyAlphabet mAlphabet;
+
+        /**
+         * Bits of the symbols that are not returned yet.
+         */
+        long mRemaining = mBitmap;
+
+        /**
+         * Symbol of the last returned child, {@code -1} if there is none.
+         */
+        int mLastSymbol = -1;
+
+        ChildIterator(KeyAlphabet alphabet) {
+            mAlphabet = alphabet;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mRemaining != 0;
+        }
+
+        @Override
+        public Map.Entry<Character, Node<V>> next() {
+            if (mRemaining == 0) {
+                throw new NoSuchElementException();
+            }
+
+            final long bit = Long.lowestOneBit(mRemaining);
+            mRemaining &= ~bit;
+            mLastSymbol = mAlphabet.symbolAt(Long.numberOfTrailingZeros(bit));
+
+            return new AbstractMap.SimpleImmutableEntry<>((char) mLastSymbol,
+                    mChildren[Long.bitCount(mBitmap & bit - 1)]);
+        }
+
+        @Override
+        public void remove() {
+            if (mLastSymbol < 0) {
+                throw new IllegalStateException();
+            }
+
+            removeChild(mAlphabet, (char) mLastSymbol);
+            mLastSymbol = -1;
+        }
+
+    }
+
+}
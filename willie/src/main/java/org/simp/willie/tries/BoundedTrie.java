@@ -0,0 +1,771 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Trie} with a bounded number of mappings, that is meant to be used as a cache
+ * that is addressable by prefix.  Once the trie holds its maximum number of mappings,
+ * putting a new key evicts another mapping according to the {@link EvictionPolicy}.
+ * Mappings could also expire after a time to live, set for the whole trie or per mapping.
+ *
+ * <p>Mappings are kept in a {@link HashTrie}, so evicted and expired mappings are removed
+ * by {@link HashTrie#remove(String)}, which prunes the nodes that are left without value
+ * and children.  Memory retained by the trie is bounded by the maximum size and the length
+ * of the keys.
+ *
+ * <p>{@code get} and {@code put} count as access to the mapping, other operations,
+ * including iteration over the views, do not change the eviction order.  Expired mappings
+ * are removed lazily, when they are accessed or are about to be evicted, and by
+ * {@link #cleanUp()}.  Views skip expired mappings, but {@link #size()} counts the mappings
+ * that were not removed yet.
+ *
+ * <p>Views are backed by the trie and do not support modification operations.  Their
+ * iterators are fail-fast, in the same way as iterators of {@link HashTrie}.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * Since {@code get} modifies the eviction order, even concurrent reads
+ * should be synchronized externally.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @author Dmytro Ivanov
+ * @see HashTrie
+ */
+@SuppressWarnings("PMD.GodClass")
+public class BoundedTrie<V> extends AbstractTrie<V> implements Trie<V> {
+
+    /**
+     * Policy that chooses which mapping to evict when the trie is full.
+     */
+    public enum EvictionPolicy {
+
+        /**
+         * Evicts the least recently used mapping.
+         */
+        LRU,
+
+        /**
+         * Admits a new key only if it was accessed more frequently than the least recently
+         * used mapping, which is evicted then, otherwise the new key is not put into the trie.
+         * Frequencies are estimated by a count-min sketch with 4-bit counters that are halved
+         * periodically, so the trie is resistant to scans of keys that are used once.
+         */
+        TINY_LFU
+
+    }
+
+    /**
+     * Source of time, in nanoseconds.
+     */
+    interface Ticker {
+
+        long read();
+
+    }
+
+    private static final Ticker SYSTEM_TICKER = new Ticker() {
+        @Override
+        public long read() {
+            return System.nanoTime();
+        }
+    };
+
+    private final HashTrie<Entry<V>> mEntries = new HashTrie<>();
+
+    /**
+     * Sentinel of the circular list of the entries in access order, the least
+     * recently used entry is the next after the sentinel.
+     */
+    private final Entry<V> mSentinel = new Entry<>(null, null);
+
+    private final int mMaximumSize;
+
+    private final EvictionPolicy mPolicy;
+
+    private final long mTimeToLive;
+
+    private final Ticker mTicker;
+
+    private final FrequencySketch mSketch;
+
+    /**
+     * Constructs an empty trie that evicts the least recently used mappings.
+     *
+     * @param maximumSize maximum number of mappings
+     * @throws IllegalArgumentException if the maximum size is not positive
+     */
+    public BoundedTrie(int maximumSize) {
+        this(maximumSize, EvictionPolicy.LRU);
+    }
+
+    /**
+     * Constructs an empty trie with the given eviction policy.
+     *
+     * @param maximumSize maximum number of mappings
+     * @param policy eviction policy
+     * @throws NullPointerException if the policy is null
+     * @throws IllegalArgumentException if the maximum size is not positive
+     */
+    public BoundedTrie(int maximumSize, EvictionPolicy policy) {
+        this(maximumSize, policy, 0, SYSTEM_TICKER);
+    }
+
+    /**
+     * Constructs an empty trie with the given eviction policy, whose mappings expire after
+     * the given time since they were put, unless another time is given to {@link #put(String,
+     * Object, long, TimeUnit)}.
+     *
+     * @param maximumSize maximum number of mappings
+     * @param policy eviction policy
+     * @param timeToLive time to live of the mappings
+     * @param unit unit of the time to live
+     * @throws NullPointerException if the policy or unit is null
+     * @throws IllegalArgumentException if the maximum size or time to live is not positive
+     */
+    public BoundedTrie(int maximumSize, EvictionPolicy policy, long timeToLive, TimeUnit unit) {
+        this(maximumSize, policy, positiveNanos(timeToLive, unit), SYSTEM_TICKER);
+    }
+
+    /**
+     * Constructs an empty trie, time to live is in nanoseconds and is zero if mappings do not expire.
+     */
+    BoundedTrie(int maximumSize, EvictionPolicy policy, long timeToLive, Ticker ticker) {
+        if (policy == null || ticker == null) {
+            throw new NullPointerException();
+        }
+
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size should be positive.");
+        }
+
+        mMaximumSize = maximumSize;
+        mPolicy = policy;
+        mTimeToLive = timeToLive;
+        mTicker = ticker;
+        mSketch = policy == EvictionPolicy.TINY_LFU ? new FrequencySketch(maximumSize) : null;
+
+        mSentinel.mPrevious = mSentinel;
+        mSentinel.mNext = mSentinel;
+    }
+
+    /**
+     * Returns maximum number of the mappings in this trie.
+     *
+     * @return maximum number of the mappings
+     */
+    public int maximumSize() {
+        return mMaximumSize;
+    }
+
+    /**
+     * Returns eviction policy of this trie.
+     *
+     * @return eviction policy
+     */
+    public EvictionPolicy policy() {
+        return mPolicy;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(1).
+     *
+     * Mappings that have expired, but were not removed yet, are counted too.
+     */
+    @Override
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(1).
+     */
+    @Override
+    public boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * Does not count as access to the mapping.
+     */
+    @Override
+    public boolean containsKey(String key) {
+        final Entry<V> entry = mEntries.get(key);
+
+        return entry != null && !isExpired(entry, mTicker.read());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * Makes the mapping the most recently used one, or removes it if it has expired.
+     */
+    @Override
+    public V get(String key) {
+        final Entry<V> entry = mEntries.get(key);
+
+        if (mSketch != null) {
+            mSketch.increment(key);
+        }
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (isExpired(entry, mTicker.read())) {
+            removeEntry(entry);
+            return null;
+        }
+
+        moveToTail(entry);
+        return entry.mValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * If the trie is full, a mapping is evicted according to the eviction policy.
+     * With {@link EvictionPolicy#TINY_LFU} the new key could be rejected instead,
+     * in which case the trie is not changed.
+     */
+    @Override
+    public V put(String key, V value) {
+        return put(key, value, mTimeToLive);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this trie, the mapping
+     * expires after the given time.  Works the same way as {@link #put(String, Object)}
+     * otherwise.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @param timeToLive time to live of the mapping
+     * @param unit unit of the time to live
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}.
+     * @throws NullPointerException if the key, value or unit is null
+     * @throws IllegalArgumentException if the key is not valid or time to live is not positive
+     */
+    public V put(String key, V value, long timeToLive, TimeUnit unit) {
+        return put(key, value, positiveNanos(timeToLive, unit));
+    }
+
+    private V put(String key, V value, long timeToLive) {
+        mEntries.checkKey(key);
+        if (value == null) {
+            throw new NullPointerException("Value could not be null.");
+        }
+
+        if (mSketch != null) {
+            mSketch.increment(key);
+        }
+
+        final long now = mTicker.read();
+
+        Entry<V> entry = mEntries.get(key);
+        if (entry != null) {
+            final V oldValue = isExpired(entry, now) ? null : entry.mValue;
+
+            entry.mValue = value;
+            entry.mWrittenAt = now;
+            entry.mTimeToLive = timeToLive;
+            moveToTail(entry);
+
+            return oldValue;
+        }
+
+        if (mEntries.size() >= mMaximumSize && !evictFor(key, now)) {
+            return null;
+        }
+
+        entry = new Entry<>(key, value);
+        entry.mWrittenAt = now;
+        entry.mTimeToLive = timeToLive;
+        mEntries.put(key, entry);
+        linkAtTail(entry);
+
+        return null;
+    }
+
+    /**
+     * Frees space for the given new key, returns {@code false} if the key is not admitted.
+     */
+    private boolean evictFor(String key, long now) {
+        final Entry<V> victim = mSentinel.mNext;
+
+        if (!isExpired(victim, now) && mSketch != null
+                && mSketch.frequency(key) <= mSketch.frequency(victim.mKey)) {
+            return false;
+        }
+
+        removeEntry(victim);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * Returns {@code null} if the mapping has expired.
+     */
+    @Override
+    public V remove(String key) {
+        final Entry<V> entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        removeEntry(entry);
+        return isExpired(entry, mTicker.read()) ? null : entry.mValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(1).
+     */
+    @Override
+    public void clear() {
+        mEntries.clear();
+
+        mSentinel.mPrevious = mSentinel;
+        mSentinel.mNext = mSentinel;
+    }
+
+    /**
+     * Removes all of the expired mappings.
+     *
+     * Operation time complexity is O(N*S), where N is number of mappings in the
+     * trie and S is average length of the key.
+     *
+     * @return number of the removed mappings
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    public int cleanUp() {
+        final long now = mTicker.read();
+
+        int removed = 0;
+        Entry<V> entry = mSentinel.mNext;
+        while (entry != mSentinel) {
+            final Entry<V> next = entry.mNext;
+            if (isExpired(entry, now)) {
+                removeEntry(entry);
+                removed++;
+            }
+
+            entry = next;
+        }
+
+        return removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(1).
+     */
+    @Override
+    public Set<String> keys() {
+        return new KeySet(mEntries.entrySet());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S), where S is length of prefix.
+     */
+    @Override
+    public Set<String> keysWithPrefix(String prefix) {
+        final Set<String> keys = mEntries.keysWithPrefix(prefix);
+
+        return new AbstractSet<String>() {
+            @Override
+            public int size() {
+                return count(iterator());
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<String> keysIterator = keys.iterator();
+
+                return new LiveIterator<String>() {
+                    @Override
+                    Entry<V> nextEntry() {
+                        return keysIterator.hasNext() ? mEntries.get(keysIterator.next()) : null;
+                    }
+
+                    @Override
+                    String valueOf(Entry<V> entry) {
+                        return entry.mKey;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(1).
+     */
+    @Override
+    public Collection<V> values() {
+        final Collection<Entry<V>> entries = mEntries.values();
+
+        return new AbstractCollection<V>() {
+            @Override
+            public int size() {
+                return count(iterator());
+            }
+
+            @Override
+            public Iterator<V> iterator() {
+                final Iterator<Entry<V>> entriesIterator = entries.iterator();
+
+                return new LiveIterator<V>() {
+                    @Override
+                    Entry<V> nextEntry() {
+                        return entriesIterator.hasNext() ? entriesIterator.next() : null;
+                    }
+
+                    @Override
+                    V valueOf(Entry<V> entry) {
+                        return entry.mValue;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(1).
+     */
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        final Collection<Entry<V>> entries = mEntries.values();
+
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public int size() {
+                return count(iterator());
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                final Iterator<Entry<V>> entriesIterator = entries.iterator();
+
+                return new LiveIterator<Map.Entry<String, V>>() {
+                    @Override
+                    Entry<V> nextEntry() {
+                        return entriesIterator.hasNext() ? entriesIterator.next() : null;
+                    }
+
+                    @Override
+                    Map.Entry<String, V> valueOf(Entry<V> entry) {
+                        return new AbstractMap.SimpleImmutableEntry<>(entry.mKey, entry.mValue);
+                    }
+                };
+            }
+        };
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return entry.mTimeToLive > 0 && now - entry.mWrittenAt >= entry.mTimeToLive;
+    }
+
+    /**
+     * Removes the entry from the trie and from the access order.
+     */
+    private void removeEntry(Entry<V> entry) {
+        mEntries.remove(entry.mKey);
+
+        entry.mPrevious.mNext = entry.mNext;
+        entry.mNext.mPrevious = entry.mPrevious;
+    }
+
+    private void linkAtTail(Entry<V> entry) {
+        entry.mPrevious = mSentinel.mPrevious;
+        entry.mNext = mSentinel;
+        mSentinel.mPrevious.mNext = entry;
+        mSentinel.mPrevious = entry;
+    }
+
+    private void moveToTail(Entry<V> entry) {
+        entry.mPrevious.mNext = entry.mNext;
+        entry.mNext.mPrevious = entry.mPrevious;
+
+        linkAtTail(entry);
+    }
+
+    private static int count(Iterator<?> iterator) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+
+        return count;
+    }
+
+    private static long positiveNanos(long timeToLive, TimeUnit unit) {
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live should be positive.");
+        }
+
+        return Math.max(unit.toNanos(timeToLive), 1);
+    }
+
+    /**
+     * Mapping of the trie, that is linked into the access order.
+     */
+    static final class Entry<V> {
+
+        final String mKey;
+
+        V mValue;
+
+        long mWrittenAt;
+
+        /**
+         * Time to live in nanoseconds, zero if the entry does not expire.
+         */
+        long mTimeToLive;
+
+        Entry<V> mPrevious;
+
+        Entry<V> mNext;
+
+        Entry(String key, V value) {
+            mKey = key;
+            mValue = value;
+        }
+
+    }
+
+    /**
+     * Iterator over the entries that have not expired.
+     */
+    private abstract class LiveIterator<T> implements Iterator<T> {
+
+        private final long mNow = mTicker.read();
+
+        private Entry<V> mNextEntry;
+
+        LiveIterator() {
+            advance();
+        }
+
+        /**
+         * Returns next entry of the underlying view, or {@code null} if there are no more entries.
+         */
+        abstract Entry<V> nextEntry();
+
+        abstract T valueOf(Entry<V> entry);
+
+        private void advance() {
+            do {
+                mNextEntry = nextEntry();
+            } while (mNextEntry != null && isExpired(mNextEntry, mNow));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mNextEntry != null;
+        }
+
+        @Override
+        public T next() {
+            if (mNextEntry == null) {
+                throw new NoSuchElementException();
+            }
+
+            final T value = valueOf(mNextEntry);
+            advance();
+
+            return value;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Key view of the whole trie.
+     */
+    private final class KeySet extends AbstractSet<String> {
+
+        private final Set<Map.Entry<String, Entry<V>>> mTrieEntries;
+
+        KeySet(Set<Map.Entry<String, Entry<V>>> trieEntries) {
+            mTrieEntries = trieEntries;
+        }
+
+        @Override
+        public int size() {
+            return count(iterator());
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            final Iterator<Map.Entry<String, Entry<V>>> entriesIterator = mTrieEntries.iterator();
+
+            return new LiveIterator<String>() {
+                @Override
+                Entry<V> nextEntry() {
+                    return entriesIterator.hasNext() ? entriesIterator.next().getValue() : null;
+                }
+
+                @Override
+                String valueOf(Entry<V> entry) {
+                    return entry.mKey;
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Count-min sketch of the frequencies of the keys, four 4-bit counters per key.
+     * Counters are halved once the number of increments reaches ten times the maximum
+     * size of the trie, so the old history fades out.
+     */
+    static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L,
+        };
+
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private static final int MAX_COUNTER = 15;
+
+        private static final int COUNTERS_PER_LONG = 16;
+
+        private static final int SAMPLE_FACTOR = 10;
+
+        /**
+         * Maximum length of the table, so indices of all of its counters fit into an {@code int}.
+         */
+        static final int MAX_TABLE_LENGTH = 1 << 27;
+
+        private final long[] mTable;
+
+        private final int mMask;
+
+        private final int mSampleSize;
+
+        private int mAdditions;
+
+        FrequencySketch(int maximumSize) {
+            final int length = tableLength(maximumSize);
+
+            mTable = new long[length];
+            mMask = length * COUNTERS_PER_LONG - 1;
+            mSampleSize = (int) Math.min((long) maximumSize * SAMPLE_FACTOR, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Returns length of the table for the maximum size, that is the least power of two that
+         * is not less than the maximum size, at most {@link #MAX_TABLE_LENGTH}.
+         */
+        static int tableLength(int maximumSize) {
+            final long length = Long.highestOneBit(Math.max(maximumSize - 1L, 1L) << 1);
+            return (int) Math.min(length, MAX_TABLE_LENGTH);
+        }
+
+        int frequency(String key) {
+            final int hash = key.hashCode();
+
+            int frequency = MAX_COUNTER;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counterAt(indexOf(hash, i)));
+            }
+
+            return frequency;
+        }
+
+        void increment(String key) {
+            final int hash = key.hashCode();
+
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int index = indexOf(hash, i);
+                if (counterAt(index) < MAX_COUNTER) {
+                    mTable[index / COUNTERS_PER_LONG] += 1L << shiftOf(index);
+                }
+            }
+
+            mAdditions++;
+            if (mAdditions == mSampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < mTable.length; i++) {
+                mTable[i] = mTable[i] >>> 1 & RESET_MASK;
+            }
+
+            mAdditions /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            long mixed = (hash + SEEDS[row]) * SEEDS[row];
+            mixed += mixed >>> 32;
+
+            return (int) mixed & mMask;
+        }
+
+        private int counterAt(int index) {
+            return (int) (mTable[index / COUNTERS_PER_LONG] >>> shiftOf(index)) & MAX_COUNTER;
+        }
+
+        private static int shiftOf(int index) {
+            return (index % COUNTERS_PER_LONG) * 4;
+        }
+
+    }
+
+}
@@ -0,0 +1,1218 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Trie that maps sequences of bytes to values.  Keys could be given as arrays,
+ * slices of arrays or {@code ByteBuffer}s, so keys that already are in the binary
+ * form, e.g. UTF-8 bytes of a message or a memory mapped file, are looked up
+ * without being decoded into {@code String}.
+ *
+ * <p>Every node has up to 256 children, one per byte value.  Nodes with few children
+ * keep them in sorted arrays of bytes and references, nodes with many children keep
+ * them in an array of 256 references indexed by the byte.  Keys are iterated in
+ * lexicographic order of unsigned bytes, which for UTF-8 keys is the order of their
+ * code points.  An empty key is a valid key.
+ *
+ * <p>{@link #asUtf8Trie()} returns a {@link Trie} view whose {@code String} keys are
+ * mapped to their UTF-8 bytes.  The view walks the trie symbol by symbol encoding the
+ * key on the fly, so its lookups neither encode nor decode the whole key.
+ *
+ * <p>This implementation provides O(S), where S is length of the key, performance
+ * for the basic operations ({@code get}, {@code put} and {@code remove}).
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a trie concurrently, and at least one of
+ * the threads modifies the trie structurally, it <i>must</i> be
+ * synchronized externally.  The iterators returned by the collection views
+ * are <i>fail-fast</i> on a best-effort basis, as iterators of {@link HashTrie}.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @author Dmytro Ivanov
+ * @see HashTrie
+ */
+@SuppressWarnings({"PMD.GodClass", "PMD.ExcessiveClassLength", "PMD.ExcessivePublicCount"})
+public class ByteTrie<V> implements Serializable {
+
+    private static final long serialVersionUID = 2284939620474123618L;
+
+    /**
+     * Number of distinct byte values.
+     */
+    static final int RADIX = 256;
+
+    /**
+     * Maximum number of children of a node that keeps them in sorted arrays.
+     */
+    static final int SPARSE_LIMIT = 32;
+
+    /**
+     * Initial length of the buffer for the nodes on the path of the removed key.
+     */
+    private static final int MIN_PATH_LENGTH = 16;
+
+    /**
+     * Node of the trie.  Keeps children either in the sorted arrays of bytes and
+     * references, or in an array of 256 references indexed by the unsigned byte.
+     *
+     * @param <V> the type of stored values
+     */
+    @SuppressWarnings("PMD.ShortClassName")
+    static final class Node<V> {
+
+        /**
+         * Value of the node, null if no value is present.
+         */
+        V mValue;
+
+        /**
+         * Number of the children.
+         */
+        int mCount;
+
+        /**
+         * Bytes of the children in ascending unsigned order, {@code null} if the node is dense.
+         */
+        byte[] mLabels;
+
+        /**
+         * References to the children, in order of {@link #mLabels} if the node is sparse
+         * or indexed by the unsigned byte if the node is dense.
+         */
+        Node<V>[] mChildren;
+
+        boolean hasValue() {
+            return mValue != null;
+        }
+
+        boolean hasChildren() {
+            return mCount > 0;
+        }
+
+        boolean isDense() {
+            return mLabels == null;
+        }
+
+        /**
+         * Returns child for the given unsigned byte, or {@code null} if there is no such child.
+         */
+        Node<V> getChildFor(int label) {
+            if (mLabels == null) {
+                return mChildren[label];
+            }
+
+            final int position = search(label);
+            return position < 0 ? null : mChildren[position];
+        }
+
+        /**
+         * Adds child for the given unsigned byte, the node should not have a child for it.
+         */
+        void addChild(int label, Node<V> child) {
+            if (mLabels == null) {
+                mChildren[label] = child;
+            } else if (mCount == SPARSE_LIMIT) {
+                toDense();
+                mChildren[label] = child;
+            } else {
+                insertSparse(-search(label) - 1, label, child);
+            }
+
+            mCount++;
+        }
+
+        /**
+         * Removes child for the given unsigned byte, if there is one.
+         */
+        void removeChild(int label) {
+            if (mLabels == null) {
+                if (mChildren[label] == null) {
+                    return;
+                }
+
+                mChildren[label] = null;
+                mCount--;
+
+                if (mCount <= SPARSE_LIMIT / 2) {
+                    toSparse();
+                }
+            } else {
+                final int position = search(label);
+                if (position >= 0) {
+                    mCount--;
+                    System.arraycopy(mLabels, position + 1, mLabels, position, mCount - position);
+                    System.arraycopy(mChildren, position + 1, mChildren, position, mCount - position);
+                    mChildren[mCount] = null;
+                }
+            }
+        }
+
+        /**
+         * Returns the first position of a child that is not less than the given one,
+         * or {@code -1} if there is none.  Positions are ordered as the bytes of the children.
+         */
+        int nextPosition(int position) {
+            if (mLabels != null) {
+                return position < mCount ? position : -1;
+            }
+
+            for (int label = position; label < RADIX; label++) {
+                if (mChildren[label] != null) {
+                    return label;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Returns unsigned byte of the child at the given position.
+         */
+        int labelAt(int position) {
+            return mLabels == null ? position : mLabels[position] & 0xFF;
+        }
+
+        /**
+         * Returns binary search result for the given unsigned byte among the sorted labels.
+         */
+        private int search(int label) {
+            int low = 0;
+            int high = mCount - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final int middleLabel = mLabels[middle] & 0xFF;
+
+                if (middleLabel < label) {
+                    low = middle + 1;
+                } else if (middleLabel > label) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+
+            return -(low + 1);
+        }
+
+        private void insertSparse(int position, int label, Node<V> child) {
+            if (mLabels.length == mCount) {
+                final int length = Math.min(Math.max(mCount * 2, 2), SPARSE_LIMIT);
+                mLabels = Arrays.copyOf(mLabels, length);
+                mChildren = Arrays.copyOf(mChildren, length);
+            }
+
+            System.arraycopy(mLabels, position, mLabels, position + 1, mCount - position);
+            System.arraycopy(mChildren, position, mChildren, position + 1, mCount - position);
+
+            mLabels[position] = (byte) label;
+            mChildren[position] = child;
+        }
+
+        private void toDense() {
+            final Node<V>[] children = newChildren(RADIX);
+            for (int i = 0; i < mCount; i++) {
+                children[mLabels[i] & 0xFF] = mChildren[i];
+            }
+
+            mLabels = null;
+            mChildren = children;
+        }
+
+        private void toSparse() {
+            final byte[] labels = new byte[SPARSE_LIMIT];
+            final Node<V>[] children = newChildren(SPARSE_LIMIT);
+
+            int position = 0;
+            for (int label = 0; label < RADIX; label++) {
+                if (mChildren[label] != null) {
+                    labels[position] = (byte) label;
+                    children[position] = mChildren[label];
+                    position++;
+                }
+            }
+
+            mLabels = labels;
+            mChildren = children;
+        }
+
+    }
+
+    /**
+     * Shared labels of the nodes that have never had children.
+     */
+    private static final byte[] NO_LABELS = new byte[0];
+
+    /**
+     * Shared children of the nodes that have never had children.
+     */
+    private static final Node<?>[] NO_CHILDREN = new Node<?>[0];
+
+    /**
+     * The number of times this trie has been structurally modified.
+     */
+    transient int mModCount;
+
+    /**
+     * The number of key-value mappings contained in this trie.
+     */
+    transient int mSize;
+
+    /**
+     * The root of the trie, its value is mapped to the empty key.
+     */
+    transient Node<V> mRoot;
+
+    /**
+     * Nodes on the path of the key that is being removed, is reused between removals.
+     */
+    transient Node<V>[] mPathBuffer;
+
+    /**
+     * Holds cached asUtf8Trie().
+     */
+    transient volatile Utf8Trie mUtf8View;
+
+    /**
+     * Constructs an empty {@code ByteTrie}.
+     */
+    public ByteTrie() {
+        mRoot = newNode();
+    }
+
+    /**
+     * Creates a node without children.
+     */
+    static <V> Node<V> newNode() {
+        final Node<V> node = new Node<>();
+        node.mLabels = NO_LABELS;
+        node.mChildren = newChildren(0);
+        return node;
+    }
+
+    /**
+     * Creates an array of the children of the given length, shares the array when it is empty.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> Node<V>[] newChildren(int length) {
+        return (Node<V>[]) (length == 0 ? NO_CHILDREN : new Node<?>[length]);
+    }
+
+    /**
+     * Returns the number of key-value mappings in this trie.
+     *
+     * Operation time complexity is O(1).
+     *
+     * @return the number of key-value mappings in this trie
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns {@code true} if this trie contains no key-value mappings.
+     *
+     * Operation time complexity is O(1).
+     *
+     * @return {@code true} if this trie contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Returns {@code true} if this trie contains a mapping for the specified key.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key key whose presence in this trie is to be tested
+     * @return {@code true} if this trie contains a mapping for the specified key
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(byte[] key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns {@code true} if this trie contains a mapping for the key that is the
+     * specified slice of the array.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key array that contains the key
+     * @param offset index of the first byte of the key
+     * @param length number of bytes in the key
+     * @return {@code true} if this trie contains a mapping for the specified key
+     * @throws NullPointerException if the specified array is null
+     * @throws IndexOutOfBoundsException if the slice is out of bounds of the array
+     */
+    public boolean containsKey(byte[] key, int offset, int length) {
+        return get(key, offset, length) != null;
+    }
+
+    /**
+     * Returns {@code true} if this trie contains a mapping for the key that is the
+     * remaining content of the buffer.  Position of the buffer is not changed.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key buffer whose remaining bytes are the key
+     * @return {@code true} if this trie contains a mapping for the specified key
+     * @throws NullPointerException if the specified buffer is null
+     */
+    public boolean containsKey(ByteBuffer key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this trie contains no mapping for the key.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or
+     *         {@code null} if this trie contains no mapping for the key
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(byte[] key) {
+        return get(key, 0, key.length);
+    }
+
+    /**
+     * Returns the value to which the key that is the specified slice of the array
+     * is mapped, or {@code null} if this trie contains no mapping for the key.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key array that contains the key
+     * @param offset index of the first byte of the key
+     * @param length number of bytes in the key
+     * @return the value to which the specified key is mapped, or
+     *         {@code null} if this trie contains no mapping for the key
+     * @throws NullPointerException if the specified array is null
+     * @throws IndexOutOfBoundsException if the slice is out of bounds of the array
+     */
+    public V get(byte[] key, int offset, int length) {
+        checkSlice(key, offset, length);
+
+        final Node<V> node = findNode(key, offset, length);
+        return node == null ? null : node.mValue;
+    }
+
+    /**
+     * Returns the value to which the key that is the remaining content of the buffer
+     * is mapped, or {@code null} if this trie contains no mapping for the key.
+     * Position of the buffer is not changed.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key buffer whose remaining bytes are the key
+     * @return the value to which the specified key is mapped, or
+     *         {@code null} if this trie contains no mapping for the key
+     * @throws NullPointerException if the specified buffer is null
+     */
+    public V get(ByteBuffer key) {
+        if (key.hasArray()) {
+            return get(key.array(), key.arrayOffset() + key.position(), key.remaining());
+        }
+
+        Node<V> node = mRoot;
+        for (int i = key.position(); i < key.limit() && node != null; i++) {
+            node = node.getChildFor(key.get(i) & 0xFF);
+        }
+
+        return node == null ? null : node.mValue;
+    }
+
+    /**
+     * Find node that is at the end of the path of the given slice.
+     * If there is no such node, {@code null} is returned.
+     */
+    final Node<V> findNode(byte[] key, int offset, int length) {
+        Node<V> node = mRoot;
+        for (int i = offset; i < offset + length && node != null; i++) {
+            node = node.getChildFor(key[i] & 0xFF);
+        }
+
+        return node;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this trie.
+     * If the trie previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}.
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V put(byte[] key, V value) {
+        return put(key, 0, key.length, value);
+    }
+
+    /**
+     * Associates the specified value with the key that is the specified slice of
+     * the array.  If the trie previously contained a mapping for the key, the old
+     * value is replaced.  The array is not referenced by the trie after the call.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key array that contains the key
+     * @param offset index of the first byte of the key
+     * @param length number of bytes in the key
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the key, or
+     *         {@code null} if there was no mapping for the key.
+     * @throws NullPointerException if the specified array or value is null
+     * @throws IndexOutOfBoundsException if the slice is out of bounds of the array
+     */
+    public V put(byte[] key, int offset, int length, V value) {
+        checkSlice(key, offset, length);
+        checkValue(value);
+
+        mModCount++;
+
+        Node<V> node = mRoot;
+        for (int i = offset; i < offset + length; i++) {
+            final int label = key[i] & 0xFF;
+
+            Node<V> nextNode = node.getChildFor(label);
+            if (nextNode == null) {
+                nextNode = newNode();
+                node.addChild(label, nextNode);
+            }
+
+            node = nextNode;
+        }
+
+        final V returnValue = node.mValue;
+        if (returnValue == null) {
+            mSize++;
+        }
+
+        node.mValue = value;
+
+        return returnValue;
+    }
+
+    /**
+     * Associates the specified value with the key that is the remaining content of
+     * the buffer.  If the trie previously contained a mapping for the key, the old
+     * value is replaced.  Position of the buffer is not changed.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key buffer whose remaining bytes are the key
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the key, or
+     *         {@code null} if there was no mapping for the key.
+     * @throws NullPointerException if the specified buffer or value is null
+     */
+    public V put(ByteBuffer key, V value) {
+        if (key.hasArray()) {
+            return put(key.array(), key.arrayOffset() + key.position(), key.remaining(), value);
+        }
+
+        return put(copyOf(key), value);
+    }
+
+    /**
+     * Removes the mapping for the specified key from this trie if present.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key key whose mapping is to be removed from the trie
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}.
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(byte[] key) {
+        return remove(key, 0, key.length);
+    }
+
+    /**
+     * Removes the mapping for the key that is the specified slice of the array
+     * from this trie if present.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @implSpec After the value is removed, nodes on the path of the key that are
+     * left without values and children are removed as well.
+     *
+     * @param key array that contains the key
+     * @param offset index of the first byte of the key
+     * @param length number of bytes in the key
+     * @return the previous value associated with the key, or
+     *         {@code null} if there was no mapping for the key.
+     * @throws NullPointerException if the specified array is null
+     * @throws IndexOutOfBoundsException if the slice is out of bounds of the array
+     */
+    public V remove(byte[] key, int offset, int length) {
+        checkSlice(key, offset, length);
+
+        final Node<V>[] path = pathBuffer(length);
+
+        Node<V> node = mRoot;
+        for (int i = 0; i < length; i++) {
+            path[i] = node;
+
+            node = node.getChildFor(key[offset + i] & 0xFF);
+            if (node == null) {
+                Arrays.fill(path, 0, i + 1, null);
+                return null;
+            }
+        }
+
+        final V value = node.mValue;
+        if (value != null) {
+            mModCount++;
+            mSize--;
+
+            node.mValue = null;
+        }
+
+        for (int i = length - 1; i >= 0; i--) {
+            final Node<V> parent = path[i];
+            if (!node.hasValue() && !node.hasChildren()) {
+                parent.removeChild(key[offset + i] & 0xFF);
+            }
+
+            path[i] = null;
+            node = parent;
+        }
+
+        return value;
+    }
+
+    /**
+     * Removes the mapping for the key that is the remaining content of the buffer
+     * from this trie if present.  Position of the buffer is not changed.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key buffer whose remaining bytes are the key
+     * @return the previous value associated with the key, or
+     *         {@code null} if there was no mapping for the key.
+     * @throws NullPointerException if the specified buffer is null
+     */
+    public V remove(ByteBuffer key) {
+        if (key.hasArray()) {
+            return remove(key.array(), key.arrayOffset() + key.position(), key.remaining());
+        }
+
+        return remove(copyOf(key));
+    }
+
+    /**
+     * Returns buffer for the nodes on the path of the key with given length.
+     */
+    private Node<V>[] pathBuffer(int length) {
+        if (mPathBuffer == null || mPathBuffer.length < length) {
+            mPathBuffer = newChildren(Math.max(length, MIN_PATH_LENGTH));
+        }
+
+        return mPathBuffer;
+    }
+
+    /**
+     * Removes all of the mappings from this trie.
+     * The trie will be empty after this call returns.
+     *
+     * Operation time complexity is O(1).
+     */
+    public void clear() {
+        mModCount++;
+        mSize = 0;
+        mRoot = newNode();
+        mPathBuffer = null;
+    }
+
+    /**
+     * Returns a {@link Collection} view of the keys contained in this trie, in
+     * lexicographic order of unsigned bytes.  The collection is backed by the trie,
+     * so changes to the trie are reflected in the collection, vice-versa is not
+     * supported.  Every key is returned as a new array.
+     *
+     * @return a collection view of the keys contained in this trie
+     */
+    public Collection<byte[]> keys() {
+        return keysWithPrefix(new byte[0]);
+    }
+
+    /**
+     * Returns a {@link Collection} view of the keys contained in this trie that start
+     * with the given prefix, in lexicographic order of unsigned bytes.  The collection
+     * is backed by the trie, so changes to the trie are reflected in the collection,
+     * vice-versa is not supported.  Every key is returned as a new array.
+     *
+     * @param prefix the prefix that will be used to filter keys
+     * @return a collection view of the keys contained in this trie
+     * @throws NullPointerException if the specified prefix is null
+     */
+    public Collection<byte[]> keysWithPrefix(byte[] prefix) {
+        final byte[] prefixCopy = prefix.clone();
+
+        return new PrefixView<byte[]>(prefixCopy) {
+            @Override
+            public Iterator<byte[]> iterator() {
+                return new PrefixIterator<byte[]>(prefixCopy) {
+                    @Override
+                    byte[] element(byte[] key, V value) {
+                        return key;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this trie, in
+     * lexicographic order of their keys.  The collection is backed by the trie, so
+     * changes to the trie are reflected in the collection, vice-versa is not supported.
+     *
+     * @return a collection view of the values contained in this trie
+     */
+    public Collection<V> values() {
+        return valuesWithPrefix(new byte[0]);
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values whose keys start with the given
+     * prefix, in lexicographic order of their keys.  The collection is backed by the
+     * trie, so changes to the trie are reflected in the collection, vice-versa is not
+     * supported.
+     *
+     * @param prefix the prefix that will be used to filter keys
+     * @return a collection view of the values contained in this trie
+     * @throws NullPointerException if the specified prefix is null
+     */
+    public Collection<V> valuesWithPrefix(byte[] prefix) {
+        final byte[] prefixCopy = prefix.clone();
+
+        return new PrefixView<V>(prefixCopy) {
+            @Override
+            public Iterator<V> iterator() {
+                return new PrefixIterator<V>(prefixCopy) {
+                    @Override
+                    V element(byte[] key, V value) {
+                        return value;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this trie, in
+     * lexicographic order of their keys.  The set is backed by the trie, so changes
+     * to the trie are reflected in the set, vice-versa is not supported.
+     *
+     * @return a set view of the mappings contained in this trie
+     */
+    public Set<Map.Entry<byte[], V>> entrySet() {
+        return new AbstractSet<Map.Entry<byte[], V>>() {
+            @Override
+            public int size() {
+                return mSize;
+            }
+
+            @Override
+            public Iterator<Map.Entry<byte[], V>> iterator() {
+                return new PrefixIterator<Map.Entry<byte[], V>>(new byte[0]) {
+                    @Override
+                    Map.Entry<byte[], V> element(byte[] key, V value) {
+                        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns a {@link Trie} view of this trie whose keys are the strings that are
+     * encoded to the keys of this trie with UTF-8.  Changes to either of them are
+     * reflected in the other.  The view follows contract of the {@code Trie}: it
+     * accepts just the keys that consist of letters or digits.  Keys of this trie
+     * that are not valid UTF-8 are decoded with replacement characters.
+     *
+     * @return a UTF-8 view of this trie
+     */
+    public Trie<V> asUtf8Trie() {
+        Utf8Trie utf8View;
+        return (utf8View = mUtf8View) == null ? (mUtf8View = new Utf8Trie()) : utf8View;
+    }
+
+    /**
+     * Returns a string representation of this trie, keys are rendered as UTF-8 strings.
+     *
+     * @return a string representation of this trie
+     */
+    @Override
+    public String toString() {
+        return asUtf8Trie().toString();
+    }
+
+    /**
+     * View of the part of the trie that is under the prefix.
+     */
+    abstract class PrefixView<E> extends AbstractCollection<E> {
+
+        final byte[] mPrefix;
+
+        @SuppressWarnings("PMD.ArrayIsStoredDirectly")
+        PrefixView(byte[] prefix) {
+            mPrefix = prefix;
+        }
+
+        /**
+         * Returns number of the mappings under the prefix.
+         *
+         * Operation time complexity is O(1) for the empty prefix, otherwise
+         * proportional to number of the mappings under the prefix.
+         */
+        @Override
+        public int size() {
+            if (mPrefix.length == 0) {
+                return mSize;
+            }
+
+            int size = 0;
+            for (final Iterator<E> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+                size++;
+            }
+
+            return size;
+        }
+
+    }
+
+    /**
+     * Depth first iterator over the mappings under the prefix, in order of unsigned bytes.
+     */
+    abstract class PrefixIterator<E> implements Iterator<E> {
+
+        /**
+         * Bytes of the key of the current node.
+         */
+        byte[] mKey;
+
+        /**
+         * Length of the key of the current node.
+         */
+        int mDepth;
+
+        /**
+         * Nodes from the prefix node to the current one.
+         */
+        Node<V>[] mNodes;
+
+        /**
+         * Position of the next child to visit for each node on the path.
+         */
+        int[] mPositions;
+
+        /**
+         * Length of the prefix, iteration stops when it gets back there.
+         */
+        final int mPrefixLength;
+
+        /**
+         * Node with the next value, {@code null} if iteration is over.
+         */
+        Node<V> mNext;
+
+        int mExpectedModCount;
+
+        PrefixIterator(byte[] prefix) {
+            mExpectedModCount = mModCount;
+            mPrefixLength = prefix.length;
+            mKey = Arrays.copyOf(prefix, prefix.length + MIN_PATH_LENGTH);
+            mNodes = newChildren(MIN_PATH_LENGTH + 1);
+            mPositions = new int[MIN_PATH_LENGTH + 1];
+            mDepth = prefix.length;
+
+            final Node<V> node = findNode(prefix, 0, prefix.length);
+            if (node != null) {
+                mNodes[0] = node;
+                mNext = node.hasValue() ? node : advance();
+            }
+        }
+
+        /**
+         * Moves to the next node with value, returns {@code null} if there is none.
+         */
+        private Node<V> advance() {
+            while (true) {
+                final int level = mDepth - mPrefixLength;
+                final Node<V> node = mNodes[level];
+                final int position = node.nextPosition(mPositions[level]);
+
+                if (position < 0) {
+                    if (level == 0) {
+                        return null;
+                    }
+
+                    mNodes[level] = null;
+                    mDepth--;
+                } else {
+                    mPositions[level] = position + 1;
+
+                    final Node<V> child = node.mChildren[position];
+                    push(node.labelAt(position), child);
+
+                    if (child.hasValue()) {
+                        return child;
+                    }
+                }
+            }
+        }
+
+        private void push(int label, Node<V> child) {
+            final int level = mDepth - mPrefixLength + 1;
+            if (level == mNodes.length) {
+                mNodes = Arrays.copyOf(mNodes, level * 2);
+                mPositions = Arrays.copyOf(mPositions, level * 2);
+            }
+
+            if (mDepth == mKey.length) {
+                mKey = Arrays.copyOf(mKey, mDepth * 2);
+            }
+
+            mKey[mDepth] = (byte) label;
+            mDepth++;
+
+            mNodes[level] = child;
+            mPositions[level] = 0;
+        }
+
+        @Override
+        public final boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public final E next() {
+            if (mExpectedModCount != mModCount) {
+                throw new ConcurrentModificationException();
+            }
+
+            if (mNext == null) {
+                throw new NoSuchElementException();
+            }
+
+            final E element = element(Arrays.copyOf(mKey, mDepth), mNext.mValue);
+
+            mNext = advance();
+
+            return element;
+        }
+
+        @Override
+        public final void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Returns element of the view for the mapping with given key and value.
+         */
+        abstract E element(byte[] key, V value);
+
+    }
+
+    /**
+     * {@link Trie} view of the byte trie whose keys are UTF-8 encoded strings.
+     */
+    final class Utf8Trie extends AbstractTrie<V> implements Serializable {
+
+        private static final long serialVersionUID = -4021337715213590432L;
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            return get(key) != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Operation time complexity is O(S), where S is length of key.  The key is
+         * encoded symbol by symbol while the trie is walked.
+         */
+        @Override
+        public V get(String key) {
+            checkKey(key);
+
+            final Node<V> node = findUtf8Node(key);
+            return node == null ? null : node.mValue;
+        }
+
+        @Override
+        public V put(String key, V value) {
+            checkKey(key);
+
+            return ByteTrie.this.put(key.getBytes(StandardCharsets.UTF_8), value);
+        }
+
+        @Override
+        public V remove(String key) {
+            checkKey(key);
+
+            return ByteTrie.this.remove(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void clear() {
+            ByteTrie.this.clear();
+        }
+
+        @Override
+        public Set<String> keys() {
+            return keysWithPrefix("");
+        }
+
+        @Override
+        public Set<String> keysWithPrefix(final String prefix) {
+            checkPrefix(prefix);
+
+            final Collection<byte[]> keys = ByteTrie.this.keysWithPrefix(prefix.getBytes(StandardCharsets.UTF_8));
+
+            return new AbstractSet<String>() {
+                @Override
+                public int size() {
+                    return keys.size();
+                }
+
+                @Override
+                public boolean contains(Object object) {
+                    return object instanceof String && ((String) object).startsWith(prefix)
+                            && containsKey((String) object);
+                }
+
+                @Override
+                public Iterator<String> iterator() {
+                    final Iterator<byte[]> iterator = keys.iterator();
+
+                    return new Iterator<String>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public String next() {
+                            return new String(iterator.next(), StandardCharsets.UTF_8);
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public Collection<V> values() {
+            return ByteTrie.this.values();
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            final Set<Map.Entry<byte[], V>> entries = ByteTrie.this.entrySet();
+
+            return new AbstractSet<Map.Entry<String, V>>() {
+                @Override
+                public int size() {
+                    return mSize;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, V>> iterator() {
+                    final Iterator<Map.Entry<byte[], V>> iterator = entries.iterator();
+
+                    return new Iterator<Map.Entry<String, V>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, V> next() {
+                            final Map.Entry<byte[], V> entry = iterator.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(
+                                    new String(entry.getKey(), StandardCharsets.UTF_8), entry.getValue());
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Finds node of the UTF-8 encoding of the given key, encoding it char by char.
+     * Keys are expected to be validated, so they do not contain surrogates.
+     */
+    @SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
+    final Node<V> findUtf8Node(String key) {
+        Node<V> node = mRoot;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            final char character = key.charAt(i);
+
+            if (character < 0x80) {
+                node = node.getChildFor(character);
+            } else if (character < 0x800) {
+                node = childFor(node.getChildFor(0xC0 | character >> 6), 0x80 | character & 0x3F);
+            } else {
+                node = childFor(childFor(node.getChildFor(0xE0 | character >> 12),
+                        0x80 | character >> 6 & 0x3F), 0x80 | character & 0x3F);
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Returns child of the node for the given unsigned byte, or {@code null} if either
+     * the node is {@code null} or it has no such child.
+     */
+    private static <V> Node<V> childFor(Node<V> node, int label) {
+        return node == null ? null : node.getChildFor(label);
+    }
+
+    /**
+     * Checks that the key of the UTF-8 view is not empty and consists of letters or digits.
+     */
+    static void checkKey(String key) {
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Key could not be empty string.");
+        }
+
+        checkPrefix(key);
+    }
+
+    /**
+     * Checks that the prefix of the keys of the UTF-8 view consists of letters or digits,
+     * unlike the key the prefix could be empty.
+     */
+    static void checkPrefix(String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            if (!Character.isLetterOrDigit(prefix.charAt(i))) {
+                throw new IllegalArgumentException("Key should contain just letter or digit.");
+            }
+        }
+    }
+
+    static void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    static void checkSlice(byte[] key, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > key.length - length) {
+            throw new IndexOutOfBoundsException("Slice [" + offset + ", " + (offset + length)
+                    + ") is out of bounds of array with length " + key.length + ".");
+        }
+    }
+
+    /**
+     * Returns remaining bytes of the buffer, position of the buffer is not changed.
+     */
+    private static byte[] copyOf(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Save the state of the {@code ByteTrie} instance to a stream (i.e.,
+     * serialize it).
+     *
+     * @serialData The <i>size</i> of the ByteTrie (the number of key-value
+     *             mappings) is emitted (int), followed by the key (byte[])
+     *             and value (Object) for each key-value mapping.  The key-value
+     *             mappings are emitted in lexicographic order of the keys.
+     */
+    private void writeObject(java.io.ObjectOutputStream stream) throws IOException {
+        stream.defaultWriteObject();
+        stream.writeInt(mSize);
+
+        for (Map.Entry<byte[], V> entry : entrySet()) {
+            stream.writeObject(entry.getKey());
+            stream.writeObject(entry.getValue());
+        }
+    }
+
+    /**
+     * Reconstitute the {@code ByteTrie} instance from a stream (i.e.,
+     * deserialize it).
+     */
+    private void readObject(java.io.ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+
+        mRoot = newNode();
+
+        final int size = stream.readInt();
+        if (size < 0) {
+            throw new InvalidObjectException("Illegal mappings count: " + size);
+        }
+
+        for (int i = 0; i < size; i++) {
+            final byte[] key = (byte[]) stream.readObject();
+            @SuppressWarnings("unchecked")
+            final V value = (V) stream.readObject();
+            put(key, value);
+        }
+    }
+
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads newline-delimited UTF-8 files of words into a {@link PrefixTree}.
+ *
+ * <p>The file is split into chunks at line boundaries, one chunk per thread.  Each thread
+ * maps its chunk into memory window by window, decodes UTF-8 into a reusable buffer and puts
+ * every line into its own {@link HashTrie} straight from the buffer, without a {@code String}
+ * per line.  Tries of the threads are then merged into the tree node by node, see
+ * {@link PrefixTree#union(PrefixTree)}.
+ *
+ * <p>Line feed and an optional carriage return before it end a line, blank lines are ignored.
+ * Lines that are malformed UTF-8 or have symbols that are not accepted by the alphabet of
+ * the tree are skipped and counted.
+ *
+ * @author Dmytro Ivanov
+ * @see PrefixTree
+ */
+@SuppressWarnings({"PMD.DoNotUseThreads", "PMD.GodClass", "PMD.AvoidInstantiatingObjectsInLoops"})
+public final class DictionaryLoader {
+
+    /**
+     * Maximum number of bytes that are mapped into memory at once by a thread.
+     */
+    static final int WINDOW_BYTES = 64 * 1024 * 1024;
+
+    private static final byte LINE_FEED = '\n';
+
+    private static final char CARRIAGE_RETURN = '\r';
+
+    private DictionaryLoader() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * Loads lines of the file into the tree, using a thread per available processor.
+     *
+     * @param file newline-delimited UTF-8 file
+     * @param tree tree that receives the lines
+     * @return statistics of the load
+     * @throws IOException if the file could not be read
+     * @throws NullPointerException if the file or tree is null
+     * @throws UnsupportedOperationException if the tree is unmodifiable
+     */
+    public static Statistics load(Path file, PrefixTree tree) throws IOException {
+        return load(file, tree, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Loads lines of the file into the tree, using the given number of threads.
+     *
+     * @param file newline-delimited UTF-8 file
+     * @param tree tree that receives the lines
+     * @param threads number of the threads that parse the file
+     * @return statistics of the load
+     * @throws IOException if the file could not be read
+     * @throws NullPointerException if the file or tree is null
+     * @throws IllegalArgumentException if the number of threads is not positive
+     * @throws UnsupportedOperationException if the tree is unmodifiable
+     */
+    public static Statistics load(Path file, PrefixTree tree, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads should be positive.");
+        }
+
+        final HashTrie<Boolean> trie = tree.modifiableHashTrie();
+        final long start = System.nanoTime();
+        final int oldSize = tree.size();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long[] bounds = chunkBounds(channel, threads);
+
+            final List<Chunk> chunks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                chunks.add(new Chunk(channel, bounds[i], bounds[i + 1], trie.alphabet(), trie.folding()));
+            }
+
+            final long lines = runAll(chunks);
+
+            long skippedLines = 0;
+            for (Chunk chunk : chunks) {
+                tree.union(new PrefixTree(chunk.mTrie, chunk.mSpellings));
+                skippedLines += chunk.mSkippedLines;
+            }
+
+            return new Statistics(channel.size(), lines, skippedLines, tree.size() - oldSize,
+                    chunks.size(), System.nanoTime() - start);
+        }
+    }
+
+    private static long runAll(List<Chunk> chunks) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(chunks.size());
+        try {
+            final List<Future<Long>> results = executor.invokeAll(chunks);
+
+            long lines = 0;
+            for (Future<Long> result : results) {
+                lines += result.get();
+            }
+
+            return lines;
+        } catch (InterruptedException excep) {
+            Thread.currentThread().interrupt();
+
+            final InterruptedIOException interrupted =
+                    new InterruptedIOException("Load of the dictionary was interrupted.");
+            interrupted.initCause(excep);
+            throw interrupted;
+        } catch (ExecutionException excep) {
+            if (excep.getCause() instanceof IOException) {
+                throw (IOException) excep.getCause();
+            }
+
+            throw new IllegalStateException("Could not load the dictionary.", excep);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns offsets that split the file into at most {@code count} chunks, each chunk
+     * but the last ends right after a line feed.
+     */
+    static long[] chunkBounds(FileChannel channel, int count) throws IOException {
+        final long size = channel.size();
+        final List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+
+        for (int i = 1; i < count; i++) {
+            final long nominal = Math.max(size / count * i, bounds.get(bounds.size() - 1));
+            final long bound = nextLineStart(channel, nominal, size);
+            if (bound >= size) {
+                break;
+            }
+
+            if (bound > bounds.get(bounds.size() - 1)) {
+                bounds.add(bound);
+            }
+        }
+
+        bounds.add(size);
+
+        final long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns offset after the first line feed at or after the position, or size of the file.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        long offset = position;
+        while (offset < size) {
+            final int length = (int) Math.min(WINDOW_BYTES, size - offset);
+            final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+
+            for (int i = 0; i < length; i++) {
+                if (window.get(i) == LINE_FEED) {
+                    return offset + i + 1;
+                }
+            }
+
+            offset += length;
+        }
+
+        return size;
+    }
+
+    /**
+     * Statistics of a load.
+     */
+    public static final class Statistics {
+
+        private final long mBytes;
+
+        private final long mLines;
+
+        private final long mSkippedLines;
+
+        private final long mAddedValues;
+
+        private final int mThreads;
+
+        private final long mElapsedNanos;
+
+        Statistics(long bytes, long lines, long skippedLines, long addedValues, int threads, long elapsedNanos) {
+            mBytes = bytes;
+            mLines = lines;
+            mSkippedLines = skippedLines;
+            mAddedValues = addedValues;
+            mThreads = threads;
+            mElapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns size of the file in bytes.
+         *
+         * @return size of the file in bytes
+         */
+        public long bytes() {
+            return mBytes;
+        }
+
+        /**
+         * Returns number of the non-blank lines, including the skipped ones.
+         *
+         * @return number of the non-blank lines
+         */
+        public long lines() {
+            return mLines;
+        }
+
+        /**
+         * Returns number of the lines that were skipped as malformed or not accepted by the alphabet.
+         *
+         * @return number of the skipped lines
+         */
+        public long skippedLines() {
+            return mSkippedLines;
+        }
+
+        /**
+         * Returns number of the values that were not in the tree before the load.
+         *
+         * @return number of the added values
+         */
+        public long addedValues() {
+            return mAddedValues;
+        }
+
+        /**
+         * Returns number of the threads that parsed the file.
+         *
+         * @return number of the threads
+         */
+        public int threads() {
+            return mThreads;
+        }
+
+        /**
+         * Returns duration of the load in nanoseconds, including merge of the tries of the threads.
+         *
+         * @return duration of the load in nanoseconds
+         */
+        public long elapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        /**
+         * Returns throughput of the load in megabytes of the file per second.
+         *
+         * @return megabytes per second
+         */
+        public double megabytesPerSecond() {
+            return mBytes / (1024.0 * 1024.0) / seconds();
+        }
+
+        /**
+         * Returns throughput of the load in lines per second.
+         *
+         * @return lines per second
+         */
+        public double linesPerSecond() {
+            return mLines / seconds();
+        }
+
+        private double seconds() {
+            return Math.max(mElapsedNanos, 1) / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{bytes=" + mBytes + ", lines=" + mLines + ", skippedLines=" + mSkippedLines
+                    + ", addedValues=" + mAddedValues + ", threads=" + mThreads + ", elapsedNanos=" + mElapsedNanos
+                    + ", megabytesPerSecond=" + megabytesPerSecond() + ", linesPerSecond=" + linesPerSecond() + "}";
+        }
+
+    }
+
+    /**
+     * Part of the file that is parsed by a thread into its own trie.
+     */
+    @SuppressWarnings("PMD.TooManyFields")
+    private static final class Chunk implements Callable<Long> {
+
+        private static final int MIN_LINE_CHARS = 64;
+
+        private static final int CONTINUATION_MASK = 0xC0;
+
+        private static final int CONTINUATION_BITS = 0x80;
+
+        private static final int MIN_SEQUENCE = 2;
+
+        private static final int MAX_SEQUENCE = 4;
+
+        final HashTrie<Boolean> mTrie;
+
+        /**
+         * Original spelling of the lines by their folded form, {@code null} if the lines are not folded.
+         */
+        final HashTrie<String> mSpellings;
+
+        long mSkippedLines;
+
+        private final FileChannel mChannel;
+
+        private final long mStart;
+
+        private final long mEnd;
+
+        private final KeyAlphabet mAlphabet;
+
+        private final KeyFolding mFolding;
+
+        private char[] mChars = new char[MIN_LINE_CHARS];
+
+        private CharBuffer mLine = CharBuffer.wrap(mChars);
+
+        /**
+         * Symbols of the current line before folding, {@code null} if the lines are not folded.
+         */
+        private char[] mOriginalChars;
+
+        private int mLength;
+
+        private int mHash;
+
+        /**
+         * {@code true} if the current line could not be put into the trie.
+         */
+        private boolean mInvalid;
+
+        /**
+         * Remaining continuation bytes of the current UTF-8 sequence and its code point so far.
+         */
+        private int mPendingBytes;
+
+        private int mCodePoint;
+
+        Chunk(FileChannel channel, long start, long end, KeyAlphabet alphabet, KeyFolding folding) {
+            mChannel = channel;
+            mStart = start;
+            mEnd = end;
+            mAlphabet = alphabet;
+            mFolding = folding;
+            mTrie = new HashTrie<>(alphabet, folding);
+
+            if (folding == KeyFolding.NONE) {
+                mSpellings = null;
+            } else {
+                mSpellings = new HashTrie<>(alphabet, folding);
+                mOriginalChars = new char[MIN_LINE_CHARS];
+            }
+        }
+
+        /**
+         * Parses the chunk, returns number of the non-blank lines.
+         */
+        @Override
+        public Long call() throws IOException {
+            long lines = 0;
+
+            long offset = mStart;
+            while (offset < mEnd) {
+                final int length = (int) Math.min(WINDOW_BYTES, mEnd - offset);
+                final MappedByteBuffer window = mChannel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+
+                for (int i = 0; i < length; i++) {
+                    final byte value = window.get(i);
+                    if (value == LINE_FEED) {
+                        lines += endLine();
+                    } else {
+                        decode(value);
+                    }
+                }
+
+                offset += length;
+            }
+
+            return lines + endLine();
+        }
+
+        /**
+         * Puts the current line into the trie, returns 1 if the line is not blank.
+         */
+        private int endLine() {
+            if (mLength > 0 && mChars[mLength - 1] == CARRIAGE_RETURN) {
+                mLength--;
+            }
+
+            final int line = mLength > 0 || mInvalid || mPendingBytes > 0 ? 1 : 0;
+
+            if (mInvalid || mPendingBytes > 0) {
+                mSkippedLines += line;
+            } else if (mLength > 0) {
+                mLine.limit(mLength);
+                if (mTrie.putChecked(mLine, mHash, Boolean.TRUE) == null && mSpellings != null) {
+                    final String spelling = new String(mOriginalChars, 0, mLength);
+                    mSpellings.put(spelling, spelling);
+                }
+            }
+
+            mLength = 0;
+            mHash = 0;
+            mInvalid = false;
+            mPendingBytes = 0;
+
+            return line;
+        }
+
+        /**
+         * Decodes next byte of UTF-8.
+         */
+        private void decode(byte value) {
+            if (mPendingBytes > 0) {
+                if ((value & CONTINUATION_MASK) == CONTINUATION_BITS) {
+                    mCodePoint = mCodePoint << 6 | value & 0x3F;
+                    mPendingBytes--;
+                    if (mPendingBytes == 0) {
+                        append(mCodePoint);
+                    }
+                } else {
+                    mInvalid = true;
+                    mPendingBytes = 0;
+                }
+            } else if (value >= 0) {
+                append(value);
+            } else {
+                startSequence(value);
+            }
+        }
+
+        /**
+         * Starts multi-byte UTF-8 sequence, length of the sequence is number of the leading ones of its first byte.
+         */
+        private void startSequence(byte value) {
+            final int length = Integer.numberOfLeadingZeros(~value << (Integer.SIZE - Byte.SIZE));
+            if (length < MIN_SEQUENCE || length > MAX_SEQUENCE) {
+                mInvalid = true;
+            } else {
+                mCodePoint = value & 0x7F >> length;
+                mPendingBytes = length - 1;
+            }
+        }
+
+        /**
+         * Appends decoded code point to the line, folded as the trie folds its keys.  Code points outside
+         * of the Basic Multilingual Plane are not letters or digits as a {@code char}, so they make the line invalid.
+         */
+        private void append(int codePoint) {
+            if (mLength > 0 && mChars[mLength - 1] == CARRIAGE_RETURN) {
+                mInvalid = true;
+                return;
+            }
+
+            if (codePoint == CARRIAGE_RETURN) {
+                ensureCapacity();
+                mChars[mLength++] = CARRIAGE_RETURN;
+                return;
+            }
+
+            if (mInvalid || codePoint > Character.MAX_VALUE) {
+                mInvalid = true;
+                return;
+            }
+
+            final char character = mFolding.fold((char) codePoint);
+            if (!mAlphabet.contains(character)) {
+                mInvalid = true;
+                return;
+            }
+
+            ensureCapacity();
+            if (mOriginalChars != null) {
+                mOriginalChars[mLength] = (char) codePoint;
+            }
+
+            mChars[mLength++] = character;
+            mHash = 31 * mHash + character;
+        }
+
+        private void ensureCapacity() {
+            if (mLength == mChars.length) {
+                mChars = Arrays.copyOf(mChars, mChars.length * 2);
+                mLine = CharBuffer.wrap(mChars);
+
+                if (mOriginalChars != null) {
+                    mOriginalChars = Arrays.copyOf(mOriginalChars, mChars.length);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code Trie} that keeps its mappings in a {@link HashTrie} and makes them durable in
+ * a directory on disk.  Each {@code put}, {@code remove} and {@code clear} is appended to
+ * a write-ahead log before it is applied, so a write costs one append instead of writing
+ * the whole trie.  When the trie is opened, it loads the last checkpoint and replays the
+ * log, so the trie is restored to the last write that reached the disk.
+ *
+ * <p>With {@link SyncMode#EVERY_WRITE} each write returns once its record is forced to
+ * disk.  Writes of concurrent threads are group committed: a thread waiting for the disk
+ * finds its record forced by the sync of another thread, if that sync started after the
+ * record was appended.  With {@link SyncMode#MANUAL} records reach the disk when the
+ * operating system flushes them, by {@link #sync()}, checkpoint or close.
+ *
+ * <p>Once the log grows over the checkpoint threshold, a write makes a <i>checkpoint</i>:
+ * the whole trie is written to a new snapshot file that atomically replaces the old one,
+ * then the log is truncated.  Records that are replayed over the snapshot that already
+ * contains them do not change the trie, so a crash at any point of the checkpoint is safe.
+ * The write is logged before the checkpoint, so if the checkpoint fails the write still
+ * succeeds, the log is kept and the next write retries the checkpoint.
+ *
+ * <p>Basic operations are thread safe.  Views are backed by the underlying {@link HashTrie}
+ * and should not be iterated while the trie is modified by other threads.  Modification
+ * operations throw {@link IllegalStateException} if the log could not be written, the
+ * trie is not modified in that case.  With {@link SyncMode#EVERY_WRITE} they also throw it
+ * if the log could not be forced to disk, the trie is already modified in that case.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @author Dmytro Ivanov
+ * @see ValueCodec
+ */
+public final class DurableTrie<V> extends AbstractTrie<V> implements Trie<V>, Closeable {
+
+    /**
+     * When records of the write-ahead log are forced to disk.
+     */
+    public enum SyncMode {
+
+        /**
+         * Each write waits until its record is forced to disk, writes of concurrent
+         * threads share the sync.
+         */
+        EVERY_WRITE,
+
+        /**
+         * Records are forced to disk by {@link #sync()}, checkpoint and close.
+         */
+        MANUAL
+
+    }
+
+    /**
+     * Default length of the log that triggers a checkpoint, in bytes.
+     */
+    public static final long DEFAULT_LOG_BYTES = 64L * 1024 * 1024;
+
+    static final String SNAPSHOT_FILE = "snapshot";
+
+    static final String LOG_FILE = "wal";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final int SNAPSHOT_MAGIC = 0x54726965;
+
+    private final HashTrie<V> mTrie = new HashTrie<>();
+
+    private final Object mLock = new Object();
+
+    private final Path mDirectory;
+
+    private final ValueCodec<V> mCodec;
+
+    private final SyncMode mSyncMode;
+
+    private final long mCheckpointBytes;
+
+    private final WriteAheadLog<V> mLog;
+
+    private boolean mClosed;
+
+    private DurableTrie(Path directory, ValueCodec<V> codec, SyncMode syncMode, long checkpointBytes)
+            throws IOException {
+        mDirectory = directory;
+        mCodec = codec;
+        mSyncMode = syncMode;
+        mCheckpointBytes = checkpointBytes;
+
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_FILE + TEMPORARY_SUFFIX));
+
+        loadSnapshot();
+        mLog = WriteAheadLog.open(directory.resolve(LOG_FILE), codec, WriteAheadLog.trieTarget(mTrie));
+    }
+
+    /**
+     * Opens trie in the given directory, that syncs every write and makes checkpoint
+     * once the log is longer than {@link #DEFAULT_LOG_BYTES}.  The directory is
+     * created if it does not exist.
+     *
+     * @param <V> the type of mapped values
+     * @param directory directory of the trie
+     * @param codec codec of the values
+     * @return trie with the mappings restored from the directory
+     * @throws IOException if the directory could not be read or created
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public static <V> DurableTrie<V> open(Path directory, ValueCodec<V> codec) throws IOException {
+        return open(directory, codec, SyncMode.EVERY_WRITE, DEFAULT_LOG_BYTES);
+    }
+
+    /**
+     * Opens trie in the given directory.  The directory is created if it does not exist.
+     *
+     * @param <V> the type of mapped values
+     * @param directory directory of the trie
+     * @param codec codec of the values
+     * @param syncMode when the log is forced to disk
+     * @param checkpointBytes length of the log in bytes that triggers a checkpoint
+     * @return trie with the mappings restored from the directory
+     * @throws IOException if the directory could not be read or created
+     * @throws NullPointerException if any of the arguments is null
+     * @throws IllegalArgumentException if the checkpoint length is not positive
+     */
+    public static <V> DurableTrie<V> open(Path directory, ValueCodec<V> codec, SyncMode syncMode,
+                                          long checkpointBytes) throws IOException {
+        if (directory == null || codec == null || syncMode == null) {
+            throw new NullPointerException();
+        }
+
+        if (checkpointBytes <= 0) {
+            throw new IllegalArgumentException("Checkpoint length should be positive.");
+        }
+
+        return new DurableTrie<>(directory, codec, syncMode, checkpointBytes);
+    }
+
+    @Override
+    public int size() {
+        synchronized (mLock) {
+            return mTrie.size();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        synchronized (mLock) {
+            return mTrie.isEmpty();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        synchronized (mLock) {
+            return mTrie.containsKey(key);
+        }
+    }
+
+    @Override
+    public V get(String key) {
+        synchronized (mLock) {
+            return mTrie.get(key);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S), where S is length of key, plus the cost of
+     * the append and, depending on {@link SyncMode}, of the sync.
+     */
+    @Override
+    public V put(String key, V value) {
+        long position;
+        V oldValue;
+
+        synchronized (mLock) {
+            mTrie.checkKey(key);
+            mTrie.checkValue(value);
+            checkOpen();
+
+            try {
+                position = mLog.appendPut(key, value);
+            } catch (IOException excep) {
+                throw new IllegalStateException("Could not append to the write-ahead log.", excep);
+            }
+
+            oldValue = mTrie.put(key, value);
+            checkpointIfNeeded();
+        }
+
+        syncIfNeeded(position);
+        return oldValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S), where S is length of key, plus the cost of
+     * the append and, depending on {@link SyncMode}, of the sync.  Nothing is logged
+     * if the trie does not contain the key.
+     */
+    @Override
+    public V remove(String key) {
+        long position;
+        V oldValue;
+
+        synchronized (mLock) {
+            checkOpen();
+            if (!mTrie.containsKey(key)) {
+                return null;
+            }
+
+            try {
+                position = mLog.appendRemove(key);
+            } catch (IOException excep) {
+                throw new IllegalStateException("Could not append to the write-ahead log.", excep);
+            }
+
+            oldValue = mTrie.remove(key);
+            checkpointIfNeeded();
+        }
+
+        syncIfNeeded(position);
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        long position;
+
+        synchronized (mLock) {
+            checkOpen();
+
+            try {
+                position = mLog.appendClear();
+            } catch (IOException excep) {
+                throw new IllegalStateException("Could not append to the write-ahead log.", excep);
+            }
+
+            mTrie.clear();
+            checkpointIfNeeded();
+        }
+
+        syncIfNeeded(position);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return mTrie.keys();
+    }
+
+    @Override
+    public Set<String> keysWithPrefix(String prefix) {
+        return mTrie.keysWithPrefix(prefix);
+    }
+
+    @Override
+    public Collection<V> values() {
+        return mTrie.values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return mTrie.entrySet();
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override
+    public boolean equals(Object object) {
+        synchronized (mLock) {
+            return object == this || mTrie.equals(object);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        synchronized (mLock) {
+            return mTrie.hashCode();
+        }
+    }
+
+    /**
+     * Forces all of the logged writes to disk.
+     *
+     * @throws IOException if the log could not be forced
+     */
+    public void sync() throws IOException {
+        mLog.sync(mLog.size());
+    }
+
+    /**
+     * Writes the whole trie to a new snapshot and truncates the log.
+     *
+     * Operation time complexity is O(N*S), where N is number of mappings in the
+     * trie and S is average length of the key.
+     *
+     * @throws IOException if the snapshot could not be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (mLock) {
+            checkOpen();
+
+            writeSnapshot();
+            mLog.truncate();
+        }
+    }
+
+    /**
+     * Returns length of the write-ahead log in bytes.
+     *
+     * @return length of the log in bytes
+     */
+    public long logSize() {
+        return mLog.size();
+    }
+
+    /**
+     * Forces the log to disk and closes it.  The trie could not be modified after it is closed.
+     *
+     * @throws IOException if the log could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (mLock) {
+            if (!mClosed) {
+                mClosed = true;
+                mLog.close();
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Trie is closed.");
+        }
+    }
+
+    private void syncIfNeeded(long position) {
+        if (mSyncMode == SyncMode.EVERY_WRITE) {
+            try {
+                mLog.sync(position);
+            } catch (IOException excep) {
+                throw new IllegalStateException("Could not sync the write-ahead log.", excep);
+            }
+        }
+    }
+
+    /**
+     * Makes a checkpoint once the log grows over the threshold.  The write is already applied
+     * and logged, so a failure of the checkpoint does not fail the write.
+     */
+    private void checkpointIfNeeded() {
+        if (mLog.size() < mCheckpointBytes) {
+            return;
+        }
+
+        try {
+            checkpoint();
+        } catch (IOException excep) {
+            // The log still holds the writes, the next write retries the checkpoint
+            return;
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        final Path snapshot = mDirectory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) {
+            return;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if (input.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("File " + snapshot + " is not a snapshot of a trie.");
+            }
+
+            final int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                final String key = ValueCodecs.readString(input);
+                mTrie.put(key, mCodec.read(input));
+            }
+        }
+    }
+
+    /**
+     * Writes the trie to a temporary file, forces it to disk and moves it over the old snapshot.
+     */
+    private void writeSnapshot() throws IOException {
+        final Path temporary = mDirectory.resolve(SNAPSHOT_FILE + TEMPORARY_SUFFIX);
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel)));
+
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeInt(mTrie.size());
+            for (Map.Entry<String, V> entry : mTrie.entrySet()) {
+                ValueCodecs.writeString(entry.getKey(), output);
+                mCodec.write(entry.getValue(), output);
+            }
+
+            output.flush();
+            channel.force(true);
+        }
+
+        Files.move(temporary, mDirectory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        WriteAheadLog.syncDirectory(mDirectory);
+    }
+
+}
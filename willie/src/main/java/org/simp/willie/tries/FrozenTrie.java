@@ -0,0 +1,702 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable trie packed into arrays, that is taken by {@link Tries#freeze(Trie)}.
+ *
+ * <p>The children of a node are a range of numbers of the nodes and are sorted by their symbols.
+ * Paths of the nodes without values and with a single child are compressed into edges, labels
+ * of the edges are slices of a single array of chars.  A node takes three ints and a reference,
+ * there are no node objects, maps or boxed symbols, so a frozen trie is a few times smaller
+ * than the {@link HashTrie} it is taken from and a lookup is a binary search over the children
+ * per edge.
+ *
+ * <p>A trie that is taken by {@link Tries#freezeShared(Trie)} is a directed acyclic graph:
+ * the children of the nodes are <i>hash-consed</i>, identical ranges of children, with the
+ * same labels, values and children of their own, are stored once and shared by all the nodes
+ * that have them.  So identical subtrees, like the same catalog under a key per region, take
+ * the memory of a single subtree.
+ *
+ * <p>All fields are final and never modified after construction, so the trie could be
+ * read by any number of threads without locks.  Hash code is computed once, when the trie
+ * is frozen.  Keys of a trie with {@link KeyFolding} are folded, the lookups fold their
+ * keys as the source trie does.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @author Dmytro Ivanov
+ * @see Tries#freeze(Trie)
+ */
+@SuppressWarnings("PMD.GodClass")
+final class FrozenTrie<V> extends AbstractTrie<V> implements Serializable {
+
+    private static final long serialVersionUID = 6830915587211487203L;
+
+    private static final Comparator<Map.Entry<String, ?>> KEY_ORDER = new Comparator<Map.Entry<String, ?>>() {
+        @Override
+        public int compare(Map.Entry<String, ?> first, Map.Entry<String, ?> second) {
+            return first.getKey().compareTo(second.getKey());
+        }
+    };
+
+    /**
+     * Labels of the edges, label of node {@code i} is {@code mLabels[mLabelStart[i]]} up to
+     * {@code mLabels[mLabelStart[i + 1]]}, the root has an empty label.  Each node has its own
+     * label, the shared nodes share their labels as well.
+     *
+     * @serial
+     */
+    private final char[] mLabels;
+
+    /**
+     * @serial
+     */
+    private final int[] mLabelStart;
+
+    /**
+     * Children of node {@code i} are the nodes from {@code mChildStart[i]} up to {@code mChildEnd[i]}.
+     *
+     * @serial
+     */
+    private final int[] mChildStart;
+
+    /**
+     * @serial
+     */
+    private final int[] mChildEnd;
+
+    /**
+     * Values of the nodes, {@code null} if the node has no value.
+     *
+     * @serial
+     */
+    private final Object[] mValues;
+
+    /**
+     * @serial
+     */
+    private final int mRoot;
+
+    /**
+     * @serial
+     */
+    private final int mSize;
+
+    /**
+     * @serial
+     */
+    private final int mHashCode;
+
+    /**
+     * @serial
+     */
+    private final KeyFolding mFolding;
+
+    /**
+     * Packs the mappings of the trie, the keys are taken as they are, so keys of a trie
+     * with folding are already folded.  Identical ranges of children are stored once if
+     * {@code shared} is {@code true}.
+     *
+     * Operation time complexity is O(N * log(N) * S), where N is number of mappings and
+     * S is average length of the key.
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    FrozenTrie(Trie<? extends V> trie, KeyFolding folding, boolean shared) {
+        final List<Map.Entry<String, V>> entries = new ArrayList<>(trie.size());
+        int hashCode = 0;
+        for (Map.Entry<String, ? extends V> entry : trie.entrySet()) {
+            final Map.Entry<String, V> copy = new AbstractMap.SimpleImmutableEntry<String, V>(entry);
+            entries.add(copy);
+            hashCode += copy.hashCode();
+        }
+
+        Collections.sort(entries, KEY_ORDER);
+
+        final Packer packer = new Packer(entries, shared);
+        mLabels = packer.mLabels.toString().toCharArray();
+        mLabelStart = Arrays.copyOf(packer.mLabelStart, packer.mCount + 1);
+        mChildStart = Arrays.copyOf(packer.mChildStart, packer.mCount);
+        mChildEnd = Arrays.copyOf(packer.mChildEnd, packer.mCount);
+        mValues = Arrays.copyOf(packer.mValues, packer.mCount);
+        mRoot = packer.mCount - 1;
+        mSize = entries.size();
+        mHashCode = hashCode;
+        mFolding = folding;
+    }
+
+    KeyFolding folding() {
+        return mFolding;
+    }
+
+    /**
+     * Returns number of the stored nodes, including the root, shared nodes are counted once.
+     */
+    int nodeCount() {
+        return mValues.length;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S * log(F)), where S is length of the key and F is the fan-out of the nodes.
+     */
+    @Override
+    public boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S * log(F)), where S is length of the key and F is the fan-out of the nodes.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        int node = mRoot;
+        int index = 0;
+        while (index < key.length()) {
+            node = child(node, mFolding.fold(key.charAt(index)));
+            if (node < 0) {
+                return null;
+            }
+
+            final int end = mLabelStart[node + 1];
+            for (int label = mLabelStart[node]; label < end; label++, index++) {
+                if (index == key.length() || mLabels[label] != mFolding.fold(key.charAt(index))) {
+                    return null;
+                }
+            }
+        }
+
+        return (V) mValues[node];
+    }
+
+    @Override
+    public V put(String key, V value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public V remove(String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void merge(Trie<? extends V> trie, MergeFunction<V> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<String> keys() {
+        return keysWithPrefix("");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned set is unmodifiable.
+     */
+    @Override
+    public Set<String> keysWithPrefix(String prefix) {
+        final String folded = mFolding.fold(prefix);
+        return new AbstractSet<String>() {
+            @Override
+            public int size() {
+                if (folded.length() == 0) {
+                    return mSize;
+                }
+
+                int size = 0;
+                for (Iterator<String> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+                    size++;
+                }
+
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object object) {
+                return object instanceof String
+                        && mFolding.fold((String) object).startsWith(folded)
+                        && containsKey((String) object);
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new FrozenIterator<String>(folded) {
+                    @Override
+                    String element(String key, Object value) {
+                        return key;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public int size() {
+                return mSize;
+            }
+
+            @Override
+            public Iterator<V> iterator() {
+                return new FrozenIterator<V>("") {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    V element(String key, Object value) {
+                        return (V) value;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public int size() {
+                return mSize;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new FrozenIterator<Map.Entry<String, V>>("") {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    Map.Entry<String, V> element(String key, Object value) {
+                        return new AbstractMap.SimpleImmutableEntry<>(key, (V) value);
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (object instanceof FrozenTrie && ((FrozenTrie<?>) object).mHashCode != mHashCode) {
+            return false;
+        }
+
+        return super.equals(object);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(1), the hash code is computed when the trie is frozen.
+     */
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    /**
+     * Returns child of the node which label starts with the symbol, or {@code -1} if there is no such child.
+     */
+    private int child(int node, char symbol) {
+        int low = mChildStart[node];
+        int high = mChildEnd[node] - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final char middleSymbol = mLabels[mLabelStart[middle]];
+            if (middleSymbol < symbol) {
+                low = middle + 1;
+            } else if (middleSymbol > symbol) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Iterator over the mappings of a subtree in ascending order of the keys.  The nodes are
+     * visited depth first with a stack of the nodes and lengths of the keys of their parents.
+     */
+    @SuppressWarnings("PMD.AvoidStringBufferField")
+    private abstract class FrozenIterator<E> implements Iterator<E> {
+
+        private final StringBuilder mKey = new StringBuilder();
+
+        private int[] mNodes = new int[16];
+
+        private int[] mParentLengths = new int[16];
+
+        private int mDepth;
+
+        private String mNextKey;
+
+        private Object mNextValue;
+
+        /**
+         * Descends along the prefix, which could end in the middle of a label, and pushes the last node.
+         */
+        FrozenIterator(String prefix) {
+            int node = mRoot;
+            int start = 0;
+            int index = 0;
+            while (index < prefix.length()) {
+                node = child(node, prefix.charAt(index));
+                if (node < 0) {
+                    return;
+                }
+
+                start = index;
+                final int end = mLabelStart[node + 1];
+                for (int label = mLabelStart[node]; label < end && index < prefix.length(); label++, index++) {
+                    if (mLabels[label] != prefix.charAt(index)) {
+                        return;
+                    }
+                }
+            }
+
+            mKey.append(prefix, 0, start);
+            push(node, start);
+            advance();
+        }
+
+        abstract E element(String key, Object value);
+
+        @Override
+        public boolean hasNext() {
+            return mNextKey != null;
+        }
+
+        @Override
+        public E next() {
+            if (mNextKey == null) {
+                throw new NoSuchElementException();
+            }
+
+            final E element = element(mNextKey, mNextValue);
+            advance();
+
+            return element;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void advance() {
+            mNextKey = null;
+            while (mNextKey == null && mDepth > 0) {
+                mDepth--;
+                final int node = mNodes[mDepth];
+                mKey.setLength(mParentLengths[mDepth]);
+                mKey.append(mLabels, mLabelStart[node], mLabelStart[node + 1] - mLabelStart[node]);
+
+                for (int child = mChildEnd[node] - 1; child >= mChildStart[node]; child--) {
+                    push(child, mKey.length());
+                }
+
+                if (mValues[node] != null) {
+                    mNextKey = mKey.toString();
+                    mNextValue = mValues[node];
+                }
+            }
+        }
+
+        private void push(int node, int parentLength) {
+            if (mDepth == mNodes.length) {
+                mNodes = Arrays.copyOf(mNodes, mDepth * 2);
+                mParentLengths = Arrays.copyOf(mParentLengths, mDepth * 2);
+            }
+
+            mNodes[mDepth] = node;
+            mParentLengths[mDepth] = parentLength;
+            mDepth++;
+        }
+
+    }
+
+    /**
+     * Builds the arrays of the nodes from the mappings sorted by key.  Each node is a range of
+     * the mappings which keys share its key, the children of a node are built before the node,
+     * so the root is the last node.
+     */
+    @SuppressWarnings("PMD.AvoidStringBufferField")
+    private static final class Packer {
+
+        final StringBuilder mLabels = new StringBuilder();
+
+        final int[] mLabelStart;
+
+        final int[] mChildStart;
+
+        final int[] mChildEnd;
+
+        final Object[] mValues;
+
+        int mCount;
+
+        /**
+         * The stored ranges of children, {@code null} if they are not shared.
+         */
+        private final Map<Children, Children> mShared;
+
+        Packer(List<? extends Map.Entry<String, ?>> entries, boolean shared) {
+            // Every node but the root either has a value or branches, so there are at most 2N + 1 nodes
+            final int capacity = 2 * entries.size() + 2;
+            mLabelStart = new int[capacity];
+            mChildStart = new int[capacity];
+            mChildEnd = new int[capacity];
+            mValues = new Object[capacity];
+            mShared = shared ? new HashMap<Children, Children>() : null;
+
+            final Object rootValue = entries.isEmpty() || entries.get(0).getKey().length() > 0
+                    ? null
+                    : entries.get(0).getValue();
+
+            final Children children = pack(entries, rootValue == null ? 0 : 1, entries.size(), 0);
+            store(new Children(Collections.singletonList(""), Collections.singletonList(rootValue),
+                    Collections.singletonList(children)));
+            mLabelStart[mCount] = mLabels.length();
+        }
+
+        /**
+         * Packs the children of the node of the mappings from {@code from} up to {@code until},
+         * which keys are longer than {@code length}, and returns the stored range of the children.
+         * Ranges that are being packed are kept on an explicit stack, a range is stored once
+         * the ranges of all of its children are stored.
+         */
+        @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+        private Children pack(List<? extends Map.Entry<String, ?>> entries, int from, int until, int length) {
+            final Deque<Range> ranges = new ArrayDeque<>();
+            ranges.push(new Range(from, until, length));
+
+            Children packed = null;
+            while (!ranges.isEmpty()) {
+                final Range range = ranges.peek();
+                if (packed != null) {
+                    range.mChildren.add(packed);
+                    packed = null;
+                }
+
+                if (range.mFirst < range.mUntil) {
+                    final int first = range.mFirst;
+                    final int end = rangeEnd(entries, first, range.mUntil, range.mLength);
+                    final String firstKey = entries.get(first).getKey();
+                    final int common = commonLength(firstKey, entries.get(end - 1).getKey(), range.mLength + 1);
+
+                    final boolean hasValue = firstKey.length() == common;
+                    range.mLabels.add(firstKey.substring(range.mLength, common));
+                    range.mValues.add(hasValue ? entries.get(first).getValue() : null);
+                    range.mFirst = end;
+
+                    ranges.push(new Range(hasValue ? first + 1 : first, end, common));
+                } else {
+                    ranges.pop();
+                    packed = store(new Children(range.mLabels, range.mValues, range.mChildren));
+                }
+            }
+
+            return packed;
+        }
+
+        /**
+         * Returns end of the range of the mappings which keys have the same symbol at {@code length}
+         * as the key of the first mapping.
+         */
+        private static int rangeEnd(List<? extends Map.Entry<String, ?>> entries, int first, int until, int length) {
+            final char symbol = entries.get(first).getKey().charAt(length);
+
+            int end = first + 1;
+            while (end < until && entries.get(end).getKey().charAt(length) == symbol) {
+                end++;
+            }
+
+            return end;
+        }
+
+        /**
+         * Returns length of the common prefix of the keys, which are known to share {@code length} symbols.
+         */
+        private static int commonLength(String first, String last, int length) {
+            int common = length;
+            while (common < first.length() && first.charAt(common) == last.charAt(common)) {
+                common++;
+            }
+
+            return common;
+        }
+
+        /**
+         * Stores the range of children, unless the same range is already stored and could be shared.
+         */
+        private Children store(Children children) {
+            if (mShared != null) {
+                final Children stored = mShared.get(children);
+                if (stored != null) {
+                    return stored;
+                }
+
+                mShared.put(children, children);
+            }
+
+            children.mStart = mCount;
+            for (int i = 0; i < children.mLabels.length; i++) {
+                mLabelStart[mCount] = mLabels.length();
+                mLabels.append(children.mLabels[i]);
+                mValues[mCount] = children.mValues[i];
+                mChildStart[mCount] = children.mChildren[i].mStart;
+                mChildEnd[mCount] = children.mChildren[i].mStart + children.mChildren[i].mLabels.length;
+                mCount++;
+            }
+
+            return children;
+        }
+
+    }
+
+    /**
+     * Range of the mappings that is being packed into the children of a node, the mappings
+     * from {@code mFirst} up to {@code mUntil} are left to be packed.
+     */
+    private static final class Range {
+
+        int mFirst;
+
+        final int mUntil;
+
+        /**
+         * Length of the key of the node, keys of the mappings are longer.
+         */
+        final int mLength;
+
+        final List<String> mLabels = new ArrayList<>();
+
+        final List<Object> mValues = new ArrayList<>();
+
+        final List<Children> mChildren = new ArrayList<>();
+
+        Range(int first, int until, int length) {
+            mFirst = first;
+            mUntil = until;
+            mLength = length;
+        }
+
+    }
+
+    /**
+     * Range of the children of a node while the trie is packed.  Ranges are equal if they have
+     * the same labels and values, and the same stored ranges of the children of their own.
+     */
+    private static final class Children {
+
+        final String[] mLabels;
+
+        final Object[] mValues;
+
+        final Children[] mChildren;
+
+        final int mHashCode;
+
+        /**
+         * Number of the first node of the range once it is stored.
+         */
+        int mStart;
+
+        Children(List<String> labels, List<Object> values, List<Children> children) {
+            mLabels = labels.toArray(new String[labels.size()]);
+            mValues = values.toArray();
+            mChildren = children.toArray(new Children[children.size()]);
+
+            int hashCode = Arrays.hashCode(mLabels);
+            hashCode = 31 * hashCode + Arrays.hashCode(mValues);
+            for (Children child : mChildren) {
+                hashCode = 31 * hashCode + System.identityHashCode(child);
+            }
+
+            mHashCode = hashCode;
+        }
+
+        @Override
+        @SuppressWarnings("PMD.CompareObjectsWithEquals")
+        public boolean equals(Object object) {
+            if (!(object instanceof Children)) {
+                return false;
+            }
+
+            final Children other = (Children) object;
+            if (mHashCode != other.mHashCode || !Arrays.equals(mLabels, other.mLabels)
+                    || !Arrays.equals(mValues, other.mValues)) {
+                return false;
+            }
+
+            for (int i = 0; i < mChildren.length; i++) {
+                if (mChildren[i] != other.mChildren[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+    }
+
+}
@@ -17,26 +17,37 @@ package org.simp.willie.tries;
 
 import java.io.IOException;
 import java.io.InvalidObjectException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@code Trie} interface implementation that uses {@code HashMap} in the node
  * to store references to the children.  This implementation provides all of the
  * optional trie operations.
  *
+ * <p>Keys could be restricted to symbols of a {@link KeyAlphabet}.  If the alphabet
+ * has at most 64 symbols, nodes keep their children in a dense array indexed by
+ * a {@code long} bitmap instead of {@code HashMap}.
+ *
  * <p>This implementation provides O(S), where is S is lenght of the key
  * performance for the basic operations ({@code get} and {@code put}).
  * Iteration over collection views requires time proportional to the size of the
@@ -60,6 +71,11 @@ import java.util.Set;
  * arbitrary, non-deterministic behavior at an undetermined time in the
  * future.
  *
+ * <p>Hash code of the trie and structural hashes of its subtrees are cached and
+ * updated on each modification, so {@code hashCode} is O(1) and {@code equals}
+ * stops at the first subtree that differs.  As a consequence hash codes of the
+ * values should not change while they are in the trie.
+ *
  * <p>Note that the fail-fast behavior of an iterator cannot be guaranteed
  * as it is, generally speaking, impossible to make any hard guarantees in the
  * presence of unsynchronized concurrent modification.  Fail-fast iterators
@@ -73,62 +89,480 @@ import java.util.Set;
  * @author Dmytro Ivanov
  * @see     Trie
  */
-@SuppressWarnings("PMD.GodClass")
+@SuppressWarnings({"PMD.GodClass", "PMD.ExcessiveClassLength", "PMD.ExcessivePublicCount"})
 public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializable, Cloneable {
 
     private static final long serialVersionUID = -3275675110121867083L;
 
+    /**
+     * Initial length of the buffer for the nodes on the path of the modified key.
+     */
+    private static final int MIN_PATH_LENGTH = 16;
+
     /**
      * Node of the trie.
-     * Keeps references to the children in a {@code Map} that has {@code Character}
-     * as a key and V as an value.
+     * Keeps value of the node and structural hash of its subtree, the way references
+     * to the children are kept is defined by the subclasses.
      *
-     * Provides convenience methods to operate with nodes children.
+     * Provides convenience methods to operate with nodes children, the methods that map symbols
+ * of the children take alphabet of the trie, so the nodes do not keep it.
      *
      * @param <V> the type of stored values
      */
     @SuppressWarnings("PMD.ShortClassName")
-    static final class Node<V> {
+    abstract static class Node<V> {
+
+        /**
+         * Shared array of the nodes without children.
+         */
+        static final Node<?>[] NO_CHILDREN = new Node<?>[0];
 
         /**
          * Value of the node, null if no value is present.
          */
         V mValue;
 
+        /**
+         * Structural hash of the subtree rooted at this node, that does not depend on the
+         * prefix of the node.  Is kept up to date by the trie on each modification.
+         */
+        int mHash;
+
+        boolean hasValue() {
+            return mValue != null;
+        }
+
+        boolean hasChildren() {
+            return childrenCount() > 0;
+        }
+
+        abstract int childrenCount();
+
+        abstract Node<V> getChildFor(KeyAlphabet alphabet, char character);
+
+        abstract void addChild(KeyAlphabet alphabet, char character, Node<V> child);
+
+        abstract void removeChild(KeyAlphabet alphabet, char character);
+
+        abstract Set<Map.Entry<Character, Node<V>>> children(KeyAlphabet alphabet);
+
+        /**
+         * Returns nodes of the children, in no particular order.
+         */
+        abstract Collection<Node<V>> childNodes();
+
+        /**
+         * Copies symbols and nodes of the children to the arrays from the given offset, in order
+         * of {@link #children(KeyAlphabet)}, so the children are walked without entries of boxed symbols.
+         * The arrays should have room for {@link #childrenCount()} children after the offset.
+         */
+        abstract void copyChildren(KeyAlphabet alphabet, char[] symbols, Node<?>[] children, int offset);
+
+        /**
+         * Returns representation of the node.
+         */
+        abstract TrieStats.NodeType nodeType();
+
+        /**
+         * Returns estimated number of bytes of the node object itself.
+         */
+        abstract long nodeBytes();
+
+        /**
+         * Returns estimated number of bytes of the container of the children, not including
+         * the children themselves.
+         */
+        abstract long childrenBytes();
+
+        /**
+         * Returns estimated number of bytes that are retained by the node and the container
+         * of its children, not including the children and the value themselves.
+         */
+        final long estimatedBytes() {
+            return nodeBytes() + childrenBytes();
+        }
+
+        /**
+         * Returns node with the same value, hash and children that has the smallest
+         * representation for the node, which could be this node shrunk in place.
+         */
+        abstract Node<V> compacted();
+
+        /**
+         * Creates an array of the children of the given length, shares the array when it is empty.
+         */
+        @SuppressWarnings("unchecked")
+        static <V> Node<V>[] newChildren(int length) {
+            return (Node<V>[]) (length == 0 ? NO_CHILDREN : new Node<?>[length]);
+        }
+
+        /**
+         * Recalculates structural hash of the node from its value and hashes of its children.
+         */
+        void rehash(KeyAlphabet alphabet) {
+            int hash = valueHash(mValue);
+            for (Map.Entry<Character, Node<V>> child : children(alphabet)) {
+                hash += childHash(child.getKey(), child.getValue().mHash);
+            }
+
+            mHash = hash;
+        }
+
+        /**
+         * Returns contribution of the value to the structural hash of its node.
+         */
+        static int valueHash(Object value) {
+            return value == null ? 0 : value.hashCode() * 0x9E3779B9 + 1;
+        }
+
+        /**
+         * Returns contribution of the child with given structural hash to the structural hash
+         * of its parent.  Children contributions are summed, so their order does not matter.
+         */
+        static int childHash(char character, int hash) {
+            int result = hash * 31 + character;
+            result ^= result >>> 16;
+            result *= 0x85EBCA6B;
+            result ^= result >>> 13;
+            result *= 0xC2B2AE35;
+            return result ^ result >>> 16;
+        }
+
+    }
+
+    /**
+     * Node that keeps references to the children in a {@code Map} that has {@code Character}
+     * as a key and node as an value.  Is used by tries with alphabets that could not be
+     * indexed by a bitmap.
+     *
+     * @param <V> the type of stored values
+     */
+    static final class MapNode<V> extends Node<V> {
+
         /**
          * References to the children, never is {@code null}.
          */
         Map<Character, Node<V>> mChildren;
 
-        Node() {
-            mValue = null;
-            mChildren = new HashMap<>();
+        /**
+         * The largest number of the children the map has ever had, tables of {@code HashMap}
+         * never shrink, so it defines capacity of the table.
+         */
+        int mMaxChildren;
+
+        MapNode() {
+            this(0);
         }
 
-        boolean hasValue() {
-            return mValue != null;
+        /**
+         * Constructs node whose map has table that fits the given number of the children.
+         */
+        MapNode(int childrenCount) {
+            mValue = null;
+            mChildren = new HashMap<>(MemoryLayout.hashMapCapacity(childrenCount));
         }
 
-        boolean hasChildren() {
-            return !mChildren.isEmpty();
+        @Override
+        int childrenCount() {
+            return mChildren.size();
         }
 
-        Node<V> getChildFor(Character character) {
+        @Override
+        Node<V> getChildFor(KeyAlphabet alphabet, char character) {
             return mChildren.get(character);
         }
 
-        void addChild(Character character, Node<V> child) {
+        @Override
+        void addChild(KeyAlphabet alphabet, char character, Node<V> child) {
             mChildren.put(character, child);
+            mMaxChildren = Math.max(mMaxChildren, mChildren.size());
         }
 
-        void removeChild(Character character) {
+        @Override
+        void removeChild(KeyAlphabet alphabet, char character) {
             mChildren.remove(character);
         }
 
-        Set<Map.Entry<Character, Node<V>>> children() {
+        @Override
+        Set<Map.Entry<Character, Node<V>>> children(KeyAlphabet alphabet) {
             return mChildren.entrySet();
         }
 
+        @Override
+        Collection<Node<V>> childNodes() {
+            return mChildren.values();
+        }
+
+        @Override
+        void copyChildren(KeyAlphabet alphabet, char[] symbols, Node<?>[] children, int offset) {
+            int position = offset;
+            for (Map.Entry<Character, Node<V>> child : mChildren.entrySet()) {
+                symbols[position] = child.getKey();
+                children[position++] = child.getValue();
+            }
+        }
+
+        @Override
+        TrieStats.NodeType nodeType() {
+            return TrieStats.NodeType.HASH_MAP;
+        }
+
+        @Override
+        long nodeBytes() {
+            return MemoryLayout.object(3 * MemoryLayout.REFERENCE);
+        }
+
+        @Override
+        long childrenBytes() {
+            long bytes = MemoryLayout.hashMap(mChildren.size(), mMaxChildren);
+            for (Character character : mChildren.keySet()) {
+                bytes += MemoryLayout.character(character);
+            }
+
+            return bytes;
+        }
+
+        /**
+         * Returns {@link ArrayNode} if the node has at most {@link ArrayNode#MAX_CHILDREN}
+         * children, otherwise replaces the map of the children with a map that fits them.
+         */
+        @Override
+        Node<V> compacted() {
+            if (mChildren.size() <= ArrayNode.MAX_CHILDREN) {
+                return new ArrayNode<>(this);
+            }
+
+            final Map<Character, Node<V>> children = mChildren;
+            mChildren = new HashMap<>(MemoryLayout.hashMapCapacity(children.size()));
+            mChildren.putAll(children);
+            mMaxChildren = children.size();
+
+            return this;
+        }
+
+    }
+
+    /**
+     * Node that keeps symbols of the children in a sorted array and references to the
+     * children in an array of the same order, both arrays fit the children exactly.
+     * Is used by {@link #compact()} for nodes with few children of tries with alphabets
+     * that could not be indexed by a bitmap.
+     *
+     * @param <V> the type of stored values
+     */
+    static final class ArrayNode<V> extends Node<V> {
+
+        /**
+         * Maximum number of the children that is kept by {@link #compact()} in this node.
+         */
+        static final int MAX_CHILDREN = 8;
+
+        /**
+         * Shared array of the symbols of the nodes without children.
+         */
+        static final char[] NO_SYMBOLS = new char[0];
+
+        /**
+         * Symbols of the children in ascending order.
+         */
+        char[] mSymbols;
+
+        /**
+         * References to the children, in order of the symbols.
+         */
+        Node<V>[] mChildren;
+
+        ArrayNode() {
+            mSymbols = NO_SYMBOLS;
+            mChildren = newChildren(0);
+        }
+
+        /**
+         * Constructs a copy of the given node, children themselves are not copied.
+         */
+        ArrayNode(MapNode<V> node) {
+            this();
+
+            mValue = node.mValue;
+            mHash = node.mHash;
+            for (Map.Entry<Character, Node<V>> child : node.mChildren.entrySet()) {
+                putChild(child.getKey(), child.getValue());
+            }
+        }
+
+        @Override
+        int childrenCount() {
+            return mChildren.length;
+        }
+
+        @Override
+        Node<V> getChildFor(KeyAlphabet alphabet, char character) {
+            final int position = Arrays.binarySearch(mSymbols, character);
+            return position < 0 ? null : mChildren[position];
+        }
+
+        @Override
+        void addChild(KeyAlphabet alphabet, char character, Node<V> child) {
+            putChild(character, child);
+        }
+
+        /**
+         * Sets the child for the symbol, keeps the symbols in ascending order.
+         */
+        private void putChild(char character, Node<V> child) {
+            int position = Arrays.binarySearch(mSymbols, character);
+            if (position < 0) {
+                position = -position - 1;
+
+                final char[] symbols = new char[mSymbols.length + 1];
+                System.arraycopy(mSymbols, 0, symbols, 0, position);
+                System.arraycopy(mSymbols, position, symbols, position + 1, mSymbols.length - position);
+                symbols[position] = character;
+
+                final Node<V>[] children = newChildren(mChildren.length + 1);
+                System.arraycopy(mChildren, 0, children, 0, position);
+                System.arraycopy(mChildren, position, children, position + 1, mChildren.length - position);
+
+                mSymbols = symbols;
+                mChildren = children;
+            }
+
+            mChildren[position] = child;
+        }
+
+        @Override
+        void removeChild(KeyAlphabet alphabet, char character) {
+            final int position = Arrays.binarySearch(mSymbols, character);
+            if (position >= 0) {
+                removeAt(position);
+            }
+        }
+
+        /**
+         * Removes the child at the given position of the arrays.
+         */
+        private void removeAt(int position) {
+            final char[] symbols = mSymbols.length == 1 ? NO_SYMBOLS : new char[mSymbols.length - 1];
+            System.arraycopy(mSymbols, 0, symbols, 0, position);
+            System.arraycopy(mSymbols, position + 1, symbols, position, symbols.length - position);
+
+            final Node<V>[] children = newChildren(mChildren.length - 1);
+            System.arraycopy(mChildren, 0, children, 0, position);
+            System.arraycopy(mChildren, position + 1, children, position, children.length - position);
+
+            mSymbols = symbols;
+            mChildren = children;
+        }
+
+        @Override
+        Set<Map.Entry<Character, Node<V>>> children(KeyAlphabet alphabet) {
+            return new AbstractSet<Map.Entry<Character, Node<V>>>() {
+                @Override
+                public int size() {
+                    return mChildren.length;
+                }
+
+                @Override
+                public Iterator<Map.Entry<Character, Node<V>>> iterator() {
+                    return new ChildIterator();
+                }
+            };
+        }
+
+        @Override
+        Collection<Node<V>> childNodes() {
+            return Arrays.asList(mChildren);
+        }
+
+        @Override
+        void copyChildren(KeyAlphabet alphabet, char[] symbols, Node<?>[] children, int offset) {
+            System.arraycopy(mSymbols, 0, symbols, offset, mSymbols.length);
+            System.arraycopy(mChildren, 0, children, offset, mChildren.length);
+        }
+
+        @Override
+        TrieStats.NodeType nodeType() {
+            return TrieStats.NodeType.SORTED_ARRAY;
+        }
+
+        @Override
+        long nodeBytes() {
+            return MemoryLayout.object(4 * MemoryLayout.REFERENCE);
+        }
+
+        @Override
+        long childrenBytes() {
+            return mChildren.length == 0 ? 0 : MemoryLayout.array(mSymbols.length, Character.SIZE / Byte.SIZE)
+                    + MemoryLayout.array(mChildren.length, MemoryLayout.REFERENCE);
+        }
+
+        /**
+         * Returns {@link MapNode} if the node has more than {@link #MAX_CHILDREN} children,
+         * otherwise this node, its arrays always fit the children.
+         */
+        @Override
+        Node<V> compacted() {
+            if (mChildren.length <= MAX_CHILDREN) {
+                return this;
+            }
+
+            final MapNode<V> node = new MapNode<>(mChildren.length);
+            node.mValue = mValue;
+            node.mHash = mHash;
+            for (int i = 0; i < mChildren.length; i++) {
+                node.mChildren.put(mSymbols[i], mChildren[i]);
+            }
+            node.mMaxChildren = mChildren.length;
+
+            return node;
+        }
+
+        /**
+         * Iterator over the children in order of the symbols, supports removal of the last
+         * returned child.
+         */
+        final class ChildIterator implements Iterator<Map.Entry<Character, Node<V>>> {
+
+            /**
+             * Position of the next child.
+             */
+            int mPosition;
+
+            /**
+             * Whether the last returned child could be removed.
+             */
+            boolean mCanRemove;
+
+            @Override
+            public boolean hasNext() {
+                return mPosition < mChildren.length;
+            }
+
+            @Override
+            public Map.Entry<Character, Node<V>> next() {
+                if (mPosition >= mChildren.length) {
+                    throw new NoSuchElementException();
+                }
+
+                mCanRemove = true;
+                mPosition++;
+
+                return new AbstractMap.SimpleImmutableEntry<>(mSymbols[mPosition - 1], mChildren[mPosition - 1]);
+            }
+
+            @Override
+            public void remove() {
+                if (!mCanRemove) {
+                    throw new IllegalStateException();
+                }
+
+                mCanRemove = false;
+                mPosition--;
+                removeAt(mPosition);
+            }
+
+        }
+
     }
 
     /**
@@ -158,14 +592,106 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
      */
     transient int mSize;
 
+    /**
+     * Alphabet of the keys, defines representation of the nodes.
+     *
+     * @serial
+     */
+    KeyAlphabet mAlphabet;
+
+    /**
+     * Folding of the symbols of the keys, is applied before the keys are checked against the alphabet.
+     *
+     * @serial
+     */
+    KeyFolding mFolding;
+
     /**
      * The root of the trie, should never be {@code null}.
      */
     transient Node<V> mRoot;
 
+    /**
+     * Sum of the hash codes of the entries, as it is defined by {@link Trie#hashCode()}.
+     * Is kept up to date on each modification.
+     */
+    transient int mHashCode;
+
+    /**
+     * Nodes on the path of the key that is being modified, is reused between modifications.
+     */
+    transient Node<V>[] mPathBuffer;
+
+    /**
+     * Number of the tries that share the nodes with this trie, see {@link #lazyClone()},
+     * {@code null} if the nodes are not shared.
+     */
+    transient AtomicInteger mSharers;
+
+    /**
+     * Constructs an empty {@code HashTrie} that accepts keys that consist of
+     * letters or digits.
+     */
     public HashTrie() {
+        this(KeyAlphabet.UNICODE);
+    }
+
+    /**
+     * Constructs an empty {@code HashTrie} that accepts keys that consist of
+     * symbols of the given alphabet.  Nodes of the trie are bitmap indexed if
+     * the alphabet has at most 64 symbols.
+     *
+     * @param alphabet alphabet of the keys
+     * @throws NullPointerException if the alphabet is null
+     */
+    public HashTrie(KeyAlphabet alphabet) {
+        this(alphabet, KeyFolding.NONE);
+    }
+
+    /**
+     * Constructs an empty {@code HashTrie} that folds symbols of the keys and accepts keys
+     * whose folded symbols are in the given alphabet.  Keys are stored folded, and are folded
+     * symbol by symbol while the nodes are walked, so lookups and prefix queries do not create
+     * folded copies of the keys.
+     *
+     * @param alphabet alphabet of the folded keys
+     * @param folding folding of the symbols of the keys
+     * @throws NullPointerException if the alphabet or folding is null
+     */
+    public HashTrie(KeyAlphabet alphabet, KeyFolding folding) {
+        if (alphabet == null || folding == null) {
+            throw new NullPointerException();
+        }
+
+        mAlphabet = alphabet;
+        mFolding = folding;
         mSize = 0;
-        mRoot = new Node<>();
+        mRoot = newNode();
+    }
+
+    /**
+     * Returns alphabet of the keys of this trie.
+     *
+     * @return alphabet of the keys of this trie
+     */
+    public KeyAlphabet alphabet() {
+        return mAlphabet;
+    }
+
+    /**
+     * Returns folding of the symbols of the keys of this trie.
+     *
+     * @return folding of the symbols of the keys of this trie
+     */
+    public KeyFolding folding() {
+        return mFolding;
+    }
+
+    /**
+     * Creates a node with representation that suits the alphabet of the trie.
+     */
+    final Node<V> newNode() {
+        return mAlphabet.isBitmapIndexed() ? new BitmapNode<V>() : new MapNode<V>();
     }
 
     /**
@@ -221,6 +747,54 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
         return node == null ? null : node.mValue;
     }
 
+    /**
+     * Looks up values of the batch of keys.  Value of each key is stored into the array at
+     * the position of the key in iteration order of the collection, {@code null} is stored
+     * for the keys that have no mapping.  Keys are looked up in sorted order, so the nodes
+     * of a prefix that is shared by adjacent keys are traversed once.
+     *
+     * Operation time complexity is O(K * log(K) * S), where K is number of keys and S is
+     * length of the longest key.
+     *
+     * @param keys keys whose values are looked up
+     * @param values array that receives the values, in order of the keys
+     * @return number of the keys that have a mapping
+     * @throws NullPointerException if the keys, any of the keys or the values are null
+     * @throws IllegalArgumentException if any of the keys is not a valid key, or the array
+     *         is shorter than the batch
+     * @see #get(String)
+     */
+    @SuppressWarnings("PMD.UseVarargs")
+    public int getAll(Collection<String> keys, V[] values) {
+        if (values.length < keys.size()) {
+            throw new IllegalArgumentException("Array of the values should not be shorter than the batch.");
+        }
+
+        final int[] positions = new int[keys.size()];
+        final String[] sortedKeys = SortedLookup.sortedBatch(this, keys, positions);
+
+        return SortedLookup.find(mAlphabet, mRoot, sortedKeys, positions, values);
+    }
+
+    /**
+     * Returns {@code true} if this trie contains mappings for all of the keys of the batch.
+     * Keys are looked up in sorted order, so the nodes of a prefix that is shared by
+     * adjacent keys are traversed once.
+     *
+     * Operation time complexity is O(K * log(K) * S), where K is number of keys and S is
+     * length of the longest key.
+     *
+     * @param keys keys whose presence in this trie is to be tested
+     * @return {@code true} if this trie contains mappings for all of the keys
+     * @throws NullPointerException if the keys or any of the keys are null
+     * @throws IllegalArgumentException if any of the keys is not a valid key
+     * @see #containsKey(String)
+     */
+    public boolean containsAll(Collection<String> keys) {
+        final String[] sortedKeys = SortedLookup.sortedBatch(this, keys, null);
+        return SortedLookup.find(mAlphabet, mRoot, sortedKeys, null, null) == sortedKeys.length;
+    }
+
     /**
      * Find node that contain value for a given {@code key}.
      * If there are no key in a trie, {@code null} is returned.
@@ -229,7 +803,7 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
         int keyIndex = 0;
         Node<V> node = mRoot;
         while (keyIndex < key.length() && node != null) {
-            node = node.getChildFor(key.charAt(keyIndex));
+            node = node.getChildFor(mAlphabet, mFolding.fold(key.charAt(keyIndex)));
 
             keyIndex++;
         }
@@ -249,24 +823,40 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
      * @return the previous value associated with {@code key}, or
      *         {@code null} if there was no mapping for {@code key}.
      */
-    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
     @Override
     public V put(String key, V value) {
         checkKey(key);
         checkValue(value);
 
+        final String foldedKey = mFolding.fold(key);
+        return putChecked(foldedKey, foldedKey.hashCode(), value);
+    }
+
+    /**
+     * Associates the value with the key that is already checked and folded, so keys could be put
+     * from reusable buffers without creating a {@code String} per key.  {@code keyHash}
+     * should be equal to hash code of the key as a {@code String}.
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    final V putChecked(CharSequence key, int keyHash, V value) {
+        unshare();
         mModCount++;
 
+        final Node<V>[] path = pathBuffer(key.length());
+
         Node<V> node = mRoot;
         for (int i = 0; i < key.length(); i++) {
-            final Character currChar = key.charAt(i);
+            final char currChar = key.charAt(i);
 
-            Node<V> nextNode = node.getChildFor(currChar);
+            Node<V> nextNode = node.getChildFor(mAlphabet, currChar);
             if (nextNode == null) {
-                nextNode = new Node<>();
-                node.addChild(currChar, nextNode);
+                nextNode = newNode();
+                node.addChild(mAlphabet, currChar, nextNode);
+            } else {
+                node.mHash -= Node.childHash(currChar, nextNode.mHash);
             }
 
+            path[i] = node;
             node = nextNode;
         }
 
@@ -274,12 +864,20 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
 
         if (node.hasValue()) {
             returnValue = node.mValue;
+
+            node.mHash -= Node.valueHash(returnValue);
+            mHashCode -= keyHash ^ returnValue.hashCode();
         } else {
             mSize++;
         }
 
         node.mValue = value;
 
+        node.mHash += Node.valueHash(value);
+        mHashCode += keyHash ^ value.hashCode();
+
+        rehashPath(key, key.length(), node);
+
         return returnValue;
     }
 
@@ -299,45 +897,224 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
     public V remove(String key) {
         checkKey(key);
 
+        final String foldedKey = mFolding.fold(key);
+        unshare();
         mModCount++;
 
         // path needed to clean up path after
-        Node[] path = new Node[key.length() + 1];
+        final Node<V>[] path = pathBuffer(foldedKey.length());
 
-        int keyIndex = 0;
+        int depth = 0;
         Node<V> node = mRoot;
-        while (keyIndex < key.length() && node != null) {
-            path[key.length() - keyIndex] = node;
-            node = node.getChildFor(key.charAt(keyIndex));
+        while (depth < foldedKey.length()) {
+            final Node<V> nextNode = node.getChildFor(mAlphabet, foldedKey.charAt(depth));
+            if (nextNode == null) {
+                break;
+            }
 
-            keyIndex++;
+            node.mHash -= Node.childHash(foldedKey.charAt(depth), nextNode.mHash);
+
+            path[depth] = node;
+            node = nextNode;
+            depth++;
         }
 
-        if (node == null || !node.hasValue()) {
-            return null;
+        V value = null;
+
+        if (depth == foldedKey.length() && node.hasValue()) {
+            value = node.mValue;
+
+            node.mValue = null;
+            mSize--;
+
+            node.mHash -= Node.valueHash(value);
+            mHashCode -= foldedKey.hashCode() ^ value.hashCode();
         }
 
-        final V value = node.mValue;
+        rehashPath(foldedKey, depth, node);
 
-        node.mValue = null;
-        mSize--;
+        return value;
+    }
 
-        // clean up unnecessary nodes
-        path[0] = node;
-        for (int i = 0; i < path.length - 1; i++) {
-            if (path[i].hasChildren() || path[i].hasValue()) {
-                break;
+    /**
+     * Walks back from the node at given {@code depth} of the {@code key} path to the root,
+     * restores structural hashes of the nodes on the path and cleans up nodes that have
+     * neither value nor children.  Nodes on the path are expected to be in {@link #mPathBuffer}
+     * without contributions of their children on the path in their hashes.
+     */
+    private void rehashPath(CharSequence key, int depth, Node<V> lastNode) {
+        final Node<V>[] path = mPathBuffer;
+
+        Node<V> node = lastNode;
+        for (int i = depth - 1; i >= 0; i--) {
+            final Node<V> parent = path[i];
+            if (node.hasValue() || node.hasChildren()) {
+                parent.mHash += Node.childHash(key.charAt(i), node.mHash);
             } else {
-                path[i + 1].removeChild(key.charAt(key.length() - i - 1));
+                parent.removeChild(mAlphabet, key.charAt(i));
             }
+
+            path[i] = null;
+            node = parent;
         }
+    }
 
-        return value;
+    /**
+     * Returns buffer for the nodes on the path of the key with given length.
+     */
+    private Node<V>[] pathBuffer(int length) {
+        if (mPathBuffer == null || mPathBuffer.length < length) {
+            mPathBuffer = Node.newChildren(Math.max(length, MIN_PATH_LENGTH));
+        }
+
+        return mPathBuffer;
+    }
+
+    /**
+     * Merges all of the mappings from the specified trie into this trie.
+     * Keys that are present just in the specified trie are added with their
+     * values.  For keys that are present in both tries the value becomes the
+     * result of {@code function.merge(oldValue, newValue)}; if the function
+     * returns {@code null} the mapping is removed.
+     *
+     * Operation time complexity is O(M), where M is number of nodes in the specified
+     * trie, if it is a {@code HashTrie}, otherwise O(N*S), where N is number of mappings
+     * in the specified trie and S is average length of the key.
+     *
+     * @implSpec If the specified trie is a {@code HashTrie}, or an unmodifiable view of
+     * it, whose alphabet is a subset of alphabet of this trie, both tries are walked node by
+     * node in lockstep, so keys are neither rebuilt nor re-validated, and subtrees that are
+     * absent in this trie are copied as a whole.
+     *
+     * @param trie trie whose mappings are to be merged into this trie
+     * @param function function that resolves values of keys present in both tries
+     * @throws NullPointerException if the specified trie or function is null
+     */
+    @Override
+    public void merge(Trie<? extends V> trie, MergeFunction<V> function) {
+        if (trie == null || function == null) {
+            throw new NullPointerException();
+        }
+
+        final HashTrie<? extends V> hashTrie = asHashTrie(trie);
+        if (hashTrie == null || hashTrie.mFolding != mFolding || !mAlphabet.containsAll(hashTrie.mAlphabet)) {
+            super.merge(trie, function);
+        } else if (hashTrie == this) {
+            merge(clone(), function);
+        } else {
+            unshare();
+            mModCount++;
+
+            new NodeWalker<>(this, hashTrie).merge(mRoot, hashTrie.mRoot, function, 0);
+        }
+    }
+
+    /**
+     * Retains only the mappings whose keys are contained in the specified trie.
+     *
+     * Operation time complexity is O(M), where M is number of nodes that both tries
+     * have in common, if the specified trie is a {@code HashTrie}, otherwise O(N*S),
+     * where N is number of mappings in this trie and S is average length of the key.
+     *
+     * @implSpec If the specified trie is a {@code HashTrie} or an unmodifiable view of
+     * it, both tries are walked node by node in lockstep and subtrees that are absent
+     * in the specified trie are dropped as a whole without being visited.
+     *
+     * @param trie trie whose keys are to be retained in this trie
+     * @return {@code true} if this trie changed as a result of the call
+     * @throws NullPointerException if the specified trie is null
+     */
+    public boolean intersect(Trie<?> trie) {
+        if (trie == null) {
+            throw new NullPointerException();
+        }
+
+        final int oldSize = mSize;
+
+        final HashTrie<?> hashTrie = asHashTrie(trie);
+        if (hashTrie == null || hashTrie.mFolding != mFolding) {
+            final List<String> removedKeys = new ArrayList<>();
+            for (String key : keys()) {
+                if (!trie.containsKey(key)) {
+                    removedKeys.add(key);
+                }
+            }
+
+            for (String key : removedKeys) {
+                remove(key);
+            }
+        } else if (hashTrie != this) {
+            unshare();
+            mHashCode = 0;
+            mSize = new NodeWalker<>(this, hashTrie).retain(mRoot, hashTrie.mRoot, 0);
+        }
+
+        if (oldSize == mSize) {
+            return false;
+        }
+
+        mModCount++;
+        return true;
+    }
+
+    /**
+     * Removes all of the mappings whose keys are contained in the specified trie.
+     *
+     * Operation time complexity is O(M), where M is number of nodes that both tries
+     * have in common, if the specified trie is a {@code HashTrie}, otherwise O(N*S),
+     * where N is number of mappings in the specified trie and S is average length of the key.
+     *
+     * @implSpec If the specified trie is a {@code HashTrie} or an unmodifiable view of
+     * it, both tries are walked node by node in lockstep and subtrees that are present
+     * in just one of the tries are skipped.
+     *
+     * @param trie trie whose keys are to be removed from this trie
+     * @return {@code true} if this trie changed as a result of the call
+     * @throws NullPointerException if the specified trie is null
+     */
+    public boolean subtract(Trie<?> trie) {
+        if (trie == null) {
+            throw new NullPointerException();
+        }
+
+        final int oldSize = mSize;
+
+        final HashTrie<?> hashTrie = asHashTrie(trie);
+        if (hashTrie == null || hashTrie.mFolding != mFolding) {
+            for (String key : trie.keys()) {
+                remove(key);
+            }
+        } else if (hashTrie == this) {
+            clear();
+        } else {
+            unshare();
+            mSize -= new NodeWalker<>(this, hashTrie).subtract(mRoot, hashTrie.mRoot, 0);
+        }
+
+        if (oldSize == mSize) {
+            return false;
+        }
+
+        mModCount++;
+        return true;
+    }
+
+    /**
+     * Returns {@code HashTrie} that backs up given {@code trie}, or {@code null}
+     * if it is backed up by another implementation.
+     */
+    static <T> HashTrie<T> asHashTrie(Trie<T> trie) {
+        Trie<T> backingTrie = trie;
+        while (backingTrie instanceof Tries.UnmodifiableTrie) {
+            backingTrie = ((Tries.UnmodifiableTrie<T>) backingTrie).mTrie;
+        }
+
+        return backingTrie instanceof HashTrie ? (HashTrie<T>) backingTrie : null;
     }
 
     /**
      * Check given {@code key} if it satisfies conditions to be the key of trie.
-     * Key should not be null, empty or contain anything except digits ot letters.
+     * Key should not be null, empty or contain anything except symbols of the alphabet.
      */
     final void checkKey(String key) {
         if (key == null) {
@@ -349,8 +1126,10 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
         }
 
         for (int i = 0; i < key.length(); i++) {
-            if (!Character.isLetterOrDigit(key.charAt(i))) {
-                throw new IllegalArgumentException("Key should contain just letter or digit.");
+            if (!mAlphabet.contains(mFolding.fold(key.charAt(i)))) {
+                throw new IllegalArgumentException(mAlphabet == KeyAlphabet.UNICODE
+                        ? "Key should contain just letter or digit."
+                        : "Key should contain just symbols of " + mAlphabet + ".");
             }
         }
     }
@@ -376,7 +1155,52 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
     public void clear() {
         mModCount++;
         mSize = 0;
-        mRoot = new Node<>();
+        mHashCode = 0;
+        mRoot = newNode();
+
+        if (mSharers != null) {
+            mSharers.decrementAndGet();
+            mSharers = null;
+        }
+    }
+
+    /**
+     * Returns report on the shape of this trie and estimated memory retained by its nodes.
+     *
+     * Operation time complexity is O(M), where M is number of nodes in a trie.
+     *
+     * @return statistics of this trie
+     */
+    public TrieStats stats() {
+        return TrieStats.collect(mRoot);
+    }
+
+    /**
+     * Shrinks containers of the children of the nodes to fit the children and switches
+     * nodes to the smallest representation for their children.  Mappings of the trie are
+     * not changed.  Is meant to be run after many removals, since removals do not shrink
+     * nodes that are left in the trie.
+     *
+     * Operation time complexity is O(M), where M is number of nodes in a trie.
+     *
+     * @implSpec Nodes of tries with bitmap indexed alphabets always fit their children.
+     * Otherwise nodes with at most {@value ArrayNode#MAX_CHILDREN} children are replaced
+     * by nodes that keep the children in sorted arrays, and maps of the other nodes are
+     * rebuilt with capacity that fits their children.  Iterators over views of the trie
+     * that were created before the call are invalidated.
+     *
+     * @return estimated number of bytes that were reclaimed, assuming 64-bit JVM with
+     *         compressed references
+     */
+    public long compact() {
+        unshare();
+        mModCount++;
+        mPathBuffer = null;
+
+        final long oldBytes = mRoot.estimatedBytes();
+        mRoot = mRoot.compacted();
+
+        return oldBytes - mRoot.estimatedBytes() + new NodeWalker<>(this).compactChildren(mRoot);
     }
 
     /**
@@ -392,7 +1216,7 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
     @Override
     public Set<String> keys() {
         Set<String> keySet;
-        return (keySet = mKeysView) == null ? (mKeysView = new KeySet(mRoot, "")) : keySet;
+        return (keySet = mKeysView) == null ? (mKeysView = new KeySet("")) : keySet;
     }
 
     /**
@@ -412,25 +1236,188 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
 
         final Node<V> node = findNode(prefix);
 
-        return node == null ? Collections.<String>emptySet() : new KeySet(node, prefix);
+        return node == null ? Collections.<String>emptySet() : new KeySet(mFolding.fold(prefix));
+    }
+
+    /**
+     * Returns iterator over the keys of this trie that start with given prefix, shortest keys first
+     * and keys of the same length in ascending order of their symbols.  The nodes are visited breadth
+     * first, so the first keys are found without walking the whole subtree of the prefix.  The iterator
+     * does not support removal and fails if the trie is modified while the iteration is in progress.
+     *
+     * Operation time complexity is O(S), where S is length of prefix.  Finding the next key visits
+     * the nodes that are not deeper than the key.
+     *
+     * @param prefix the prefix that is used to filter keys, empty prefix stands for all of the keys
+     * @return iterator over the keys that start with given prefix, in order of their lengths
+     * @throws IllegalArgumentException if the prefix has symbols that are not in the alphabet
+     * @throws NullPointerException if the prefix is null
+     */
+    public Iterator<String> keysWithPrefixByLength(String prefix) {
+        return shortestKeysWithPrefix(prefix, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns at most {@code limit} shortest keys of this trie that start with given prefix, in
+     * order of {@link #keysWithPrefixByLength(String)}.  The queue of the nodes is bounded by the
+     * number of the keys that are still needed, so the subtree of the prefix is walked just as
+     * deep as the longest of the returned keys.
+     *
+     * Operation time complexity is O(S + M), where S is length of prefix and M is number of nodes
+     * that are not deeper than the longest of the returned keys.
+     *
+     * @param prefix the prefix that is used to filter keys, empty prefix stands for all of the keys
+     * @param limit maximum number of the returned keys
+     * @return iterator over the shortest keys that start with given prefix
+     * @throws IllegalArgumentException if the prefix has symbols that are not in the alphabet,
+     *         or the limit is negative
+     * @throws NullPointerException if the prefix is null
+     */
+    public Iterator<String> shortestKeysWithPrefix(String prefix, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit should not be negative.");
+        }
+
+        if (prefix.length() > 0) {
+            checkKey(prefix);
+        }
+
+        final String foldedPrefix = mFolding.fold(prefix);
+        return new ShortestFirstIterator(this, findNode(foldedPrefix), foldedPrefix, limit);
+    }
+
+    /**
+     * Returns the first page of at most {@code limit} keys of this trie that start with given prefix,
+     * in ascending order of their symbols.  Unlike the view, the page is a snapshot, the following
+     * pages are taken with its cursor by {@link #keysWithPrefix(KeyPage.Cursor, int)}.
+     *
+     * Operation time complexity is O(S + L * D * F), where S is length of prefix, L is the limit,
+     * D is length of the longest key with the prefix and F is average fan-out of the nodes.
+     *
+     * @param prefix the prefix that is used to filter keys, empty prefix stands for all of the keys
+     * @param limit maximum number of the keys of the page
+     * @return the first page of the keys that start with given prefix
+     * @throws IllegalArgumentException if the prefix has symbols that are not in the alphabet,
+     *         or the limit is not positive
+     * @throws NullPointerException if the prefix is null
+     */
+    public KeyPage keysWithPrefix(String prefix, int limit) {
+        if (prefix.length() > 0) {
+            checkKey(prefix);
+        }
+
+        return KeyPage.collect(mAlphabet, mRoot, mFolding.fold(prefix), null, limit);
+    }
+
+    /**
+     * Returns the page of at most {@code limit} keys that follows the page the cursor is taken from,
+     * the cursor stays valid across modifications of this trie, see {@link KeyPage}.
+     *
+     * Operation time complexity is O((L + 1) * D * F), where L is the limit, D is length of the
+     * longest key with the prefix and F is average fan-out of the nodes.
+     *
+     * @param cursor cursor of the previous page
+     * @param limit maximum number of the keys of the page
+     * @return the page of the keys that follows the previous page
+     * @throws IllegalArgumentException if the limit is not positive
+     * @throws NullPointerException if the cursor is null
+     */
+    public KeyPage keysWithPrefix(KeyPage.Cursor cursor, int limit) {
+        return KeyPage.collect(mAlphabet, mRoot, cursor.prefix(), cursor.lastKey(), limit);
+    }
+
+    /**
+     * Writes the keys of this trie that start with given prefix to the channel as UTF-8,
+     * in the order of {@link #keysWithPrefix(String)}, with the separator between the keys.
+     * Keys are encoded straight from the path of the traversal into a reused buffer, no
+     * {@code String} is created per key.  The channel is not closed.
+     *
+     * Operation time complexity is O(S + M), where S is length of prefix and M is number of
+     * nodes in the subtree of the prefix.
+     *
+     * @param prefix the prefix that is used to filter keys, empty prefix stands for all of the keys
+     * @param channel channel that receives the keys
+     * @param separator separator of the keys, for example a line feed
+     * @return number of the written keys
+     * @throws IOException if the keys could not be written
+     * @throws IllegalArgumentException if the prefix has symbols that are not in the alphabet
+     * @throws NullPointerException if the prefix, channel or separator is null
+     * @throws ConcurrentModificationException if the trie was modified while the keys were written
+     */
+    public long writePrefixTo(String prefix, WritableByteChannel channel, String separator) throws IOException {
+        if (channel == null) {
+            throw new NullPointerException("Channel could not be null.");
+        }
+
+        if (prefix.length() > 0) {
+            checkKey(prefix);
+        }
+
+        final KeyWriter writer = new KeyWriter(channel, separator);
+        final Node<V> node = findNode(prefix);
+        if (node != null) {
+            final int expectedModCount = mModCount;
+
+            writer.append(mFolding.fold(prefix));
+            writer.writeSubtree(mAlphabet, node);
+            writer.flush();
+
+            if (expectedModCount != mModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        return writer.count();
+    }
+
+    /**
+     * Writes the keys of this trie that start with given prefix to the stream, see
+     * {@link #writePrefixTo(String, WritableByteChannel, String)}.  The stream is not closed.
+     *
+     * Operation time complexity is O(S + M), where S is length of prefix and M is number of
+     * nodes in the subtree of the prefix.
+     *
+     * @param prefix the prefix that is used to filter keys, empty prefix stands for all of the keys
+     * @param stream stream that receives the keys
+     * @param separator separator of the keys, for example a line feed
+     * @return number of the written keys
+     * @throws IOException if the keys could not be written
+     * @throws IllegalArgumentException if the prefix has symbols that are not in the alphabet
+     * @throws NullPointerException if the prefix, stream or separator is null
+     * @throws ConcurrentModificationException if the trie was modified while the keys were written
+     */
+    public long writePrefixTo(String prefix, OutputStream stream, String separator) throws IOException {
+        return writePrefixTo(prefix, Channels.newChannel(stream), separator);
     }
 
     final class KeySet extends AbstractSet<String> {
 
-        Node<V> mNode;
+        /**
+         * Folded prefix of the keys, its node is looked up from the current root on each access,
+         * since modifications and copies of the shared nodes replace nodes of the trie.
+         */
         String mPrefix;
 
-        KeySet(Node<V> node, String prefix) {
-            mNode = node;
+        KeySet(String prefix) {
             mPrefix = prefix;
         }
 
         public int size() {
-            return mSize;
+            if (mPrefix.isEmpty()) {
+                return mSize;
+            }
+
+            int size = 0;
+            for (final Iterator<String> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+                size++;
+            }
+
+            return size;
         }
 
         public Iterator<String> iterator() {
-            return new KeyIterator(mNode, mPrefix);
+            final Node<V> node = findNode(mPrefix);
+            return node == null ? Collections.<String>emptyIterator() : new KeyIterator(node, mPrefix);
         }
 
     }
@@ -506,14 +1493,14 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
             mIteratorPath = new ArrayDeque<>();
 
             if (initialNode.hasValue()) {
-                final Node<V> fakeStartNode = new Node<>();
-                fakeStartNode.addChild(prefix.charAt(prefix.length() - 1), initialNode);
+                final Node<V> fakeStartNode = new MapNode<>();
+                fakeStartNode.addChild(mAlphabet, prefix.charAt(prefix.length() - 1), initialNode);
 
                 mStringBuilder = new StringBuilder(prefix.substring(0, prefix.length() - 1));
-                mIteratorPath.add(fakeStartNode.children().iterator());
+                mIteratorPath.add(fakeStartNode.children(mAlphabet).iterator());
             } else {
-                mStringBuilder = new StringBuilder();
-                mIteratorPath.add(initialNode.children().iterator());
+                mStringBuilder = new StringBuilder(prefix);
+                mIteratorPath.add(initialNode.children(mAlphabet).iterator());
             }
 
             updateNextEntry();
@@ -531,7 +1518,7 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
                 if (nodeIterator.hasNext()) {
                     final Map.Entry<Character, Node<V>> nextChild = nodeIterator.next();
 
-                    nodeIterator = nextChild.getValue().children().iterator();
+                    nodeIterator = nextChild.getValue().children(mAlphabet).iterator();
 
                     mStringBuilder.append(nextChild.getKey());
                     mIteratorPath.addFirst(nodeIterator);
@@ -595,17 +1582,104 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
         }
     }
 
+    /**
+     * Compares the specified object with this trie for equality.  Returns
+     * {@code true} if the given object is also a trie and the two tries
+     * represent the same mappings.
+     *
+     * Operation time complexity is O(1) if the tries have different sizes or hash codes,
+     * otherwise O(M), where M is number of nodes in a trie.
+     *
+     * @param object the object to be compared for equality with this trie
+     * @return {@code true} if the specified object is equal to this trie
+     *
+     * @implSpec If the specified object is a {@code HashTrie} or an unmodifiable view of it,
+     * this implementation first compares sizes and cached hash codes of the tries.  Then both
+     * tries are walked node by node in lockstep, stopping at the first pair of nodes whose
+     * structural hashes differ and skipping subtrees that are shared by both tries.  Otherwise
+     * {@link AbstractTrie#equals(Object)} is used.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (object == this) {
+            return true;
+        }
+
+        final HashTrie<?> hashTrie = object instanceof Trie ? asHashTrie((Trie<?>) object) : null;
+        if (hashTrie == null) {
+            return super.equals(object);
+        }
+
+        return mSize == hashTrie.mSize && mHashCode == hashTrie.mHashCode
+                && new NodeWalker<>(this, hashTrie).equal(mRoot, hashTrie.mRoot);
+    }
+
+    /**
+     * Returns the hash code value for this trie. The hash code of a trie is
+     * defined to be the sum of the hash codes of each entry in the trie's
+     * {@code entrySet()} view.
+     *
+     * Operation time complexity is O(1), the hash code is updated on each modification.
+     *
+     * @return the hash code value for this trie
+     *
+     * @see AbstractTrie#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
     /**
      * Returns a shallow copy of this {@code HashTrie} instance: the keys and
-     * values themselves are not cloned.
+     * values themselves are not cloned.  The nodes are copied one by one, keys
+     * are neither built nor checked.
      *
-     * Operation time complexity is O(N), where N is number of mappings in a trie.
+     * Operation time complexity is O(M), where M is number of nodes in a trie.
      *
      * @return a shallow copy of this trie
      */
-    @SuppressWarnings("unchecked")
     @Override
     public HashTrie<V> clone() {
+        final HashTrie<V> result = emptyClone();
+        result.mRoot = new NodeWalker<>(result).copy(mRoot, 0);
+
+        return result;
+    }
+
+    /**
+     * Returns a shallow copy of this {@code HashTrie} instance that shares the nodes
+     * with this trie until either of them is modified.  The first modification of
+     * a trie that shares its nodes copies them as {@link #clone()} does, unless all
+     * the other tries have copied theirs already.  So a copy that is just read, or
+     * a copy of a trie that is just read, costs nothing but the shared nodes.
+     *
+     * <p>Both tries could be read and modified by different threads, a trie copies
+     * the shared nodes before its first modification and never modifies them.
+     *
+     * Operation time complexity is O(1), the first modification of either trie is O(M),
+     * where M is number of nodes in a trie.
+     *
+     * @return a copy-on-write copy of this trie
+     */
+    public HashTrie<V> lazyClone() {
+        if (mSharers == null) {
+            mSharers = new AtomicInteger(1);
+        }
+
+        mSharers.incrementAndGet();
+
+        final HashTrie<V> result = emptyClone();
+        result.mRoot = mRoot;
+        result.mSize = mSize;
+        result.mHashCode = mHashCode;
+        result.mSharers = mSharers;
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private HashTrie<V> emptyClone() {
         HashTrie<V> result;
 
         try {
@@ -616,22 +1690,40 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
         }
 
         result.reinitialize();
+        return result;
+    }
 
-        for (Map.Entry<String, V> entry : entrySet()) {
-            result.put(entry.getKey(), entry.getValue());
+    /**
+     * Copies the nodes of this trie before they are modified if they are shared with other tries,
+     * that have not copied theirs yet.  The counter is decremented after the copy, so a trie that
+     * finds itself the last sharer could modify the nodes in place.
+     */
+    @SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
+    private void unshare() {
+        final AtomicInteger sharers = mSharers;
+        if (sharers == null) {
+            return;
         }
 
-        return result;
+        mSharers = null;
+        if (sharers.get() > 1) {
+            mSize = 0;
+            mHashCode = 0;
+            mRoot = new NodeWalker<>(this).copy(mRoot, 0);
+
+            sharers.decrementAndGet();
+        }
     }
 
     /**
      * Save the state of the {@code HashTrie} instance to a stream (i.e., serialize it).
      *
-     * @serialData The <i>size</i> (an int, the number of key-value mappings), followed by the
-     * key (String) and value (Object) for each key-value mapping.  The key-value mappings are
-     * emitted in no particular order.
+     * @serialData The alphabet and folding of the keys, the <i>size</i> (an int, the number of key-value
+     * mappings), followed by the key (String) and value (Object) for each key-value mapping.
+     * The key-value mappings are emitted in no particular order.
      */
     private void writeObject(java.io.ObjectOutputStream stream) throws IOException {
+        stream.defaultWriteObject();
         stream.writeInt(mSize);
 
         for (Map.Entry<String, V> entry : entrySet()) {
@@ -644,6 +1736,15 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
      * Reconstitute the {@code HashTrie} instance from a stream (i.e., deserialize it).
      */
     private void readObject(java.io.ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+        if (mAlphabet == null) { // written before alphabets were introduced
+            mAlphabet = KeyAlphabet.UNICODE;
+        }
+
+        if (mFolding == null) { // written before folding was introduced
+            mFolding = KeyFolding.NONE;
+        }
+
         reinitialize();
 
         final int size = stream.readInt();
@@ -663,12 +1764,15 @@ public class HashTrie<V> extends AbstractTrie<V> implements Trie<V>, Serializabl
      * Reset to initial default state.  Called by {@code clone} and {@code readObject}.
      */
     final void reinitialize() {
-        mRoot = new Node<>();
+        mRoot = newNode();
         mKeysView = null;
         mValuesView = null;
         mEntriesView = null;
         mModCount = 0;
         mSize = 0;
+        mHashCode = 0;
+        mPathBuffer = null;
+        mSharers = null;
     }
 
 }
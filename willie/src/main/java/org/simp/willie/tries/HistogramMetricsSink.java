@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+/**
+ * {@link MetricsSink} that records latencies of each operation and numbers of the keys
+ * visited by prefix queries into {@link LogHistogram}s.  Recording is lock-free, so one
+ * sink could be shared by any number of tries and threads.
+ *
+ * @author Dmytro Ivanov
+ * @see Tries#instrumentedTrie(Trie, MetricsSink)
+ */
+public final class HistogramMetricsSink implements MetricsSink {
+
+    private final LogHistogram[] mLatencies = new LogHistogram[Operation.values().length];
+
+    private final LogHistogram mVisitedKeys = new LogHistogram();
+
+    /**
+     * Constructs a sink with empty histograms.
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public HistogramMetricsSink() {
+        for (int i = 0; i < mLatencies.length; i++) {
+            mLatencies[i] = new LogHistogram();
+        }
+    }
+
+    @Override
+    public void recordLatency(Operation operation, long nanos) {
+        mLatencies[operation.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void recordVisitedKeys(long keys) {
+        mVisitedKeys.record(keys);
+    }
+
+    /**
+     * Returns snapshot of the latencies of the given operation in nanoseconds.
+     *
+     * @param operation the operation
+     * @return snapshot of the latencies of the operation
+     */
+    public LogHistogram.Snapshot latencies(Operation operation) {
+        return mLatencies[operation.ordinal()].snapshot();
+    }
+
+    /**
+     * Returns snapshot of the numbers of the keys visited by prefix queries.
+     *
+     * @return snapshot of the numbers of the visited keys
+     */
+    public LogHistogram.Snapshot visitedKeys() {
+        return mVisitedKeys.snapshot();
+    }
+
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Set of symbols that are allowed to be used in the keys of a trie.  Every alphabet
+ * is a subset of letters and digits, so any key that satisfies an alphabet is a valid
+ * key of a {@link Trie}.
+ *
+ * <p>Validation of the key is a table lookup per symbol.  Alphabets that have at most
+ * 64 symbols are <i>bitmap indexed</i>: nodes of a {@link HashTrie} that uses such an
+ * alphabet keep their children in a dense array indexed by a {@code long} bitmap
+ * instead of a {@code HashMap}, which makes nodes smaller and lookups faster.
+ *
+ * @author Dmytro Ivanov
+ * @see HashTrie#HashTrie(KeyAlphabet)
+ */
+public abstract class KeyAlphabet implements Serializable {
+
+    private static final long serialVersionUID = 5710304935417745196L;
+
+    /**
+     * All of the letters and digits, as defined by {@link Character#isLetterOrDigit(char)}.
+     */
+    public static final KeyAlphabet UNICODE = new UnicodeAlphabet();
+
+    /**
+     * ASCII digits and both lower and upper case ASCII letters.
+     */
+    public static final KeyAlphabet ALPHANUMERIC = new SymbolsAlphabet(
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+
+    /**
+     * ASCII digits.
+     */
+    public static final KeyAlphabet DIGITS = new SymbolsAlphabet("0123456789");
+
+    /**
+     * ASCII digits and both lower and upper case letters from {@code a} to {@code f}.
+     */
+    public static final KeyAlphabet HEX = new SymbolsAlphabet("0123456789ABCDEFabcdef");
+
+    /**
+     * Lower case ASCII letters.
+     */
+    public static final KeyAlphabet LOWERCASE = new SymbolsAlphabet("abcdefghijklmnopqrstuvwxyz");
+
+    /**
+     * Package specific constructor, alphabets are created by {@link #of(String)}.
+     */
+    KeyAlphabet() {
+        // Nothing special is needed here.
+    }
+
+    /**
+     * Returns an alphabet that consists of the given symbols.
+     *
+     * @param symbols symbols of the alphabet, in any order
+     * @return an alphabet that consists of the given symbols
+     * @throws NullPointerException if the symbols are null
+     * @throws IllegalArgumentException if the symbols are empty, have duplicates
+     *         or have anything except letters or digits
+     */
+    @SuppressWarnings("PMD.ShortMethodName")
+    public static KeyAlphabet of(String symbols) {
+        if (symbols.length() == 0) {
+            throw new IllegalArgumentException("Alphabet could not be empty.");
+        }
+
+        final char[] sortedSymbols = symbols.toCharArray();
+        Arrays.sort(sortedSymbols);
+
+        for (int i = 0; i < sortedSymbols.length; i++) {
+            if (!Character.isLetterOrDigit(sortedSymbols[i])) {
+                throw new IllegalArgumentException("Alphabet should contain just letters or digits.");
+            }
+
+            if (i > 0 && sortedSymbols[i] == sortedSymbols[i - 1]) {
+                throw new IllegalArgumentException("Alphabet should not contain duplicates.");
+            }
+        }
+
+        return new SymbolsAlphabet(new String(sortedSymbols)).canonical();
+    }
+
+    /**
+     * Returns {@code true} if the alphabet contains the given symbol.
+     *
+     * @param character symbol to be checked
+     * @return {@code true} if the alphabet contains the given symbol
+     */
+    public abstract boolean contains(char character);
+
+    /**
+     * Returns number of symbols in the alphabet.
+     *
+     * @return number of symbols in the alphabet
+     */
+    public abstract int size();
+
+    /**
+     * Returns {@code true} if every symbol of the given alphabet is a symbol of this alphabet.
+     */
+    abstract boolean containsAll(KeyAlphabet alphabet);
+
+    /**
+     * Returns index of the given symbol in the alphabet, symbols are indexed in
+     * ascending order, or {@code -1} if the alphabet does not contain the symbol.
+     * Is supported just by bitmap indexed alphabets.
+     */
+    abstract int indexOf(char character);
+
+    /**
+     * Returns symbol with the given index.  Is supported just by bitmap indexed alphabets.
+     */
+    abstract char symbolAt(int index);
+
+    /**
+     * Returns {@code true} if the symbols of the alphabet could be indexed by a {@code long} bitmap.
+     */
+    final boolean isBitmapIndexed() {
+        return size() <= Long.SIZE;
+    }
+
+    /**
+     * Alphabet of all of the letters and digits.
+     */
+    private static final class UnicodeAlphabet extends KeyAlphabet {
+
+        private static final long serialVersionUID = -2118094385728419040L;
+
+        /**
+         * Holder of the lookup table, so the table is built on the first use.
+         */
+        private static final class LettersOrDigits {
+
+            /**
+             * Bit per {@code char}, the bit is set if the char is a letter or digit.
+             */
+            static final long[] TABLE = new long[(Character.MAX_VALUE + 1) / Long.SIZE];
+
+            /**
+             * Number of the letters and digits.
+             */
+            static final int COUNT;
+
+            static {
+                int count = 0;
+                for (int character = 0; character <= Character.MAX_VALUE; character++) {
+                    if (Character.isLetterOrDigit(character)) {
+                        TABLE[character / Long.SIZE] |= 1L << character;
+                        count++;
+                    }
+                }
+
+                COUNT = count;
+            }
+
+            private LettersOrDigits() {
+                // Not meant to be instantiated
+            }
+
+        }
+
+        @Override
+        public boolean contains(char character) {
+            return (LettersOrDigits.TABLE[character / Long.SIZE] & 1L << character) != 0;
+        }
+
+        @Override
+        public int size() {
+            return LettersOrDigits.COUNT;
+        }
+
+        @Override
+        boolean containsAll(KeyAlphabet alphabet) {
+            return true;
+        }
+
+        @Override
+        int indexOf(char character) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        char symbolAt(int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return "KeyAlphabet{letters or digits}";
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return UNICODE;
+        }
+
+    }
+
+    /**
+     * Alphabet that consists of the given set of symbols.
+     */
+    private static final class SymbolsAlphabet extends KeyAlphabet {
+
+        private static final long serialVersionUID = -7035525104271458917L;
+
+        /**
+         * Symbols of the alphabet in ascending order.
+         */
+        final String mSymbols;
+
+        /**
+         * Index of each symbol increased by one, zero if symbol is not in alphabet.
+         */
+        final transient char[] mIndices;
+
+        SymbolsAlphabet(String sortedSymbols) {
+            mSymbols = sortedSymbols;
+            mIndices = new char[sortedSymbols.charAt(sortedSymbols.length() - 1) + 1];
+
+            for (int i = 0; i < sortedSymbols.length(); i++) {
+                mIndices[sortedSymbols.charAt(i)] = (char) (i + 1);
+            }
+        }
+
+        @Override
+        public boolean contains(char character) {
+            return character < mIndices.length && mIndices[character] != 0;
+        }
+
+        @Override
+        public int size() {
+            return mSymbols.length();
+        }
+
+        @Override
+        boolean containsAll(KeyAlphabet alphabet) {
+            if (!(alphabet instanceof SymbolsAlphabet)) {
+                return false;
+            }
+
+            final String symbols = ((SymbolsAlphabet) alphabet).mSymbols;
+            for (int i = 0; i < symbols.length(); i++) {
+                if (!contains(symbols.charAt(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        int indexOf(char character) {
+            return character < mIndices.length ? mIndices[character] - 1 : -1;
+        }
+
+        @Override
+        char symbolAt(int index) {
+            return mSymbols.charAt(index);
+        }
+
+        /**
+         * Returns predefined alphabet with same symbols, if there is one.
+         */
+        KeyAlphabet canonical() {
+            for (KeyAlphabet alphabet : new KeyAlphabet[]{ALPHANUMERIC, DIGITS, HEX, LOWERCASE}) {
+                if (equals(alphabet)) {
+                    return alphabet;
+                }
+            }
+
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            return object == this
+                    || object instanceof SymbolsAlphabet && mSymbols.equals(((SymbolsAlphabet) object).mSymbols);
+        }
+
+        @Override
+        public int hashCode() {
+            return mSymbols.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "KeyAlphabet{" + mSymbols + "}";
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return new SymbolsAlphabet(mSymbols).canonical();
+        }
+
+    }
+
+}
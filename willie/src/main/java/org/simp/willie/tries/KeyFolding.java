@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.text.Normalizer;
+
+/**
+ * Folding of the symbols of the keys, that makes keys which differ just in case or
+ * diacritics equal.  A trie with folding stores the folded keys, so {@code "Berlin"},
+ * {@code "berlin"} and {@code "BERLIN"} are the same key, and a lookup or a prefix
+ * query by any of them finds it.  Keys that are returned by the trie are folded, the
+ * original spelling could be kept as the value, for example in a {@code HashTrie<String>}.
+ *
+ * <p>Symbols are folded one by one with a precomputed table of 64K chars, that is built
+ * on the first use, so folding while the nodes are walked is a table lookup per symbol
+ * and does not allocate.  Folding is locale independent and maps a {@code char} to a
+ * single {@code char}, folding that changes length of the key, like German &szlig;
+ * to {@code ss}, is not supported.
+ *
+ * @author Dmytro Ivanov
+ * @see HashTrie#HashTrie(KeyAlphabet, KeyFolding)
+ */
+public enum KeyFolding {
+
+    /**
+     * Symbols are not folded, keys are compared as they are.
+     */
+    NONE {
+        @Override
+        public char fold(char character) {
+            return character;
+        }
+    },
+
+    /**
+     * Letters are folded to lower case, like {@code String.equalsIgnoreCase} compares them.
+     */
+    CASE {
+        @Override
+        public char fold(char character) {
+            return CaseTable.TABLE[character];
+        }
+    },
+
+    /**
+     * Letters are folded to lower case and diacritical marks are dropped, so &eacute;,
+     * &Eacute; and {@code E} are folded to {@code e}.  The letter is replaced with the
+     * base letter of its canonical decomposition, letters without decomposition, like
+     * &oslash; or &#322;, are just folded to lower case.
+     */
+    CASE_AND_DIACRITICS {
+        @Override
+        public char fold(char character) {
+            return DiacriticsTable.TABLE[character];
+        }
+    };
+
+    /**
+     * Returns the folded symbol.
+     *
+     * @param character symbol to be folded
+     * @return the folded symbol
+     */
+    public abstract char fold(char character);
+
+    /**
+     * Returns the folded key, the same instance is returned if folding does not change it.
+     *
+     * Operation time complexity is O(S), where S is length of key.
+     *
+     * @param key key to be folded
+     * @return the folded key
+     * @throws NullPointerException if the key is null
+     */
+    public String fold(String key) {
+        int index = 0;
+        while (index < key.length() && fold(key.charAt(index)) == key.charAt(index)) {
+            index++;
+        }
+
+        if (index == key.length()) {
+            return key;
+        }
+
+        final char[] folded = key.toCharArray();
+        for (int i = index; i < folded.length; i++) {
+            folded[i] = fold(folded[i]);
+        }
+
+        return new String(folded);
+    }
+
+    /**
+     * Folds the letter to lower case, symbols that are not letters, before or after folding,
+     * are kept as they are.
+     */
+    static char foldCase(char character) {
+        if (!Character.isLetter(character)) {
+            return character;
+        }
+
+        final char folded = Character.toLowerCase(Character.toUpperCase(character));
+        return Character.isLetter(folded) ? folded : character;
+    }
+
+    /**
+     * Holder of the case folding table, so the table is built on the first use.
+     */
+    private static final class CaseTable {
+
+        static final char[] TABLE = new char[Character.MAX_VALUE + 1];
+
+        static {
+            for (int character = 0; character <= Character.MAX_VALUE; character++) {
+                TABLE[character] = foldCase((char) character);
+            }
+        }
+
+        private CaseTable() {
+            // Not meant to be instantiated
+        }
+
+    }
+
+    /**
+     * Holder of the case and diacritics folding table, so the table is built on the first use.
+     */
+    private static final class DiacriticsTable {
+
+        static final char[] TABLE = new char[Character.MAX_VALUE + 1];
+
+        static {
+            for (int character = 0; character <= Character.MAX_VALUE; character++) {
+                final char folded = CaseTable.TABLE[character];
+                final char base = Character.isLetter(folded)
+                        ? Normalizer.normalize(String.valueOf(folded), Normalizer.Form.NFD).charAt(0)
+                        : folded;
+
+                TABLE[character] = Character.isLetter(base) ? foldCase(base) : folded;
+            }
+        }
+
+        private DiacriticsTable() {
+            // Not meant to be instantiated
+        }
+
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page of the keys of a trie that start with a prefix, that is taken by
+ * {@link HashTrie#keysWithPrefix(String, int)}.  Keys of the pages are in ascending order
+ * of their symbols, and the page has a {@link Cursor} to resume from if there are more keys.
+ *
+ * <p>The cursor holds the last key of the page, the next page starts with the least key that
+ * is greater than it.  So a cursor stays valid across modifications of the trie: keys that are
+ * added or removed after the page was taken are seen or skipped by the next page according to
+ * their order, and a key is never returned twice.  Resuming walks the path of the last key, it
+ * does not visit the keys of the previous pages.
+ *
+ * @author Dmytro Ivanov
+ * @see HashTrie#keysWithPrefix(String, int)
+ * @see HashTrie#keysWithPrefix(KeyPage.Cursor, int)
+ */
+public final class KeyPage {
+
+    private final List<String> mKeys;
+
+    private final Cursor mCursor;
+
+    private KeyPage(List<String> keys, Cursor cursor) {
+        mKeys = Collections.unmodifiableList(keys);
+        mCursor = cursor;
+    }
+
+    /**
+     * Takes page of the keys of the trie with given alphabet and root that start with the prefix
+     * and are greater than the last key, or all of them if the last key is {@code null}.
+     */
+    static KeyPage collect(KeyAlphabet alphabet, HashTrie.Node<?> root, String prefix, String lastKey, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit should be positive.");
+        }
+
+        final OrderedWalk walk = new OrderedWalk(alphabet, root);
+
+        boolean found = walk.seek(prefix);
+        if (found) {
+            found = lastKey == null ? walk.first() : walk.resume(lastKey);
+        }
+
+        final List<String> keys = new ArrayList<>();
+        while (found && keys.size() < limit) {
+            keys.add(walk.key());
+            found = walk.advance(-1);
+        }
+
+        return new KeyPage(keys, found ? new Cursor(prefix, keys.get(keys.size() - 1)) : null);
+    }
+
+    /**
+     * Returns page with the same cursor and the given keys, for example the keys in another spelling.
+     */
+    KeyPage withKeys(List<String> keys) {
+        return new KeyPage(keys, mCursor);
+    }
+
+    /**
+     * Returns the keys of this page in ascending order.
+     *
+     * @return unmodifiable list of the keys of this page
+     */
+    public List<String> keys() {
+        return mKeys;
+    }
+
+    /**
+     * Returns cursor to take the next page from, or {@code null} if this page is the last one.
+     *
+     * @return cursor of the next page, or {@code null} if there are no more keys
+     */
+    public Cursor cursor() {
+        return mCursor;
+    }
+
+    /**
+     * Returns {@code true} if there are more keys after this page.
+     *
+     * @return {@code true} if there are more keys after this page
+     */
+    public boolean hasNext() {
+        return mCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyPage{keys=" + mKeys + ", cursor=" + mCursor + '}';
+    }
+
+    /**
+     * Position after the last key of a page, that could be stored and sent to a client
+     * as a resume token.
+     */
+    public static final class Cursor implements Serializable {
+
+        private static final long serialVersionUID = -3264917730164081582L;
+
+        /**
+         * Prefix of the keys of the pages.
+         *
+         * @serial
+         */
+        private final String mPrefix;
+
+        /**
+         * The last key of the page, starts with the prefix.
+         *
+         * @serial
+         */
+        private final String mLastKey;
+
+        Cursor(String prefix, String lastKey) {
+            mPrefix = prefix;
+            mLastKey = lastKey;
+        }
+
+        /**
+         * Returns prefix of the keys of the pages.
+         *
+         * @return prefix of the keys of the pages
+         */
+        public String prefix() {
+            return mPrefix;
+        }
+
+        /**
+         * Returns the last key of the page this cursor is taken from.
+         *
+         * @return the last key of the page
+         */
+        public String lastKey() {
+            return mLastKey;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (object == this) {
+                return true;
+            }
+
+            if (!(object instanceof Cursor)) {
+                return false;
+            }
+
+            final Cursor cursor = (Cursor) object;
+            return mPrefix.equals(cursor.mPrefix) && mLastKey.equals(cursor.mLastKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mPrefix.hashCode() + mLastKey.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Cursor{prefix=" + mPrefix + ", lastKey=" + mLastKey + '}';
+        }
+
+        /**
+         * Reconstitute the cursor from a stream, cursors that could not be taken from a page are rejected.
+         */
+        private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+            stream.defaultReadObject();
+
+            if (mPrefix == null || mLastKey == null || mLastKey.length() == 0 || !mLastKey.startsWith(mPrefix)) {
+                throw new InvalidObjectException("Last key should start with the prefix.");
+            }
+        }
+
+    }
+
+    /**
+     * Path from the root of the trie to the current node, that is moved in ascending order of the keys.
+     */
+    @SuppressWarnings("PMD.AvoidStringBufferField")
+    private static final class OrderedWalk {
+
+        private final KeyAlphabet mAlphabet;
+
+        private final List<HashTrie.Node<?>> mPath = new ArrayList<>();
+
+        private final StringBuilder mKey = new StringBuilder();
+
+        /**
+         * Depth of the node of the prefix, the walk does not leave its subtree.
+         */
+        private int mBase;
+
+        OrderedWalk(KeyAlphabet alphabet, HashTrie.Node<?> root) {
+            mAlphabet = alphabet;
+            mPath.add(root);
+        }
+
+        /**
+         * Descends to the node of the prefix, returns {@code false} if there is no such node.
+         */
+        boolean seek(String prefix) {
+            for (int i = 0; i < prefix.length(); i++) {
+                if (!push(prefix.charAt(i), top().getChildFor(mAlphabet, prefix.charAt(i)))) {
+                    return false;
+                }
+            }
+
+            mBase = prefix.length();
+            return true;
+        }
+
+        /**
+         * Moves to the least key of the subtree of the current node.
+         */
+        boolean first() {
+            while (!top().hasValue()) {
+                final Map.Entry<Character, ? extends HashTrie.Node<?>> child = nextChild(-1);
+                if (child == null) {
+                    return false;
+                }
+
+                push(child.getKey(), child.getValue());
+            }
+
+            return true;
+        }
+
+        /**
+         * Moves to the least key that is greater than the given key, which starts with the prefix.
+         * Descends along the key as deep as its nodes exist, then advances from there.
+         */
+        boolean resume(String lastKey) {
+            int depth = mBase;
+            while (depth < lastKey.length()
+                    && push(lastKey.charAt(depth), top().getChildFor(mAlphabet, lastKey.charAt(depth)))) {
+                depth++;
+            }
+
+            return advance(depth < lastKey.length() ? lastKey.charAt(depth) : -1);
+        }
+
+        /**
+         * Moves to the least key that is greater than the current key and does not continue
+         * the current key with a symbol up to {@code after}.  The nodes of the current key
+         * are never visited again, so moving to the next key takes O(D * F), where D is depth
+         * of the walk and F is the fan-out of the nodes.
+         */
+        boolean advance(int after) {
+            Map.Entry<Character, ? extends HashTrie.Node<?>> child = nextChild(after);
+            while (child == null) {
+                if (mPath.size() - 1 == mBase) {
+                    return false;
+                }
+
+                child = nextChild(pop());
+            }
+
+            push(child.getKey(), child.getValue());
+            return first();
+        }
+
+        String key() {
+            return mKey.toString();
+        }
+
+        private HashTrie.Node<?> top() {
+            return mPath.get(mPath.size() - 1);
+        }
+
+        /**
+         * Returns child of the current node with the least symbol that is greater than {@code after}.
+         */
+        private Map.Entry<Character, ? extends HashTrie.Node<?>> nextChild(int after) {
+            Map.Entry<Character, ? extends HashTrie.Node<?>> next = null;
+            for (Map.Entry<Character, ? extends HashTrie.Node<?>> child : top().children(mAlphabet)) {
+                final char symbol = child.getKey();
+                if (symbol > after && (next == null || symbol < next.getKey())) {
+                    next = child;
+                }
+            }
+
+            return next;
+        }
+
+        /**
+         * Moves to the child with given symbol, returns {@code false} if there is no such child.
+         */
+        private boolean push(char symbol, HashTrie.Node<?> child) {
+            if (child == null) {
+                return false;
+            }
+
+            mPath.add(child);
+            mKey.append(symbol);
+            return true;
+        }
+
+        private char pop() {
+            mPath.remove(mPath.size() - 1);
+
+            final char symbol = mKey.charAt(mKey.length() - 1);
+            mKey.setLength(mKey.length() - 1);
+            return symbol;
+        }
+
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes keys of a trie to a channel as UTF-8, while the trie is traversed in depth.
+ *
+ * <p>The writer keeps UTF-8 bytes of the key of the current node: a symbol is encoded once,
+ * when the traversal enters its node, and a key is written by copying the bytes into a reused
+ * direct buffer.  Symbols of the keys are letters or digits, which are never surrogates, so
+ * each symbol is encoded on its own.
+ *
+ * <p>The direct buffer is allocated once per thread and is shared by the writers of the thread,
+ * so a writer should not be created while another writer of the same thread is in use.
+ *
+ * @author Dmytro Ivanov
+ */
+final class KeyWriter {
+
+    /**
+     * Capacity of the buffer that collects the keys before they are written to the channel.
+     */
+    static final int BUFFER_BYTES = 64 * 1024;
+
+    private static final int MAX_ONE_BYTE = 0x7F;
+
+    private static final int MAX_TWO_BYTES = 0x7FF;
+
+    private static final int MAX_SYMBOL_BYTES = 3;
+
+    private static final int MIN_PENDING_NODES = 64;
+
+    /**
+     * Direct buffer of each thread, allocating a direct buffer is much more expensive than a heap one.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_BYTES);
+        }
+    };
+
+    private final WritableByteChannel mChannel;
+
+    private final ByteBuffer mBuffer;
+
+    private final byte[] mSeparator;
+
+    private byte[] mKey = new byte[64];
+
+    private int mLength;
+
+    /**
+     * Lengths of the current key before each of its symbols.
+     */
+    private int[] mLengths = new int[64];
+
+    private int mDepth;
+
+    private long mCount;
+
+    /**
+     * Nodes of the traversal that are not visited yet, with their symbols and depths.
+     */
+    private HashTrie.Node<?>[] mPendingNodes = new HashTrie.Node<?>[MIN_PENDING_NODES];
+
+    private char[] mPendingSymbols = new char[MIN_PENDING_NODES];
+
+    private int[] mPendingDepths = new int[MIN_PENDING_NODES];
+
+    KeyWriter(WritableByteChannel channel, String separator) {
+        mChannel = channel;
+        mSeparator = separator.getBytes(StandardCharsets.UTF_8);
+        mBuffer = BUFFERS.get();
+        mBuffer.clear();
+    }
+
+    /**
+     * Appends the symbols to the current key.
+     */
+    void append(CharSequence symbols) {
+        for (int i = 0; i < symbols.length(); i++) {
+            push(symbols.charAt(i));
+        }
+    }
+
+    /**
+     * Appends the symbol to the current key, when the traversal enters node of the symbol.
+     */
+    void push(char symbol) {
+        if (mDepth == mLengths.length) {
+            mLengths = Arrays.copyOf(mLengths, mDepth * 2);
+        }
+
+        mLengths[mDepth++] = mLength;
+
+        if (mKey.length - mLength < MAX_SYMBOL_BYTES) {
+            mKey = Arrays.copyOf(mKey, mKey.length * 2);
+        }
+
+        if (symbol <= MAX_ONE_BYTE) {
+            mKey[mLength++] = (byte) symbol;
+        } else if (symbol <= MAX_TWO_BYTES) {
+            mKey[mLength++] = (byte) (0xC0 | symbol >> 6);
+            mKey[mLength++] = (byte) (0x80 | symbol & 0x3F);
+        } else {
+            mKey[mLength++] = (byte) (0xE0 | symbol >> 12);
+            mKey[mLength++] = (byte) (0x80 | symbol >> 6 & 0x3F);
+            mKey[mLength++] = (byte) (0x80 | symbol & 0x3F);
+        }
+    }
+
+    /**
+     * Removes the last symbol from the current key, when the traversal leaves node of the symbol.
+     */
+    void pop() {
+        mLength = mLengths[--mDepth];
+    }
+
+    /**
+     * Removes all of the symbols from the current key.
+     */
+    void reset() {
+        mLength = 0;
+        mDepth = 0;
+    }
+
+    /**
+     * Writes the current key, preceded by the separator unless it is the first key.
+     */
+    void writeKey() throws IOException {
+        if (mCount > 0) {
+            put(mSeparator, mSeparator.length);
+        }
+
+        put(mKey, mLength);
+        mCount++;
+    }
+
+    /**
+     * Writes keys of the subtree of the node in depth-first order, the current key is key of the node.
+     */
+    void writeSubtree(KeyAlphabet alphabet, HashTrie.Node<?> node) throws IOException {
+        if (node.hasValue()) {
+            writeKey();
+        }
+
+        final int baseDepth = mDepth;
+
+        int pending = addPending(alphabet, node, 0, baseDepth + 1);
+        while (pending > 0) {
+            pending--;
+            final HashTrie.Node<?> child = mPendingNodes[pending];
+            final int depth = mPendingDepths[pending];
+
+            while (mDepth >= depth) {
+                pop();
+            }
+
+            push(mPendingSymbols[pending]);
+            if (child.hasValue()) {
+                writeKey();
+            }
+
+            pending = addPending(alphabet, child, pending, depth + 1);
+        }
+
+        while (mDepth > baseDepth) {
+            pop();
+        }
+    }
+
+    /**
+     * Adds children of the node to the pending nodes, so they are taken in order of
+     * {@link HashTrie.Node#children(KeyAlphabet)}, returns the new number of the pending nodes.
+     */
+    private int addPending(KeyAlphabet alphabet, HashTrie.Node<?> node, int pending, int depth) {
+        final int count = node.childrenCount();
+        if (mPendingNodes.length - pending < count) {
+            final int length = Math.max(mPendingNodes.length * 2, pending + count);
+            mPendingNodes = Arrays.copyOf(mPendingNodes, length);
+            mPendingSymbols = Arrays.copyOf(mPendingSymbols, length);
+            mPendingDepths = Arrays.copyOf(mPendingDepths, length);
+        }
+
+        node.copyChildren(alphabet, mPendingSymbols, mPendingNodes, pending);
+
+        for (int i = 0; i < count / 2; i++) {
+            final int first = pending + i;
+            final int last = pending + count - 1 - i;
+
+            final HashTrie.Node<?> child = mPendingNodes[first];
+            mPendingNodes[first] = mPendingNodes[last];
+            mPendingNodes[last] = child;
+
+            final char symbol = mPendingSymbols[first];
+            mPendingSymbols[first] = mPendingSymbols[last];
+            mPendingSymbols[last] = symbol;
+        }
+
+        Arrays.fill(mPendingDepths, pending, pending + count, depth);
+        return pending + count;
+    }
+
+    /**
+     * Returns number of the written keys.
+     */
+    long count() {
+        return mCount;
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     */
+    void flush() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+
+        mBuffer.clear();
+    }
+
+    private void put(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (!mBuffer.hasRemaining()) {
+                flush();
+            }
+
+            final int count = Math.min(length - offset, mBuffer.remaining());
+            mBuffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative {@code long} values with logarithmic buckets.
+ * Values below 16 have a bucket each, larger values are bucketed by their power of two
+ * that is split into 8 sub-buckets, so value of a bucket is known within 12.5% of it.
+ * Whole range of {@code long} is covered by 488 buckets.
+ *
+ * <p>Recording a value is a single atomic increment of its bucket, and a compare and
+ * set only when the value is a new maximum.  Recording is safe from any number of threads,
+ * snapshots are taken without blocking recorders, so a snapshot that is taken concurrently
+ * with recording could miss some of the values that are being recorded.
+ *
+ * @author Dmytro Ivanov
+ * @see Tries#instrumentedTrie(Trie, MetricsSink)
+ */
+public final class LogHistogram {
+
+    /**
+     * Number of the bits of the value, after its highest bit, that select the sub-bucket.
+     */
+    static final int SUB_BUCKET_BITS = 3;
+
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this one have a bucket each.
+     */
+    static final int LINEAR_VALUES = 2 * SUB_BUCKETS;
+
+    static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Records the given value.
+     *
+     * @param value value to be recorded, negative values are recorded as zero
+     */
+    public void record(long value) {
+        final long positiveValue = Math.max(value, 0);
+
+        mCounts.incrementAndGet(bucketOf(positiveValue));
+
+        long max = mMax.get();
+        while (positiveValue > max && !mMax.compareAndSet(max, positiveValue)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * Returns copy of the current state of the histogram.
+     *
+     * Operation time complexity is O(1), the histogram has a fixed number of buckets.
+     *
+     * @return snapshot of the histogram
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mCounts.get(i);
+        }
+
+        return new Snapshot(counts, mMax.get());
+    }
+
+    /**
+     * Returns index of the bucket of the given non-negative value.
+     */
+    static int bucketOf(long value) {
+        if (value < LINEAR_VALUES) {
+            return (int) value;
+        }
+
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the smallest value of the bucket with the given index.
+     */
+    static long lowestValueOf(int bucket) {
+        if (bucket < LINEAR_VALUES) {
+            return bucket;
+        }
+
+        final int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * Returns the largest value of the bucket with the given index.
+     */
+    static long highestValueOf(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestValueOf(bucket + 1) - 1;
+    }
+
+    /**
+     * Immutable state of a {@link LogHistogram} at some point of time.
+     */
+    public static final class Snapshot {
+
+        private final long[] mCounts;
+
+        private final long mCount;
+
+        private final long mMax;
+
+        @SuppressWarnings("PMD.ArrayIsStoredDirectly")
+        Snapshot(long[] counts, long max) {
+            long count = 0;
+            for (long bucketCount : counts) {
+                count += bucketCount;
+            }
+
+            mCounts = counts;
+            mCount = count;
+            mMax = max;
+        }
+
+        /**
+         * Returns number of the recorded values.
+         *
+         * @return number of the recorded values
+         */
+        public long count() {
+            return mCount;
+        }
+
+        /**
+         * Returns the largest recorded value, or zero if there are none.
+         *
+         * @return the largest recorded value
+         */
+        public long max() {
+            return mMax;
+        }
+
+        /**
+         * Returns approximate mean of the recorded values, that takes each value as the
+         * middle of its bucket, or zero if there are none.
+         *
+         * @return approximate mean of the recorded values
+         */
+        public double mean() {
+            if (mCount == 0) {
+                return 0;
+            }
+
+            double sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (mCounts[i] > 0) {
+                    sum += mCounts[i] * (lowestValueOf(i) / 2.0 + highestValueOf(i) / 2.0);
+                }
+            }
+
+            return sum / mCount;
+        }
+
+        /**
+         * Returns value at the given percentile, that is the highest value of the bucket that
+         * contains the percentile, but not more than the largest recorded value.
+         *
+         * @param percentile percentile in range from 0 to 100
+         * @return value at the percentile, or zero if there are no values
+         * @throws IllegalArgumentException if the percentile is out of range
+         */
+        public long percentile(double percentile) {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("Percentile should be in range from 0 to 100.");
+            }
+
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), mMax);
+                }
+            }
+
+            return mMax;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{count=" + mCount + ", mean=" + mean() + ", p50=" + percentile(50)
+                    + ", p99=" + percentile(99) + ", p999=" + percentile(99.9) + ", max=" + mMax + "}";
+        }
+
+    }
+
+}
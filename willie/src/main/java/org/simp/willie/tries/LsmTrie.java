@@ -0,0 +1,1096 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log-structured {@code Trie} for dictionaries that do not fit in heap.  Writes go to
+ * a <i>memtable</i>, a {@link HashTrie} of bounded size that is made durable by a
+ * write-ahead log, see {@link DurableTrie}.  A full memtable is flushed to an immutable
+ * {@link SortedSegment} on disk, and a background thread compacts the segments once there
+ * are too many of them.  Compaction is size-tiered: the newest segments are merged along
+ * with the older ones of similar size, so a large old segment is rewritten just once the
+ * newer ones have grown to its size.
+ *
+ * <p>Removal of a key is recorded as a tombstone that shadows the older values of the
+ * key, tombstones are dropped by compaction that merges the oldest segment.  Lookups check the memtable and then the
+ * segments from the newest to the oldest, each segment costs a binary search in its
+ * in-memory sparse index and a read of one block.  Views merge the memtable and all
+ * of the segments in key order, reading the segments one block at a time.
+ *
+ * <p>Heap holds the memtable, which has at most {@code memtableSize} mappings, and
+ * the sparse index of each segment, which has a key per {@link SortedSegment#BLOCK_RECORDS}
+ * records.  The rest of the dictionary stays on disk.
+ *
+ * <p>{@link #clear()} records sequence number of the next segment in a marker file before
+ * the segments are deleted, segments that are older than the marker are deleted when the
+ * trie is opened.  So the cleared mappings do not come back, even if a segment could not be
+ * deleted because it was still read.
+ *
+ * <p>Basic operations are thread safe.  Iterators of the views see the memtable as it was
+ * when they were created and keep the segments they read open until they are exhausted or
+ * the trie is closed.  {@link #size()} and {@link #isEmpty()} merge all of the segments,
+ * so they take time proportional to the size of the dictionary.  Operations throw
+ * {@link IllegalStateException} if the disk could not be read or written, a failure of the
+ * background compaction is thrown by the next operation.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @author Dmytro Ivanov
+ * @see DurableTrie
+ */
+@SuppressWarnings({"PMD.GodClass", "PMD.ExcessiveClassLength", "PMD.DoNotUseThreads", "PMD.ExcessiveImports",
+        "PMD.ExcessivePublicCount"})
+public final class LsmTrie<V> extends AbstractTrie<V> implements Trie<V>, Closeable {
+
+    /**
+     * Default maximum number of the mappings in the memtable.
+     */
+    public static final int DEFAULT_MEMTABLE = 64 * 1024;
+
+    /**
+     * Default number of the segments that triggers compaction.
+     */
+    public static final int DEFAULT_SEGMENTS = 4;
+
+    static final String LOG_FILE = "wal";
+
+    /**
+     * Marker of the last {@link #clear()}, holds the least sequence number of the live segments.
+     */
+    static final String CLEARED_FILE = "cleared";
+
+    /**
+     * Least number of the segments that could be compacted.
+     */
+    private static final int MIN_SEGMENTS = 2;
+
+    /**
+     * How many times an older segment could be larger than the newer segments it is merged with
+     * by the background compaction.
+     */
+    private static final int TIER_RATIO = 2;
+
+    private static final Comparator<Map.Entry<String, ?>> KEY_ORDER = new Comparator<Map.Entry<String, ?>>() {
+        @Override
+        public int compare(Map.Entry<String, ?> first, Map.Entry<String, ?> second) {
+            return first.getKey().compareTo(second.getKey());
+        }
+    };
+
+    private final Object mLock = new Object();
+
+    /**
+     * Guards compaction, so it is not run by two threads at once.
+     */
+    private final Object mCompactionLock = new Object();
+
+    private final Path mDirectory;
+
+    private final ValueCodec<V> mCodec;
+
+    private final int mMemtableSize;
+
+    private final int mMaxSegments;
+
+    /**
+     * Values or {@link SortedSegment#TOMBSTONE}s of the recent writes.
+     */
+    private final HashTrie<Object> mMemtable = new HashTrie<>();
+
+    /**
+     * Segments from the oldest to the newest, the list is replaced on each change.
+     */
+    private volatile List<SortedSegment<V>> mSegments;
+
+    private final WriteAheadLog<V> mLog;
+
+    private final ExecutorService mCompactor;
+
+    private Future<?> mCompaction;
+
+    /**
+     * Failure of the background compaction, that is thrown by the next operation.
+     */
+    private IOException mCompactionError;
+
+    private long mNextSequence;
+
+    private boolean mClosed;
+
+    private LsmTrie(Path directory, ValueCodec<V> codec, int memtableSize, int maxSegments)
+            throws IOException {
+        mDirectory = directory;
+        mCodec = codec;
+        mMemtableSize = memtableSize;
+        mMaxSegments = maxSegments;
+
+        Files.createDirectories(directory);
+        final long clearedSequence = readClearedSequence();
+        mSegments = openSegments(clearedSequence);
+        mNextSequence = mSegments.isEmpty()
+                ? clearedSequence
+                : mSegments.get(mSegments.size() - 1).maxSequence() + 1;
+
+        mLog = WriteAheadLog.open(directory.resolve(LOG_FILE), codec, new WriteAheadLog.Target<V>() {
+            @Override
+            public void put(String key, V value) {
+                mMemtable.put(key, value);
+            }
+
+            @Override
+            public void remove(String key) {
+                mMemtable.put(key, SortedSegment.TOMBSTONE);
+            }
+
+            @Override
+            public void clear() {
+                clearAll();
+            }
+        });
+
+        mCompactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "LsmTrie-compaction-" + mDirectory.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Opens trie in the given directory with the default memtable size and compaction
+     * threshold.  The directory is created if it does not exist.
+     *
+     * @param <V> the type of mapped values
+     * @param directory directory of the trie
+     * @param codec codec of the values
+     * @return trie with the mappings restored from the directory
+     * @throws IOException if the directory could not be read or created
+     * @throws NullPointerException if any of the arguments is null
+     */
+    public static <V> LsmTrie<V> open(Path directory, ValueCodec<V> codec) throws IOException {
+        return open(directory, codec, DEFAULT_MEMTABLE, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Opens trie in the given directory.  The directory is created if it does not exist.
+     *
+     * @param <V> the type of mapped values
+     * @param directory directory of the trie
+     * @param codec codec of the values
+     * @param memtableSize number of the mappings in memory that triggers flush to a segment
+     * @param maxSegments number of the segments that triggers compaction
+     * @return trie with the mappings restored from the directory
+     * @throws IOException if the directory could not be read or created
+     * @throws NullPointerException if the directory or codec is null
+     * @throws IllegalArgumentException if the memtable size is not positive or
+     *         the compaction threshold is less than two
+     */
+    public static <V> LsmTrie<V> open(Path directory, ValueCodec<V> codec, int memtableSize,
+                                      int maxSegments) throws IOException {
+        if (directory == null || codec == null) {
+            throw new NullPointerException();
+        }
+
+        if (memtableSize <= 0) {
+            throw new IllegalArgumentException("Memtable size should be positive.");
+        }
+
+        if (maxSegments < MIN_SEGMENTS) {
+            throw new IllegalArgumentException("Compaction threshold should be at least two.");
+        }
+
+        return new LsmTrie<>(directory, codec, memtableSize, maxSegments);
+    }
+
+    /**
+     * Opens segments of the directory, deletes segments that are covered by compacted ones
+     * and segments that are older than the given sequence number, since they were cleared.
+     */
+    private List<SortedSegment<V>> openSegments(long clearedSequence) throws IOException {
+        final List<SortedSegment<V>> segments = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(mDirectory)) {
+            for (Path file : files) {
+                if (SortedSegment.isSegmentFile(file)) {
+                    segments.add(SortedSegment.open(file, mCodec));
+                } else if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        Collections.sort(segments, new Comparator<SortedSegment<V>>() {
+            @Override
+            public int compare(SortedSegment<V> first, SortedSegment<V> second) {
+                final int byMax = Long.compare(first.maxSequence(), second.maxSequence());
+                return byMax == 0 ? Long.compare(second.minSequence(), first.minSequence()) : byMax;
+            }
+        });
+
+        final List<SortedSegment<V>> live = new ArrayList<>();
+        for (SortedSegment<V> segment : retireCleared(segments, clearedSequence)) {
+            while (!live.isEmpty() && segment.covers(live.get(live.size() - 1))) {
+                live.remove(live.size() - 1).retire();
+            }
+
+            live.add(segment);
+        }
+
+        return Collections.unmodifiableList(live);
+    }
+
+    /**
+     * Deletes the segments that are older than the given sequence number, returns the rest of them.
+     */
+    private static <V> List<SortedSegment<V>> retireCleared(List<SortedSegment<V>> segments, long clearedSequence)
+            throws IOException {
+        final List<SortedSegment<V>> retained = new ArrayList<>();
+        for (SortedSegment<V> segment : segments) {
+            if (segment.maxSequence() < clearedSequence) {
+                segment.retire();
+            } else {
+                retained.add(segment);
+            }
+        }
+
+        return retained;
+    }
+
+    /**
+     * Returns the least sequence number of the segments that were written after the last
+     * {@link #clear()}, or zero if the trie was never cleared.
+     */
+    private long readClearedSequence() throws IOException {
+        try (InputStream input = Files.newInputStream(mDirectory.resolve(CLEARED_FILE))) {
+            return new DataInputStream(input).readLong();
+        } catch (NoSuchFileException excep) {
+            return 0;
+        }
+    }
+
+    /**
+     * Replaces the marker of the last {@link #clear()}, the marker is written to a temporary
+     * file, forced to disk and moved over the old one, so it is either old or new after a crash.
+     */
+    private void writeClearedSequence(long sequence) throws IOException {
+        final Path marker = mDirectory.resolve(CLEARED_FILE);
+        final Path temporary = mDirectory.resolve(CLEARED_FILE + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(Long.SIZE / Byte.SIZE);
+            buffer.putLong(sequence).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temporary, marker, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        WriteAheadLog.syncDirectory(mDirectory);
+    }
+
+    // Query Operations
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(N), all of the segments are merged.
+     */
+    @Override
+    public int size() {
+        try (MergingIterator iterator = new MergingIterator("")) {
+            return count(iterator);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try (MergingIterator iterator = new MergingIterator("")) {
+            return !iterator.hasNext();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S) for a key in the memtable, otherwise it is
+     * O(K * (log B + S)), where K is number of segments and B is number of blocks.
+     */
+    @Override
+    public V get(String key) {
+        List<SortedSegment<V>> segments;
+
+        synchronized (mLock) {
+            checkOpen();
+
+            final Object value = mMemtable.get(key);
+            if (value != null) {
+                return valueOf(value);
+            }
+
+            segments = acquireSegments();
+        }
+
+        return valueOf(lookUp(key, segments));
+    }
+
+    /**
+     * Returns the value of the key in the memtable or the segments, should be called under {@link #mLock}.
+     */
+    private Object currentValue(String key) {
+        final Object value = mMemtable.get(key);
+        return value == null ? lookUp(key, acquireSegments()) : value;
+    }
+
+    /**
+     * Looks up the key in the acquired segments from the newest to the oldest, and releases them.
+     */
+    private static Object lookUp(String key, List<? extends SortedSegment<?>> segments) {
+        try {
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                final Object value = segments.get(i).get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+
+            return null;
+        } catch (IOException excep) {
+            throw new IllegalStateException("Could not read a segment.", excep);
+        } finally {
+            releaseSegments(segments);
+        }
+    }
+
+    // Modification Operations
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S) plus the cost of the append to the log if the key
+     * is in the memtable, otherwise the previous value is looked up in the segments as by
+     * {@link #get(String)}.  When the memtable is full, it is flushed to a new segment.
+     */
+    @Override
+    @SuppressWarnings("PMD.PrematureDeclaration")
+    public V put(String key, V value) {
+        mMemtable.checkKey(key);
+        if (value == null) {
+            throw new NullPointerException("Value could not be null.");
+        }
+
+        synchronized (mLock) {
+            checkOpen();
+
+            final Object oldValue = currentValue(key);
+
+            try {
+                mLog.appendPut(key, value);
+            } catch (IOException excep) {
+                throw new IllegalStateException("Could not append to the write-ahead log.", excep);
+            }
+
+            mMemtable.put(key, value);
+            flushIfNeeded();
+
+            return valueOf(oldValue);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is the same as of {@link #put(String, Object)}.
+     * This implementation records a tombstone, even if there is no mapping for the key.
+     */
+    @Override
+    @SuppressWarnings("PMD.PrematureDeclaration")
+    public V remove(String key) {
+        mMemtable.checkKey(key);
+
+        synchronized (mLock) {
+            checkOpen();
+
+            final Object oldValue = currentValue(key);
+
+            try {
+                mLog.appendRemove(key);
+            } catch (IOException excep) {
+                throw new IllegalStateException("Could not append to the write-ahead log.", excep);
+            }
+
+            mMemtable.put(key, SortedSegment.TOMBSTONE);
+            flushIfNeeded();
+
+            return valueOf(oldValue);
+        }
+    }
+
+    /**
+     * Removes all of the mappings, all of the segments are deleted.  Segments that are still
+     * read by iterators are deleted once the iterators are exhausted, the marker file makes
+     * sure that they are not opened again either way.
+     */
+    @Override
+    public void clear() {
+        synchronized (mLock) {
+            checkOpen();
+
+            try {
+                mLog.appendClear();
+            } catch (IOException excep) {
+                throw new IllegalStateException("Could not append to the write-ahead log.", excep);
+            }
+
+            clearAll();
+        }
+    }
+
+    /**
+     * Casts value of a record, returns {@code null} for absent value or tombstone.
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> V valueOf(Object value) {
+        return value == SortedSegment.TOMBSTONE ? null : (V) value;
+    }
+
+    private void clearAll() {
+        mMemtable.clear();
+
+        final List<SortedSegment<V>> segments = mSegments;
+        mSegments = Collections.emptyList();
+
+        try {
+            writeClearedSequence(mNextSequence);
+            for (SortedSegment<V> segment : segments) {
+                segment.retire();
+            }
+        } catch (IOException excep) {
+            throw new IllegalStateException("Could not delete a segment.", excep);
+        }
+    }
+
+    /**
+     * Writes the memtable to a new segment and truncates the log.  The segment and its
+     * directory entry are forced to disk before the log is truncated.
+     *
+     * Operation time complexity is O(M log M), where M is number of mappings in the memtable.
+     *
+     * @throws IOException if the segment could not be written
+     */
+    public void flush() throws IOException {
+        synchronized (mLock) {
+            checkOpen();
+
+            if (mMemtable.isEmpty()) {
+                return;
+            }
+
+            final List<Map.Entry<String, Object>> entries = new ArrayList<>(mMemtable.entrySet());
+            Collections.sort(entries, KEY_ORDER);
+
+            final SortedSegment<V> segment = SortedSegment.write(mDirectory, mNextSequence, mNextSequence,
+                    entries.iterator(), mCodec);
+            mNextSequence++;
+
+            final List<SortedSegment<V>> segments = new ArrayList<>(mSegments);
+            segments.add(segment);
+            mSegments = Collections.unmodifiableList(segments);
+
+            mLog.truncate();
+            mMemtable.clear();
+
+            if (segments.size() >= mMaxSegments && (mCompaction == null || mCompaction.isDone())) {
+                mCompaction = mCompactor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            compact(true);
+                        } catch (IOException excep) {
+                            synchronized (mLock) {
+                                mCompactionError = excep;
+                            }
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private void flushIfNeeded() {
+        if (mMemtable.size() >= mMemtableSize) {
+            try {
+                flush();
+            } catch (IOException excep) {
+                throw new IllegalStateException("Could not flush the memtable.", excep);
+            }
+        }
+    }
+
+    /**
+     * Merges all of the segments into one, dropping shadowed values and tombstones.
+     * Reads and writes are not blocked while segments are merged.
+     *
+     * Operation time complexity is O(N log K), where N is number of records in the
+     * segments and K is number of segments.
+     *
+     * @throws IOException if the segments could not be read or written
+     */
+    public void compact() throws IOException {
+        compact(false);
+    }
+
+    /**
+     * Merges either all of the segments or, if {@code tiered} is {@code true}, the newest
+     * segments of similar size, see {@link #tierStart(List)}.  Is run by the background
+     * thread with tiers once there are too many segments.
+     */
+    private void compact(boolean tiered) throws IOException {
+        synchronized (mCompactionLock) {
+            List<SortedSegment<V>> segments;
+            synchronized (mLock) {
+                checkOpen();
+                segments = acquireSegments();
+            }
+
+            try {
+                final int start = tiered && !segments.isEmpty() ? tierStart(segments) : 0;
+                if (segments.size() - start >= MIN_SEGMENTS) {
+                    final List<SortedSegment<V>> merged = segments.subList(start, segments.size());
+                    replaceSegments(start, merged, mergeSegments(merged, start == 0));
+                }
+            } finally {
+                releaseSegments(segments);
+            }
+        }
+    }
+
+    /**
+     * Returns index of the oldest segment that is merged by the background compaction.
+     * Starting from the newest segment, older segments are taken while each of them has at
+     * most {@link #TIER_RATIO} times more records than the segments taken so far, so the
+     * records of a segment are rewritten O(log N) times.
+     */
+    private static int tierStart(List<? extends SortedSegment<?>> segments) {
+        int start = segments.size() - 1;
+        long records = segments.get(start).count();
+        while (start > 0 && segments.get(start - 1).count() <= TIER_RATIO * records) {
+            start--;
+            records += segments.get(start).count();
+        }
+
+        return start;
+    }
+
+    /**
+     * Merges the segments into one, tombstones are dropped if the oldest segment is merged,
+     * otherwise they still shadow values of the older segments.
+     */
+    private SortedSegment<V> mergeSegments(List<SortedSegment<V>> segments, boolean dropTombstones)
+            throws IOException {
+        final List<Iterator<Map.Entry<String, Object>>> sources = new ArrayList<>();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            sources.add(segments.get(i).iterator(""));
+        }
+
+        return SortedSegment.write(mDirectory, segments.get(0).minSequence(),
+                segments.get(segments.size() - 1).maxSequence(), new MergedRecords(sources, dropTombstones),
+                mCodec);
+    }
+
+    /**
+     * Replaces the merged segments from the given index by the compacted one, unless they
+     * were removed meanwhile.
+     */
+    private void replaceSegments(int start, List<SortedSegment<V>> merged, SortedSegment<V> compacted)
+            throws IOException {
+        synchronized (mLock) {
+            final List<SortedSegment<V>> current = mSegments;
+            final int end = start + merged.size();
+            if (mClosed || current.size() < end || !current.subList(start, end).equals(merged)) {
+                compacted.retire();
+                return;
+            }
+
+            final List<SortedSegment<V>> segments = new ArrayList<>(current.subList(0, start));
+            segments.add(compacted);
+            segments.addAll(current.subList(end, current.size()));
+            mSegments = Collections.unmodifiableList(segments);
+        }
+
+        for (SortedSegment<V> segment : merged) {
+            segment.retire();
+        }
+    }
+
+    /**
+     * Returns number of the segments on disk.
+     *
+     * @return number of the segments
+     */
+    public int segmentCount() {
+        return mSegments.size();
+    }
+
+    /**
+     * Waits for the running background compaction, if there is one.
+     */
+    void awaitCompaction() throws InterruptedException, ExecutionException {
+        Future<?> compaction;
+        synchronized (mLock) {
+            compaction = mCompaction;
+        }
+
+        if (compaction != null) {
+            compaction.get();
+        }
+    }
+
+    /**
+     * Stops the background compaction, forces the log to disk and closes the files.
+     * The memtable is not flushed, it is restored from the log when the trie is opened.
+     *
+     * @throws IOException if the files could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        mCompactor.shutdown();
+        try {
+            mCompactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException excep) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+
+            mClosed = true;
+            mLog.close();
+            for (SortedSegment<V> segment : mSegments) {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Checks that the trie is open and throws failure of the last background compaction,
+     * if there is one, should be called under {@link #mLock}.
+     */
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Trie is closed.");
+        }
+
+        final IOException failure = mCompactionError;
+        if (failure != null) {
+            mCompactionError = null;
+            throw new IllegalStateException("Could not compact segments.", failure);
+        }
+    }
+
+    /**
+     * Acquires all of the current segments, should be called under {@link #mLock}.
+     */
+    private List<SortedSegment<V>> acquireSegments() {
+        final List<SortedSegment<V>> segments = mSegments;
+        for (SortedSegment<V> segment : segments) {
+            segment.acquire();
+        }
+
+        return segments;
+    }
+
+    private static void releaseSegments(List<? extends SortedSegment<?>> segments) {
+        try {
+            for (SortedSegment<?> segment : segments) {
+                segment.release();
+            }
+        } catch (IOException excep) {
+            throw new IllegalStateException("Could not delete a segment.", excep);
+        }
+    }
+
+    // Views
+
+    @Override
+    public Set<String> keys() {
+        return keysWithPrefix("");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Keys are iterated in ascending order.
+     */
+    @Override
+    public Set<String> keysWithPrefix(final String prefix) {
+        if (prefix.length() > 0) {
+            mMemtable.checkKey(prefix);
+        }
+
+        return new AbstractSet<String>() {
+            @Override
+            public int size() {
+                return count(iterator());
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<Map.Entry<String, V>> entries = new MergingIterator(prefix);
+
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return entries.next().getKey();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public int size() {
+                return count(iterator());
+            }
+
+            @Override
+            public Iterator<V> iterator() {
+                final Iterator<Map.Entry<String, V>> entries = new MergingIterator("");
+
+                return new Iterator<V>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public V next() {
+                        return entries.next().getValue();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public int size() {
+                return count(iterator());
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new MergingIterator("");
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation compares the mappings as {@link AbstractTrie#equals(Object)}
+     * does, and releases the segments it has read even if it returns early.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (object == this) {
+            return true;
+        }
+
+        if (!(object instanceof Trie)) {
+            return false;
+        }
+
+        final Trie<?> trie = (Trie<?>) object;
+        int size = 0;
+        try (MergingIterator iterator = new MergingIterator("")) {
+            while (iterator.hasNext()) {
+                final Map.Entry<String, V> entry = iterator.next();
+                if (!entry.getValue().equals(trie.get(entry.getKey()))) {
+                    return false;
+                }
+
+                size++;
+            }
+        }
+
+        return size == trie.size();
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 0;
+        try (MergingIterator iterator = new MergingIterator("")) {
+            while (iterator.hasNext()) {
+                hashCode += iterator.next().hashCode();
+            }
+        }
+
+        return hashCode;
+    }
+
+    private static int count(Iterator<?> iterator) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Merge of the sorted sources of records, the first source has priority over the next
+     * ones for equal keys.  Tombstones are either dropped or passed through.
+     */
+    private static final class MergedRecords implements Iterator<Map.Entry<String, Object>> {
+
+        private final PriorityQueue<Cursor> mQueue;
+
+        private final boolean mDropTombstones;
+
+        private Map.Entry<String, Object> mNext;
+
+        @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+        MergedRecords(List<Iterator<Map.Entry<String, Object>>> sources, boolean dropTombstones) {
+            mQueue = new PriorityQueue<>(Math.max(sources.size(), 1));
+            mDropTombstones = dropTombstones;
+
+            for (int i = 0; i < sources.size(); i++) {
+                new Cursor(sources.get(i), i).advanceInto(mQueue);
+            }
+
+            advance();
+        }
+
+        private void advance() {
+            mNext = null;
+            while (mNext == null && !mQueue.isEmpty()) {
+                final Cursor cursor = mQueue.poll();
+                final Map.Entry<String, Object> record = cursor.mRecord;
+                cursor.advanceInto(mQueue);
+
+                while (!mQueue.isEmpty() && mQueue.peek().mRecord.getKey().equals(record.getKey())) {
+                    mQueue.poll().advanceInto(mQueue);
+                }
+
+                if (!mDropTombstones || record.getValue() != SortedSegment.TOMBSTONE) {
+                    mNext = record;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (mNext == null) {
+                throw new NoSuchElementException();
+            }
+
+            final Map.Entry<String, Object> next = mNext;
+            advance();
+
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Current record of a source, cursors are ordered by key and then by priority of the source.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+
+        final Iterator<Map.Entry<String, Object>> mSource;
+
+        final int mPriority;
+
+        Map.Entry<String, Object> mRecord;
+
+        Cursor(Iterator<Map.Entry<String, Object>> source, int priority) {
+            mSource = source;
+            mPriority = priority;
+        }
+
+        /**
+         * Moves to the next record of the source and puts the cursor back to the queue, if there is one.
+         */
+        void advanceInto(PriorityQueue<Cursor> queue) {
+            if (mSource.hasNext()) {
+                mRecord = mSource.next();
+                queue.add(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Cursor cursor) {
+            final int byKey = mRecord.getKey().compareTo(cursor.mRecord.getKey());
+            return byKey == 0 ? Integer.compare(mPriority, cursor.mPriority) : byKey;
+        }
+
+    }
+
+    /**
+     * Iterator over the live mappings with the prefix, that merges snapshot of the memtable
+     * with the segments.  Segments are released once the iterator is exhausted or closed.
+     */
+    private final class MergingIterator implements Iterator<Map.Entry<String, V>>, Closeable {
+
+        private final List<SortedSegment<V>> mReadSegments;
+
+        private final MergedRecords mRecords;
+
+        private boolean mReleased;
+
+        @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+        MergingIterator(String prefix) {
+            final List<Map.Entry<String, Object>> memtable = new ArrayList<>();
+
+            synchronized (mLock) {
+                checkOpen();
+
+                if (prefix.length() == 0) {
+                    memtable.addAll(mMemtable.entrySet());
+                } else {
+                    for (String key : mMemtable.keysWithPrefix(prefix)) {
+                        memtable.add(new AbstractMap.SimpleImmutableEntry<>(key, mMemtable.get(key)));
+                    }
+                }
+
+                mReadSegments = acquireSegments();
+            }
+
+            Collections.sort(memtable, KEY_ORDER);
+
+            final List<Iterator<Map.Entry<String, Object>>> sources = new ArrayList<>();
+            sources.add(memtable.iterator());
+            for (int i = mReadSegments.size() - 1; i >= 0; i--) {
+                sources.add(mReadSegments.get(i).iterator(prefix));
+            }
+
+            mRecords = new MergedRecords(sources, true);
+            releaseIfExhausted();
+        }
+
+        private void releaseIfExhausted() {
+            if (!mRecords.hasNext()) {
+                close();
+            }
+        }
+
+        /**
+         * Releases the segments, the iterator should not be used after it is closed.
+         */
+        @Override
+        public void close() {
+            if (!mReleased) {
+                mReleased = true;
+                releaseSegments(mReadSegments);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mRecords.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, V> next() {
+            final Map.Entry<String, Object> record = mRecords.next();
+            releaseIfExhausted();
+
+            return new AbstractMap.SimpleImmutableEntry<>(record.getKey(), LsmTrie.<V>valueOf(record.getValue()));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
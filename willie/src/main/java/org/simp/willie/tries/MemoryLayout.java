@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+/**
+ * Estimates of the heap footprint of objects, that are used to report memory used by tries.
+ * Estimates assume 64-bit JVM with compressed references: 12 bytes object header, 16 bytes
+ * array header, 4 bytes reference and objects aligned to 8 bytes.
+ *
+ * @author Dmytro Ivanov
+ */
+final class MemoryLayout {
+
+    static final int OBJECT_HEADER = 12;
+
+    static final int ARRAY_HEADER = 16;
+
+    static final int REFERENCE = 4;
+
+    static final int ALIGNMENT = 8;
+
+    /**
+     * Size of {@code HashMap} instance without its table.
+     */
+    static final int HASH_MAP = 48;
+
+    /**
+     * Size of an entry of {@code HashMap}.
+     */
+    static final int HASH_MAP_ENTRY = 32;
+
+    /**
+     * Size of {@code Character} instance.
+     */
+    static final int BOXED_CHARACTER = 16;
+
+    /**
+     * Number of the characters whose instances are cached by {@code Character.valueOf}.
+     */
+    private static final int CHARACTER_CACHE = 128;
+
+    /**
+     * Default capacity of {@code HashMap} table.
+     */
+    private static final int HASH_MAP_CAPACITY = 16;
+
+    private MemoryLayout() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * Returns size of an object with the given size of its fields.
+     */
+    static long object(int fieldsSize) {
+        return align(OBJECT_HEADER + fieldsSize);
+    }
+
+    /**
+     * Returns size of an array with the given length and size of the element.
+     */
+    static long array(int length, int elementSize) {
+        return align(ARRAY_HEADER + (long) length * elementSize);
+    }
+
+    /**
+     * Returns size of {@code HashMap} with the given number of mappings, including its table
+     * and entries but not its keys and values.  Table of the map never shrinks, so it is as
+     * large as it got when the largest number of mappings the map has ever had were added.
+     * Table is allocated by the first mapping.
+     */
+    static long hashMap(int size, int maxSize) {
+        if (maxSize == 0) {
+            return HASH_MAP;
+        }
+
+        return HASH_MAP + array(hashMapCapacity(maxSize), REFERENCE) + (long) size * HASH_MAP_ENTRY;
+    }
+
+    /**
+     * Returns capacity of {@code HashMap} table after the given number of mappings were added
+     * to an empty map, map that is created with this capacity keeps it while the mappings are added.
+     */
+    static int hashMapCapacity(int size) {
+        int capacity = HASH_MAP_CAPACITY;
+        while (capacity * 3L / 4 < size) {
+            capacity *= 2;
+        }
+
+        return capacity;
+    }
+
+    /**
+     * Returns size of the boxed character, that is zero for cached instances.
+     */
+    static long character(char character) {
+        return character < CHARACTER_CACHE ? 0 : BOXED_CHARACTER;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+}
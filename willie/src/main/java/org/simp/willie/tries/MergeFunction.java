@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+/**
+ * Function that resolves a conflict between two values mapped to the same key
+ * when one trie is merged into another.
+ *
+ * @param <V> the type of merged values
+ *
+ * @author Dmytro Ivanov
+ * @see Trie#merge(Trie, MergeFunction)
+ */
+public interface MergeFunction<V> {
+
+    /**
+     * Returns the value that should be associated with the key after the merge.
+     *
+     * @param oldValue value that is already associated with the key in the target trie
+     * @param newValue value that is associated with the key in the merged trie
+     * @return the merged value, or {@code null} if the mapping should be removed
+     */
+    V merge(V oldValue, V newValue);
+
+}
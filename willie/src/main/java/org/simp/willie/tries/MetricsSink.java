@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+/**
+ * Receiver of the measurements of a trie returned by {@link Tries#instrumentedTrie(Trie, MetricsSink)}.
+ * Methods are called on the threads that use the trie, right after each operation, so
+ * implementations should be thread safe and cheap.
+ *
+ * @author Dmytro Ivanov
+ * @see HistogramMetricsSink
+ */
+public interface MetricsSink {
+
+    /**
+     * Measured operation of a trie.
+     */
+    enum Operation {
+
+        /**
+         * {@code get} and {@code containsKey}.
+         */
+        GET,
+
+        /**
+         * {@code put}.
+         */
+        PUT,
+
+        /**
+         * {@code remove}.
+         */
+        REMOVE,
+
+        /**
+         * Iteration over a prefix view, from creation of the iterator until it has no more keys.
+         */
+        PREFIX_QUERY
+
+    }
+
+    /**
+     * Records latency of an operation.
+     *
+     * @param operation the operation
+     * @param nanos latency of the operation in nanoseconds
+     */
+    void recordLatency(Operation operation, long nanos);
+
+    /**
+     * Records number of the keys that were visited by a prefix query.
+     *
+     * @param keys number of the visited keys
+     */
+    void recordVisitedKeys(long keys);
+
+}
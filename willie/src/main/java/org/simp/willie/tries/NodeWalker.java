@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.Arrays;
+
+/**
+ * Structural walks over subtrees of the nodes of a {@link HashTrie}, that copy, merge,
+ * drop, compare and compact nodes of the trie.  Pending nodes are kept on an explicit stack of frames instead of
+ * the call stack, so depth of a walk is bounded by the heap rather than the thread stack.
+ * Frames are reused between the nodes of the same depth.
+ *
+ * @param <V> the type of values of the trie
+ * @author Dmytro Ivanov
+ * @see HashTrie#merge(Trie, MergeFunction)
+ * @see HashTrie#intersect(Trie)
+ * @see HashTrie#subtract(Trie)
+ * @see HashTrie#equals(Object)
+ * @see HashTrie#compact()
+ */
+@SuppressWarnings({"unchecked", "PMD.GodClass"})
+final class NodeWalker<V> {
+
+    private static final int INITIAL_DEPTH = 16;
+
+    /**
+     * The trie whose nodes are walked, its size and hash code are updated by the walks.
+     */
+    private final HashTrie<V> mTrie;
+
+    /**
+     * Alphabet of the trie, that maps symbols of its nodes.
+     */
+    private final KeyAlphabet mAlphabet;
+
+    /**
+     * Alphabet of the other trie, that maps symbols of the other nodes of the walks.
+     */
+    private final KeyAlphabet mOtherAlphabet;
+
+    private Frame[] mFrames = new Frame[INITIAL_DEPTH];
+
+    /**
+     * Number of the frames on the stack.
+     */
+    private int mDepth;
+
+    NodeWalker(HashTrie<V> trie) {
+        this(trie, trie);
+    }
+
+    /**
+     * Constructs walker of the nodes of the trie, whose other nodes belong to the given other trie.
+     */
+    NodeWalker(HashTrie<V> trie, HashTrie<?> other) {
+        mTrie = trie;
+        mAlphabet = trie.mAlphabet;
+        mOtherAlphabet = other.mAlphabet;
+    }
+
+    /**
+     * Node of the trie that is being walked along with the node of the other trie that has
+     * the same key, and the children that are left to be walked.
+     */
+    @SuppressWarnings("PMD.ShortClassName")
+    private static final class Frame {
+
+        HashTrie.Node<?> mNode;
+
+        HashTrie.Node<?> mOther;
+
+        /**
+         * Hash code of the key that leads to the nodes.
+         */
+        int mKeyHash;
+
+        /**
+         * Symbol that leads to the nodes from the nodes of the parent frame.
+         */
+        char mSymbol;
+
+        /**
+         * Whether the children are taken from the other node rather than from the node.
+         */
+        boolean mOtherChildren;
+
+        /**
+         * Number of the values that are counted by the walk in the subtree of the node.
+         */
+        int mCount;
+
+        char[] mSymbols = new char[0];
+
+        HashTrie.Node<?>[] mChildren = HashTrie.Node.NO_CHILDREN;
+
+        int mChildrenCount;
+
+        int mNextChild;
+
+        boolean hasNextChild() {
+            return mNextChild < mChildrenCount;
+        }
+
+        /**
+         * Returns child of the node for the symbol at given index, {@code null} if it is absent.
+         */
+        HashTrie.Node<?> nodeChild(KeyAlphabet alphabet, int index) {
+            return mOtherChildren ? mNode.getChildFor(alphabet, mSymbols[index]) : mChildren[index];
+        }
+
+        /**
+         * Returns child of the other node for the symbol at given index, {@code null} if it is absent.
+         */
+        HashTrie.Node<?> otherChild(KeyAlphabet otherAlphabet, int index) {
+            return mOtherChildren ? mChildren[index] : mOther.getChildFor(otherAlphabet, mSymbols[index]);
+        }
+
+    }
+
+    /**
+     * Pushes frame of the nodes on the stack, children of the {@code walked} node are taken
+     * to be walked.  Returns the pushed frame.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private Frame push(HashTrie.Node<?> node, HashTrie.Node<?> other, int keyHash, char symbol,
+                       HashTrie.Node<?> walked) {
+        if (mDepth == mFrames.length) {
+            mFrames = Arrays.copyOf(mFrames, mDepth * 2);
+        }
+
+        Frame frame = mFrames[mDepth];
+        if (frame == null) {
+            frame = new Frame();
+            mFrames[mDepth] = frame;
+        }
+
+        mDepth++;
+
+        final int childrenCount = walked.childrenCount();
+        if (frame.mChildren.length < childrenCount) {
+            final int length = Math.max(childrenCount, frame.mChildren.length * 2);
+            frame.mSymbols = new char[length];
+            frame.mChildren = new HashTrie.Node<?>[length];
+        }
+
+        walked.copyChildren(walked == node ? mAlphabet : mOtherAlphabet, frame.mSymbols, frame.mChildren, 0);
+        frame.mNode = node;
+        frame.mOther = other;
+        frame.mKeyHash = keyHash;
+        frame.mSymbol = symbol;
+        frame.mOtherChildren = walked != node;
+        frame.mCount = 0;
+        frame.mChildrenCount = childrenCount;
+        frame.mNextChild = 0;
+
+        return frame;
+    }
+
+    /**
+     * Pops the top frame from the stack and releases its nodes.  Returns the frame below it,
+     * or {@code null} if the popped frame is the bottom frame of the walk.
+     */
+    private Frame pop(int bottom) {
+        final Frame frame = mFrames[--mDepth];
+        Arrays.fill(frame.mChildren, 0, frame.mChildrenCount, null);
+        frame.mNode = null;
+        frame.mOther = null;
+
+        return mDepth > bottom ? mFrames[mDepth - 1] : null;
+    }
+
+    /**
+     * Copies subtree of the given {@code node}, {@code keyHash} is hash code of the key that leads
+     * to the node.  Every copied value is counted in the size and the hash code of the trie.
+     */
+    HashTrie.Node<V> copy(HashTrie.Node<? extends V> node, int keyHash) {
+        final int bottom = mDepth;
+
+        final HashTrie.Node<V> root = copyNode(node, keyHash);
+        push(root, node, keyHash, '\0', node);
+
+        while (mDepth > bottom) {
+            final Frame frame = mFrames[mDepth - 1];
+            if (!frame.hasNextChild()) {
+                pop(bottom);
+                continue;
+            }
+
+            final int index = frame.mNextChild++;
+            final char symbol = frame.mSymbols[index];
+            final HashTrie.Node<? extends V> child = (HashTrie.Node<? extends V>) frame.mChildren[index];
+            final int childKeyHash = frame.mKeyHash * 31 + symbol;
+
+            final HashTrie.Node<V> childCopy = copyNode(child, childKeyHash);
+            ((HashTrie.Node<V>) frame.mNode).addChild(mAlphabet, symbol, childCopy);
+            if (child.hasChildren()) {
+                push(childCopy, child, childKeyHash, symbol, child);
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * Copies value and hash of the given {@code node} to a new node without children.
+     */
+    private HashTrie.Node<V> copyNode(HashTrie.Node<? extends V> node, int keyHash) {
+        final HashTrie.Node<V> copy = mTrie.newNode();
+        if (node.hasValue()) {
+            copy.mValue = node.mValue;
+
+            mTrie.mSize++;
+            mTrie.mHashCode += keyHash ^ copy.mValue.hashCode();
+        }
+
+        copy.mHash = node.mHash;
+
+        return copy;
+    }
+
+    /**
+     * Merges subtree of the {@code source} node into subtree of the {@code target} node,
+     * {@code keyHash} is hash code of the key that leads to both nodes.  Subtrees that are
+     * absent in the target are copied as a whole.
+     */
+    void merge(HashTrie.Node<V> target, HashTrie.Node<? extends V> source, MergeFunction<V> function,
+               int keyHash) {
+        final int bottom = mDepth;
+        push(target, source, keyHash, '\0', source);
+
+        Frame frame = mFrames[mDepth - 1];
+        while (frame != null) {
+            final HashTrie.Node<V> node = (HashTrie.Node<V>) frame.mNode;
+
+            if (frame.hasNextChild()) {
+                final int index = frame.mNextChild++;
+                final char symbol = frame.mSymbols[index];
+                final HashTrie.Node<? extends V> sourceChild = (HashTrie.Node<? extends V>) frame.mChildren[index];
+                final int childKeyHash = frame.mKeyHash * 31 + symbol;
+
+                final HashTrie.Node<V> targetChild = node.getChildFor(mAlphabet, symbol);
+                if (targetChild == null) {
+                    node.addChild(mAlphabet, symbol, copy(sourceChild, childKeyHash));
+                } else {
+                    frame = push(targetChild, sourceChild, childKeyHash, symbol, sourceChild);
+                }
+            } else {
+                mergeValue(node, (V) frame.mOther.mValue, function, frame.mKeyHash);
+                node.rehash(mAlphabet);
+
+                final char symbol = frame.mSymbol;
+                frame = pop(bottom);
+                if (frame != null && !node.hasValue() && !node.hasChildren()) {
+                    ((HashTrie.Node<V>) frame.mNode).removeChild(mAlphabet, symbol);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the {@code value} of the source node into the {@code target} node.
+     */
+    private void mergeValue(HashTrie.Node<V> target, V value, MergeFunction<V> function, int keyHash) {
+        if (value == null) {
+            return;
+        }
+
+        if (target.hasValue()) {
+            mTrie.mHashCode -= keyHash ^ target.mValue.hashCode();
+            target.mValue = function.merge(target.mValue, value);
+
+            if (target.mValue == null) {
+                mTrie.mSize--;
+            } else {
+                mTrie.mHashCode += keyHash ^ target.mValue.hashCode();
+            }
+        } else {
+            target.mValue = value;
+
+            mTrie.mSize++;
+            mTrie.mHashCode += keyHash ^ target.mValue.hashCode();
+        }
+    }
+
+    /**
+     * Drops from subtree of the given {@code node} all of the values that are absent in
+     * subtree of the {@code other} node, {@code keyHash} is hash code of the key that leads
+     * to both nodes.  Every retained value is counted in the hash code of the trie.
+     * Returns number of values that are left in the subtree.
+     */
+    int retain(HashTrie.Node<V> root, HashTrie.Node<?> otherRoot, int keyHash) {
+        final int bottom = mDepth;
+        push(root, otherRoot, keyHash, '\0', root);
+
+        int retained = 0;
+        Frame frame = mFrames[mDepth - 1];
+        while (frame != null) {
+            final HashTrie.Node<V> node = (HashTrie.Node<V>) frame.mNode;
+
+            if (frame.hasNextChild()) {
+                final int index = frame.mNextChild++;
+                final char symbol = frame.mSymbols[index];
+                final HashTrie.Node<?> otherChild = frame.mOther.getChildFor(mOtherAlphabet, symbol);
+
+                if (otherChild == null) {
+                    node.removeChild(mAlphabet, symbol);
+                } else {
+                    final HashTrie.Node<?> child = frame.mChildren[index];
+                    frame = push(child, otherChild, frame.mKeyHash * 31 + symbol, symbol, child);
+                }
+            } else {
+                if (node.hasValue()) {
+                    if (frame.mOther.hasValue()) {
+                        frame.mCount++;
+                        mTrie.mHashCode += frame.mKeyHash ^ node.mValue.hashCode();
+                    } else {
+                        node.mValue = null;
+                    }
+                }
+
+                node.rehash(mAlphabet);
+
+                final char symbol = frame.mSymbol;
+                final int count = frame.mCount;
+                frame = pop(bottom);
+                if (frame == null) {
+                    retained = count;
+                } else if (count == 0) {
+                    ((HashTrie.Node<V>) frame.mNode).removeChild(mAlphabet, symbol);
+                } else {
+                    frame.mCount += count;
+                }
+            }
+        }
+
+        return retained;
+    }
+
+    /**
+     * Drops from subtree of the given {@code node} all of the values that are present in
+     * subtree of the {@code other} node, {@code keyHash} is hash code of the key that leads
+     * to both nodes.  Children of the node that has fewer of them are walked.  Returns
+     * number of dropped values.
+     */
+    int subtract(HashTrie.Node<V> root, HashTrie.Node<?> otherRoot, int keyHash) {
+        final int bottom = mDepth;
+        pushFewerChildren(root, otherRoot, keyHash, '\0');
+
+        int removed = 0;
+        Frame frame = mFrames[mDepth - 1];
+        while (frame != null) {
+            final HashTrie.Node<V> node = (HashTrie.Node<V>) frame.mNode;
+
+            if (frame.hasNextChild()) {
+                final int index = frame.mNextChild++;
+                final char symbol = frame.mSymbols[index];
+                final HashTrie.Node<?> child = frame.nodeChild(mAlphabet, index);
+                final HashTrie.Node<?> otherChild = frame.otherChild(mOtherAlphabet, index);
+
+                if (child != null && otherChild != null) {
+                    frame = pushFewerChildren(child, otherChild, frame.mKeyHash * 31 + symbol, symbol);
+                }
+            } else {
+                frame.mCount += subtractValue(node, frame.mOther, frame.mKeyHash);
+                node.rehash(mAlphabet);
+
+                final char symbol = frame.mSymbol;
+                final int count = frame.mCount;
+                frame = pop(bottom);
+                if (frame == null) {
+                    removed = count;
+                } else {
+                    frame.mCount += count;
+                    if (!node.hasValue() && !node.hasChildren()) {
+                        ((HashTrie.Node<V>) frame.mNode).removeChild(mAlphabet, symbol);
+                    }
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Drops value of the given {@code node} if the {@code other} node has a value too.
+     * Returns number of dropped values.
+     */
+    private int subtractValue(HashTrie.Node<V> node, HashTrie.Node<?> other, int keyHash) {
+        if (!node.hasValue() || !other.hasValue()) {
+            return 0;
+        }
+
+        mTrie.mHashCode -= keyHash ^ node.mValue.hashCode();
+        node.mValue = null;
+
+        return 1;
+    }
+
+    /**
+     * Pushes frame of the nodes that walks children of the node that has fewer of them.
+     */
+    private Frame pushFewerChildren(HashTrie.Node<?> node, HashTrie.Node<?> other, int keyHash, char symbol) {
+        return push(node, other, keyHash, symbol, node.childrenCount() <= other.childrenCount() ? node : other);
+    }
+
+    /**
+     * Returns {@code true} if subtrees of the given nodes have same keys and values.
+     * Subtrees that are shared by both nodes are not walked.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    boolean equal(HashTrie.Node<?> root, HashTrie.Node<?> otherRoot) {
+        if (root == otherRoot) {
+            return true;
+        } else if (!equalNodes(root, otherRoot)) {
+            return false;
+        }
+
+        final int bottom = mDepth;
+        Frame frame = push(root, otherRoot, 0, '\0', root);
+        while (frame != null) {
+            if (!frame.hasNextChild()) {
+                frame = pop(bottom);
+                continue;
+            }
+
+            final int index = frame.mNextChild++;
+            final HashTrie.Node<?> child = frame.mChildren[index];
+            final HashTrie.Node<?> otherChild = frame.otherChild(mOtherAlphabet, index);
+
+            if (otherChild == null || !equalNodes(child, otherChild)) {
+                while (frame != null) {
+                    frame = pop(bottom);
+                }
+
+                return false;
+            } else if (child != otherChild) {
+                frame = push(child, otherChild, 0, frame.mSymbols[index], child);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the given nodes have same values, structural hashes and
+     * numbers of the children.
+     */
+    private static boolean equalNodes(HashTrie.Node<?> node, HashTrie.Node<?> other) {
+        if (node.mHash != other.mHash || node.childrenCount() != other.childrenCount()) {
+            return false;
+        }
+
+        return node.hasValue() ? node.mValue.equals(other.mValue) : !other.hasValue();
+    }
+
+    /**
+     * Compacts subtrees of the children of the given node, replacing the children with their
+     * compacted versions.  Returns estimated number of bytes that were reclaimed.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    long compactChildren(HashTrie.Node<V> root) {
+        long reclaimed = 0;
+
+        final int bottom = mDepth;
+        Frame frame = push(root, null, 0, '\0', root);
+        while (frame != null) {
+            if (!frame.hasNextChild()) {
+                frame = pop(bottom);
+                continue;
+            }
+
+            final int index = frame.mNextChild++;
+            final HashTrie.Node<V> child = (HashTrie.Node<V>) frame.mChildren[index];
+            final long oldBytes = child.estimatedBytes();
+            final HashTrie.Node<V> compacted = child.compacted();
+
+            // replacement of the existing child is not a structural modification of the node
+            if (compacted != child) {
+                ((HashTrie.Node<V>) frame.mNode).addChild(mAlphabet, frame.mSymbols[index], compacted);
+            }
+
+            reclaimed += oldBytes - compacted.estimatedBytes();
+            if (compacted.hasChildren()) {
+                frame = push(compacted, null, 0, frame.mSymbols[index], compacted);
+            }
+        }
+
+        return reclaimed;
+    }
+
+}
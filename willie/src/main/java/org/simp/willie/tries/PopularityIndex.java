@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Index of the values of a {@link PrefixTree} by their popularity, see
+ * {@link PrefixTree#enablePopularity(long)}.  The index is a mirrored trie of the values,
+ * each node has the score of its value and the maximum score in its subtree.
+ *
+ * <p>Hits are decayed exponentially with the half-life, by <i>forward decay</i>: a hit at
+ * time {@code t} weighs {@code 2^((t - epoch) / halfLife)}, so later hits weigh more and
+ * scores never have to be decayed.  Popularity of a value at time {@code now} is its score
+ * divided by {@code 2^((now - epoch) / halfLife)}.  Scores are kept as base 2 logarithms,
+ * so they do not overflow.
+ *
+ * <p>Since scores only grow, a hit raises the score of the node of the value and then raises
+ * the maximums of the nodes on the path up to the first one that is high enough already.
+ * Both are compare-and-set loops on the fields of the nodes, so hits could be recorded by
+ * many threads, concurrently with queries, without locks.  Adding and removing values is not
+ * thread safe, as any other modification of a {@link PrefixTree}.
+ *
+ * @author Dmytro Ivanov
+ * @see PrefixTree#popularValuesWithPrefix(String, int)
+ */
+@SuppressWarnings("PMD.GodClass")
+final class PopularityIndex {
+
+    private static final double NO_HITS = Double.NEGATIVE_INFINITY;
+
+    private static final double LN_2 = Math.log(2);
+
+    private final long mHalfLifeMillis;
+
+    private final long mEpochMillis;
+
+    private final CounterNode mRoot = new CounterNode(null, '\0');
+
+    PopularityIndex(Iterable<String> values, long halfLifeMillis, long epochMillis) {
+        mHalfLifeMillis = halfLifeMillis;
+        mEpochMillis = epochMillis;
+
+        for (String value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Returns index of the values, that keeps scores of the values that are in this index.
+     *
+     * Operation time complexity is O(T), where T is total length of the values.
+     */
+    PopularityIndex rebuild(Iterable<String> values) {
+        final PopularityIndex index = new PopularityIndex(values, mHalfLifeMillis, mEpochMillis);
+        for (String value : values) {
+            final CounterNode node = find(value);
+            if (node != null && node.score() > NO_HITS) {
+                index.raise(index.find(value), node.score());
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Operation time complexity is O(S), where S is length of the value.
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    void add(String value) {
+        CounterNode node = mRoot;
+        for (int i = 0; i < value.length(); i++) {
+            CounterNode child = node.mChildren == null ? null : node.mChildren.get(value.charAt(i));
+            if (child == null) {
+                child = new CounterNode(node, value.charAt(i));
+                if (node.mChildren == null) {
+                    node.mChildren = new HashMap<>();
+                }
+
+                node.mChildren.put(value.charAt(i), child);
+            }
+
+            node = child;
+        }
+
+        node.mHasValue = true;
+    }
+
+    /**
+     * Removes the value with its score, the nodes that are left without values are dropped.
+     *
+     * Operation time complexity is O(S * F), where S is length of the value and F is the fan-out of the nodes.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    void remove(String value) {
+        CounterNode node = find(value);
+        if (node == null || !node.mHasValue) {
+            return;
+        }
+
+        node.mHasValue = false;
+        node.mScore = Double.doubleToRawLongBits(NO_HITS);
+
+        while (node != mRoot && !node.mHasValue && node.mChildren == null) {
+            final CounterNode parent = node.mParent;
+            parent.mChildren.remove(node.mSymbol);
+            if (parent.mChildren.isEmpty()) {
+                parent.mChildren = null;
+            }
+
+            node = parent;
+        }
+
+        for (; node != null; node = node.mParent) {
+            node.mMax = Double.doubleToRawLongBits(node.recomputedMax());
+        }
+    }
+
+    void clear() {
+        mRoot.mChildren = null;
+        mRoot.mHasValue = false;
+        mRoot.mScore = Double.doubleToRawLongBits(NO_HITS);
+        mRoot.mMax = Double.doubleToRawLongBits(NO_HITS);
+    }
+
+    /**
+     * Records hit of the value at the given time, returns {@code false} if there is no such value.
+     *
+     * Operation time complexity is O(S), where S is length of the value.
+     */
+    boolean recordHit(String value, long millis) {
+        final CounterNode node = find(value);
+        if (node == null || !node.mHasValue) {
+            return false;
+        }
+
+        raise(node, (double) (millis - mEpochMillis) / mHalfLifeMillis);
+        return true;
+    }
+
+    /**
+     * Returns number of the hits of the value decayed to the given time.
+     *
+     * Operation time complexity is O(S), where S is length of the value.
+     */
+    double popularity(String value, long millis) {
+        final CounterNode node = find(value);
+        if (node == null || !node.mHasValue) {
+            return 0;
+        }
+
+        return Math.pow(2, node.score() - (double) (millis - mEpochMillis) / mHalfLifeMillis);
+    }
+
+    /**
+     * Returns at most {@code limit} values with the prefix, the most popular first and values of
+     * the same popularity in ascending order.  The nodes are visited best first by their maximums,
+     * so just the subtrees that have one of the returned values are expanded.
+     *
+     * Operation time complexity is O(S + L * D * F * log(L * D * F)), where S is length of the prefix,
+     * L is the limit, D is length of the longest value and F is the fan-out of the nodes.
+     */
+    List<String> popularValuesWithPrefix(String prefix, int limit) {
+        final CounterNode start = find(prefix);
+        if (start == null || limit == 0) {
+            return Collections.emptyList();
+        }
+
+        final List<String> values = new ArrayList<>();
+        final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        queue.add(new Candidate(prefix, start, start.max(), false));
+
+        while (!queue.isEmpty() && values.size() < limit) {
+            final Candidate candidate = queue.poll();
+            if (candidate.mIsValue) {
+                values.add(candidate.mKey);
+            } else {
+                expand(queue, candidate);
+            }
+        }
+
+        return values;
+    }
+
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private static void expand(PriorityQueue<Candidate> queue, Candidate candidate) {
+        final CounterNode node = candidate.mNode;
+        if (node.mHasValue) {
+            queue.add(new Candidate(candidate.mKey, node, node.score(), true));
+        }
+
+        final Map<Character, CounterNode> children = node.mChildren;
+        if (children != null) {
+            for (Map.Entry<Character, CounterNode> child : children.entrySet()) {
+                final CounterNode childNode = child.getValue();
+                queue.add(new Candidate(candidate.mKey + child.getKey(), childNode, childNode.max(), false));
+            }
+        }
+    }
+
+    private CounterNode find(String value) {
+        CounterNode node = mRoot;
+        for (int i = 0; i < value.length() && node != null; i++) {
+            node = node.mChildren == null ? null : node.mChildren.get(value.charAt(i));
+        }
+
+        return node;
+    }
+
+    /**
+     * Adds hit with the given base 2 logarithm of the weight to the score of the node, and raises
+     * maximums of the node and its ancestors to the new score.
+     */
+    private void raise(CounterNode node, double weight) {
+        long bits;
+        double score;
+        do {
+            bits = node.mScore;
+            score = logSum(Double.longBitsToDouble(bits), weight);
+        } while (!CounterNode.SCORE_UPDATER.compareAndSet(node, bits, Double.doubleToRawLongBits(score)));
+
+        for (CounterNode ancestor = node; ancestor != null; ancestor = ancestor.mParent) {
+            if (!ancestor.raiseMax(score)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns base 2 logarithm of {@code 2^first + 2^second}.
+     */
+    static double logSum(double first, double second) {
+        final double max = Math.max(first, second);
+        if (max == NO_HITS) {
+            return NO_HITS;
+        }
+
+        return max + Math.log1p(Math.pow(2, Math.min(first, second) - max)) / LN_2;
+    }
+
+    /**
+     * Node of the mirrored trie.  Scores are base 2 logarithms of the sums of the weights of the
+     * hits, kept as raw bits of {@code double} to be updated atomically.
+     */
+    private static final class CounterNode {
+
+        static final AtomicLongFieldUpdater<CounterNode> SCORE_UPDATER =
+                AtomicLongFieldUpdater.newUpdater(CounterNode.class, "mScore");
+
+        static final AtomicLongFieldUpdater<CounterNode> MAX_UPDATER =
+                AtomicLongFieldUpdater.newUpdater(CounterNode.class, "mMax");
+
+        final CounterNode mParent;
+
+        final char mSymbol;
+
+        Map<Character, CounterNode> mChildren;
+
+        boolean mHasValue;
+
+        volatile long mScore = Double.doubleToRawLongBits(NO_HITS);
+
+        /**
+         * The maximum score of the values in the subtree of the node.
+         */
+        volatile long mMax = Double.doubleToRawLongBits(NO_HITS);
+
+        CounterNode(CounterNode parent, char symbol) {
+            mParent = parent;
+            mSymbol = symbol;
+        }
+
+        double score() {
+            return Double.longBitsToDouble(mScore);
+        }
+
+        double max() {
+            return Double.longBitsToDouble(mMax);
+        }
+
+        /**
+         * Raises the maximum to the score, returns {@code false} if the maximum is not lower than the score.
+         */
+        boolean raiseMax(double score) {
+            long bits;
+            do {
+                bits = mMax;
+                if (Double.longBitsToDouble(bits) >= score) {
+                    return false;
+                }
+            } while (!MAX_UPDATER.compareAndSet(this, bits, Double.doubleToRawLongBits(score)));
+
+            return true;
+        }
+
+        double recomputedMax() {
+            double max = score();
+            if (mChildren != null) {
+                for (CounterNode child : mChildren.values()) {
+                    max = Math.max(max, child.max());
+                }
+            }
+
+            return max;
+        }
+
+    }
+
+    /**
+     * Value or subtree in the queue of the best first search.  The maximum of a subtree and its
+     * prefix bound the scores and keys of its values, so candidates are ordered by the scores
+     * descending, then by the keys, then values before subtrees.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+
+        final String mKey;
+
+        final CounterNode mNode;
+
+        final double mScore;
+
+        final boolean mIsValue;
+
+        Candidate(String key, CounterNode node, double score, boolean isValue) {
+            mKey = key;
+            mNode = node;
+            mScore = score;
+            mIsValue = isValue;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            final int byScore = Double.compare(other.mScore, mScore);
+            if (byScore != 0) {
+                return byScore;
+            }
+
+            final int byKey = mKey.compareTo(other.mKey);
+            if (byKey != 0) {
+                return byKey;
+            }
+
+            return Boolean.compare(other.mIsValue, mIsValue);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Candidate && compareTo((Candidate) object) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return mKey.hashCode();
+        }
+
+    }
+
+}
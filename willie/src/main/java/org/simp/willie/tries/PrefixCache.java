@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of the first values of a {@link PrefixTree} for short prefixes, see
+ * {@link PrefixTree#enablePrefixCache(int, int)}.  Prefixes are evicted in least recently
+ * used order once the cache is full.
+ *
+ * <p>Modification of a value could change results just for the prefixes of the value, so
+ * the cache is invalidated by walking the modified value: at most {@code maxPrefixLength}
+ * lookups per modification, cached results of other prefixes are kept.  Prefixes are keyed
+ * by the value and the length of the prefix, so the lookups do not allocate substrings.
+ *
+ * <p>Map of the results is ordered by access, so even a cache hit modifies it.  The map is
+ * guarded by its own lock, so queries of the tree could run concurrently, while the values
+ * are collected outside of the lock.
+ *
+ * @author Dmytro Ivanov
+ * @see PrefixTree#valuesWithPrefix(String, int)
+ */
+final class PrefixCache {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final int mCapacity;
+
+    private final int mMaxPrefixLength;
+
+    private final Map<Prefix, Results> mResults;
+
+    /**
+     * Reusable key of the lookups, is guarded by the lock of the map of the results.
+     */
+    private final Prefix mProbe = new Prefix();
+
+    PrefixCache(int capacity, int maxPrefixLength) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive.");
+        }
+
+        if (maxPrefixLength <= 0) {
+            throw new IllegalArgumentException("Maximum prefix length should be positive.");
+        }
+
+        mCapacity = capacity;
+        mMaxPrefixLength = maxPrefixLength;
+        mResults = new LinkedHashMap<Prefix, Results>((int) (capacity / LOAD_FACTOR) + 1, LOAD_FACTOR, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Prefix, Results> eldest) {
+                return size() > mCapacity;
+            }
+        };
+    }
+
+    int capacity() {
+        return mCapacity;
+    }
+
+    int maxPrefixLength() {
+        return mMaxPrefixLength;
+    }
+
+    int size() {
+        synchronized (mResults) {
+            return mResults.size();
+        }
+    }
+
+    /**
+     * Returns at most {@code limit} first values of the trie that start with the prefix,
+     * from the cache if the prefix is short enough.
+     */
+    List<String> valuesWithPrefix(Trie<Boolean> trie, String prefix, int limit) {
+        if (prefix.length() > mMaxPrefixLength) {
+            return collect(trie, prefix, limit).mValues;
+        }
+
+        Results results;
+        synchronized (mResults) {
+            results = mResults.get(mProbe.set(prefix, prefix.length(), prefix.hashCode()));
+        }
+
+        if (results == null || !results.covers(limit)) {
+            results = collect(trie, prefix, limit);
+            synchronized (mResults) {
+                mResults.put(new Prefix().set(prefix, prefix.length(), prefix.hashCode()), results);
+            }
+        }
+
+        return results.mValues.size() > limit ? results.mValues.subList(0, limit) : results.mValues;
+    }
+
+    /**
+     * Drops cached results of the prefixes of a value that was added or removed.
+     */
+    void invalidate(String value) {
+        final int length = Math.min(value.length(), mMaxPrefixLength);
+        synchronized (mResults) {
+            // hash code of each prefix is the hash code of the string of the prefix
+            int hash = 0;
+            for (int i = 1; i <= length; i++) {
+                hash = 31 * hash + value.charAt(i - 1);
+                mResults.remove(mProbe.set(value, i, hash));
+            }
+        }
+    }
+
+    void clear() {
+        synchronized (mResults) {
+            mResults.clear();
+        }
+    }
+
+    /**
+     * Collects at most {@code limit} first values of the trie that start with the prefix.
+     */
+    static Results collect(Trie<Boolean> trie, String prefix, int limit) {
+        final List<String> values = new ArrayList<>(Math.min(limit, 16));
+
+        final Iterator<String> iterator = trie.keysWithPrefix(prefix).iterator();
+        while (values.size() < limit && iterator.hasNext()) {
+            values.add(iterator.next());
+        }
+
+        return new Results(Collections.unmodifiableList(values), !iterator.hasNext());
+    }
+
+    /**
+     * Prefix of the given length of a value, equals to the other prefixes of the same symbols.
+     * Hash code is the hash code of the string of the prefix, it is given by the owner.
+     */
+    static final class Prefix {
+
+        String mValue;
+
+        int mLength;
+
+        int mHash;
+
+        Prefix set(String value, int length, int hash) {
+            mValue = value;
+            mLength = length;
+            mHash = hash;
+
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Prefix)) {
+                return false;
+            }
+
+            final Prefix prefix = (Prefix) object;
+            return mLength == prefix.mLength && mValue.regionMatches(0, prefix.mValue, 0, mLength);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+    }
+
+    /**
+     * First values for a prefix.
+     */
+    static final class Results {
+
+        final List<String> mValues;
+
+        /**
+         * {@code true} if there are no other values with the prefix.
+         */
+        final boolean mComplete;
+
+        Results(List<String> values, boolean complete) {
+            mValues = values;
+            mComplete = complete;
+        }
+
+        boolean covers(int limit) {
+            return mComplete || mValues.size() >= limit;
+        }
+
+    }
+
+}
@@ -15,8 +15,16 @@
  */
 package org.simp.willie.tries;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -31,10 +39,21 @@ import java.util.Set;
  * @see HashTrie
  * @see Trie
  */
+@SuppressWarnings({"PMD.GodClass", "PMD.ExcessiveClassLength"})
 public class PrefixTree implements Serializable, Cloneable {
 
     private static final long serialVersionUID = -4056615874998275521L;
 
+    /**
+     * Function that keeps value that is already in the tree, used by {@link #union(PrefixTree)}.
+     */
+    private static final MergeFunction<Boolean> KEEP_OLD_VALUE = new MergeFunction<Boolean>() {
+        @Override
+        public Boolean merge(Boolean oldValue, Boolean newValue) {
+            return oldValue;
+        }
+    };
+
     /**
      * Back up {@link Trie}, is used to store keys along with values.
      * {@link Boolean} is selected because it takes small amount of space and there are
@@ -42,6 +61,32 @@ public class PrefixTree implements Serializable, Cloneable {
      */
     Trie<Boolean> mTrie;
 
+    /**
+     * Original spelling of the values by their folded form, {@code null} if the backing trie
+     * does not fold its keys.  Keys of the trie are folded the same way as keys of {@link #mTrie}.
+     */
+    Trie<String> mSpellings;
+
+    /**
+     * Cache of the first values for hot prefixes, {@code null} if the cache is disabled.
+     */
+    transient PrefixCache mPrefixCache;
+
+    /**
+     * Index of the substrings of the values, {@code null} if the index is disabled.
+     */
+    transient SubstringIndex mSubstringIndex;
+
+    /**
+     * Index of the values by their suffixes, {@code null} if the index is disabled.
+     */
+    transient SuffixIndex mSuffixIndex;
+
+    /**
+     * Popularity of the values, {@code null} if the popularity is disabled.
+     */
+    transient PopularityIndex mPopularity;
+
     /**
      * Constructs new {@code PrefixTree} that is backed up by {@code HashTrie}.
      */
@@ -49,6 +94,36 @@ public class PrefixTree implements Serializable, Cloneable {
         this(new HashTrie<Boolean>());
     }
 
+    /**
+     * Constructs new {@code PrefixTree} that is backed up by {@code HashTrie} and accepts
+     * values that consist of symbols of the given alphabet.
+     *
+     * @param alphabet alphabet of the values
+     * @throws NullPointerException if the alphabet is null
+     * @see HashTrie#HashTrie(KeyAlphabet)
+     */
+    public PrefixTree(KeyAlphabet alphabet) {
+        this(new HashTrie<Boolean>(alphabet));
+    }
+
+    /**
+     * Constructs new {@code PrefixTree} that is backed up by {@code HashTrie}, folds symbols
+     * of the values and accepts values whose folded symbols are in the given alphabet.  Values
+     * are stored folded, and queries by a prefix, suffix or fragment are folded the same way.
+     * Values that fold to the same form are the same value, the tree returns the spelling that
+     * was added first.  The spellings are kept in another {@code HashTrie} by the folded values,
+     * so the tree takes about twice as much memory.
+     *
+     * @param alphabet alphabet of the folded values
+     * @param folding folding of the symbols of the values
+     * @throws NullPointerException if the alphabet or folding is null
+     * @see HashTrie#HashTrie(KeyAlphabet, KeyFolding)
+     */
+    public PrefixTree(KeyAlphabet alphabet, KeyFolding folding) {
+        this(new HashTrie<Boolean>(alphabet, folding),
+                folding == KeyFolding.NONE ? null : new HashTrie<String>(alphabet, folding));
+    }
+
     /**
      * Package specific constructor for {@link Tries#unmodifiablePrefixTree(PrefixTree)}
      * and for white box testing.
@@ -56,7 +131,18 @@ public class PrefixTree implements Serializable, Cloneable {
      * @param trie instance of the {@link Trie} to back up {@link PrefixTree}
      */
     PrefixTree(Trie<Boolean> trie) {
+        this(trie, null);
+    }
+
+    /**
+     * Package specific constructor for the trees that fold their values.
+     *
+     * @param trie instance of the {@link Trie} to back up {@link PrefixTree}
+     * @param spellings original spelling of the values by their folded form, or {@code null}
+     */
+    PrefixTree(Trie<Boolean> trie, Trie<String> spellings) {
         this.mTrie = trie;
+        this.mSpellings = spellings;
     }
 
     // Query Operations
@@ -109,7 +195,29 @@ public class PrefixTree implements Serializable, Cloneable {
      * @throws NullPointerException if the specified value is null
      */
     public void add(String value) {
-        mTrie.put(value, Boolean.TRUE);
+        final boolean added = mTrie.put(value, Boolean.TRUE) == null;
+        if (added && mSpellings != null) {
+            mSpellings.put(value, value);
+        }
+
+        if (added && hasIndices()) {
+            final String foldedValue = fold(value);
+            if (mPrefixCache != null) {
+                mPrefixCache.invalidate(foldedValue);
+            }
+
+            if (mSubstringIndex != null) {
+                mSubstringIndex.add(foldedValue);
+            }
+
+            if (mSuffixIndex != null) {
+                mSuffixIndex.add(foldedValue);
+            }
+
+            if (mPopularity != null) {
+                mPopularity.add(foldedValue);
+            }
+        }
     }
 
     /**
@@ -120,7 +228,29 @@ public class PrefixTree implements Serializable, Cloneable {
      * @param  value that is to be removed from the tree.
      */
     public void remove(String value) {
-        mTrie.remove(value);
+        final boolean removed = mTrie.remove(value) != null;
+        if (removed && mSpellings != null) {
+            mSpellings.remove(value);
+        }
+
+        if (removed && hasIndices()) {
+            final String foldedValue = fold(value);
+            if (mPrefixCache != null) {
+                mPrefixCache.invalidate(foldedValue);
+            }
+
+            if (mSubstringIndex != null) {
+                mSubstringIndex.remove(foldedValue);
+            }
+
+            if (mSuffixIndex != null) {
+                mSuffixIndex.remove(foldedValue);
+            }
+
+            if (mPopularity != null) {
+                mPopularity.remove(foldedValue);
+            }
+        }
     }
 
     // Bulk Operations
@@ -133,6 +263,518 @@ public class PrefixTree implements Serializable, Cloneable {
      */
     public void clear() {
         mTrie.clear();
+        if (mSpellings != null) {
+            mSpellings.clear();
+        }
+
+        clearPrefixCache();
+
+        if (mSubstringIndex != null) {
+            mSubstringIndex.clear();
+        }
+
+        if (mSuffixIndex != null) {
+            mSuffixIndex.clear();
+        }
+
+        if (mPopularity != null) {
+            mPopularity.clear();
+        }
+    }
+
+    /**
+     * Returns report on the shape of the backing trie and estimated memory retained by its nodes.
+     *
+     * Operation time complexity is O(M), where M is number of nodes in the tree.
+     *
+     * @return statistics of the backing trie
+     * @throws UnsupportedOperationException if the tree is not backed up by a {@link HashTrie}
+     * @see HashTrie#stats()
+     */
+    public TrieStats stats() {
+        final HashTrie<Boolean> hashTrie = HashTrie.asHashTrie(mTrie);
+        if (hashTrie == null) {
+            throw new UnsupportedOperationException();
+        }
+
+        return hashTrie.stats();
+    }
+
+    /**
+     * Shrinks nodes of the backing trie to fit their children.  Values of the tree are
+     * not changed.
+     *
+     * Operation time complexity is O(M), where M is number of nodes in the tree.
+     *
+     * @return estimated number of bytes that were reclaimed
+     * @throws UnsupportedOperationException if this tree is unmodifiable
+     * @see HashTrie#compact()
+     */
+    public long compact() {
+        final long reclaimed = modifiableHashTrie().compact();
+
+        return mSpellings == null ? reclaimed : reclaimed + HashTrie.asHashTrie(mSpellings).compact();
+    }
+
+    // Set Operations
+
+    /**
+     * Adds all of the values of the specified tree to this tree.
+     *
+     * Operation time complexity is O(M), where M is number of nodes in the specified tree.
+     *
+     * @param tree tree whose values are to be added to this tree
+     * @return {@code true} if this tree changed as a result of the call
+     * @throws NullPointerException if the specified tree is null
+     * @see Trie#merge(Trie, MergeFunction)
+     */
+    public boolean union(PrefixTree tree) {
+        final int oldSize = mTrie.size();
+
+        mTrie.merge(tree.mTrie, KEEP_OLD_VALUE);
+
+        final boolean changed = oldSize != mTrie.size();
+        if (changed) {
+            addSpellings(tree);
+            clearIndices();
+        }
+
+        return changed;
+    }
+
+    /**
+     * Retains only the values that are contained in the specified tree.
+     *
+     * Operation time complexity is O(M), where M is number of nodes that both trees have in common.
+     *
+     * @param tree tree whose values are to be retained in this tree
+     * @return {@code true} if this tree changed as a result of the call
+     * @throws NullPointerException if the specified tree is null
+     * @throws UnsupportedOperationException if this tree is unmodifiable
+     * @see HashTrie#intersect(Trie)
+     */
+    public boolean intersect(PrefixTree tree) {
+        final boolean changed = modifiableHashTrie().intersect(tree.mTrie);
+        if (changed) {
+            retainSpellings();
+            clearIndices();
+        }
+
+        return changed;
+    }
+
+    /**
+     * Removes all of the values that are contained in the specified tree.
+     *
+     * Operation time complexity is O(M), where M is number of nodes that both trees have in common.
+     *
+     * @param tree tree whose values are to be removed from this tree
+     * @return {@code true} if this tree changed as a result of the call
+     * @throws NullPointerException if the specified tree is null
+     * @throws UnsupportedOperationException if this tree is unmodifiable
+     * @see HashTrie#subtract(Trie)
+     */
+    public boolean subtract(PrefixTree tree) {
+        final boolean changed = modifiableHashTrie().subtract(tree.mTrie);
+        if (changed) {
+            retainSpellings();
+            clearIndices();
+        }
+
+        return changed;
+    }
+
+    /**
+     * Adds spellings of the values of the tree that were added to this tree by a union.
+     */
+    private void addSpellings(PrefixTree tree) {
+        if (mSpellings == null) {
+            return;
+        }
+
+        for (String value : tree.values()) {
+            if (!mSpellings.containsKey(value)) {
+                mSpellings.put(value, value);
+            }
+        }
+    }
+
+    /**
+     * Drops spellings of the values that were removed from this tree by a bulk operation.
+     */
+    private void retainSpellings() {
+        if (mSpellings != null) {
+            HashTrie.asHashTrie(mSpellings).intersect(mTrie);
+        }
+    }
+
+    // Prefix Cache
+
+    /**
+     * Enables cache of the results of {@link #valuesWithPrefix(String, int)} for the prefixes
+     * that are not longer than {@code maxPrefixLength}.  At most {@code capacity} prefixes are
+     * cached, the least recently used prefix is evicted when the cache is full.  Results that
+     * were cached before are dropped.
+     *
+     * <p>Adding or removing a value invalidates cached results just for the prefixes of that
+     * value, which takes O(L) time, where L is the maximum prefix length.  Bulk operations
+     * drop the whole cache.  The cache is not serialized or cloned.
+     *
+     * <p>The cache is ordered by access, so a cache hit modifies it.  It is guarded by its own
+     * lock, so queries could run concurrently with each other as they could without the cache.
+     * Modifications of the tree still should not run concurrently with queries.
+     *
+     * @param capacity maximum number of the cached prefixes
+     * @param maxPrefixLength maximum length of the cached prefixes
+     * @throws IllegalArgumentException if the capacity or maximum prefix length is not positive
+     * @throws UnsupportedOperationException if this tree is unmodifiable, since its values
+     *         could be modified through another tree
+     */
+    public void enablePrefixCache(int capacity, int maxPrefixLength) {
+        modifiableHashTrie();
+
+        mPrefixCache = new PrefixCache(capacity, maxPrefixLength);
+    }
+
+    /**
+     * Disables cache of the results of {@link #valuesWithPrefix(String, int)} and drops cached results.
+     */
+    public void disablePrefixCache() {
+        mPrefixCache = null;
+    }
+
+    private void clearPrefixCache() {
+        if (mPrefixCache != null) {
+            mPrefixCache.clear();
+        }
+    }
+
+    /**
+     * Drops the cache and rebuilds the indices after a bulk modification.
+     */
+    private void clearIndices() {
+        clearPrefixCache();
+
+        if (mSubstringIndex != null) {
+            mSubstringIndex = new SubstringIndex(mTrie.keys());
+        }
+
+        if (mSuffixIndex != null) {
+            enableSuffixIndex();
+        }
+
+        if (mPopularity != null) {
+            mPopularity = mPopularity.rebuild(mTrie.keys());
+        }
+    }
+
+    // Popularity
+
+    /**
+     * Enables popularity of the values, which is raised by {@link #recordHit(String)} and orders
+     * {@link #popularValuesWithPrefix(String, int)}.  Hits are decayed exponentially, each hit counts
+     * as one when it is recorded and as a half after the half-life.  The popularity is kept in a
+     * mirrored trie of the values, where each node knows the maximum popularity in its subtree.
+     * Bulk operations keep the popularity of the values that stay in the tree.  The popularity is
+     * not serialized or cloned.
+     *
+     * Operation time complexity is O(T), where T is total length of the values.
+     *
+     * @param halfLifeMillis half-life of the hits in milliseconds
+     * @throws IllegalArgumentException if the half-life is not positive
+     * @throws UnsupportedOperationException if this tree is unmodifiable, since its values
+     *         could be modified through another tree
+     */
+    public void enablePopularity(long halfLifeMillis) {
+        if (halfLifeMillis <= 0) {
+            throw new IllegalArgumentException("Half-life should be positive.");
+        }
+
+        modifiableHashTrie();
+
+        mPopularity = new PopularityIndex(mTrie.keys(), halfLifeMillis, System.currentTimeMillis());
+    }
+
+    /**
+     * Disables popularity of the values and releases its memory.
+     */
+    public void disablePopularity() {
+        mPopularity = null;
+    }
+
+    /**
+     * Records that the value was selected, which raises its popularity.  Hits could be recorded
+     * by many threads concurrently with each other and with queries, they walk the path of the
+     * value once and update the nodes with atomic compare-and-set, without locks.
+     *
+     * Operation time complexity is O(S), where S is length of value.
+     *
+     * @param value the selected value
+     * @return {@code true} if the tree contains the value
+     * @throws IllegalStateException if the popularity is disabled
+     * @throws NullPointerException if the value is null
+     */
+    public boolean recordHit(String value) {
+        return recordHit(value, System.currentTimeMillis());
+    }
+
+    /**
+     * Records hit of the value at the given time, for testing.
+     */
+    final boolean recordHit(String value, long millis) {
+        return popularityIndex().recordHit(fold(value), millis);
+    }
+
+    /**
+     * Returns popularity of the value, that is number of its hits decayed to now.
+     *
+     * Operation time complexity is O(S), where S is length of value.
+     *
+     * @param value value whose popularity is returned
+     * @return popularity of the value, zero if the value has no hits or is not in the tree
+     * @throws IllegalStateException if the popularity is disabled
+     * @throws NullPointerException if the value is null
+     */
+    public double popularity(String value) {
+        return popularity(value, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns popularity of the value at the given time, for testing.
+     */
+    final double popularity(String value, long millis) {
+        return popularityIndex().popularity(fold(value), millis);
+    }
+
+    /**
+     * Returns at most {@code limit} values of this tree that start with given prefix, the most popular
+     * first and values of the same popularity in ascending order of their symbols.  The subtrees are
+     * visited best first by their maximum popularity, so just the subtrees that have one of the returned
+     * values are expanded.  Unlike the view, the list is a snapshot.
+     *
+     * Operation time complexity is O(S + L * D * F * log(L * D * F)), where S is length of prefix,
+     * L is the limit, D is length of the longest value and F is average fan-out of the nodes.
+     *
+     * @param prefix that is used to filter values, empty prefix stands for all of the values
+     * @param limit maximum number of the returned values
+     * @return the most popular values that start with given prefix
+     * @throws IllegalArgumentException if the prefix has non alphanumeric symbols, or the limit
+     *         is negative
+     * @throws IllegalStateException if the popularity is disabled
+     * @throws NullPointerException if the prefix is null
+     */
+    public List<String> popularValuesWithPrefix(String prefix, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit should not be negative.");
+        }
+
+        final PopularityIndex index = popularityIndex();
+        if (prefix.length() > 0) {
+            hashTrie().checkKey(prefix);
+        }
+
+        return Collections.unmodifiableList(spelled(index.popularValuesWithPrefix(fold(prefix), limit)));
+    }
+
+    private PopularityIndex popularityIndex() {
+        final PopularityIndex index = mPopularity;
+        if (index == null) {
+            throw new IllegalStateException("Popularity is not enabled.");
+        }
+
+        return index;
+    }
+
+    // Suffix Index
+
+    /**
+     * Enables index of the values by their suffixes, which is used by {@link #valuesWithSuffix(String)}
+     * and {@link #valuesWithPrefixAndSuffix(String, String)}.  The index is a mirrored trie of the
+     * reversed values, it is built from the current values and is kept up to date on modifications
+     * of the tree.  Adding or removing a value costs another O(S) update of the mirrored trie, where
+     * S is length of the value.  Bulk operations rebuild the whole index.  The index is not
+     * serialized or cloned.
+     *
+     * Operation time complexity is O(T), where T is total length of the values.
+     *
+     * @throws UnsupportedOperationException if this tree is unmodifiable, since its values
+     *         could be modified through another tree
+     */
+    public void enableSuffixIndex() {
+        mSuffixIndex = new SuffixIndex(mTrie.keys(), modifiableHashTrie().alphabet());
+    }
+
+    /**
+     * Disables index of the values by their suffixes and releases its memory.
+     */
+    public void disableSuffixIndex() {
+        mSuffixIndex = null;
+    }
+
+    /**
+     * Returns a {@link Set} view of the values contained in this tree that end with given suffix.
+     * The set is backed by the tree, so changes to the tree are reflected in the set, vice-versa
+     * is not supported.  If the tree is modified while an iteration over the set is in progress
+     * the results of the iteration are undefined.
+     *
+     * Operation time complexity is O(S) if the suffix index is enabled, where S is length of the
+     * suffix, and iteration walks just the values with the suffix, see {@link #enableSuffixIndex()}.
+     * Otherwise iteration checks every value of the tree.
+     *
+     * @param suffix that is used to filter values
+     * @return a set view of the values contained in this tree that end with given suffix
+     * @throws IllegalArgumentException if the suffix is empty or has non alphanumeric symbols
+     * @throws NullPointerException if the suffix is null
+     */
+    public Set<String> valuesWithSuffix(String suffix) {
+        if (mSuffixIndex != null) {
+            return spelled(mSuffixIndex.valuesWithSuffix(fold(suffix)));
+        }
+
+        checkFragment(suffix);
+        return spelled(SuffixIndex.filter(mTrie.keys(), "", fold(suffix)));
+    }
+
+    /**
+     * Returns a {@link Set} view of the values contained in this tree that start with given prefix
+     * and end with given suffix, the prefix and suffix could overlap.  The set is backed by the tree,
+     * see {@link #valuesWithSuffix(String)}.
+     *
+     * Operation time complexity is O(S), where S is length of the prefix or suffix.  Iteration walks
+     * the values with the suffix if the suffix index is enabled and the suffix is longer than the
+     * prefix, otherwise it walks the values with the prefix.
+     *
+     * @param prefix that is used to filter values
+     * @param suffix that is used to filter values
+     * @return a set view of the values contained in this tree that start with given prefix and end
+     *         with given suffix
+     * @throws IllegalArgumentException if the prefix or suffix is empty or has non alphanumeric symbols
+     * @throws NullPointerException if the prefix or suffix is null
+     */
+    public Set<String> valuesWithPrefixAndSuffix(String prefix, String suffix) {
+        if (mSuffixIndex != null && suffix.length() > prefix.length()) {
+            checkFragment(prefix);
+            return spelled(SuffixIndex.filter(mSuffixIndex.valuesWithSuffix(fold(suffix)), fold(prefix), ""));
+        }
+
+        checkFragment(suffix);
+        return spelled(SuffixIndex.filter(mTrie.keysWithPrefix(prefix), "", fold(suffix)));
+    }
+
+    /**
+     * Returns {@code true} if the prefix cache or any of the indices is enabled.
+     */
+    private boolean hasIndices() {
+        return mPrefixCache != null || mSubstringIndex != null || mSuffixIndex != null || mPopularity != null;
+    }
+
+    /**
+     * Folds the value as the backing trie folds its keys.
+     */
+    private String fold(String value) {
+        final HashTrie<Boolean> hashTrie = HashTrie.asHashTrie(mTrie);
+        return hashTrie == null ? value : hashTrie.folding().fold(value);
+    }
+
+    private static void checkFragment(String fragment) {
+        if (fragment.length() == 0) {
+            throw new IllegalArgumentException("Fragment could not be empty string.");
+        }
+    }
+
+    // Substring Index
+
+    /**
+     * Enables index of the substrings of the values, which is used by {@link #valuesContaining(String)}.
+     * The index is built from the current values and is kept up to date on modifications of the tree.
+     *
+     * <p>The index is a generalized suffix automaton, which has at most 2T states, where T is total
+     * length of the values.  Adding a value takes amortized O(S) time, where S is length of the value.
+     * Removing a value takes O(1) time, the index is rebuilt once there are more removed values than
+     * live ones.  Bulk operations rebuild the whole index.  The index is not serialized or cloned.
+     *
+     * Operation time complexity is O(T), where T is total length of the values.
+     *
+     * @throws UnsupportedOperationException if this tree is unmodifiable, since its values
+     *         could be modified through another tree
+     */
+    public void enableSubstringIndex() {
+        modifiableHashTrie();
+
+        mSubstringIndex = new SubstringIndex(mTrie.keys());
+    }
+
+    /**
+     * Disables index of the substrings of the values and releases its memory.
+     */
+    public void disableSubstringIndex() {
+        mSubstringIndex = null;
+    }
+
+    /**
+     * Returns iterator over the values of this tree that contain the fragment, in no particular
+     * order.  Values are found lazily, while the iterator is advanced.  The iterator does not
+     * support removal and fails if the tree is modified while the iteration is in progress.
+     *
+     * Operation time complexity is O(S + K) if the substring index is enabled, where S is length
+     * of the fragment and K is number of the occurrences of the fragment in the values, see
+     * {@link #enableSubstringIndex()}.  Otherwise every value is checked, which takes O(T), where
+     * T is total length of the values.
+     *
+     * @param fragment substring of the values
+     * @return iterator over the values that contain the fragment
+     * @throws IllegalArgumentException if the fragment is empty
+     * @throws NullPointerException if the fragment is null
+     */
+    public Iterator<String> valuesContaining(String fragment) {
+        checkFragment(fragment);
+
+        if (mSubstringIndex != null) {
+            return spelled(mSubstringIndex.valuesContaining(fold(fragment)));
+        }
+
+        return spelled(SubstringIndex.scan(mTrie.keys().iterator(), fold(fragment)));
+    }
+
+    /**
+     * Returns view of the folded values that returns their original spelling.
+     */
+    private Set<String> spelled(Set<String> values) {
+        return mSpellings == null ? values : new SpelledSet(values, mSpellings);
+    }
+
+    private Iterator<String> spelled(Iterator<String> values) {
+        return mSpellings == null ? values : new SpelledIterator(values, mSpellings);
+    }
+
+    private List<String> spelled(List<String> values) {
+        if (mSpellings == null) {
+            return values;
+        }
+
+        final List<String> spelledValues = new ArrayList<>(values.size());
+        for (String value : values) {
+            spelledValues.add(mSpellings.get(value));
+        }
+
+        return spelledValues;
+    }
+
+    private KeyPage spelled(KeyPage page) {
+        return mSpellings == null ? page : page.withKeys(spelled(page.keys()));
+    }
+
+    /**
+     * Returns backing trie if it is a {@link HashTrie}, which supports structural operations.
+     *
+     * @throws UnsupportedOperationException if the tree is backed up by another trie
+     */
+    final HashTrie<Boolean> modifiableHashTrie() {
+        if (!(mTrie instanceof HashTrie)) {
+            throw new UnsupportedOperationException();
+        }
+
+        return (HashTrie<Boolean>) mTrie;
     }
 
     // Views
@@ -148,7 +790,7 @@ public class PrefixTree implements Serializable, Cloneable {
      * @return a collection view of the values contained in this tree
      */
     public Set<String> values() {
-        return mTrie.keys();
+        return spelled(mTrie.keys());
     }
 
     /**
@@ -165,13 +807,189 @@ public class PrefixTree implements Serializable, Cloneable {
      * @return a collection view of the values contained in this tree that start with given prefix
      */
     public Set<String> valuesWithPrefix(String prefix) {
-        return mTrie.keysWithPrefix(prefix);
+        return spelled(mTrie.keysWithPrefix(prefix));
+    }
+
+    /**
+     * Returns iterator over the values of this tree that start with given prefix, shortest values
+     * first and values of the same length in ascending order of their symbols, see
+     * {@link HashTrie#keysWithPrefixByLength(String)}.
+     *
+     * Operation time complexity is O(S), where S is length of prefix.  Finding the next value visits
+     * the nodes that are not deeper than the value.
+     *
+     * @param prefix that is used to filter values, empty prefix stands for all of the values
+     * @return iterator over the values that start with given prefix, in order of their lengths
+     * @throws IllegalArgumentException if the prefix has non alphanumeric symbols
+     * @throws NullPointerException if the prefix is null
+     * @throws UnsupportedOperationException if the tree is backed up by another trie
+     */
+    public Iterator<String> valuesWithPrefixByLength(String prefix) {
+        return spelled(hashTrie().keysWithPrefixByLength(prefix));
+    }
+
+    /**
+     * Returns at most {@code limit} shortest values of this tree that start with given prefix,
+     * see {@link HashTrie#shortestKeysWithPrefix(String, int)}.
+     *
+     * Operation time complexity is O(S + M), where S is length of prefix and M is number of nodes
+     * that are not deeper than the longest of the returned values.
+     *
+     * @param prefix that is used to filter values, empty prefix stands for all of the values
+     * @param limit maximum number of the returned values
+     * @return iterator over the shortest values that start with given prefix
+     * @throws IllegalArgumentException if the prefix has non alphanumeric symbols, or the limit
+     *         is negative
+     * @throws NullPointerException if the prefix is null
+     * @throws UnsupportedOperationException if the tree is backed up by another trie
+     */
+    public Iterator<String> shortestValuesWithPrefix(String prefix, int limit) {
+        return spelled(hashTrie().shortestKeysWithPrefix(prefix, limit));
+    }
+
+    /**
+     * Returns the first page of at most {@code limit} values of this tree that start with given
+     * prefix, in ascending order of their symbols, see {@link HashTrie#keysWithPrefix(String, int)}.
+     *
+     * Operation time complexity is O(S + L * D * F), where S is length of prefix, L is the limit,
+     * D is length of the longest value with the prefix and F is average fan-out of the nodes.
+     *
+     * @param prefix that is used to filter values, empty prefix stands for all of the values
+     * @param limit maximum number of the values of the page
+     * @return the first page of the values that start with given prefix
+     * @throws IllegalArgumentException if the prefix has non alphanumeric symbols, or the limit
+     *         is not positive
+     * @throws NullPointerException if the prefix is null
+     * @throws UnsupportedOperationException if the tree is backed up by another trie
+     */
+    public KeyPage valuesPage(String prefix, int limit) {
+        return spelled(hashTrie().keysWithPrefix(prefix, limit));
+    }
+
+    /**
+     * Returns the page of at most {@code limit} values that follows the page the cursor is taken
+     * from, see {@link HashTrie#keysWithPrefix(KeyPage.Cursor, int)}.  The cursor stays valid
+     * across modifications of this tree.
+     *
+     * Operation time complexity is O((L + 1) * D * F), where L is the limit, D is length of the
+     * longest value with the prefix and F is average fan-out of the nodes.
+     *
+     * @param cursor cursor of the previous page
+     * @param limit maximum number of the values of the page
+     * @return the page of the values that follows the previous page
+     * @throws IllegalArgumentException if the limit is not positive
+     * @throws NullPointerException if the cursor is null
+     * @throws UnsupportedOperationException if the tree is backed up by another trie
+     */
+    public KeyPage valuesPage(KeyPage.Cursor cursor, int limit) {
+        return spelled(hashTrie().keysWithPrefix(cursor, limit));
+    }
+
+    /**
+     * Returns {@link HashTrie} that backs up this tree, directly or through an unmodifiable view.
+     *
+     * @throws UnsupportedOperationException if the tree is backed up by another trie
+     */
+    private HashTrie<Boolean> hashTrie() {
+        final HashTrie<Boolean> trie = HashTrie.asHashTrie(mTrie);
+        if (trie == null) {
+            throw new UnsupportedOperationException();
+        }
+
+        return trie;
+    }
+
+    /**
+     * Writes the values of this tree that start with given prefix to the channel as UTF-8,
+     * with the separator between the values, see
+     * {@link HashTrie#writePrefixTo(String, WritableByteChannel, String)}.
+     *
+     * Operation time complexity is O(S + M), where S is length of prefix and M is number of
+     * nodes in the subtree of the prefix.
+     *
+     * @param prefix that is used to filter values, empty prefix stands for all of the values
+     * @param channel channel that receives the values
+     * @param separator separator of the values, for example a line feed
+     * @return number of the written values
+     * @throws IOException if the values could not be written
+     * @throws IllegalArgumentException if the prefix has non alphanumeric symbols
+     * @throws NullPointerException if the prefix, channel or separator is null
+     */
+    public long writePrefixTo(String prefix, WritableByteChannel channel, String separator) throws IOException {
+        final HashTrie<Boolean> trie = HashTrie.asHashTrie(mTrie);
+        if (trie != null && mSpellings == null) {
+            return trie.writePrefixTo(prefix, channel, separator);
+        }
+
+        if (channel == null) {
+            throw new NullPointerException("Channel could not be null.");
+        }
+
+        final KeyWriter writer = new KeyWriter(channel, separator);
+        for (String value : prefix.length() > 0 ? valuesWithPrefix(prefix) : values()) {
+            writer.append(value);
+            writer.writeKey();
+            writer.reset();
+        }
+
+        writer.flush();
+        return writer.count();
+    }
+
+    /**
+     * Writes the values of this tree that start with given prefix to the stream as UTF-8,
+     * with the separator between the values, see
+     * {@link HashTrie#writePrefixTo(String, OutputStream, String)}.
+     *
+     * Operation time complexity is O(S + M), where S is length of prefix and M is number of
+     * nodes in the subtree of the prefix.
+     *
+     * @param prefix that is used to filter values, empty prefix stands for all of the values
+     * @param stream stream that receives the values
+     * @param separator separator of the values, for example a line feed
+     * @return number of the written values
+     * @throws IOException if the values could not be written
+     * @throws IllegalArgumentException if the prefix has non alphanumeric symbols
+     * @throws NullPointerException if the prefix, stream or separator is null
+     */
+    public long writePrefixTo(String prefix, OutputStream stream, String separator) throws IOException {
+        return writePrefixTo(prefix, Channels.newChannel(stream), separator);
+    }
+
+    /**
+     * Returns at most {@code limit} values of this tree that start with given prefix, in the
+     * order of {@link #valuesWithPrefix(String)}.  Unlike the view, the list is a snapshot, it
+     * does not reflect later modifications of the tree.
+     *
+     * Operation time complexity is O(S + M), where S is length of prefix and M is number of nodes
+     * that are visited to find the values.  If the results for the prefix are cached, time
+     * complexity is O(S), see {@link #enablePrefixCache(int, int)}.
+     *
+     * @param prefix that is used to filter values
+     * @param limit maximum number of the returned values
+     * @return unmodifiable list of the first values that start with given prefix
+     * @throws IllegalArgumentException if the prefix is empty or has non alphanumeric symbols,
+     *         or the limit is negative
+     * @throws NullPointerException if the prefix is null
+     */
+    public List<String> valuesWithPrefix(String prefix, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit should not be negative.");
+        }
+
+        final List<String> values = mPrefixCache == null
+                ? PrefixCache.collect(mTrie, prefix, limit).mValues
+                : mPrefixCache.valuesWithPrefix(mTrie, fold(prefix), limit);
+
+        return mSpellings == null ? values : Collections.unmodifiableList(spelled(values));
     }
 
     /**
      * Returns a shallow copy of this {@code PrefixTree} instance: the values are not cloned.
+     * The nodes of a tree that is backed by a {@link HashTrie} are copied one by one, see
+     * {@link HashTrie#clone()}.
      *
-     * Operation time complexity is O(N), where N is number of values in a tree.
+     * Operation time complexity is O(M), where M is number of nodes in a tree.
      *
      * @return a shallow copy of this tree
      */
@@ -186,10 +1004,18 @@ public class PrefixTree implements Serializable, Cloneable {
             throw new InternalError(excep);
         }
 
-        tree.mTrie = new HashTrie<>();
+        final HashTrie<Boolean> hashTrie = HashTrie.asHashTrie(mTrie);
+        tree.mTrie = hashTrie == null ? new HashTrie<Boolean>() : hashTrie.clone();
+        tree.mSpellings = hashTrie == null || mSpellings == null ? null : HashTrie.asHashTrie(mSpellings).clone();
+        tree.mPrefixCache = null;
+        tree.mSubstringIndex = null;
+        tree.mSuffixIndex = null;
+        tree.mPopularity = null;
 
-        for (String value : values()) {
-            tree.add(value);
+        if (hashTrie == null) {
+            for (String value : values()) {
+                tree.add(value);
+            }
         }
 
         return tree;
@@ -201,7 +1027,8 @@ public class PrefixTree implements Serializable, Cloneable {
      * have same values.  More formally, two trees {@code t1} and
      * {@code t2} are same if {@code t1.mTrie().equals(t2.mTrie)}.
      *
-     * Operation time complexity is O(N), where N is number of values in a tree.
+     * Operation time complexity is O(N), where N is number of nodes in a tree, trees
+     * with different hash codes are compared in O(1).
      *
      * @param object the object to be compared for equality with this tree
      *
@@ -222,7 +1049,7 @@ public class PrefixTree implements Serializable, Cloneable {
      * Returns the hash code value for this tree. The hash code of a tree is
      * defined to be hashcode of backing trie.
      *
-     * Operation time complexity is O(N), where N is number of values in a tree.
+     * Operation time complexity is O(1), since {@link HashTrie} caches its hash code.
      *
      * @return the hash code value for this tree.
      *
@@ -268,4 +1095,61 @@ public class PrefixTree implements Serializable, Cloneable {
         }
     }
 
+    /**
+     * Set view of the folded values that returns their original spelling.
+     */
+    private static final class SpelledSet extends AbstractSet<String> {
+
+        private final Set<String> mValues;
+
+        private final Trie<String> mSpellings;
+
+        SpelledSet(Set<String> values, Trie<String> spellings) {
+            mValues = values;
+            mSpellings = spellings;
+        }
+
+        @Override
+        public int size() {
+            return mValues.size();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new SpelledIterator(mValues.iterator(), mSpellings);
+        }
+
+    }
+
+    /**
+     * Iterator over the folded values that returns their original spelling.
+     */
+    private static final class SpelledIterator implements Iterator<String> {
+
+        private final Iterator<String> mValues;
+
+        private final Trie<String> mSpellings;
+
+        SpelledIterator(Iterator<String> values, Trie<String> spellings) {
+            mValues = values;
+            mSpellings = spellings;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mValues.hasNext();
+        }
+
+        @Override
+        public String next() {
+            return mSpellings.get(mValues.next());
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
 }
@@ -0,0 +1,675 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread safe {@code Trie} that partitions the keys into <i>shards</i> by ranges of the keys,
+ * each shard is a {@link HashTrie} guarded by its own read-write lock.  Writers of the keys
+ * from different ranges do not contend, readers of a shard do not block each other.
+ *
+ * <p>Initially the ranges are split by leading symbol of the keys, evenly over the symbols
+ * of the alphabet.  Once a shard has more than {@code maxShardSize} mappings it is split
+ * in two at its median key, while the other shards stay available.  Operations that meet
+ * the split shard retry on the new ones.
+ *
+ * <p>Views are snapshots that are taken when a view is requested, keys are iterated in
+ * ascending order.  Each shard is read under its lock, but shards are read one after another,
+ * so a view is consistent within a shard, not across the shards.  Shards that intersect the
+ * range of a prefix are read in parallel by the executor, the calling thread reads the first
+ * of them.  {@link #size()} sums sizes of the shards.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @author Dmytro Ivanov
+ * @see HashTrie
+ */
+@SuppressWarnings({"PMD.GodClass", "PMD.DoNotUseThreads", "PMD.ExcessiveImports", "PMD.CompareObjectsWithEquals",
+        "PMD.AvoidInstantiatingObjectsInLoops", "PMD.ArrayIsStoredDirectly"})
+public final class ShardedTrie<V> extends AbstractTrie<V> implements Trie<V> {
+
+    /**
+     * Default number of the initial shards.
+     */
+    public static final int DEFAULT_SHARDS = 16;
+
+    /**
+     * Default number of the mappings in a shard that causes split of the shard.
+     */
+    public static final int DEFAULT_MAX_SIZE = 256 * 1024;
+
+    private static final Comparator<Map.Entry<String, ?>> KEY_ORDER = new Comparator<Map.Entry<String, ?>>() {
+        @Override
+        public int compare(Map.Entry<String, ?> first, Map.Entry<String, ?> second) {
+            return first.getKey().compareTo(second.getKey());
+        }
+    };
+
+    private final KeyAlphabet mAlphabet;
+
+    private final int mMaxShardSize;
+
+    private final ExecutorService mExecutor;
+
+    /**
+     * Serializes splits of the shards.
+     */
+    private final Object mSplitLock = new Object();
+
+    private volatile Layout<V> mLayout;
+
+    /**
+     * Constructs empty trie with the default number of shards and shard size, whose
+     * keys are letters or digits.  Prefix queries are run by a shared pool of daemon
+     * threads, one per available processor.
+     */
+    public ShardedTrie() {
+        this(KeyAlphabet.UNICODE);
+    }
+
+    /**
+     * Constructs empty trie with the default number of shards and shard size, whose
+     * keys consist of symbols of the given alphabet.  Prefix queries are run by a shared
+     * pool of daemon threads, one per available processor.
+     *
+     * @param alphabet alphabet of the keys
+     * @throws NullPointerException if the alphabet is null
+     */
+    public ShardedTrie(KeyAlphabet alphabet) {
+        this(alphabet, DEFAULT_SHARDS, DEFAULT_MAX_SIZE, SharedExecutor.EXECUTOR);
+    }
+
+    /**
+     * Constructs empty trie, whose keys consist of symbols of the given alphabet.  Number of
+     * the initial shards is at most number of the symbols that could lead a key.
+     *
+     * @param alphabet alphabet of the keys
+     * @param shards number of the initial shards
+     * @param maxShardSize number of the mappings in a shard that causes split of the shard
+     * @param executor executor that reads shards for the prefix queries, it is not shut down by the trie
+     * @throws NullPointerException if the alphabet or executor is null
+     * @throws IllegalArgumentException if the number of shards or shard size is not positive
+     */
+    public ShardedTrie(KeyAlphabet alphabet, int shards, int maxShardSize, ExecutorService executor) {
+        if (alphabet == null || executor == null) {
+            throw new NullPointerException();
+        }
+
+        if (shards <= 0 || maxShardSize <= 0) {
+            throw new IllegalArgumentException("Number of shards and size of a shard should be positive.");
+        }
+
+        mAlphabet = alphabet;
+        mMaxShardSize = maxShardSize;
+        mExecutor = executor;
+        mLayout = initialLayout(alphabet, shards);
+    }
+
+    /**
+     * Splits the keys by leading symbol, evenly over the symbols of the alphabet, or over ASCII
+     * letters and digits if the alphabet is not bitmap indexed.
+     */
+    private static <V> Layout<V> initialLayout(KeyAlphabet alphabet, int shards) {
+        final KeyAlphabet symbols = alphabet.isBitmapIndexed() ? alphabet : KeyAlphabet.ALPHANUMERIC;
+        final int count = Math.min(shards, symbols.size());
+
+        final String[] lowerBounds = new String[count];
+        final List<Shard<V>> initialShards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lowerBounds[i] = i == 0 ? "" : String.valueOf(symbols.symbolAt(i * symbols.size() / count));
+            initialShards.add(new Shard<>(new HashTrie<V>(alphabet)));
+        }
+
+        return new Layout<>(lowerBounds, Collections.unmodifiableList(initialShards));
+    }
+
+    // Query Operations
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(K), where K is number of shards.
+     */
+    @Override
+    public int size() {
+        Layout<V> layout;
+        int size;
+        do {
+            layout = mLayout;
+            size = 0;
+            for (Shard<V> shard : layout.mShards) {
+                final Lock lock = shard.mLock.readLock();
+                lock.lock();
+                try {
+                    size += shard.mTrie.size();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } while (layout != mLayout);
+
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(K), where K is number of shards.
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S + log(K)), where K is number of shards.
+     */
+    @Override
+    public boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S + log(K)), where K is number of shards.
+     */
+    @Override
+    public V get(String key) {
+        checkKey(key);
+
+        final Shard<V> shard = lockShard(key, false);
+        try {
+            return shard.mTrie.get(key);
+        } finally {
+            shard.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns number of the shards.
+     *
+     * @return number of the shards
+     */
+    public int shardCount() {
+        return mLayout.mShards.size();
+    }
+
+    // Modification Operations
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S + log(K)), where K is number of shards.  If the shard
+     * of the key grows beyond the maximum size, it is split, which takes O(M * log(M) * S),
+     * where M is number of the mappings in the shard.
+     */
+    @Override
+    public V put(String key, V value) {
+        checkKey(key);
+
+        final Shard<V> shard = lockShard(key, true);
+        V oldValue;
+        int size;
+        try {
+            oldValue = shard.mTrie.put(key, value);
+            size = shard.mTrie.size();
+        } finally {
+            shard.mLock.writeLock().unlock();
+        }
+
+        if (size > mMaxShardSize) {
+            split(shard);
+        }
+
+        return oldValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Operation time complexity is O(S + log(K)), where K is number of shards.
+     */
+    @Override
+    public V remove(String key) {
+        checkKey(key);
+
+        final Shard<V> shard = lockShard(key, true);
+        try {
+            return shard.mTrie.remove(key);
+        } finally {
+            shard.mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Shards are cleared one after another, the layout of the shards is kept.
+     */
+    @Override
+    public void clear() {
+        Layout<V> layout;
+        do {
+            layout = mLayout;
+            for (Shard<V> shard : layout.mShards) {
+                final Lock lock = shard.mLock.writeLock();
+                lock.lock();
+                try {
+                    if (!shard.mRetired) {
+                        shard.mTrie.clear();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } while (layout != mLayout);
+    }
+
+    private void checkKey(String key) {
+        mLayout.mShards.get(0).mTrie.checkKey(key);
+    }
+
+    /**
+     * Returns shard of the key locked for read or write, the shard is not retired.
+     */
+    private Shard<V> lockShard(String key, boolean write) {
+        Shard<V> shard;
+        Lock lock;
+        do {
+            shard = mLayout.shardOf(key);
+            lock = write ? shard.mLock.writeLock() : shard.mLock.readLock();
+            lock.lock();
+
+            if (shard.mRetired) {
+                lock.unlock();
+            }
+        } while (shard.mRetired);
+
+        return shard;
+    }
+
+    /**
+     * Splits the shard at its median key, if it is still too large.  The shard is retired,
+     * its trie is left as it is for the snapshots that are being taken.
+     */
+    private void split(Shard<V> shard) {
+        synchronized (mSplitLock) {
+            final Lock lock = shard.mLock.writeLock();
+            lock.lock();
+            try {
+                if (shard.mRetired || shard.mTrie.size() <= mMaxShardSize) {
+                    return;
+                }
+
+                final List<Map.Entry<String, V>> entries = new ArrayList<>(shard.mTrie.entrySet());
+                Collections.sort(entries, KEY_ORDER);
+
+                final int median = entries.size() / 2;
+                final Shard<V> lower = new Shard<>(new HashTrie<V>(mAlphabet));
+                final Shard<V> upper = new Shard<>(new HashTrie<V>(mAlphabet));
+                for (int i = 0; i < entries.size(); i++) {
+                    (i < median ? lower : upper).mTrie.put(entries.get(i).getKey(), entries.get(i).getValue());
+                }
+
+                mLayout = mLayout.split(shard, lower, upper, entries.get(median).getKey());
+                shard.mRetired = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Views
+
+    /**
+     * {@inheritDoc}
+     *
+     * Returns a snapshot of the keys in ascending order.
+     */
+    @Override
+    public Set<String> keys() {
+        return new KeySnapshot(snapshot(""));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Returns a snapshot of the keys in ascending order.  Shards that intersect the range
+     * of the prefix are read in parallel.
+     */
+    @Override
+    public Set<String> keysWithPrefix(String prefix) {
+        checkKey(prefix);
+
+        return new KeySnapshot(snapshot(prefix));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Returns a snapshot of the values in ascending order of their keys.
+     */
+    @Override
+    public Collection<V> values() {
+        final List<Map.Entry<String, V>> entries = snapshot("");
+
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                final Iterator<Map.Entry<String, V>> iterator = entries.iterator();
+
+                return new Iterator<V>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public V next() {
+                        return iterator.next().getValue();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Returns a snapshot of the mappings in ascending order of their keys.
+     */
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        final List<Map.Entry<String, V>> entries = snapshot("");
+
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    /**
+     * Returns unmodifiable list of the mappings whose keys start with the prefix, in ascending
+     * order of the keys.  Shards are read in parallel if there are many of them.  The calling
+     * thread reads the shards whose tasks were not started by the executor yet, so the query
+     * does not wait for a busy executor, even when it is run by a thread of the executor.
+     */
+    private List<Map.Entry<String, V>> snapshot(String prefix) {
+        final List<Shard<V>> shards = mLayout.shardsOf(prefix);
+
+        final List<FutureTask<List<Map.Entry<String, V>>>> tasks = new ArrayList<>(shards.size());
+        for (int i = 1; i < shards.size(); i++) {
+            final FutureTask<List<Map.Entry<String, V>>> task =
+                    new FutureTask<>(new ShardReader<>(shards.get(i), prefix));
+            mExecutor.execute(task);
+            tasks.add(task);
+        }
+
+        final List<Map.Entry<String, V>> entries = new ArrayList<>(new ShardReader<>(shards.get(0), prefix).call());
+        try {
+            for (FutureTask<List<Map.Entry<String, V>>> task : tasks) {
+                task.run();
+                entries.addAll(task.get());
+            }
+        } catch (InterruptedException excep) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Could not read the shards, the thread was interrupted.", excep);
+        } catch (ExecutionException excep) {
+            if (excep.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excep.getCause();
+            }
+
+            throw new IllegalStateException("Could not read the shards.", excep);
+        } finally {
+            for (FutureTask<?> task : tasks) {
+                task.cancel(false);
+            }
+        }
+
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Immutable ranges of the keys and their shards.
+     */
+    private static final class Layout<V> {
+
+        /**
+         * Least key of each shard in ascending order, the first one is empty string.
+         */
+        final String[] mLowerBounds;
+
+        final List<Shard<V>> mShards;
+
+        Layout(String[] lowerBounds, List<Shard<V>> shards) {
+            mLowerBounds = lowerBounds;
+            mShards = shards;
+        }
+
+        Shard<V> shardOf(String key) {
+            return mShards.get(indexOf(key));
+        }
+
+        private int indexOf(String key) {
+            final int index = Arrays.binarySearch(mLowerBounds, key);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        /**
+         * Returns shards that could have keys with the prefix.
+         */
+        List<Shard<V>> shardsOf(String prefix) {
+            int last = indexOf(prefix);
+            while (last + 1 < mLowerBounds.length && mLowerBounds[last + 1].startsWith(prefix)) {
+                last++;
+            }
+
+            return mShards.subList(indexOf(prefix), last + 1);
+        }
+
+        /**
+         * Returns layout where the shard is replaced by the lower and upper shards, the upper
+         * one starts from the given key.
+         */
+        Layout<V> split(Shard<V> shard, Shard<V> lower, Shard<V> upper, String upperBound) {
+            final int index = mShards.indexOf(shard);
+
+            final String[] lowerBounds = new String[mLowerBounds.length + 1];
+            System.arraycopy(mLowerBounds, 0, lowerBounds, 0, index + 1);
+            System.arraycopy(mLowerBounds, index + 1, lowerBounds, index + 2, mLowerBounds.length - index - 1);
+            lowerBounds[index + 1] = upperBound;
+
+            final List<Shard<V>> shards = new ArrayList<>(mShards);
+            shards.set(index, lower);
+            shards.add(index + 1, upper);
+
+            return new Layout<>(lowerBounds, Collections.unmodifiableList(shards));
+        }
+
+    }
+
+    /**
+     * Shard of the keys with its lock.
+     */
+    private static final class Shard<V> {
+
+        final HashTrie<V> mTrie;
+
+        final ReadWriteLock mLock = new ReentrantReadWriteLock();
+
+        /**
+         * {@code true} if the shard was split and is not a part of the layout anymore,
+         * is guarded by the lock.
+         */
+        boolean mRetired;
+
+        Shard(HashTrie<V> trie) {
+            mTrie = trie;
+        }
+
+    }
+
+    /**
+     * Reads the mappings of a shard whose keys start with the prefix, in ascending order.
+     */
+    private static final class ShardReader<V> implements Callable<List<Map.Entry<String, V>>> {
+
+        private final Shard<V> mShard;
+
+        private final String mPrefix;
+
+        ShardReader(Shard<V> shard, String prefix) {
+            mShard = shard;
+            mPrefix = prefix;
+        }
+
+        @Override
+        public List<Map.Entry<String, V>> call() {
+            final List<Map.Entry<String, V>> entries = new ArrayList<>();
+
+            final Lock lock = mShard.mLock.readLock();
+            lock.lock();
+            try {
+                if (mPrefix.length() == 0) {
+                    for (Map.Entry<String, V> entry : mShard.mTrie.entrySet()) {
+                        entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+                    }
+                } else {
+                    for (String key : mShard.mTrie.keysWithPrefix(mPrefix)) {
+                        entries.add(new AbstractMap.SimpleImmutableEntry<>(key, mShard.mTrie.get(key)));
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            Collections.sort(entries, KEY_ORDER);
+            return entries;
+        }
+
+    }
+
+    /**
+     * Snapshot of the keys in ascending order.
+     */
+    private static final class KeySnapshot extends AbstractSet<String> {
+
+        private final List<? extends Map.Entry<String, ?>> mEntries;
+
+        KeySnapshot(List<? extends Map.Entry<String, ?>> entries) {
+            mEntries = entries;
+        }
+
+        @Override
+        public boolean contains(Object object) {
+            return object instanceof String
+                    && Collections.binarySearch(mEntries, new AbstractMap.SimpleImmutableEntry<>((String) object, null),
+                    KEY_ORDER) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            final Iterator<? extends Map.Entry<String, ?>> iterator = mEntries.iterator();
+
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return iterator.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return mEntries.size();
+        }
+
+    }
+
+    /**
+     * Holder of the pool that is shared by the tries that are created without an executor,
+     * so the pool is started on the first use.
+     */
+    private static final class SharedExecutor {
+
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "ShardedTrie-fan-out");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        private SharedExecutor() {
+            // Not meant to be instantiated
+        }
+
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Iterator over the keys of a subtree of a {@link HashTrie}, shortest keys first and keys of
+ * the same length in ascending order of their symbols.  The nodes are visited breadth first,
+ * the children of each node in ascending order of their symbols, so the queue of the nodes
+ * is ordered by length of the keys and then by the keys.
+ *
+ * <p>The queue is bounded by the number of the keys that are still needed: everything that is
+ * queued after a node with value is returned after it, so once the queue has as many nodes
+ * with values as there are keys left, no more children are queued.  Without a limit the queue
+ * holds at most the nodes of two adjacent levels of the subtree.
+ *
+ * @author Dmytro Ivanov
+ * @see HashTrie#keysWithPrefixByLength(String)
+ */
+final class ShortestFirstIterator implements Iterator<String> {
+
+    /**
+     * Orders the children by their symbols.
+     */
+    private static final Comparator<Map.Entry<Character, ?>> SYMBOL_ORDER = new Comparator<Map.Entry<Character, ?>>() {
+        @Override
+        public int compare(Map.Entry<Character, ?> first, Map.Entry<Character, ?> second) {
+            return first.getKey() - second.getKey();
+        }
+    };
+
+    private final HashTrie<?> mTrie;
+
+    private final int mExpectedModCount;
+
+    private final Queue<Pending> mQueue = new ArrayDeque<>();
+
+    /**
+     * Number of the nodes with value in the queue.
+     */
+    private int mQueuedValues;
+
+    /**
+     * Number of the keys that are still to be found, the next key is already counted.
+     */
+    private int mRemaining;
+
+    private String mNext;
+
+    ShortestFirstIterator(HashTrie<?> trie, HashTrie.Node<?> node, String prefix, int limit) {
+        mTrie = trie;
+        mExpectedModCount = trie.mModCount;
+        mRemaining = limit;
+
+        if (node != null && limit > 0) {
+            mQueue.add(new Pending(prefix, node));
+            mQueuedValues = node.hasValue() ? 1 : 0;
+        }
+
+        advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return mNext != null;
+    }
+
+    @Override
+    public String next() {
+        if (mExpectedModCount != mTrie.mModCount) {
+            throw new ConcurrentModificationException();
+        }
+
+        if (mNext == null) {
+            throw new NoSuchElementException();
+        }
+
+        final String key = mNext;
+        advance();
+
+        return key;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Polls the queue up to the next node with value and queues children of the polled nodes.
+     */
+    private void advance() {
+        mNext = null;
+
+        while (mNext == null && mRemaining > 0 && !mQueue.isEmpty()) {
+            final Pending pending = mQueue.poll();
+            if (pending.mNode.hasValue()) {
+                mQueuedValues--;
+                mRemaining--;
+                mNext = pending.mKey;
+            }
+
+            if (mQueuedValues < mRemaining) {
+                queueChildren(pending);
+            }
+        }
+    }
+
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private void queueChildren(Pending pending) {
+        final List<Map.Entry<Character, ? extends HashTrie.Node<?>>> children =
+                new ArrayList<Map.Entry<Character, ? extends HashTrie.Node<?>>>(
+                        pending.mNode.children(mTrie.mAlphabet));
+        Collections.sort(children, SYMBOL_ORDER);
+
+        for (Map.Entry<Character, ? extends HashTrie.Node<?>> child : children) {
+            if (mQueuedValues >= mRemaining) {
+                return;
+            }
+
+            mQueue.add(new Pending(pending.mKey + child.getKey(), child.getValue()));
+            mQueuedValues += child.getValue().hasValue() ? 1 : 0;
+        }
+    }
+
+    /**
+     * Node in the queue with its key.
+     */
+    private static final class Pending {
+
+        final String mKey;
+
+        final HashTrie.Node<?> mNode;
+
+        Pending(String key, HashTrie.Node<?> node) {
+            mKey = key;
+            mNode = node;
+        }
+
+    }
+
+}
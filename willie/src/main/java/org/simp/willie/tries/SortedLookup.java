@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Lookup of a batch of keys in a {@link HashTrie}, that traverses the nodes of a prefix
+ * shared by adjacent keys in sorted order just once.
+ *
+ * @author Dmytro Ivanov
+ * @see HashTrie#getAll(Collection, Object[])
+ * @see HashTrie#containsAll(Collection)
+ */
+final class SortedLookup {
+
+    private SortedLookup() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * Returns keys of the batch folded and in sorted order, after they are checked by the trie.
+     * If the positions are not {@code null}, they receive position of each sorted key in
+     * iteration order of the batch.
+     */
+    @SuppressWarnings("PMD.UseVarargs")
+    static String[] sortedBatch(HashTrie<?> trie, Collection<String> keys, int[] positions) {
+        final String[] sortedKeys = keys.toArray(new String[keys.size()]);
+        for (int i = 0; i < sortedKeys.length; i++) {
+            trie.checkKey(sortedKeys[i]);
+            sortedKeys[i] = trie.folding().fold(sortedKeys[i]);
+        }
+
+        if (positions == null) {
+            Arrays.sort(sortedKeys);
+        } else {
+            for (int i = 0; i < sortedKeys.length; i++) {
+                positions[i] = i;
+            }
+
+            mergeSort(sortedKeys.clone(), positions.clone(), sortedKeys, positions, 0, sortedKeys.length);
+        }
+
+        return sortedKeys;
+    }
+
+    /**
+     * Sorts the range of the keys along with their positions, both pairs of arrays hold the same
+     * range, sorted result is stored into the target arrays and the source arrays are scratch.
+     */
+    @SuppressWarnings({"PMD.UseVarargs", "PMD.AvoidLiteralsInIfCondition"})
+    private static void mergeSort(String[] sourceKeys, int[] sourcePositions,
+                                  String[] targetKeys, int[] targetPositions, int start, int end) {
+        if (end - start < 2) {
+            return;
+        }
+
+        final int middle = (start + end) >>> 1;
+        mergeSort(targetKeys, targetPositions, sourceKeys, sourcePositions, start, middle);
+        mergeSort(targetKeys, targetPositions, sourceKeys, sourcePositions, middle, end);
+
+        int left = start;
+        int right = middle;
+        for (int i = start; i < end; i++) {
+            if (right >= end || left < middle && sourceKeys[left].compareTo(sourceKeys[right]) <= 0) {
+                targetKeys[i] = sourceKeys[left];
+                targetPositions[i] = sourcePositions[left++];
+            } else {
+                targetKeys[i] = sourceKeys[right];
+                targetPositions[i] = sourcePositions[right++];
+            }
+        }
+    }
+
+    /**
+     * Looks up the sorted keys in the subtree of the root, resuming each lookup from the
+     * deepest node on the path of the previous key that is shared with the current key.
+     * Stores value of each key into the array at the position of the key, if the array is
+     * not {@code null}, and returns number of the keys that have a mapping.
+     */
+    @SuppressWarnings("PMD.UseVarargs")
+    static <V> int find(KeyAlphabet alphabet, HashTrie.Node<V> root, String[] sortedKeys, int[] positions, V[] values) {
+        int maxLength = 0;
+        for (String key : sortedKeys) {
+            maxLength = Math.max(maxLength, key.length());
+        }
+
+        // path[i] is node of the first i symbols of the previous key, for i up to depth
+        final HashTrie.Node<V>[] path = HashTrie.Node.newChildren(maxLength + 1);
+        path[0] = root;
+
+        int depth = 0;
+        int found = 0;
+        String previousKey = "";
+        for (int k = 0; k < sortedKeys.length; k++) {
+            final String key = sortedKeys[k];
+
+            depth = descend(alphabet, path, key, sharedLength(key, previousKey, Math.min(depth, key.length())));
+            previousKey = key;
+
+            final V value = depth == key.length() ? path[depth].mValue : null;
+            found += value == null ? 0 : 1;
+
+            if (values != null) {
+                values[positions[k]] = value;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Descends from the node of the first {@code depth} symbols of the key along the rest of
+     * the key, storing the nodes into the path.  Returns number of the symbols of the key
+     * that have nodes.
+     */
+    private static <V> int descend(KeyAlphabet alphabet, HashTrie.Node<V>[] path, String key, int depth) {
+        int keyIndex = depth;
+        while (keyIndex < key.length()) {
+            final HashTrie.Node<V> child = path[keyIndex].getChildFor(alphabet, key.charAt(keyIndex));
+            if (child == null) {
+                break;
+            }
+
+            keyIndex++;
+            path[keyIndex] = child;
+        }
+
+        return keyIndex;
+    }
+
+    /**
+     * Returns length of the common prefix of the keys, that is at most the limit.
+     */
+    private static int sharedLength(String key, String previousKey, int limit) {
+        int length = 0;
+        while (length < limit && key.charAt(length) == previousKey.charAt(length)) {
+            length++;
+        }
+
+        return length;
+    }
+
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable file of mappings sorted by key, that is written by {@link LsmTrie} when
+ * its memtable is flushed or segments are compacted.
+ *
+ * <p>The file is a sequence of records: the key, a flag that tells whether the record is
+ * a tombstone and the value encoded by a {@link ValueCodec}.  Records are grouped in blocks
+ * of {@link #BLOCK_RECORDS}, first key and offset of each block make a sparse index at the
+ * end of the file, followed by a fixed length footer.  Just the index is kept in memory,
+ * a lookup reads a single block.
+ *
+ * <p>Segment covers a range of sequence numbers, a flushed segment has a single number and
+ * a compacted segment covers the numbers of the merged segments.  The range is a part of the
+ * file name, so a segment that is covered by another one is known to be obsolete.
+ *
+ * <p>Segments are reference counted, a segment that is retired is closed and deleted once
+ * the last reader releases it.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @author Dmytro Ivanov
+ * @see LsmTrie
+ */
+@SuppressWarnings("PMD.GodClass")
+final class SortedSegment<V> implements Closeable {
+
+    /**
+     * Marker of the removed key.
+     */
+    static final Object TOMBSTONE = new Object();
+
+    static final int BLOCK_RECORDS = 64;
+
+    private static final int MAGIC = 0x53656753;
+
+    /**
+     * Index offset, number of records, number of blocks and magic.
+     */
+    private static final int FOOTER_BYTES = 20;
+
+    private static final Pattern FILE_NAME = Pattern.compile("segment-(\\d+)-(\\d+)\\.dat");
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path mFile;
+
+    private final FileChannel mChannel;
+
+    private final ValueCodec<V> mCodec;
+
+    private final long mMinSequence;
+
+    private final long mMaxSequence;
+
+    private final String[] mBlockKeys;
+
+    private final long[] mBlockOffsets;
+
+    private final long mIndexOffset;
+
+    private final int mCount;
+
+    /**
+     * Number of the readers plus one for the owner, the segment is closed when it drops to zero.
+     */
+    private final AtomicInteger mReferences = new AtomicInteger(1);
+
+    private SortedSegment(Path file, FileChannel channel, ValueCodec<V> codec, long minSequence,
+                          long maxSequence) throws IOException {
+        mFile = file;
+        mChannel = channel;
+        mCodec = codec;
+        mMinSequence = minSequence;
+        mMaxSequence = maxSequence;
+
+        final ByteBuffer footer = readBytes(channel.size() - FOOTER_BYTES, FOOTER_BYTES);
+        mIndexOffset = footer.getLong();
+        mCount = footer.getInt();
+        final int blocks = footer.getInt();
+        if (footer.getInt() != MAGIC || mIndexOffset < 0 || blocks < 0) {
+            throw new IOException("File " + file + " is not a segment.");
+        }
+
+        final ByteBuffer index = readBytes(mIndexOffset, (int) (channel.size() - FOOTER_BYTES - mIndexOffset));
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(index.array()));
+
+        mBlockKeys = new String[blocks];
+        mBlockOffsets = new long[blocks];
+        for (int i = 0; i < blocks; i++) {
+            mBlockKeys[i] = ValueCodecs.readString(input);
+            mBlockOffsets[i] = input.readLong();
+        }
+    }
+
+    /**
+     * Returns file name of the segment that covers the given range of sequence numbers.
+     */
+    static String fileName(long minSequence, long maxSequence) {
+        return "segment-" + minSequence + "-" + maxSequence + ".dat";
+    }
+
+    /**
+     * Returns {@code true} if the file name is a name of a segment.
+     */
+    static boolean isSegmentFile(Path file) {
+        return FILE_NAME.matcher(file.getFileName().toString()).matches();
+    }
+
+    /**
+     * Opens segment from the given file.
+     */
+    static <V> SortedSegment<V> open(Path file, ValueCodec<V> codec) throws IOException {
+        final Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IOException("File " + file + " is not a segment.");
+        }
+
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        boolean opened = false;
+        try {
+            final SortedSegment<V> segment = new SortedSegment<>(file, channel, codec,
+                    Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)));
+            opened = true;
+
+            return segment;
+        } finally {
+            if (!opened) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the entries, that are sorted by key and have either a value or {@link #TOMBSTONE},
+     * into a new segment in the directory.  The file appears atomically once it is complete.
+     */
+    static <V> SortedSegment<V> write(Path directory, long minSequence, long maxSequence,
+                                      Iterator<? extends Map.Entry<String, ?>> entries,
+                                      ValueCodec<V> codec) throws IOException {
+        final Path file = directory.resolve(fileName(minSequence, maxSequence));
+        final Path temporary = directory.resolve(file.getFileName() + TEMPORARY_SUFFIX);
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final CountingOutputStream counter = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)));
+            final DataOutputStream output = new DataOutputStream(counter);
+
+            final List<String> blockKeys = new ArrayList<>();
+            final List<Long> blockOffsets = new ArrayList<>();
+
+            int count = 0;
+            while (entries.hasNext()) {
+                final Map.Entry<String, ?> entry = entries.next();
+                if (count % BLOCK_RECORDS == 0) {
+                    blockKeys.add(entry.getKey());
+                    blockOffsets.add(counter.mCount);
+                }
+
+                writeRecord(output, entry, codec);
+                count++;
+            }
+
+            final long indexOffset = counter.mCount;
+            for (int i = 0; i < blockKeys.size(); i++) {
+                ValueCodecs.writeString(blockKeys.get(i), output);
+                output.writeLong(blockOffsets.get(i));
+            }
+
+            output.writeLong(indexOffset);
+            output.writeInt(count);
+            output.writeInt(blockKeys.size());
+            output.writeInt(MAGIC);
+            output.flush();
+
+            channel.force(true);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        WriteAheadLog.syncDirectory(directory);
+
+        return open(file, codec);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void writeRecord(DataOutputStream output, Map.Entry<String, ?> entry,
+                                        ValueCodec<V> codec) throws IOException {
+        ValueCodecs.writeString(entry.getKey(), output);
+
+        if (entry.getValue() == TOMBSTONE) {
+            output.writeBoolean(false);
+        } else {
+            output.writeBoolean(true);
+            codec.write((V) entry.getValue(), output);
+        }
+    }
+
+    long minSequence() {
+        return mMinSequence;
+    }
+
+    long maxSequence() {
+        return mMaxSequence;
+    }
+
+    /**
+     * Returns {@code true} if this segment covers sequence numbers of the other one.
+     */
+    boolean covers(SortedSegment<?> segment) {
+        return mMinSequence <= segment.mMinSequence && segment.mMaxSequence <= mMaxSequence;
+    }
+
+    int count() {
+        return mCount;
+    }
+
+    long fileSize() throws IOException {
+        return mChannel.size();
+    }
+
+    /**
+     * Returns value of the key, {@link #TOMBSTONE} if the key was removed, or
+     * {@code null} if the segment has no record of the key.
+     *
+     * Operation time complexity is O(log B + S), where B is number of blocks.
+     */
+    Object get(String key) throws IOException {
+        final int block = blockOf(key);
+        if (block < 0) {
+            return null;
+        }
+
+        final DataInputStream input = readBlock(block);
+        for (int i = 0; i < BLOCK_RECORDS && input.available() > 0; i++) {
+            final String recordKey = ValueCodecs.readString(input);
+            final Object value = readValue(input);
+
+            final int comparison = recordKey.compareTo(key);
+            if (comparison == 0) {
+                return value;
+            }
+
+            if (comparison > 0) {
+                break;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns iterator over the records whose keys start with the prefix, in key order.
+     * The iterator reads one block at a time.
+     */
+    Iterator<Map.Entry<String, Object>> iterator(String prefix) {
+        return new RecordIterator(prefix);
+    }
+
+    /**
+     * Returns index of the last block whose first key is not greater than the key, or -1.
+     */
+    private int blockOf(String key) {
+        final int index = Arrays.binarySearch(mBlockKeys, key);
+
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private DataInputStream readBlock(int block) throws IOException {
+        final long end = block + 1 < mBlockOffsets.length ? mBlockOffsets[block + 1] : mIndexOffset;
+        final ByteBuffer bytes = readBytes(mBlockOffsets[block], (int) (end - mBlockOffsets[block]));
+
+        return new DataInputStream(new ByteArrayInputStream(bytes.array()));
+    }
+
+    private Object readValue(DataInputStream input) throws IOException {
+        return input.readBoolean() ? mCodec.read(input) : TOMBSTONE;
+    }
+
+    private ByteBuffer readBytes(long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Segment " + mFile + " is truncated.");
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Registers a reader, returns {@code false} if the segment is already closed.
+     */
+    boolean acquire() {
+        int references = mReferences.get();
+        while (references > 0) {
+            if (mReferences.compareAndSet(references, references + 1)) {
+                return true;
+            }
+
+            references = mReferences.get();
+        }
+
+        return false;
+    }
+
+    /**
+     * Unregisters a reader, closes the segment if it was retired and this was the last reader.
+     */
+    void release() throws IOException {
+        if (mReferences.decrementAndGet() == 0) {
+            mChannel.close();
+            Files.deleteIfExists(mFile);
+        }
+    }
+
+    /**
+     * Deletes the segment once there are no readers.
+     */
+    void retire() throws IOException {
+        release();
+    }
+
+    /**
+     * Closes the segment without deleting the file.
+     */
+    @Override
+    public void close() throws IOException {
+        mReferences.set(0);
+        mChannel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "SortedSegment{" + mFile.getFileName() + ", records=" + mCount + "}";
+    }
+
+    /**
+     * Iterator over the records with the prefix, that reads the blocks lazily.
+     */
+    private final class RecordIterator implements Iterator<Map.Entry<String, Object>> {
+
+        private final String mPrefix;
+
+        private int mBlock;
+
+        private DataInputStream mInput;
+
+        private Map.Entry<String, Object> mNext;
+
+        RecordIterator(String prefix) {
+            mPrefix = prefix;
+            mBlock = Math.max(blockOf(prefix), 0) - 1;
+
+            advance();
+        }
+
+        @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+        private void advance() {
+            try {
+                mNext = null;
+                while (mNext == null && (mInput != null && mInput.available() > 0 || nextBlock())) {
+                    final String key = ValueCodecs.readString(mInput);
+                    final Object value = readValue(mInput);
+
+                    if (key.startsWith(mPrefix)) {
+                        mNext = new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    } else if (key.compareTo(mPrefix) > 0) {
+                        mBlock = mBlockOffsets.length;
+                        mInput = null;
+                    }
+                }
+            } catch (IOException excep) {
+                throw new IllegalStateException("Could not read segment " + mFile + ".", excep);
+            }
+        }
+
+        private boolean nextBlock() throws IOException {
+            mBlock++;
+            if (mBlock >= mBlockOffsets.length) {
+                mInput = null;
+                return false;
+            }
+
+            mInput = readBlock(mBlock);
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (mNext == null) {
+                throw new NoSuchElementException();
+            }
+
+            final Map.Entry<String, Object> next = mNext;
+            advance();
+
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Stream that counts written bytes, so offsets of the blocks are known.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        long mCount;
+
+        CountingOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            out.write(value);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            mCount += length;
+        }
+
+    }
+
+}
@@ -0,0 +1,559 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Index of the substrings of the values of a {@link PrefixTree}, see
+ * {@link PrefixTree#enableSubstringIndex()}.  The index is a generalized suffix automaton
+ * of the values: each state stands for a set of substrings that end at the same positions
+ * of the values, and the suffix links of the states form a tree, where a state is an
+ * ancestor of every state whose substrings it is a suffix of.
+ *
+ * <p>Every state that is reached by a prefix of a value records the value.  A value
+ * contains a fragment if and only if one of its prefixes ends with the fragment, that is
+ * the state of the prefix is in the subtree of the state of the fragment.  So a query walks
+ * the fragment from the initial state and then traverses the subtree, each leaf of the
+ * subtree is a prefix of a value.
+ *
+ * <p>Values are added online, children lists of the suffix link tree are kept up to date
+ * as states are created and split, so queries do not modify the index.  Removed values are
+ * skipped by the queries and the automaton is rebuilt once there are more removed values
+ * than live ones.
+ *
+ * @author Dmytro Ivanov
+ * @see PrefixTree#valuesContaining(String)
+ */
+@SuppressWarnings({"PMD.GodClass", "PMD.TooManyFields", "PMD.UseConcurrentHashMap"})
+final class SubstringIndex {
+
+    private static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Least number of the removed values that causes rebuild of the automaton.
+     */
+    private static final int MIN_REBUILD = 64;
+
+    // States: length of the longest substring, suffix link, first outgoing edge, first occurrence,
+    // and doubly linked children lists of the suffix link tree
+
+    private int mStates;
+
+    private int[] mLength = new int[INITIAL_CAPACITY];
+
+    private int[] mLink = new int[INITIAL_CAPACITY];
+
+    private int[] mFirstEdge = new int[INITIAL_CAPACITY];
+
+    private int[] mFirstOccurrence = new int[INITIAL_CAPACITY];
+
+    private int[] mFirstChild = new int[INITIAL_CAPACITY];
+
+    private int[] mNextSibling = new int[INITIAL_CAPACITY];
+
+    private int[] mPrevSibling = new int[INITIAL_CAPACITY];
+
+    // Edges: symbol, target state and next edge of the same source state
+
+    private int mEdges;
+
+    private char[] mEdgeSymbol = new char[INITIAL_CAPACITY];
+
+    private int[] mEdgeTarget = new int[INITIAL_CAPACITY];
+
+    private int[] mNextEdge = new int[INITIAL_CAPACITY];
+
+    /**
+     * Open addressing table from source state and symbol to index of the edge plus one.
+     */
+    private long[] mEdgeKeys = new long[INITIAL_CAPACITY * 2];
+
+    private int[] mEdgeSlots = new int[INITIAL_CAPACITY * 2];
+
+    // Occurrences: id of the value and next occurrence of the same state
+
+    private int mOccurrences;
+
+    private int[] mOccurrenceValue = new int[INITIAL_CAPACITY];
+
+    private int[] mNextOccurrence = new int[INITIAL_CAPACITY];
+
+    /**
+     * Values by id, removed values are {@code null}.
+     */
+    private final List<String> mValues = new ArrayList<>();
+
+    private final Map<String, Integer> mIds = new HashMap<>();
+
+    private int mModCount;
+
+    SubstringIndex(Iterable<String> values) {
+        reset();
+
+        for (String value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Adds substrings of the value to the index.
+     *
+     * Operation time complexity is amortized O(S), where S is length of the value.
+     */
+    void add(String value) {
+        if (mIds.containsKey(value)) {
+            return;
+        }
+
+        final int valueId = mValues.size();
+        mValues.add(value);
+        mIds.put(value, valueId);
+
+        int last = 0;
+        for (int i = 0; i < value.length(); i++) {
+            last = extend(last, value.charAt(i));
+            addOccurrence(last, valueId);
+        }
+
+        mModCount++;
+    }
+
+    /**
+     * Removes the value from the results of the queries.
+     *
+     * Operation time complexity is O(1), or O(T) when the automaton is rebuilt, where T
+     * is total length of the live values.
+     */
+    void remove(String value) {
+        final Integer valueId = mIds.remove(value);
+        if (valueId == null) {
+            return;
+        }
+
+        mValues.set(valueId, null);
+        mModCount++;
+
+        final int removed = mValues.size() - mIds.size();
+        if (removed >= MIN_REBUILD && removed > mIds.size()) {
+            final List<String> values = new ArrayList<>(mIds.keySet());
+            clear();
+
+            for (String live : values) {
+                add(live);
+            }
+        }
+    }
+
+    /**
+     * Removes all of the values from the index.
+     */
+    void clear() {
+        mValues.clear();
+        mIds.clear();
+        reset();
+        mModCount++;
+    }
+
+    /**
+     * Returns iterator over the values that contain the fragment, in no particular order.
+     *
+     * Operation time complexity is O(S) to find the fragment, iteration takes O(K), where
+     * K is number of the occurrences of the fragment in the values.
+     */
+    Iterator<String> valuesContaining(String fragment) {
+        int state = 0;
+        for (int i = 0; i < fragment.length() && state != NONE; i++) {
+            final int edge = findEdge(state, fragment.charAt(i));
+            state = edge == NONE ? NONE : mEdgeTarget[edge];
+        }
+
+        return new ValueIterator(state);
+    }
+
+    /**
+     * Returns iterator over the values that contain the fragment, which checks every value.
+     *
+     * Operation time complexity is O(T), where T is total length of the values.
+     */
+    static Iterator<String> scan(Iterator<String> values, String fragment) {
+        return new ScanIterator(values, fragment);
+    }
+
+    private void reset() {
+        mStates = 0;
+        mEdges = 0;
+        mOccurrences = 0;
+        Arrays.fill(mEdgeSlots, 0);
+        newState(0, NONE);
+    }
+
+    /**
+     * Extends the automaton by the symbol after the prefix whose state is {@code last},
+     * returns state of the extended prefix.
+     */
+    private int extend(int last, char symbol) {
+        final int existing = findEdge(last, symbol);
+        if (existing != NONE) {
+            final int target = mEdgeTarget[existing];
+            return mLength[last] + 1 == mLength[target] ? target : split(last, symbol, target);
+        }
+
+        final int state = newState(mLength[last] + 1, 0);
+
+        int source = last;
+        while (source != NONE && findEdge(source, symbol) == NONE) {
+            addEdge(source, symbol, state);
+            source = mLink[source];
+        }
+
+        if (source != NONE) {
+            final int target = mEdgeTarget[findEdge(source, symbol)];
+
+            // split could grow the arrays, so the link is stored after it
+            final int link = mLength[source] + 1 == mLength[target] ? target : split(source, symbol, target);
+            setLink(state, link);
+        }
+
+        return state;
+    }
+
+    /**
+     * Clones the target state for the substrings up to {@code length(source) + 1} symbols,
+     * redirects edges by the symbol from the source and its suffixes to the clone and
+     * returns the clone.
+     */
+    private int split(int source, char symbol, int target) {
+        final int clone = newState(mLength[source] + 1, mLink[target]);
+        for (int edge = mFirstEdge[target]; edge != NONE; edge = mNextEdge[edge]) {
+            addEdge(clone, mEdgeSymbol[edge], mEdgeTarget[edge]);
+        }
+
+        int state = source;
+        while (state != NONE) {
+            final int edge = findEdge(state, symbol);
+            if (edge == NONE || mEdgeTarget[edge] != target) {
+                break;
+            }
+
+            mEdgeTarget[edge] = clone;
+            state = mLink[state];
+        }
+
+        setLink(target, clone);
+        return clone;
+    }
+
+    private int newState(int length, int link) {
+        if (mStates == mLength.length) {
+            final int capacity = mStates * 2;
+            mLength = Arrays.copyOf(mLength, capacity);
+            mLink = Arrays.copyOf(mLink, capacity);
+            mFirstEdge = Arrays.copyOf(mFirstEdge, capacity);
+            mFirstOccurrence = Arrays.copyOf(mFirstOccurrence, capacity);
+            mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+            mNextSibling = Arrays.copyOf(mNextSibling, capacity);
+            mPrevSibling = Arrays.copyOf(mPrevSibling, capacity);
+        }
+
+        final int state = mStates++;
+        mLength[state] = length;
+        mLink[state] = NONE;
+        mFirstEdge[state] = NONE;
+        mFirstOccurrence[state] = NONE;
+        mFirstChild[state] = NONE;
+        setLink(state, link);
+
+        return state;
+    }
+
+    /**
+     * Sets suffix link of the state, moving the state to the children list of the new link.
+     */
+    private void setLink(int state, int link) {
+        final int oldLink = mLink[state];
+        if (oldLink != NONE) {
+            final int prev = mPrevSibling[state];
+            final int next = mNextSibling[state];
+            if (prev == NONE) {
+                mFirstChild[oldLink] = next;
+            } else {
+                mNextSibling[prev] = next;
+            }
+
+            if (next != NONE) {
+                mPrevSibling[next] = prev;
+            }
+        }
+
+        mLink[state] = link;
+        if (link != NONE) {
+            final int first = mFirstChild[link];
+            mPrevSibling[state] = NONE;
+            mNextSibling[state] = first;
+            if (first != NONE) {
+                mPrevSibling[first] = state;
+            }
+
+            mFirstChild[link] = state;
+        }
+    }
+
+    private void addOccurrence(int state, int valueId) {
+        if (mOccurrences == mOccurrenceValue.length) {
+            mOccurrenceValue = Arrays.copyOf(mOccurrenceValue, mOccurrences * 2);
+            mNextOccurrence = Arrays.copyOf(mNextOccurrence, mOccurrences * 2);
+        }
+
+        mOccurrenceValue[mOccurrences] = valueId;
+        mNextOccurrence[mOccurrences] = mFirstOccurrence[state];
+        mFirstOccurrence[state] = mOccurrences++;
+    }
+
+    private static long edgeKey(int state, char symbol) {
+        return (long) state << Character.SIZE | symbol;
+    }
+
+    private static int slotOf(long key, int mask) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    /**
+     * Returns index of the edge by the symbol from the state, or {@link #NONE}.
+     */
+    private int findEdge(int state, char symbol) {
+        final long key = edgeKey(state, symbol);
+        final int mask = mEdgeSlots.length - 1;
+
+        for (int slot = slotOf(key, mask); mEdgeSlots[slot] != 0; slot = slot + 1 & mask) {
+            if (mEdgeKeys[slot] == key) {
+                return mEdgeSlots[slot] - 1;
+            }
+        }
+
+        return NONE;
+    }
+
+    private void addEdge(int state, char symbol, int target) {
+        if (mEdges == mEdgeTarget.length) {
+            mEdgeSymbol = Arrays.copyOf(mEdgeSymbol, mEdges * 2);
+            mEdgeTarget = Arrays.copyOf(mEdgeTarget, mEdges * 2);
+            mNextEdge = Arrays.copyOf(mNextEdge, mEdges * 2);
+        }
+
+        mEdgeSymbol[mEdges] = symbol;
+        mEdgeTarget[mEdges] = target;
+        mNextEdge[mEdges] = mFirstEdge[state];
+        mFirstEdge[state] = mEdges;
+
+        if (mEdges * 2 >= mEdgeSlots.length) {
+            rehashEdges(mEdgeSlots.length * 2);
+        }
+
+        insertSlot(edgeKey(state, symbol), mEdges + 1);
+        mEdges++;
+    }
+
+    private void rehashEdges(int capacity) {
+        final long[] keys = mEdgeKeys;
+        final int[] slots = mEdgeSlots;
+
+        mEdgeKeys = new long[capacity];
+        mEdgeSlots = new int[capacity];
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != 0) {
+                insertSlot(keys[i], slots[i]);
+            }
+        }
+    }
+
+    private void insertSlot(long key, int value) {
+        final int mask = mEdgeSlots.length - 1;
+
+        int slot = slotOf(key, mask);
+        while (mEdgeSlots[slot] != 0) {
+            slot = slot + 1 & mask;
+        }
+
+        mEdgeKeys[slot] = key;
+        mEdgeSlots[slot] = value;
+    }
+
+    /**
+     * Traverses the subtree of the state of a fragment, returns every live value once.
+     */
+    private final class ValueIterator implements Iterator<String> {
+
+        private final int mExpectedModCount = mModCount;
+
+        /**
+         * Bit per id of the value that was returned, grows up to the largest returned id.
+         */
+        private long[] mReturned = new long[0];
+
+        private int[] mStack = new int[INITIAL_CAPACITY];
+
+        private int mDepth;
+
+        private int mOccurrence = NONE;
+
+        private String mNext;
+
+        ValueIterator(int state) {
+            if (state != NONE) {
+                mStack[mDepth++] = state;
+            }
+
+            mNext = findNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public String next() {
+            if (mExpectedModCount != mModCount) {
+                throw new ConcurrentModificationException();
+            }
+
+            if (mNext == null) {
+                throw new NoSuchElementException();
+            }
+
+            final String value = mNext;
+            mNext = findNext();
+            return value;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private String findNext() {
+            while (mOccurrence != NONE || mDepth > 0) {
+                if (mOccurrence == NONE) {
+                    visit(mStack[--mDepth]);
+                } else {
+                    final int valueId = mOccurrenceValue[mOccurrence];
+                    mOccurrence = mNextOccurrence[mOccurrence];
+
+                    final String value = mValues.get(valueId);
+                    if (value != null && markReturned(valueId)) {
+                        return value;
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Marks the value as returned, returns {@code false} if it was returned already.
+         */
+        private boolean markReturned(int valueId) {
+            final int word = valueId >>> 6;
+            if (word >= mReturned.length) {
+                mReturned = Arrays.copyOf(mReturned, Math.max(word + 1, mReturned.length * 2));
+            }
+
+            final long bit = 1L << valueId;
+            if ((mReturned[word] & bit) != 0) {
+                return false;
+            }
+
+            mReturned[word] |= bit;
+            return true;
+        }
+
+        private void visit(int state) {
+            for (int child = mFirstChild[state]; child != NONE; child = mNextSibling[child]) {
+                if (mDepth == mStack.length) {
+                    mStack = Arrays.copyOf(mStack, mDepth * 2);
+                }
+
+                mStack[mDepth++] = child;
+            }
+
+            mOccurrence = mFirstOccurrence[state];
+        }
+
+    }
+
+    /**
+     * Filters the values by the fragment, while the iterator is advanced.
+     */
+    private static final class ScanIterator implements Iterator<String> {
+
+        private final Iterator<String> mValues;
+
+        private final String mFragment;
+
+        private String mNext;
+
+        ScanIterator(Iterator<String> values, String fragment) {
+            mValues = values;
+            mFragment = fragment;
+            mNext = findNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public String next() {
+            if (mNext == null) {
+                throw new NoSuchElementException();
+            }
+
+            final String value = mNext;
+            mNext = findNext();
+            return value;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private String findNext() {
+            while (mValues.hasNext()) {
+                final String value = mValues.next();
+                if (value.contains(mFragment)) {
+                    return value;
+                }
+            }
+
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Index of the values of a {@link PrefixTree} by their suffixes, see
+ * {@link PrefixTree#enableSuffixIndex()}.  The index is a mirrored trie of the reversed
+ * values, so the values with a suffix are the reversed keys of the subtree of the reversed
+ * suffix.
+ *
+ * @author Dmytro Ivanov
+ * @see PrefixTree#valuesWithSuffix(String)
+ */
+final class SuffixIndex {
+
+    private final HashTrie<Boolean> mReversed;
+
+    SuffixIndex(Iterable<String> values, KeyAlphabet alphabet) {
+        mReversed = new HashTrie<>(alphabet);
+
+        for (String value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Operation time complexity is O(S), where S is length of the value.
+     */
+    void add(String value) {
+        mReversed.put(reverse(value), Boolean.TRUE);
+    }
+
+    /**
+     * Operation time complexity is O(S), where S is length of the value.
+     */
+    void remove(String value) {
+        mReversed.remove(reverse(value));
+    }
+
+    void clear() {
+        mReversed.clear();
+    }
+
+    /**
+     * Returns view of the values that end with the suffix.
+     *
+     * Operation time complexity is O(S), where S is length of the suffix.
+     */
+    Set<String> valuesWithSuffix(String suffix) {
+        final Set<String> reversed = mReversed.keysWithPrefix(reverse(suffix));
+
+        return new AbstractSet<String>() {
+            @Override
+            public boolean contains(Object object) {
+                return object instanceof String && reversed.contains(reverse((String) object));
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<String> iterator = reversed.iterator();
+
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return reverse(iterator.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return reversed.size();
+            }
+        };
+    }
+
+    /**
+     * Returns view of the values of the set that start with the prefix and end with the suffix,
+     * empty prefix or suffix matches any value.
+     */
+    static Set<String> filter(final Set<String> values, final String prefix, final String suffix) {
+        return new AbstractSet<String>() {
+            @Override
+            public boolean contains(Object object) {
+                return object instanceof String && matches((String) object) && values.contains(object);
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new FilterIterator(values.iterator());
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (Iterator<String> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+                    size++;
+                }
+
+                return size;
+            }
+
+            boolean matches(String value) {
+                return value.startsWith(prefix) && value.endsWith(suffix);
+            }
+
+            /**
+             * Skips the values that do not match, while the iterator is advanced.
+             */
+            final class FilterIterator implements Iterator<String> {
+
+                private final Iterator<String> mValues;
+
+                private String mNext;
+
+                FilterIterator(Iterator<String> values) {
+                    mValues = values;
+                    mNext = findNext();
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return mNext != null;
+                }
+
+                @Override
+                public String next() {
+                    if (mNext == null) {
+                        throw new NoSuchElementException();
+                    }
+
+                    final String value = mNext;
+                    mNext = findNext();
+                    return value;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+                private String findNext() {
+                    while (mValues.hasNext()) {
+                        final String value = mValues.next();
+                        if (matches(value)) {
+                            return value;
+                        }
+                    }
+
+                    return null;
+                }
+
+            }
+        };
+    }
+
+    /**
+     * Returns the string with symbols in reverse order.  Symbols of the values are letters
+     * or digits, which are never surrogates, so the symbols are reversed one by one.
+     */
+    static String reverse(String value) {
+        final char[] symbols = new char[value.length()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = value.charAt(symbols.length - 1 - i);
+        }
+
+        return new String(symbols);
+    }
+
+}
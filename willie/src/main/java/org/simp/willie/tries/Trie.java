@@ -143,6 +143,23 @@ public interface Trie<V> {
      */
     void clear();
 
+    /**
+     * Merges all of the mappings from the specified trie into this trie.
+     * Keys that are present just in the specified trie are added with their
+     * values.  For keys that are present in both tries the value becomes the
+     * result of {@code function.merge(oldValue, newValue)}; if the function
+     * returns {@code null} the mapping is removed.
+     *
+     * @param trie trie whose mappings are to be merged into this trie
+     * @param function function that resolves values of keys present in both tries
+     * @throws UnsupportedOperationException if the {@code merge} operation
+     *         is not supported by this trie
+     * @throws IllegalArgumentException if the specified trie has a key that is not
+     *         eligible to be the key of this trie
+     * @throws NullPointerException if the specified trie or function is null
+     */
+    void merge(Trie<? extends V> trie, MergeFunction<V> function);
+
     // Comparison and equals
 
     /**
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.util.Arrays;
+
+/**
+ * Report on the shape of a trie and memory retained by its nodes, that is taken
+ * by {@link HashTrie#stats()} in a single pass over the nodes.  The report is a
+ * snapshot, it does not reflect modifications of the trie made after it was taken.
+ *
+ * <p>Root of the trie is a node at depth zero, so depth of a node is length of its key.
+ * A <i>single-child chain</i> is a maximal sequence of non-root nodes that have no value
+ * and exactly one child, such nodes could be merged with their children by a trie that
+ * compresses paths.
+ *
+ * <p>Memory is estimated for 64-bit JVM with compressed references, for the node objects
+ * and the containers of their children.  Keys are not stored by the trie, values are
+ * not included in the estimate.
+ *
+ * @author Dmytro Ivanov
+ * @see HashTrie#stats()
+ */
+public final class TrieStats {
+
+    /**
+     * Representation of the node of a {@link HashTrie}.
+     */
+    public enum NodeType {
+
+        /**
+         * Node that keeps the children in a {@code HashMap}.
+         */
+        HASH_MAP,
+
+        /**
+         * Node that keeps the children in sorted arrays, see {@link HashTrie#compact()}.
+         */
+        SORTED_ARRAY,
+
+        /**
+         * Node that keeps the children in an array indexed by a bitmap, see {@link KeyAlphabet}.
+         */
+        BITMAP
+
+    }
+
+    private final long mNodeCount;
+
+    private final long mLeafCount;
+
+    private final long mValueCount;
+
+    private final long mChainCount;
+
+    private final long mChainNodeCount;
+
+    private final long[] mNodesPerDepth;
+
+    private final long[] mFanOut;
+
+    private final long[] mTypeCounts;
+
+    private final long[] mNodeBytes;
+
+    private final long[] mChildrenBytes;
+
+    private TrieStats(Collector collector) {
+        mNodeCount = collector.mNodeCount;
+        mLeafCount = collector.mLeafCount;
+        mValueCount = collector.mValueCount;
+        mChainCount = collector.mChainCount;
+        mChainNodeCount = collector.mChainNodeCount;
+        mNodesPerDepth = Arrays.copyOf(collector.mNodesPerDepth, collector.mMaxDepth + 1);
+        mFanOut = Arrays.copyOf(collector.mFanOut, collector.mMaxFanOut + 1);
+        mTypeCounts = collector.mTypeCounts;
+        mNodeBytes = collector.mNodeBytes;
+        mChildrenBytes = collector.mChildrenBytes;
+    }
+
+    /**
+     * Takes statistics of the subtree of the given node.
+     */
+    static TrieStats collect(HashTrie.Node<?> root) {
+        final Collector collector = new Collector();
+        collector.visit(root);
+
+        return new TrieStats(collector);
+    }
+
+    /**
+     * Returns number of the nodes, including the root.
+     *
+     * @return number of the nodes
+     */
+    public long nodeCount() {
+        return mNodeCount;
+    }
+
+    /**
+     * Returns number of the nodes with the given representation.
+     *
+     * @param type representation of the nodes
+     * @return number of the nodes with the given representation
+     */
+    public long nodeCount(NodeType type) {
+        return mTypeCounts[type.ordinal()];
+    }
+
+    /**
+     * Returns number of the nodes without children.
+     *
+     * @return number of the nodes without children
+     */
+    public long leafCount() {
+        return mLeafCount;
+    }
+
+    /**
+     * Returns number of the nodes with value, that is number of the mappings.
+     *
+     * @return number of the nodes with value
+     */
+    public long valueCount() {
+        return mValueCount;
+    }
+
+    /**
+     * Returns depth of the deepest node, that is length of the longest key.
+     *
+     * @return depth of the deepest node
+     */
+    public int maxDepth() {
+        return mNodesPerDepth.length - 1;
+    }
+
+    /**
+     * Returns histogram of the depths of the nodes, element at index {@code i} is
+     * number of the nodes at depth {@code i}.
+     *
+     * @return number of the nodes per depth
+     */
+    public long[] depthHistogram() {
+        return mNodesPerDepth.clone();
+    }
+
+    /**
+     * Returns histogram of the fan-outs of the nodes, element at index {@code i} is
+     * number of the nodes with {@code i} children.
+     *
+     * @return number of the nodes per number of the children
+     */
+    public long[] fanOutHistogram() {
+        return mFanOut.clone();
+    }
+
+    /**
+     * Returns number of the single-child chains.
+     *
+     * @return number of the single-child chains
+     */
+    public long singleChildChains() {
+        return mChainCount;
+    }
+
+    /**
+     * Returns number of the nodes that belong to the single-child chains.
+     *
+     * @return number of the nodes in the single-child chains
+     */
+    public long singleChildChainNodes() {
+        return mChainNodeCount;
+    }
+
+    /**
+     * Returns estimated number of bytes of the node objects with the given representation.
+     *
+     * @param type representation of the nodes
+     * @return estimated number of bytes of the node objects
+     */
+    public long nodeBytes(NodeType type) {
+        return mNodeBytes[type.ordinal()];
+    }
+
+    /**
+     * Returns estimated number of bytes of the containers of the children of the nodes
+     * with the given representation.
+     *
+     * @param type representation of the nodes
+     * @return estimated number of bytes of the containers of the children
+     */
+    public long childrenBytes(NodeType type) {
+        return mChildrenBytes[type.ordinal()];
+    }
+
+    /**
+     * Returns estimated number of bytes retained by the nodes and the containers of their children.
+     *
+     * @return estimated number of bytes retained by the trie
+     */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (NodeType type : NodeType.values()) {
+            bytes += nodeBytes(type) + childrenBytes(type);
+        }
+
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder stringBuilder = new StringBuilder(128);
+        stringBuilder.append("TrieStats{nodes=").append(mNodeCount)
+                .append(", leaves=").append(mLeafCount)
+                .append(", values=").append(mValueCount)
+                .append(", maxDepth=").append(maxDepth())
+                .append(", singleChildChains=").append(mChainCount)
+                .append(", singleChildChainNodes=").append(mChainNodeCount);
+
+        for (NodeType type : NodeType.values()) {
+            if (nodeCount(type) > 0) {
+                stringBuilder.append(", ").append(type).append("={nodes=").append(nodeCount(type))
+                        .append(", nodeBytes=").append(nodeBytes(type))
+                        .append(", childrenBytes=").append(childrenBytes(type)).append('}');
+            }
+        }
+
+        return stringBuilder.append(", estimatedBytes=").append(estimatedBytes()).append('}').toString();
+    }
+
+    /**
+     * Accumulates statistics while the nodes are visited.
+     */
+    @SuppressWarnings("PMD.TooManyFields")
+    private static final class Collector {
+
+        long mNodeCount;
+
+        long mLeafCount;
+
+        long mValueCount;
+
+        long mChainCount;
+
+        long mChainNodeCount;
+
+        int mMaxDepth;
+
+        int mMaxFanOut;
+
+        long[] mNodesPerDepth = new long[16];
+
+        long[] mFanOut = new long[16];
+
+        final long[] mTypeCounts = new long[NodeType.values().length];
+
+        final long[] mNodeBytes = new long[NodeType.values().length];
+
+        final long[] mChildrenBytes = new long[NodeType.values().length];
+
+        /**
+         * Nodes that are left to be visited, along with their depths and whether their parents
+         * belong to a single-child chain, so deep tries are not visited on the call stack.
+         */
+        HashTrie.Node<?>[] mPendingNodes = new HashTrie.Node<?>[16];
+
+        int[] mPendingDepths = new int[16];
+
+        boolean[] mPendingInChain = new boolean[16];
+
+        int mPendingCount;
+
+        /**
+         * Visits subtree of the root.
+         */
+        void visit(HashTrie.Node<?> root) {
+            addPending(root, 0, false);
+
+            while (mPendingCount > 0) {
+                final int pending = --mPendingCount;
+                final HashTrie.Node<?> node = mPendingNodes[pending];
+                mPendingNodes[pending] = null;
+
+                visit(node, mPendingDepths[pending], mPendingInChain[pending]);
+            }
+        }
+
+        /**
+         * Visits the node and adds its children to the pending nodes, {@code parentInChain} tells
+         * whether parent of the node belongs to a single-child chain.
+         */
+        private void visit(HashTrie.Node<?> node, int depth, boolean parentInChain) {
+            final int childrenCount = node.childrenCount();
+
+            mNodeCount++;
+            mMaxDepth = Math.max(mMaxDepth, depth);
+            mMaxFanOut = Math.max(mMaxFanOut, childrenCount);
+            mNodesPerDepth = increment(mNodesPerDepth, depth);
+            mFanOut = increment(mFanOut, childrenCount);
+
+            if (childrenCount == 0) {
+                mLeafCount++;
+            }
+
+            if (node.hasValue()) {
+                mValueCount++;
+            }
+
+            final int type = node.nodeType().ordinal();
+            mTypeCounts[type]++;
+            mNodeBytes[type] += node.nodeBytes();
+            mChildrenBytes[type] += node.childrenBytes();
+
+            final boolean inChain = depth > 0 && childrenCount == 1 && !node.hasValue();
+            if (inChain) {
+                mChainNodeCount++;
+
+                if (!parentInChain) {
+                    mChainCount++;
+                }
+            }
+
+            for (HashTrie.Node<?> child : node.childNodes()) {
+                addPending(child, depth + 1, inChain);
+            }
+        }
+
+        /**
+         * Adds the node to the pending nodes, growing the arrays if needed.
+         */
+        private void addPending(HashTrie.Node<?> node, int depth, boolean parentInChain) {
+            if (mPendingCount == mPendingNodes.length) {
+                final int length = mPendingCount * 2;
+                mPendingNodes = Arrays.copyOf(mPendingNodes, length);
+                mPendingDepths = Arrays.copyOf(mPendingDepths, length);
+                mPendingInChain = Arrays.copyOf(mPendingInChain, length);
+            }
+
+            mPendingNodes[mPendingCount] = node;
+            mPendingDepths[mPendingCount] = depth;
+            mPendingInChain[mPendingCount] = parentInChain;
+            mPendingCount++;
+        }
+
+        /**
+         * Increments element of the histogram, growing the histogram if needed.
+         */
+        private static long[] increment(long[] histogram, int index) {
+            final long[] result = index < histogram.length
+                    ? histogram
+                    : Arrays.copyOf(histogram, Math.max(index + 1, histogram.length * 2));
+
+            result[index]++;
+            return result;
+        }
+
+    }
+
+}
@@ -15,8 +15,11 @@
  */
 package org.simp.willie.tries;
 
+import java.io.Closeable;
 import java.io.Serializable;
+import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,6 +42,7 @@ import java.util.Set;
  * @see PrefixTree
  * @see Trie
  */
+@SuppressWarnings({"PMD.GodClass", "PMD.ExcessivePublicCount"})
 public final class Tries {
 
     private Tries() {
@@ -60,7 +64,9 @@ public final class Tries {
      * @return an unmodifiable view of the specified tree.
      */
     public static PrefixTree unmodifiablePrefixTree(PrefixTree prefixTree) {
-        return new PrefixTree(unmodifiableTrie(prefixTree.mTrie));
+        final Trie<String> spellings = prefixTree.mSpellings;
+        return new PrefixTree(unmodifiableTrie(prefixTree.mTrie),
+                spellings == null ? null : unmodifiableTrie(spellings));
     }
 
     /**
@@ -82,6 +88,118 @@ public final class Tries {
         return new UnmodifiableTrie<>(trie);
     }
 
+    /**
+     * Returns an immutable copy of the specified {@code PrefixTree}, see {@link #freeze(Trie)}.
+     * Queries of the returned tree that need a {@link HashTrie}, like suffix or substring
+     * queries, and attempts to modify it result in an {@code UnsupportedOperationException}.
+     *
+     * Operation time complexity is O(N * log(N) * S), where N is number of values and
+     * S is average length of the value.
+     *
+     * @param prefixTree the tree to be frozen.
+     * @return an immutable copy of the specified tree.
+     */
+    public static PrefixTree freeze(PrefixTree prefixTree) {
+        final Trie<String> spellings = prefixTree.mSpellings;
+        return new PrefixTree(freeze(prefixTree.mTrie), spellings == null ? null : freeze(spellings));
+    }
+
+    /**
+     * Returns an immutable copy of the specified trie, that is packed into arrays with
+     * sorted children and compressed paths.  Unlike {@link #unmodifiableTrie(Trie)} the
+     * returned trie does not read through to the specified trie, so it is not affected by
+     * later modifications of it, takes a few times less memory than a {@link HashTrie}
+     * and could be read by many threads without locks.  Keys are iterated in ascending
+     * order of their symbols and the hash code is computed once.  Attempts to modify the
+     * returned trie result in an {@code UnsupportedOperationException}.
+     * <p/>
+     * Keys of a {@link HashTrie} with {@link KeyFolding} are folded by the returned trie
+     * as well.  The returned trie will be serializable if the values are serializable.
+     *
+     * Operation time complexity is O(N * log(N) * S), where N is number of mappings and
+     * S is average length of the key.
+     *
+     * @param <V>  the class of the trie values
+     * @param trie the trie to be frozen.
+     * @return an immutable copy of the specified trie.
+     */
+    public static <V> Trie<V> freeze(Trie<V> trie) {
+        if (trie instanceof FrozenTrie) {
+            return trie;
+        }
+
+        return freeze(trie, false);
+    }
+
+    /**
+     * Returns an immutable copy of the specified {@code PrefixTree} that stores identical
+     * subtrees once, see {@link #freezeShared(Trie)}.
+     *
+     * Operation time complexity is O(N * log(N) * S), where N is number of values and
+     * S is average length of the value.
+     *
+     * @param prefixTree the tree to be frozen.
+     * @return an immutable copy of the specified tree.
+     */
+    public static PrefixTree freezeShared(PrefixTree prefixTree) {
+        final Trie<String> spellings = prefixTree.mSpellings;
+        return new PrefixTree(freezeShared(prefixTree.mTrie), spellings == null ? null : freeze(spellings));
+    }
+
+    /**
+     * Returns an immutable copy of the specified trie, that is packed as by {@link #freeze(Trie)}
+     * and stores identical subtrees once.  Subtrees are identical if they have the same keys,
+     * relative to their roots, mapped to equal values, such subtrees are hash-consed while the
+     * trie is packed and the nodes that have them share a single copy.  So a trie with many
+     * repeated subtrees, like per-region copies of a catalog, takes the memory of the distinct
+     * subtrees, and all the queries work as they do on the specified trie.
+     * <p/>
+     * Values are compared with {@code equals}, so values of the shared subtrees should be
+     * immutable.  The returned trie will be serializable if the values are serializable.
+     *
+     * Operation time complexity is O(N * log(N) * S), where N is number of mappings and
+     * S is average length of the key.
+     *
+     * @param <V>  the class of the trie values
+     * @param trie the trie to be frozen.
+     * @return an immutable copy of the specified trie.
+     */
+    public static <V> Trie<V> freezeShared(Trie<V> trie) {
+        return freeze(trie, true);
+    }
+
+    private static <V> Trie<V> freeze(Trie<V> trie, boolean shared) {
+        final HashTrie<V> hashTrie = HashTrie.asHashTrie(trie);
+        final KeyFolding folding = trie instanceof FrozenTrie
+                ? ((FrozenTrie<V>) trie).folding()
+                : hashTrie == null ? KeyFolding.NONE : hashTrie.folding();
+
+        return new FrozenTrie<>(trie, folding, shared);
+    }
+
+    /**
+     * Returns a view of the specified trie that measures its operations.  Latencies of
+     * {@code get}, {@code containsKey}, {@code put} and {@code remove} are passed to the sink
+     * after each call.  Iteration over a set returned by {@code keysWithPrefix} is measured
+     * from creation of the iterator until {@code hasNext} returns {@code false}, the latency
+     * and number of the visited keys are passed to the sink at that point, so iterations that
+     * are abandoned before the end are not recorded.  Other operations are not measured.
+     * <p/>
+     * Each measured call costs two reads of {@link System#nanoTime()} and a call of the sink,
+     * with {@link HistogramMetricsSink} the latter is a couple of atomic increments.
+     * <p/>
+     * The returned trie will be serializable if the specified trie and sink are serializable.
+     *
+     * @param <V>  the class of the trie values
+     * @param trie the trie for which an instrumented view is to be returned.
+     * @param sink receiver of the measurements.
+     * @return an instrumented view of the specified trie.
+     * @see HistogramMetricsSink
+     */
+    public static <V> Trie<V> instrumentedTrie(Trie<V> trie, MetricsSink sink) {
+        return new InstrumentedTrie<>(trie, sink);
+    }
+
     /**
      * @serial include
      */
@@ -134,6 +252,11 @@ public final class Tries {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public void merge(Trie<? extends V> trie, MergeFunction<V> function) {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public Set<String> keys() {
             return mTrie.keys();
@@ -172,4 +295,219 @@ public final class Tries {
 
     }
 
+    /**
+     * @serial include
+     */
+    static class InstrumentedTrie<V> implements Trie<V>, Serializable {
+
+        private static final long serialVersionUID = 3104586126339713245L;
+
+        final Trie<V> mTrie;
+
+        final MetricsSink mSink;
+
+        InstrumentedTrie(Trie<V> trie, MetricsSink sink) {
+            if (trie == null || sink == null) {
+                throw new NullPointerException();
+            }
+
+            mTrie = trie;
+            mSink = sink;
+        }
+
+        @Override
+        public int size() {
+            return mTrie.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return mTrie.isEmpty();
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            final long start = System.nanoTime();
+            final boolean result = mTrie.containsKey(key);
+            mSink.recordLatency(MetricsSink.Operation.GET, System.nanoTime() - start);
+
+            return result;
+        }
+
+        @Override
+        public V get(String key) {
+            final long start = System.nanoTime();
+            final V result = mTrie.get(key);
+            mSink.recordLatency(MetricsSink.Operation.GET, System.nanoTime() - start);
+
+            return result;
+        }
+
+        @Override
+        public V put(String key, V value) {
+            final long start = System.nanoTime();
+            final V result = mTrie.put(key, value);
+            mSink.recordLatency(MetricsSink.Operation.PUT, System.nanoTime() - start);
+
+            return result;
+        }
+
+        @Override
+        public V remove(String key) {
+            final long start = System.nanoTime();
+            final V result = mTrie.remove(key);
+            mSink.recordLatency(MetricsSink.Operation.REMOVE, System.nanoTime() - start);
+
+            return result;
+        }
+
+        @Override
+        public void clear() {
+            mTrie.clear();
+        }
+
+        @Override
+        public void merge(Trie<? extends V> trie, MergeFunction<V> function) {
+            mTrie.merge(trie, function);
+        }
+
+        @Override
+        public Set<String> keys() {
+            return mTrie.keys();
+        }
+
+        @Override
+        public Set<String> keysWithPrefix(String prefix) {
+            return new InstrumentedKeySet(mTrie.keysWithPrefix(prefix));
+        }
+
+        @Override
+        public Collection<V> values() {
+            return mTrie.values();
+        }
+
+        @Override
+        public Set<Map.Entry<String, V>> entrySet() {
+            return mTrie.entrySet();
+        }
+
+        @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+        @Override
+        public boolean equals(Object object) {
+            return object == this || mTrie.equals(object);
+        }
+
+        @Override
+        public int hashCode() {
+            return mTrie.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return mTrie.toString();
+        }
+
+        /**
+         * Prefix view which iterators are measured.
+         */
+        private final class InstrumentedKeySet extends AbstractSet<String> {
+
+            private final Set<String> mKeys;
+
+            InstrumentedKeySet(Set<String> keys) {
+                mKeys = keys;
+            }
+
+            @Override
+            public int size() {
+                return mKeys.size();
+            }
+
+            @Override
+            public boolean contains(Object object) {
+                return mKeys.contains(object);
+            }
+
+            @Override
+            public boolean remove(Object object) {
+                return mKeys.remove(object);
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                final long start = System.nanoTime();
+                final Iterator<String> iterator = mKeys.iterator();
+
+                return new InstrumentedIterator(iterator, System.nanoTime() - start);
+            }
+
+        }
+
+        /**
+         * Iterator that records the prefix query once it is exhausted or closed.  Just the time
+         * spent in the iterator is measured, not the time the caller spends between the calls.
+         */
+        private final class InstrumentedIterator implements Iterator<String>, Closeable {
+
+            private final Iterator<String> mIterator;
+
+            /**
+             * Nanoseconds spent in the iterator so far.
+             */
+            private long mElapsed;
+
+            private long mVisited;
+
+            private boolean mRecorded;
+
+            InstrumentedIterator(Iterator<String> iterator, long elapsed) {
+                mIterator = iterator;
+                mElapsed = elapsed;
+            }
+
+            @Override
+            public boolean hasNext() {
+                final long start = System.nanoTime();
+                final boolean hasNext = mIterator.hasNext();
+                mElapsed += System.nanoTime() - start;
+
+                if (!hasNext) {
+                    close();
+                }
+
+                return hasNext;
+            }
+
+            @Override
+            public String next() {
+                final long start = System.nanoTime();
+                final String key = mIterator.next();
+                mElapsed += System.nanoTime() - start;
+                mVisited++;
+
+                return key;
+            }
+
+            @Override
+            public void remove() {
+                mIterator.remove();
+            }
+
+            /**
+             * Records the query with the keys visited so far, if it is not recorded yet.
+             * Should be called by callers that stop the iteration early.
+             */
+            @Override
+            public void close() {
+                if (!mRecorded) {
+                    mRecorded = true;
+                    mSink.recordLatency(MetricsSink.Operation.PREFIX_QUERY, mElapsed);
+                    mSink.recordVisitedKeys(mVisited);
+                }
+            }
+
+        }
+
+    }
+
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary encoding of the values of a trie that is stored on disk, such as
+ * {@link DurableTrie}.  Codec should read exactly the bytes it has written.
+ *
+ * @param <V> the type of encoded values
+ *
+ * @author Dmytro Ivanov
+ * @see ValueCodecs
+ */
+public interface ValueCodec<V> {
+
+    /**
+     * Writes the value to the output.
+     *
+     * @param value value to be written, never null
+     * @param output output that receives the value
+     * @throws IOException if the output could not be written
+     */
+    void write(V value, DataOutput output) throws IOException;
+
+    /**
+     * Reads value that was written by {@link #write(Object, DataOutput)}.
+     *
+     * @param input input that holds the value
+     * @return the value
+     * @throws IOException if the input could not be read or does not hold a value
+     */
+    V read(DataInput input) throws IOException;
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+
+/**
+ * This class consists exclusively of {@link ValueCodec}s for the common types of values.
+ *
+ * @author Dmytro Ivanov
+ * @see ValueCodec
+ */
+public final class ValueCodecs {
+
+    /**
+     * Encodes strings as length followed by UTF-8 bytes.
+     */
+    public static final ValueCodec<String> STRING = new ValueCodec<String>() {
+        @Override
+        public void write(String value, DataOutput output) throws IOException {
+            writeString(value, output);
+        }
+
+        @Override
+        public String read(DataInput input) throws IOException {
+            return readString(input);
+        }
+    };
+
+    /**
+     * Encodes longs as 8 bytes.
+     */
+    public static final ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        @Override
+        public void write(Long value, DataOutput output) throws IOException {
+            output.writeLong(value);
+        }
+
+        @Override
+        public Long read(DataInput input) throws IOException {
+            return input.readLong();
+        }
+    };
+
+    /**
+     * Encodes booleans as single byte, suits values of {@link PrefixTree}.
+     */
+    public static final ValueCodec<Boolean> BOOLEAN = new ValueCodec<Boolean>() {
+        @Override
+        public void write(Boolean value, DataOutput output) throws IOException {
+            output.writeBoolean(value);
+        }
+
+        @Override
+        public Boolean read(DataInput input) throws IOException {
+            return input.readBoolean();
+        }
+    };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ValueCodecs() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * Returns codec that encodes values by Java serialization, as length followed by
+     * the serialized form of the value.  Works for any serializable value, but is
+     * slower and takes more space than a dedicated codec.
+     *
+     * @param <V> the type of encoded values
+     * @return codec that uses Java serialization
+     */
+    public static <V extends Serializable> ValueCodec<V> serializable() {
+        return new ValueCodec<V>() {
+            @Override
+            public void write(V value, DataOutput output) throws IOException {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final ObjectOutputStream stream = new ObjectOutputStream(bytes);
+                stream.writeObject(value);
+                stream.close();
+
+                output.writeInt(bytes.size());
+                output.write(bytes.toByteArray());
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public V read(DataInput input) throws IOException {
+                final byte[] bytes = new byte[input.readInt()];
+                input.readFully(bytes);
+
+                final ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try {
+                    return (V) stream.readObject();
+                } catch (ClassNotFoundException excep) {
+                    throw new IOException("Class of the value is not found.", excep);
+                } finally {
+                    stream.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes string as length followed by UTF-8 bytes, is used for the keys too.
+     */
+    static void writeString(String string, DataOutput output) throws IOException {
+        final byte[] bytes = string.getBytes(UTF_8);
+
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads string that was written by {@link #writeString(String, DataOutput)}.
+     */
+    static String readString(DataInput input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Negative length of the string.");
+        }
+
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+
+        return new String(bytes, UTF_8);
+    }
+
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the modifications of a trie, written through a {@link FileChannel}.
+ *
+ * <p>Each record is its length, CRC32 checksum and payload: type of the modification,
+ * the key and the value encoded by a {@link ValueCodec}.  A record that is cut short or
+ * has a wrong checksum marks the end of the log, such tail is left by a crash in the
+ * middle of a write and is truncated when the log is opened.
+ *
+ * <p>Appends are serialized, {@link #sync(long)} forces the log to disk with group commit:
+ * a thread that waits for the sync finds its record already forced by another thread
+ * whenever the other thread has forced the log after the record was appended, so
+ * concurrent writers share one {@code fsync}.
+ *
+ * @param <V> the type of logged values
+ *
+ * @author Dmytro Ivanov
+ * @see DurableTrie
+ */
+final class WriteAheadLog<V> implements Closeable {
+
+    static final byte PUT = 1;
+
+    static final byte REMOVE = 2;
+
+    static final byte CLEAR = 3;
+
+    /**
+     * Length and checksum of the record.
+     */
+    private static final int HEADER_BYTES = 8;
+
+    private final FileChannel mChannel;
+
+    private final ValueCodec<V> mCodec;
+
+    private final RecordBuffer mBuffer = new RecordBuffer();
+
+    private final DataOutputStream mOutput = new DataOutputStream(mBuffer);
+
+    private final CRC32 mChecksum = new CRC32();
+
+    private final Object mAppendLock = new Object();
+
+    private final Object mSyncLock = new Object();
+
+    /**
+     * Position after the last appended record, guarded by {@link #mAppendLock}.
+     */
+    private long mAppended;
+
+    /**
+     * Whether torn bytes of a failed append could not be dropped, guarded by {@link #mAppendLock}.
+     */
+    private boolean mFailed;
+
+    /**
+     * Position after the last appended record, that is read without the lock.
+     */
+    private volatile long mWritten;
+
+    /**
+     * Position up to which the log is forced to disk, guarded by {@link #mSyncLock}.
+     */
+    private long mSynced;
+
+    private WriteAheadLog(FileChannel channel, ValueCodec<V> codec, long size) {
+        mChannel = channel;
+        mCodec = codec;
+        mAppended = size;
+        mWritten = size;
+        mSynced = size;
+    }
+
+    /**
+     * Receiver of the replayed records.
+     */
+    interface Target<V> {
+
+        void put(String key, V value);
+
+        void remove(String key);
+
+        void clear();
+
+    }
+
+    /**
+     * Returns target that applies the records to the given trie.
+     */
+    static <V> Target<V> trieTarget(final Trie<V> trie) {
+        return new Target<V>() {
+            @Override
+            public void put(String key, V value) {
+                trie.put(key, value);
+            }
+
+            @Override
+            public void remove(String key) {
+                trie.remove(key);
+            }
+
+            @Override
+            public void clear() {
+                trie.clear();
+            }
+        };
+    }
+
+    /**
+     * Opens the log at the given file, creating it if needed, and replays its records
+     * into the target.  Torn tail of the log is truncated.
+     */
+    static <V> WriteAheadLog<V> open(Path file, ValueCodec<V> codec, Target<V> target) throws IOException {
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        boolean opened = false;
+        try {
+            final long validBytes = replay(channel, codec, target);
+            if (validBytes < channel.size()) {
+                channel.truncate(validBytes);
+                channel.force(false);
+            }
+
+            channel.position(validBytes);
+            opened = true;
+
+            return new WriteAheadLog<>(channel, codec, validBytes);
+        } finally {
+            if (!opened) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Forces entries of the given directory to disk, so a file that was moved into the directory
+     * is found there after a crash.  Does nothing on platforms where directories could not be
+     * opened or forced, the moves are still atomic there.
+     */
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excep) {
+            // Directories could not be opened or forced on some platforms
+            return;
+        }
+    }
+
+    /**
+     * Applies valid records of the log to the target, returns length of the valid part of the log.
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private static <V> long replay(FileChannel channel, ValueCodec<V> codec, Target<V> target) throws IOException {
+        final long size = channel.size();
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        final CRC32 checksum = new CRC32();
+
+        long validBytes = 0;
+        while (size - validBytes >= HEADER_BYTES) {
+            final int length = input.readInt();
+            final int expectedChecksum = input.readInt();
+            if (length <= 0 || length > size - validBytes - HEADER_BYTES) {
+                break;
+            }
+
+            final byte[] payload = new byte[length];
+            input.readFully(payload);
+
+            checksum.reset();
+            checksum.update(payload, 0, length);
+            if ((int) checksum.getValue() != expectedChecksum) {
+                break;
+            }
+
+            apply(payload, codec, target);
+            validBytes += HEADER_BYTES + length;
+        }
+
+        return validBytes;
+    }
+
+    private static <V> void apply(byte[] payload, ValueCodec<V> codec, Target<V> target) throws IOException {
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+
+        final byte type = input.readByte();
+        switch (type) {
+            case PUT:
+                final String key = ValueCodecs.readString(input);
+                target.put(key, codec.read(input));
+                break;
+            case REMOVE:
+                target.remove(ValueCodecs.readString(input));
+                break;
+            case CLEAR:
+                target.clear();
+                break;
+            default:
+                throw new IOException("Unknown type of the record " + type + ".");
+        }
+    }
+
+    /**
+     * Appends record of {@code put}, returns position that should be passed to {@link #sync(long)}.
+     */
+    long appendPut(String key, V value) throws IOException {
+        synchronized (mAppendLock) {
+            startRecord(PUT);
+            ValueCodecs.writeString(key, mOutput);
+            mCodec.write(value, mOutput);
+
+            return writeRecord();
+        }
+    }
+
+    /**
+     * Appends record of {@code remove}, returns position that should be passed to {@link #sync(long)}.
+     */
+    long appendRemove(String key) throws IOException {
+        synchronized (mAppendLock) {
+            startRecord(REMOVE);
+            ValueCodecs.writeString(key, mOutput);
+
+            return writeRecord();
+        }
+    }
+
+    /**
+     * Appends record of {@code clear}, returns position that should be passed to {@link #sync(long)}.
+     */
+    long appendClear() throws IOException {
+        synchronized (mAppendLock) {
+            startRecord(CLEAR);
+
+            return writeRecord();
+        }
+    }
+
+    private void startRecord(byte type) throws IOException {
+        if (mFailed) {
+            throw new IOException("Log is failed, because torn record could not be dropped.");
+        }
+
+        mBuffer.reset();
+        mOutput.writeLong(0);
+        mOutput.writeByte(type);
+    }
+
+    private long writeRecord() throws IOException {
+        final byte[] record = mBuffer.buffer();
+        final int length = mBuffer.size() - HEADER_BYTES;
+
+        mChecksum.reset();
+        mChecksum.update(record, HEADER_BYTES, length);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(record, 0, mBuffer.size());
+        buffer.putInt(0, length);
+        buffer.putInt(Integer.SIZE / Byte.SIZE, (int) mChecksum.getValue());
+
+        try {
+            while (buffer.hasRemaining()) {
+                mChannel.write(buffer);
+            }
+        } catch (IOException e) {
+            dropTornRecord(e);
+            throw e;
+        }
+
+        mAppended += buffer.limit();
+        mWritten = mAppended;
+
+        return mAppended;
+    }
+
+    /**
+     * Drops bytes of the record that failed partway, so the following records are not appended
+     * after them.  When that fails too, the log rejects all of the following appends.
+     */
+    private void dropTornRecord(IOException cause) {
+        try {
+            mChannel.truncate(mAppended);
+            mChannel.position(mAppended);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            mFailed = true;
+        }
+    }
+
+    /**
+     * Forces the log to disk up to the given position, unless it was already forced.
+     */
+    void sync(long position) throws IOException {
+        synchronized (mSyncLock) {
+            if (mSynced >= position) {
+                return;
+            }
+
+            final long written = mWritten;
+            mChannel.force(false);
+            mSynced = written;
+        }
+    }
+
+    /**
+     * Returns length of the log in bytes.
+     */
+    long size() {
+        return mWritten;
+    }
+
+    /**
+     * Drops all of the records, once they are covered by a checkpoint.
+     */
+    void truncate() throws IOException {
+        synchronized (mAppendLock) {
+            synchronized (mSyncLock) {
+                mChannel.truncate(0);
+                mChannel.position(0);
+                mChannel.force(false);
+
+                mAppended = 0;
+                mWritten = 0;
+                mSynced = 0;
+                mFailed = false;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (mAppendLock) {
+            sync(mAppended);
+            mChannel.close();
+        }
+    }
+
+    /**
+     * Output stream that exposes its buffer, so records are written without a copy.
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+
+        byte[] buffer() {
+            return buf;
+        }
+
+    }
+
+}
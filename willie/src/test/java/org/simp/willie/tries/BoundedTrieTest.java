@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+public class BoundedTrieTest {
+
+    private long mNow;
+    private BoundedTrie.Ticker mTicker;
+
+    @Before
+    public void setUp() {
+        mNow = 1000;
+        mTicker = new BoundedTrie.Ticker() {
+            @Override
+            public long read() {
+                return mNow;
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_ZeroSize() {
+        new BoundedTrie<String>(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructor_NullPolicy() {
+        new BoundedTrie<String>(1, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_ZeroTimeToLive() {
+        new BoundedTrie<String>(1, BoundedTrie.EvictionPolicy.LRU, 0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPut_InvalidKey() {
+        new BoundedTrie<String>(1).put("a b", "c");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testPut_NullValue() {
+        new BoundedTrie<String>(1).put("a", null);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        BoundedTrie<String> trie = new BoundedTrie<>(3);
+
+        assertThat(trie.put("abc", "1"), is((String) null));
+        assertThat(trie.put("abc", "2"), is("1"));
+        assertThat(trie.get("abc"), is("2"));
+        assertThat(trie.get("ab"), is((String) null));
+        assertThat(trie.containsKey("abc"), is(true));
+        assertThat(trie.size(), is(1));
+        assertThat(trie.maximumSize(), is(3));
+        assertThat(trie.policy(), is(BoundedTrie.EvictionPolicy.LRU));
+    }
+
+    @Test
+    public void testPut_EvictsLeastRecentlyUsed() {
+        BoundedTrie<String> trie = new BoundedTrie<>(3);
+        trie.put("a", "1");
+        trie.put("b", "2");
+        trie.put("c", "3");
+
+        trie.get("a");
+        trie.put("d", "4");
+
+        assertThat(trie.size(), is(3));
+        assertThat(trie.keys(), containsInAnyOrder("a", "c", "d"));
+
+        trie.put("c", "5");
+        trie.put("e", "6");
+
+        assertThat(trie.keys(), containsInAnyOrder("c", "d", "e"));
+    }
+
+    @Test
+    public void testContainsKey_DoesNotCountAsAccess() {
+        BoundedTrie<String> trie = new BoundedTrie<>(2);
+        trie.put("a", "1");
+        trie.put("b", "2");
+
+        trie.containsKey("a");
+        trie.put("c", "3");
+
+        assertThat(trie.keys(), containsInAnyOrder("b", "c"));
+    }
+
+    @Test
+    public void testEviction_PrunesNodes() {
+        BoundedTrie<String> trie = new BoundedTrie<>(2);
+        trie.put("abcdef", "1");
+        trie.put("abcxyz", "2");
+        trie.put("q", "3");
+
+        assertThat(trie.keysWithPrefix("abcd").isEmpty(), is(true));
+        assertThat(trie.keysWithPrefix("abc"), containsInAnyOrder("abcxyz"));
+        assertThat(trie.keysWithPrefix("abcde").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testRemove() {
+        BoundedTrie<String> trie = new BoundedTrie<>(2);
+        trie.put("a", "1");
+        trie.put("b", "2");
+
+        assertThat(trie.remove("a"), is("1"));
+        assertThat(trie.remove("a"), is((String) null));
+
+        trie.put("c", "3");
+        trie.put("d", "4");
+
+        assertThat(trie.keys(), containsInAnyOrder("c", "d"));
+    }
+
+    @Test
+    public void testClear() {
+        BoundedTrie<String> trie = new BoundedTrie<>(2);
+        trie.put("a", "1");
+        trie.put("b", "2");
+        trie.clear();
+
+        assertThat(trie.isEmpty(), is(true));
+
+        trie.put("c", "3");
+        trie.put("d", "4");
+        trie.put("e", "5");
+
+        assertThat(trie.keys(), containsInAnyOrder("d", "e"));
+    }
+
+    @Test
+    public void testTinyLfu_RejectsRareKeys() {
+        BoundedTrie<String> trie = new BoundedTrie<>(100, BoundedTrie.EvictionPolicy.TINY_LFU);
+        for (int i = 0; i < 100; i++) {
+            trie.put("hot" + i, "x");
+        }
+
+        for (int j = 0; j < 5; j++) {
+            for (int i = 0; i < 100; i++) {
+                trie.get("hot" + i);
+            }
+        }
+
+        for (int i = 0; i < 300; i++) {
+            assertThat(trie.put("scan" + i, "x"), is((String) null));
+        }
+
+        assertThat(trie.keysWithPrefix("scan").isEmpty(), is(true));
+        assertThat(trie.keysWithPrefix("hot").size(), is(100));
+    }
+
+    @Test
+    public void testTinyLfu_AdmitsFrequentKeys() {
+        BoundedTrie<String> trie = new BoundedTrie<>(2, BoundedTrie.EvictionPolicy.TINY_LFU);
+        trie.put("a", "1");
+        trie.put("b", "2");
+        trie.get("b");
+
+        for (int i = 0; i < 3; i++) {
+            trie.get("c");
+        }
+        trie.put("c", "3");
+
+        assertThat(trie.keys(), containsInAnyOrder("b", "c"));
+    }
+
+    @Test
+    public void testFrequencySketch() {
+        BoundedTrie.FrequencySketch sketch = new BoundedTrie.FrequencySketch(16);
+
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("abc");
+        }
+        sketch.increment("xyz");
+
+        assertThat(sketch.frequency("abc"), is(15));
+        assertThat(sketch.frequency("xyz") >= 1, is(true));
+    }
+
+    @Test
+    public void testFrequencySketch_TableLength() {
+        assertThat(BoundedTrie.FrequencySketch.tableLength(1), is(2));
+        assertThat(BoundedTrie.FrequencySketch.tableLength(16), is(16));
+        assertThat(BoundedTrie.FrequencySketch.tableLength(17), is(32));
+        assertThat(BoundedTrie.FrequencySketch.tableLength(1 << 27), is(1 << 27));
+        assertThat(BoundedTrie.FrequencySketch.tableLength((1 << 27) + 1), is(1 << 27));
+        assertThat(BoundedTrie.FrequencySketch.tableLength(Integer.MAX_VALUE), is(1 << 27));
+    }
+
+    @Test
+    public void testFrequencySketch_Reset() {
+        BoundedTrie.FrequencySketch sketch = new BoundedTrie.FrequencySketch(1);
+
+        for (int i = 0; i < 9; i++) {
+            sketch.increment("abc");
+        }
+        assertThat(sketch.frequency("abc"), is(9));
+
+        sketch.increment("abc");
+        assertThat(sketch.frequency("abc"), is(5));
+    }
+
+    @Test
+    public void testTimeToLive() {
+        BoundedTrie<String> trie = new BoundedTrie<>(10, BoundedTrie.EvictionPolicy.LRU, 100, mTicker);
+        trie.put("a", "1");
+        trie.put("b", "2", 1, TimeUnit.SECONDS);
+
+        mNow += 99;
+        assertThat(trie.get("a"), is("1"));
+
+        mNow += 1;
+        assertThat(trie.containsKey("a"), is(false));
+        assertThat(trie.keys(), containsInAnyOrder("b"));
+        assertThat(trie.size(), is(2));
+        assertThat(trie.get("a"), is((String) null));
+        assertThat(trie.size(), is(1));
+        assertThat(trie.get("b"), is("2"));
+    }
+
+    @Test
+    public void testTimeToLive_PutResetsExpiration() {
+        BoundedTrie<String> trie = new BoundedTrie<>(10, BoundedTrie.EvictionPolicy.LRU, 100, mTicker);
+        trie.put("a", "1");
+
+        mNow += 100;
+        assertThat(trie.put("a", "2"), is((String) null));
+
+        mNow += 50;
+        assertThat(trie.get("a"), is("2"));
+    }
+
+    @Test
+    public void testTimeToLive_ExpiredEvictedFirst() {
+        BoundedTrie<String> trie = new BoundedTrie<>(2, BoundedTrie.EvictionPolicy.TINY_LFU, 100, mTicker);
+        trie.put("a", "1");
+        trie.put("b", "2");
+        for (int i = 0; i < 5; i++) {
+            trie.get("a");
+        }
+
+        mNow += 100;
+        trie.put("c", "3");
+
+        assertThat(trie.size(), is(2));
+        assertThat(trie.containsKey("c"), is(true));
+    }
+
+    @Test
+    public void testCleanUp() {
+        BoundedTrie<String> trie = new BoundedTrie<>(10, BoundedTrie.EvictionPolicy.LRU, 0, mTicker);
+        trie.put("ab", "1", 10, TimeUnit.NANOSECONDS);
+        trie.put("abc", "2", 20, TimeUnit.NANOSECONDS);
+        trie.put("b", "3");
+
+        mNow += 15;
+
+        assertThat(trie.cleanUp(), is(1));
+        assertThat(trie.size(), is(2));
+        assertThat(trie.keysWithPrefix("a"), containsInAnyOrder("abc"));
+
+        mNow += 5;
+
+        assertThat(trie.cleanUp(), is(1));
+        assertThat(trie.keysWithPrefix("a").isEmpty(), is(true));
+        assertThat(trie.values(), containsInAnyOrder("3"));
+    }
+
+    @Test
+    public void testViews() {
+        BoundedTrie<String> trie = new BoundedTrie<>(10);
+        trie.put("ab", "1");
+        trie.put("abc", "2");
+        trie.put("b", "3");
+
+        assertThat(trie.keys(), containsInAnyOrder("ab", "abc", "b"));
+        assertThat(trie.keysWithPrefix("ab"), containsInAnyOrder("ab", "abc"));
+        assertThat(trie.keysWithPrefix("ab").size(), is(2));
+        assertThat(trie.values(), containsInAnyOrder("1", "2", "3"));
+        assertThat(trie.entrySet().size(), is(3));
+
+        HashTrie<String> expected = new HashTrie<>();
+        expected.put("ab", "1");
+        expected.put("abc", "2");
+        expected.put("b", "3");
+
+        assertThat(trie.equals(expected), is(true));
+        assertThat(trie.hashCode(), is(expected.hashCode()));
+    }
+
+}
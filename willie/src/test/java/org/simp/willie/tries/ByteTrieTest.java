@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+public class ByteTrieTest {
+
+    private ByteTrie<String> mTrie;
+
+    @Before
+    public void setUp() {
+        mTrie = new ByteTrie<>();
+    }
+
+    @Test
+    public void testConstructor() {
+        assertThat(mTrie.size(), is(0));
+        assertThat(mTrie.isEmpty(), is(true));
+        assertThat(mTrie.mRoot.hasChildren(), is(false));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        assertThat(mTrie.put(bytes(1, 2, 3), "a"), is(nullValue()));
+        assertThat(mTrie.put(bytes(1, 2), "b"), is(nullValue()));
+        assertThat(mTrie.put(bytes(1, 2, 3), "c"), is("a"));
+
+        assertThat(mTrie.size(), is(2));
+        assertThat(mTrie.get(bytes(1, 2, 3)), is("c"));
+        assertThat(mTrie.get(bytes(1, 2)), is("b"));
+        assertThat(mTrie.get(bytes(1)), is(nullValue()));
+        assertThat(mTrie.get(bytes(1, 2, 3, 4)), is(nullValue()));
+        assertThat(mTrie.containsKey(bytes(1, 2)), is(true));
+        assertThat(mTrie.containsKey(bytes(2)), is(false));
+    }
+
+    @Test
+    public void testPut_EmptyKey() {
+        mTrie.put(new byte[0], "empty");
+
+        assertThat(mTrie.get(new byte[0]), is("empty"));
+        assertThat(mTrie.size(), is(1));
+        assertThat(mTrie.remove(new byte[0]), is("empty"));
+        assertThat(mTrie.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testPut_NegativeBytes() {
+        mTrie.put(bytes(-1, -128), "a");
+        mTrie.put(bytes(127, 0), "b");
+
+        assertThat(mTrie.get(bytes(-1, -128)), is("a"));
+        assertThat(mTrie.get(bytes(127, 0)), is("b"));
+        assertThat(mTrie.values(), contains("b", "a"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testPut_NullValue() {
+        mTrie.put(bytes(1), null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testGet_NullKey() {
+        mTrie.get((byte[]) null);
+    }
+
+    @Test
+    public void testSlices() {
+        final byte[] buffer = bytes(9, 9, 1, 2, 3, 9);
+
+        mTrie.put(buffer, 2, 3, "a");
+
+        assertThat(mTrie.get(bytes(1, 2, 3)), is("a"));
+        assertThat(mTrie.get(buffer, 2, 3), is("a"));
+        assertThat(mTrie.get(buffer, 2, 2), is(nullValue()));
+        assertThat(mTrie.containsKey(buffer, 2, 3), is(true));
+        assertThat(mTrie.remove(buffer, 2, 3), is("a"));
+        assertThat(mTrie.isEmpty(), is(true));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSlices_OutOfBounds() {
+        mTrie.get(bytes(1, 2, 3), 2, 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSlices_NegativeOffset() {
+        mTrie.put(bytes(1, 2, 3), -1, 2, "a");
+    }
+
+    @Test
+    public void testByteBuffers() {
+        final ByteBuffer heapBuffer = ByteBuffer.wrap(bytes(7, 1, 2, 3));
+        heapBuffer.position(1);
+
+        mTrie.put(heapBuffer, "a");
+
+        final ByteBuffer directBuffer = ByteBuffer.allocateDirect(4);
+        directBuffer.put(bytes(1, 2, 3, 4)).flip();
+        directBuffer.limit(3);
+
+        assertThat(mTrie.get(directBuffer), is("a"));
+        assertThat(mTrie.containsKey(directBuffer), is(true));
+        assertThat(directBuffer.position(), is(0));
+        assertThat(heapBuffer.position(), is(1));
+
+        directBuffer.limit(4);
+        mTrie.put(directBuffer, "b");
+
+        assertThat(mTrie.get(bytes(1, 2, 3, 4)), is("b"));
+        assertThat(mTrie.remove(directBuffer), is("b"));
+        assertThat(mTrie.remove(heapBuffer), is("a"));
+        assertThat(mTrie.isEmpty(), is(true));
+        assertThat(directBuffer.position(), is(0));
+    }
+
+    @Test
+    public void testRemove() {
+        mTrie.put(bytes(1, 2, 3), "a");
+        mTrie.put(bytes(1, 2), "b");
+        mTrie.put(bytes(1, 5), "c");
+
+        assertThat(mTrie.remove(bytes(1, 7)), is(nullValue()));
+        assertThat(mTrie.remove(bytes(1)), is(nullValue()));
+        assertThat(mTrie.size(), is(3));
+
+        assertThat(mTrie.remove(bytes(1, 2, 3)), is("a"));
+        assertThat(mTrie.mRoot.getChildFor(1).getChildFor(2).hasChildren(), is(false));
+
+        assertThat(mTrie.remove(bytes(1, 2)), is("b"));
+        assertThat(mTrie.mRoot.getChildFor(1).getChildFor(2), is(nullValue()));
+
+        assertThat(mTrie.remove(bytes(1, 5)), is("c"));
+        assertThat(mTrie.mRoot.hasChildren(), is(false));
+        assertThat(mTrie.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testNode_DenseAndSparse() {
+        for (int i = 0; i < ByteTrie.RADIX; i++) {
+            mTrie.put(bytes(i), String.valueOf(i));
+        }
+
+        assertThat(mTrie.mRoot.isDense(), is(true));
+        assertThat(mTrie.mRoot.mCount, is(ByteTrie.RADIX));
+
+        for (int i = 0; i < ByteTrie.RADIX; i++) {
+            assertThat(mTrie.get(bytes(i)), is(String.valueOf(i)));
+        }
+
+        for (int i = 0; i < ByteTrie.RADIX - ByteTrie.SPARSE_LIMIT / 2; i++) {
+            mTrie.remove(bytes(i));
+        }
+
+        assertThat(mTrie.mRoot.isDense(), is(false));
+        assertThat(mTrie.size(), is(ByteTrie.SPARSE_LIMIT / 2));
+        assertThat(mTrie.get(bytes(255)), is("255"));
+        assertThat(mTrie.get(bytes(0)), is(nullValue()));
+    }
+
+    @Test
+    public void testKeys_UnsignedOrder() {
+        mTrie.put(bytes(-1), "a");
+        mTrie.put(bytes(1, 2), "b");
+        mTrie.put(bytes(1), "c");
+        mTrie.put(bytes(0, -1, 3), "d");
+
+        final List<String> keys = new ArrayList<>();
+        for (byte[] key : mTrie.keys()) {
+            keys.add(Arrays.toString(key));
+        }
+
+        assertThat(keys, contains("[0, -1, 3]", "[1]", "[1, 2]", "[-1]"));
+        assertThat(mTrie.keys().size(), is(4));
+    }
+
+    @Test
+    public void testKeysWithPrefix() {
+        mTrie.put(bytes(1, 2, 3), "a");
+        mTrie.put(bytes(1, 2), "b");
+        mTrie.put(bytes(1, 3), "c");
+        mTrie.put(bytes(2), "d");
+
+        assertThat(mTrie.keysWithPrefix(bytes(1, 2)).size(), is(2));
+        assertThat(mTrie.valuesWithPrefix(bytes(1, 2)), contains("b", "a"));
+        assertThat(mTrie.valuesWithPrefix(bytes(1)), contains("b", "a", "c"));
+        assertThat(mTrie.valuesWithPrefix(bytes(3)).isEmpty(), is(true));
+        assertThat(mTrie.keysWithPrefix(bytes(1, 3)).iterator().next(), is(bytes(1, 3)));
+    }
+
+    @Test
+    public void testEntrySet() {
+        mTrie.put(bytes(1, 2), "a");
+        mTrie.put(bytes(3), "b");
+
+        final Iterator<Map.Entry<byte[], String>> iterator = mTrie.entrySet().iterator();
+        final Map.Entry<byte[], String> first = iterator.next();
+        final Map.Entry<byte[], String> second = iterator.next();
+
+        assertThat(first.getKey(), is(bytes(1, 2)));
+        assertThat(first.getValue(), is("a"));
+        assertThat(second.getKey(), is(bytes(3)));
+        assertThat(iterator.hasNext(), is(false));
+    }
+
+    @Test
+    public void testIterator_DeepKeys() {
+        final byte[] key = new byte[100];
+        mTrie.put(key, "deep");
+
+        assertThat(mTrie.keys().iterator().next(), is(key));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testIterator_FailFast() {
+        mTrie.put(bytes(1), "a");
+        mTrie.put(bytes(2), "b");
+
+        final Iterator<String> iterator = mTrie.values().iterator();
+        iterator.next();
+        mTrie.put(bytes(3), "c");
+        iterator.next();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIterator_Remove() {
+        mTrie.put(bytes(1), "a");
+
+        final Iterator<String> iterator = mTrie.values().iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    @Test
+    public void testClear() {
+        mTrie.put(bytes(1), "a");
+        mTrie.clear();
+
+        assertThat(mTrie.isEmpty(), is(true));
+        assertThat(mTrie.get(bytes(1)), is(nullValue()));
+        assertThat(mTrie.mRoot.hasChildren(), is(false));
+    }
+
+    @Test
+    public void testUtf8Trie() {
+        final Trie<String> trie = mTrie.asUtf8Trie();
+        trie.put("abc", "1");
+        trie.put("кит", "2");
+        trie.put("例子", "3");
+        trie.put("ab", "4");
+
+        assertThat(trie.get("abc"), is("1"));
+        assertThat(trie.get("кит"), is("2"));
+        assertThat(trie.get("例子"), is("3"));
+        assertThat(trie.get("ки"), is(nullValue()));
+        assertThat(trie.containsKey("ab"), is(true));
+        assertThat(mTrie.get("кит".getBytes(StandardCharsets.UTF_8)), is("2"));
+        assertThat(trie.size(), is(4));
+
+        assertThat(trie.keys(), contains("ab", "abc", "кит", "例子"));
+        assertThat(trie.keysWithPrefix("ab"), contains("ab", "abc"));
+        assertThat(trie.keysWithPrefix("ab").contains("abc"), is(true));
+        assertThat(trie.keysWithPrefix("ab").contains("кит"), is(false));
+        assertThat(trie.values(), contains("4", "1", "2", "3"));
+        assertThat(trie.entrySet().iterator().next().getKey(), is("ab"));
+
+        assertThat(trie.remove("кит"), is("2"));
+        assertThat(mTrie.size(), is(3));
+    }
+
+    @Test
+    public void testUtf8Trie_SameInstance() {
+        assertThat(mTrie.asUtf8Trie() == mTrie.asUtf8Trie(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUtf8Trie_InvalidKey() {
+        mTrie.asUtf8Trie().get("a b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUtf8Trie_EmptyKey() {
+        mTrie.asUtf8Trie().put("", "1");
+    }
+
+    @Test
+    public void testUtf8Trie_EmptyPrefix() {
+        mTrie.asUtf8Trie().put("ab", "1");
+
+        assertThat(mTrie.asUtf8Trie().keysWithPrefix("").size(), is(1));
+        assertThat(mTrie.asUtf8Trie().containsKey("ab"), is(true));
+    }
+
+    @Test
+    public void testUtf8Trie_EqualsHashTrie() {
+        final HashTrie<String> hashTrie = new HashTrie<>();
+        hashTrie.put("кит", "1");
+        hashTrie.put("cat", "2");
+
+        mTrie.asUtf8Trie().put("cat", "2");
+        mTrie.asUtf8Trie().put("кит", "1");
+
+        assertThat(mTrie.asUtf8Trie().equals(hashTrie), is(true));
+        assertThat(mTrie.asUtf8Trie().hashCode(), is(hashTrie.hashCode()));
+        assertThat(mTrie.toString(), is("{cat=2, кит=1}"));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        mTrie.put(bytes(1, 2, 3), "a");
+        mTrie.put(bytes(-5), "b");
+        mTrie.put(new byte[0], "c");
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream outStream = new ObjectOutputStream(bos);
+        outStream.writeObject(mTrie);
+        outStream.close();
+
+        ObjectInputStream inStream = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        ByteTrie<String> trie = (ByteTrie<String>) inStream.readObject();
+        inStream.close();
+
+        assertThat(trie.size(), is(3));
+        assertThat(trie.get(bytes(1, 2, 3)), is("a"));
+        assertThat(trie.get(bytes(-5)), is("b"));
+        assertThat(trie.get(new byte[0]), is("c"));
+        assertThat(trie.values(), contains("c", "a", "b"));
+    }
+
+    private static byte[] bytes(int... values) {
+        final byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+public class DictionaryLoaderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Path mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = mFolder.getRoot().toPath().resolve("words.txt");
+    }
+
+    private void write(String content) throws IOException {
+        Files.write(mFile, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void write(byte[] content) throws IOException {
+        Files.write(mFile, content);
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        write("apple\napp\nbanana\n");
+
+        PrefixTree tree = new PrefixTree();
+        DictionaryLoader.Statistics statistics = DictionaryLoader.load(mFile, tree, 1);
+
+        assertThat(tree.size(), is(3));
+        assertThat(tree.contains("apple"), is(true));
+        assertThat(tree.contains("app"), is(true));
+        assertThat(tree.contains("banana"), is(true));
+        assertThat(statistics.lines(), is(3L));
+        assertThat(statistics.addedValues(), is(3L));
+        assertThat(statistics.skippedLines(), is(0L));
+        assertThat(statistics.bytes(), is(17L));
+        assertThat(statistics.threads(), is(1));
+    }
+
+    @Test
+    public void testLoad_Empty() throws IOException {
+        write("");
+
+        PrefixTree tree = new PrefixTree();
+        DictionaryLoader.Statistics statistics = DictionaryLoader.load(mFile, tree, 4);
+
+        assertThat(tree.isEmpty(), is(true));
+        assertThat(statistics.lines(), is(0L));
+        assertThat(statistics.threads(), is(1));
+    }
+
+    @Test
+    public void testLoad_NoTrailingLineFeed() throws IOException {
+        write("one\ntwo");
+
+        PrefixTree tree = new PrefixTree();
+        DictionaryLoader.load(mFile, tree, 1);
+
+        assertThat(tree.contains("one"), is(true));
+        assertThat(tree.contains("two"), is(true));
+    }
+
+    @Test
+    public void testLoad_CarriageReturnsAndBlankLines() throws IOException {
+        write("one\r\n\r\n\ntwo\r\nthree\r\r\nfo\rur\n");
+
+        PrefixTree tree = new PrefixTree();
+        DictionaryLoader.Statistics statistics = DictionaryLoader.load(mFile, tree, 1);
+
+        assertThat(tree.size(), is(2));
+        assertThat(tree.contains("one"), is(true));
+        assertThat(tree.contains("two"), is(true));
+        assertThat(statistics.lines(), is(4L));
+        assertThat(statistics.skippedLines(), is(2L));
+    }
+
+    @Test
+    public void testLoad_MultiByteCharacters() throws IOException {
+        write("café\nпривіт\n日本\n");
+
+        PrefixTree tree = new PrefixTree();
+        DictionaryLoader.load(mFile, tree, 1);
+
+        assertThat(tree.size(), is(3));
+        assertThat(tree.contains("café"), is(true));
+        assertThat(tree.contains("привіт"), is(true));
+        assertThat(tree.contains("日本"), is(true));
+        assertThat(tree.valuesWithPrefix("пр").contains("привіт"), is(true));
+    }
+
+    @Test
+    public void testLoad_InvalidLines() throws IOException {
+        write(new byte[]{'o', 'k', '\n', 'a', ' ', 'b', '\n', 'x', (byte) 0xC3, '\n', (byte) 0xFF, 'y', '\n',
+                (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80, '\n', 'o', 'k', '2', '\n'});
+
+        PrefixTree tree = new PrefixTree();
+        DictionaryLoader.Statistics statistics = DictionaryLoader.load(mFile, tree, 1);
+
+        assertThat(tree.size(), is(2));
+        assertThat(tree.contains("ok"), is(true));
+        assertThat(tree.contains("ok2"), is(true));
+        assertThat(statistics.lines(), is(6L));
+        assertThat(statistics.skippedLines(), is(4L));
+    }
+
+    @Test
+    public void testLoad_Alphabet() throws IOException {
+        write("abc\nAbc\nabc1\nxyz\n");
+
+        PrefixTree tree = new PrefixTree(KeyAlphabet.LOWERCASE);
+        DictionaryLoader.Statistics statistics = DictionaryLoader.load(mFile, tree, 2);
+
+        assertThat(tree.size(), is(2));
+        assertThat(tree.contains("abc"), is(true));
+        assertThat(tree.contains("xyz"), is(true));
+        assertThat(statistics.skippedLines(), is(2L));
+    }
+
+    @Test
+    public void testLoad_ExistingValues() throws IOException {
+        write("one\ntwo\n");
+
+        PrefixTree tree = new PrefixTree();
+        tree.add("one");
+        tree.add("zero");
+
+        DictionaryLoader.Statistics statistics = DictionaryLoader.load(mFile, tree, 2);
+
+        assertThat(tree.size(), is(3));
+        assertThat(statistics.lines(), is(2L));
+        assertThat(statistics.addedValues(), is(1L));
+    }
+
+    @Test
+    public void testLoad_Threads() throws IOException {
+        StringBuilder content = new StringBuilder();
+        PrefixTree expected = new PrefixTree();
+        for (int i = 0; i < 5000; i++) {
+            String word = "wérd" + Integer.toString(i * 7919, 36);
+            content.append(word).append(i % 3 == 0 ? "\r\n" : "\n");
+            expected.add(word);
+        }
+
+        write(content.toString());
+
+        PrefixTree tree = new PrefixTree();
+        DictionaryLoader.Statistics statistics = DictionaryLoader.load(mFile, tree, 7);
+
+        assertThat(tree, is(expected));
+        assertThat(statistics.threads(), is(7));
+        assertThat(statistics.lines(), is(5000L));
+        assertThat(statistics.addedValues(), is(5000L));
+        assertThat(statistics.skippedLines(), is(0L));
+    }
+
+    @Test
+    public void testChunkBounds() throws IOException {
+        write("aaaaaaaaaa\nb\nc\n");
+
+        try (FileChannel channel = FileChannel.open(mFile, StandardOpenOption.READ)) {
+            long[] bounds = DictionaryLoader.chunkBounds(channel, 4);
+
+            assertThat(bounds[0], is(0L));
+            assertThat(bounds[bounds.length - 1], is(15L));
+
+            for (int i = 1; i < bounds.length - 1; i++) {
+                assertThat(bounds[i] > bounds[i - 1], is(true));
+                assertThat(Files.readAllBytes(mFile)[(int) bounds[i] - 1], is((byte) '\n'));
+            }
+        }
+    }
+
+    @Test
+    public void testChunkBounds_SingleLine() throws IOException {
+        write("abcdefghij");
+
+        try (FileChannel channel = FileChannel.open(mFile, StandardOpenOption.READ)) {
+            assertThat(DictionaryLoader.chunkBounds(channel, 4), is(new long[]{0, 10}));
+        }
+    }
+
+    @Test
+    public void testStatistics() throws IOException {
+        write("one\n");
+
+        DictionaryLoader.Statistics statistics = DictionaryLoader.load(mFile, new PrefixTree(), 1);
+
+        assertThat(statistics.elapsedNanos() > 0, is(true));
+        assertThat(statistics.linesPerSecond() > 0, is(true));
+        assertThat(statistics.megabytesPerSecond() > 0, is(true));
+        assertThat(statistics.toString().startsWith("Statistics{bytes=4, lines=1"), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoad_InvalidThreads() throws IOException {
+        write("one\n");
+        DictionaryLoader.load(mFile, new PrefixTree(), 0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testLoad_Unmodifiable() throws IOException {
+        write("one\n");
+        DictionaryLoader.load(mFile, Tries.unmodifiablePrefixTree(new PrefixTree()));
+    }
+
+    @Test
+    public void testLoad_Folding() throws IOException {
+        write("Zürich\nZURICH\nGenève\n");
+
+        PrefixTree tree = new PrefixTree(KeyAlphabet.LOWERCASE, KeyFolding.CASE_AND_DIACRITICS);
+        DictionaryLoader.Statistics statistics = DictionaryLoader.load(mFile, tree, 2);
+
+        assertThat(tree.size(), is(2));
+        assertThat(tree.contains("zurich"), is(true));
+        assertThat(tree.contains("geneve"), is(true));
+        assertThat(tree.values(), containsInAnyOrder("Zürich", "Genève"));
+        assertThat(statistics.skippedLines(), is(0L));
+    }
+
+}
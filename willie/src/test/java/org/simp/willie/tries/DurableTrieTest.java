@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+public class DurableTrieTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Path mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.getRoot().toPath().resolve("trie");
+    }
+
+    private DurableTrie<String> open() throws IOException {
+        return DurableTrie.open(mDirectory, ValueCodecs.STRING);
+    }
+
+    @Test
+    public void testOpen_Empty() throws IOException {
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.isEmpty(), is(true));
+            assertThat(trie.logSize(), is(0L));
+            assertThat(Files.isDirectory(mDirectory), is(true));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpen_NonPositiveCheckpoint() throws IOException {
+        DurableTrie.open(mDirectory, ValueCodecs.STRING, DurableTrie.SyncMode.MANUAL, 0);
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        try (DurableTrie<String> trie = open()) {
+            trie.put("abc", "1");
+            trie.put("abd", "2");
+            trie.put("abc", "3");
+            trie.put("x", "4");
+            trie.remove("x");
+            assertThat(trie.remove("y"), is((String) null));
+        }
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.size(), is(2));
+            assertThat(trie.get("abc"), is("3"));
+            assertThat(trie.get("abd"), is("2"));
+            assertThat(trie.keysWithPrefix("ab"), containsInAnyOrder("abc", "abd"));
+        }
+    }
+
+    @Test
+    public void testRecovery_Clear() throws IOException {
+        try (DurableTrie<String> trie = open()) {
+            trie.put("abc", "1");
+            trie.clear();
+            trie.put("b", "2");
+        }
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.keys(), containsInAnyOrder("b"));
+        }
+    }
+
+    @Test
+    public void testRecovery_WithoutClose() throws IOException {
+        DurableTrie<String> trie = open();
+        trie.put("abc", "1");
+        trie.put("abd", "2");
+
+        try (DurableTrie<String> recovered = open()) {
+            assertThat(recovered.get("abc"), is("1"));
+            assertThat(recovered.get("abd"), is("2"));
+        }
+
+        trie.close();
+    }
+
+    @Test
+    public void testRecovery_TornTail() throws IOException {
+        try (DurableTrie<String> trie = open()) {
+            trie.put("abc", "1");
+            trie.put("abd", "2");
+        }
+
+        final Path log = mDirectory.resolve(DurableTrie.LOG_FILE);
+        final long fullSize = Files.size(log);
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.setLength(fullSize - 3);
+        }
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.keys(), containsInAnyOrder("abc"));
+            assertThat(trie.logSize() < fullSize - 3, is(true));
+
+            trie.put("x", "3");
+        }
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.keys(), containsInAnyOrder("abc", "x"));
+        }
+    }
+
+    @Test
+    public void testRecovery_CorruptedRecord() throws IOException {
+        try (DurableTrie<String> trie = open()) {
+            trie.put("abc", "1");
+            trie.put("abd", "2");
+            trie.put("abe", "3");
+        }
+
+        final Path log = mDirectory.resolve(DurableTrie.LOG_FILE);
+        final byte[] bytes = Files.readAllBytes(log);
+        final int recordLength = bytes.length / 3;
+        bytes[recordLength + recordLength / 2] ^= 0x5a;
+        Files.write(log, bytes);
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.keys(), containsInAnyOrder("abc"));
+        }
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        try (DurableTrie<String> trie = open()) {
+            trie.put("abc", "1");
+            trie.put("abd", "2");
+            trie.checkpoint();
+
+            assertThat(trie.logSize(), is(0L));
+            assertThat(Files.size(mDirectory.resolve(DurableTrie.LOG_FILE)), is(0L));
+
+            trie.remove("abc");
+            trie.put("b", "3");
+        }
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.keys(), containsInAnyOrder("abd", "b"));
+        }
+    }
+
+    @Test
+    public void testCheckpoint_Automatic() throws IOException {
+        try (DurableTrie<String> trie = DurableTrie.open(mDirectory, ValueCodecs.STRING,
+                DurableTrie.SyncMode.MANUAL, 100)) {
+            for (int i = 0; i < 50; i++) {
+                trie.put("key" + i, "value" + i);
+                assertThat(trie.logSize() < 100, is(true));
+            }
+        }
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.size(), is(50));
+            assertThat(trie.get("key42"), is("value42"));
+        }
+    }
+
+    @Test
+    public void testCheckpoint_FailureRetriedByNextWrite() throws IOException {
+        final Path temporary = mDirectory.resolve(DurableTrie.SNAPSHOT_FILE + ".tmp");
+
+        try (DurableTrie<String> trie = DurableTrie.open(mDirectory, ValueCodecs.STRING,
+                DurableTrie.SyncMode.MANUAL, 100)) {
+            // a directory in place of the temporary snapshot fails the checkpoint
+            Files.createDirectory(temporary);
+            for (int i = 0; i < 20; i++) {
+                trie.put("key" + i, "value" + i);
+            }
+
+            assertThat(trie.size(), is(20));
+            assertThat(trie.logSize() >= 100, is(true));
+
+            Files.delete(temporary);
+            trie.put("key20", "value20");
+
+            assertThat(trie.logSize(), is(0L));
+        }
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.size(), is(21));
+            assertThat(trie.get("key7"), is("value7"));
+        }
+    }
+
+    @Test
+    public void testCheckpoint_LogReplayedOverSnapshot() throws IOException {
+        try (DurableTrie<String> trie = open()) {
+            trie.put("abc", "1");
+            trie.remove("abc");
+            trie.put("abd", "2");
+        }
+
+        final byte[] log = Files.readAllBytes(mDirectory.resolve(DurableTrie.LOG_FILE));
+
+        try (DurableTrie<String> trie = open()) {
+            trie.checkpoint();
+        }
+
+        Files.write(mDirectory.resolve(DurableTrie.LOG_FILE), log);
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.keys(), containsInAnyOrder("abd"));
+        }
+    }
+
+    @Test
+    public void testManualSync() throws IOException {
+        try (DurableTrie<String> trie = DurableTrie.open(mDirectory, ValueCodecs.STRING,
+                DurableTrie.SyncMode.MANUAL, DurableTrie.DEFAULT_LOG_BYTES)) {
+            trie.put("abc", "1");
+            trie.sync();
+        }
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.get("abc"), is("1"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPut_InvalidKey() throws IOException {
+        try (DurableTrie<String> trie = open()) {
+            trie.put("a b", "1");
+        }
+    }
+
+    @Test
+    public void testPut_InvalidKeyNotLogged() throws IOException {
+        try (DurableTrie<String> trie = open()) {
+            try {
+                trie.put("a b", "1");
+            } catch (IllegalArgumentException excep) {
+                assertThat(trie.logSize(), is(0L));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPut_Closed() throws IOException {
+        DurableTrie<String> trie = open();
+        trie.close();
+
+        trie.put("abc", "1");
+    }
+
+    @Test
+    public void testSerializableCodec() throws IOException {
+        try (DurableTrie<ArrayList<Integer>> trie = DurableTrie.open(mDirectory,
+                ValueCodecs.<ArrayList<Integer>>serializable(), DurableTrie.SyncMode.MANUAL, 1000)) {
+            trie.put("abc", new ArrayList<>(Arrays.asList(1, 2, 3)));
+        }
+
+        try (DurableTrie<ArrayList<Integer>> trie = DurableTrie.open(mDirectory,
+                ValueCodecs.<ArrayList<Integer>>serializable())) {
+            assertThat(trie.get("abc"), containsInAnyOrder(1, 2, 3));
+        }
+    }
+
+    @Test
+    public void testConcurrentWrites() throws IOException, InterruptedException {
+        try (final DurableTrie<String> trie = open()) {
+            final List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final String prefix = "t" + i;
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < 50; j++) {
+                            trie.put(prefix + "k" + j, "v");
+                        }
+                    }
+                }));
+            }
+
+            for (Thread thread : threads) {
+                thread.start();
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        try (DurableTrie<String> trie = open()) {
+            assertThat(trie.size(), is(200));
+        }
+    }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FrozenTrieTest {
+
+    private HashTrie<Integer> mSource;
+
+    private FrozenTrie<Integer> mFrozen;
+
+    @Before
+    public void setUp() {
+        mSource = new HashTrie<>();
+        mSource.put("tea", 1);
+        mSource.put("ten", 2);
+        mSource.put("team", 3);
+        mSource.put("to", 4);
+        mSource.put("inn", 5);
+        mSource.put("international", 6);
+
+        mFrozen = new FrozenTrie<>(mSource, KeyFolding.NONE, false);
+    }
+
+    @Test
+    public void testGet() {
+        assertThat(mFrozen.size(), is(6));
+        assertThat(mFrozen.isEmpty(), is(false));
+        assertThat(mFrozen.get("team"), is(3));
+        assertThat(mFrozen.get("international"), is(6));
+        assertThat(mFrozen.get("te"), is(nullValue()));
+        assertThat(mFrozen.get("inter"), is(nullValue()));
+        assertThat(mFrozen.get("teams"), is(nullValue()));
+        assertThat(mFrozen.get("x"), is(nullValue()));
+        assertThat(mFrozen.containsKey("to"), is(true));
+        assertThat(mFrozen.containsKey("t"), is(false));
+    }
+
+    @Test
+    public void testPathsAreCompressed() {
+        // root, "in", "n", "ternational", "t", "e", "o", "a", "n", "m"
+        assertThat(mFrozen.nodeCount(), is(10));
+    }
+
+    @Test
+    public void testKeysInAscendingOrder() {
+        assertThat(new ArrayList<>(mFrozen.keys()),
+                is(Arrays.asList("inn", "international", "tea", "team", "ten", "to")));
+        assertThat(new ArrayList<>(mFrozen.values()), is(Arrays.asList(5, 6, 1, 3, 2, 4)));
+    }
+
+    @Test
+    public void testKeysWithPrefix() {
+        assertThat(new ArrayList<>(mFrozen.keysWithPrefix("te")), is(Arrays.asList("tea", "team", "ten")));
+        assertThat(new ArrayList<>(mFrozen.keysWithPrefix("inte")), is(Arrays.asList("international")));
+        assertThat(new ArrayList<>(mFrozen.keysWithPrefix("team")), is(Arrays.asList("team")));
+        assertThat(mFrozen.keysWithPrefix("intx").isEmpty(), is(true));
+        assertThat(mFrozen.keysWithPrefix("x").isEmpty(), is(true));
+        assertThat(mFrozen.keysWithPrefix("t").size(), is(4));
+        assertThat(mFrozen.keysWithPrefix("t").contains("ten"), is(true));
+        assertThat(mFrozen.keysWithPrefix("t").contains("inn"), is(false));
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        assertThat(mFrozen.equals(mSource), is(true));
+        assertThat(mSource.equals(mFrozen), is(true));
+        assertThat(mFrozen.hashCode(), is(mSource.hashCode()));
+        assertThat(mFrozen.toString(), is(new FrozenTrie<>(mFrozen, KeyFolding.NONE, false).toString()));
+
+        mSource.put("tea", 7);
+        assertThat(mFrozen.get("tea"), is(1));
+        assertThat(mFrozen.equals(new FrozenTrie<>(mSource, KeyFolding.NONE, false)), is(false));
+    }
+
+    @Test
+    public void testEmpty() {
+        final FrozenTrie<Integer> frozen = new FrozenTrie<>(new HashTrie<Integer>(), KeyFolding.NONE, false);
+
+        assertThat(frozen.isEmpty(), is(true));
+        assertThat(frozen.get(""), is(nullValue()));
+        assertThat(frozen.keys().iterator().hasNext(), is(false));
+        assertThat(frozen.hashCode(), is(0));
+    }
+
+    @Test
+    public void testFolding() {
+        final HashTrie<Integer> source = new HashTrie<>(KeyAlphabet.UNICODE, KeyFolding.CASE_AND_DIACRITICS);
+        source.put("Zürich", 1);
+        final FrozenTrie<Integer> frozen = new FrozenTrie<>(source, KeyFolding.CASE_AND_DIACRITICS, false);
+
+        assertThat(frozen.get("ZURICH"), is(1));
+        assertThat(new ArrayList<>(frozen.keysWithPrefix("ZÜ")), is(Arrays.asList("zurich")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPut() {
+        mFrozen.put("tee", 8);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemove() {
+        mFrozen.remove("tea");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testKeysRemove() {
+        mFrozen.keys().clear();
+    }
+
+    @Test
+    public void testRandomKeys() {
+        final Random random = new Random(42);
+        final HashTrie<Integer> source = new HashTrie<>();
+        for (int i = 0; i < 2000; i++) {
+            final char[] key = new char[1 + random.nextInt(8)];
+            for (int j = 0; j < key.length; j++) {
+                key[j] = (char) ('a' + random.nextInt(4));
+            }
+
+            source.put(new String(key), i);
+        }
+
+        final FrozenTrie<Integer> frozen = new FrozenTrie<>(source, KeyFolding.NONE, false);
+        assertThat(frozen.equals(source), is(true));
+
+        final List<String> keys = new ArrayList<>(source.keysWithPrefix("ab"));
+        Collections.sort(keys);
+        assertThat(new ArrayList<>(frozen.keysWithPrefix("ab")), is(keys));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(bytes)) {
+            stream.writeObject(mFrozen);
+        }
+
+        final Object copy;
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = stream.readObject();
+        }
+
+        assertThat(copy.equals(mFrozen), is(true));
+        assertThat(copy.hashCode(), is(mFrozen.hashCode()));
+    }
+
+    @Test
+    public void testDeepChain() {
+        final HashTrie<Integer> source = deepChain(6000);
+
+        final FrozenTrie<Integer> frozen = new FrozenTrie<>(source, KeyFolding.NONE, false);
+
+        assertThat(frozen.size(), is(6000));
+        assertThat(frozen.nodeCount(), is(6001));
+        assertThat(frozen.equals(source), is(true));
+    }
+
+    @Test
+    public void testSharedDeepChain() {
+        final HashTrie<Integer> source = deepChain(6000);
+
+        final FrozenTrie<Integer> shared = new FrozenTrie<>(source, KeyFolding.NONE, true);
+
+        assertThat(shared.size(), is(6000));
+        assertThat(shared.nodeCount(), is(6001));
+        assertThat(shared.get("aaa"), is(3));
+        assertThat(shared.equals(source), is(true));
+    }
+
+    /**
+     * Returns trie of the keys of every length up to the given one, which nodes form a chain
+     * that is deeper than the call stack could walk.
+     */
+    private static HashTrie<Integer> deepChain(int depth) {
+        final HashTrie<Integer> source = new HashTrie<>();
+        final char[] key = new char[depth];
+        Arrays.fill(key, 'a');
+        for (int length = 1; length <= depth; length++) {
+            source.put(new String(key, 0, length), length);
+        }
+
+        return source;
+    }
+
+    @Test
+    public void testSharedSubtrees() {
+        final HashTrie<Integer> source = new HashTrie<>();
+        for (String region : Arrays.asList("de", "fr", "uk")) {
+            for (String item : Arrays.asList("apple", "apricot", "banana")) {
+                source.put(region + item, item.length());
+            }
+        }
+
+        source.put("frcherry", 6);
+
+        final FrozenTrie<Integer> plain = new FrozenTrie<>(source, KeyFolding.NONE, false);
+        final FrozenTrie<Integer> shared = new FrozenTrie<>(source, KeyFolding.NONE, true);
+
+        // "de" and "uk" share their children, "fr" has one more
+        assertThat(plain.nodeCount(), is(17));
+        assertThat(shared.nodeCount(), is(11));
+
+        assertThat(shared.equals(source), is(true));
+        assertThat(shared.hashCode(), is(source.hashCode()));
+        assertThat(new ArrayList<>(shared.keys()), is(new ArrayList<>(plain.keys())));
+        assertThat(shared.get("ukapricot"), is(7));
+        assertThat(shared.get("ukcherry"), is(nullValue()));
+        assertThat(new ArrayList<>(shared.keysWithPrefix("dea")), is(Arrays.asList("deapple", "deapricot")));
+    }
+
+    @Test
+    public void testSharedSubtreesWithDifferentValues() {
+        final HashTrie<Integer> source = new HashTrie<>();
+        source.put("ax", 1);
+        source.put("ay", 2);
+        source.put("bx", 1);
+        source.put("by", 2);
+        source.put("cx", 1);
+        source.put("cy", 3);
+
+        final FrozenTrie<Integer> shared = new FrozenTrie<>(source, KeyFolding.NONE, true);
+
+        // "a" and "b" share their children, children of "c" are stored separately
+        assertThat(shared.nodeCount(), is(8));
+        assertThat(shared.get("by"), is(2));
+        assertThat(shared.get("cy"), is(3));
+    }
+
+    @Test
+    public void testSharedRandomKeys() {
+        final Random random = new Random(7);
+        final HashTrie<Integer> source = new HashTrie<>();
+        for (int i = 0; i < 500; i++) {
+            final char[] key = new char[1 + random.nextInt(6)];
+            for (int j = 0; j < key.length; j++) {
+                key[j] = (char) ('a' + random.nextInt(3));
+            }
+
+            source.put(new String(key), key.length % 2);
+        }
+
+        final FrozenTrie<Integer> plain = new FrozenTrie<>(source, KeyFolding.NONE, false);
+        final FrozenTrie<Integer> shared = new FrozenTrie<>(source, KeyFolding.NONE, true);
+
+        assertThat(shared.equals(source), is(true));
+        assertThat(new ArrayList<>(shared.entrySet()), is(new ArrayList<>(plain.entrySet())));
+        assertThat(shared.nodeCount() < plain.nodeCount(), is(true));
+    }
+
+}
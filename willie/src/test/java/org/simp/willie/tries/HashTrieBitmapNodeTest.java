@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class HashTrieBitmapNodeTest {
+
+    private static final KeyAlphabet ALPHABET = KeyAlphabet.ALPHANUMERIC;
+
+    private List<HashTrie.Node<Object>> mChildren;
+
+    private BitmapNode<Object> mNode;
+
+    @Before
+    public void setUp() {
+        mNode = new BitmapNode<>();
+
+        mChildren = new ArrayList<>();
+        for (int i = 0; i < 26; i++) {
+            mChildren.add(new BitmapNode<>());
+        }
+    }
+
+    @Test
+    public void testConstructor() {
+        assertThat(mNode.mValue, is(nullValue()));
+        assertThat(mNode.mBitmap, is(0L));
+        assertThat(mNode.hasChildren(), is(false));
+        assertThat(mNode.mChildren.length, is(0));
+    }
+
+    @Test
+    public void testGetChildFor() {
+        assertThat(mNode.getChildFor(ALPHABET, 'b'), is(nullValue()));
+        assertThat(mNode.getChildFor(ALPHABET, '-'), is(nullValue()));
+        assertThat(mNode.getChildFor(ALPHABET, 'к'), is(nullValue()));
+
+        mNode.addChild(ALPHABET, 'b', mChildren.get(0));
+        mNode.addChild(ALPHABET, 'Z', mChildren.get(1));
+        mNode.addChild(ALPHABET, '0', mChildren.get(2));
+
+        assertThat(mNode.getChildFor(ALPHABET, 'b'), is(mChildren.get(0)));
+        assertThat(mNode.getChildFor(ALPHABET, 'Z'), is(mChildren.get(1)));
+        assertThat(mNode.getChildFor(ALPHABET, '0'), is(mChildren.get(2)));
+        assertThat(mNode.getChildFor(ALPHABET, 'a'), is(nullValue()));
+        assertThat(mNode.childrenCount(), is(3));
+    }
+
+    @Test
+    public void testAddChild_Replace() {
+        mNode.addChild(ALPHABET, 'b', mChildren.get(0));
+        mNode.addChild(ALPHABET, 'b', mChildren.get(1));
+
+        assertThat(mNode.getChildFor(ALPHABET, 'b'), is(mChildren.get(1)));
+        assertThat(mNode.childrenCount(), is(1));
+    }
+
+    @Test
+    public void testRemoveChild() {
+        mNode.addChild(ALPHABET, 'b', mChildren.get(0));
+        mNode.addChild(ALPHABET, 'c', mChildren.get(1));
+        mNode.addChild(ALPHABET, 'a', mChildren.get(2));
+
+        mNode.removeChild(ALPHABET, 'b');
+        mNode.removeChild(ALPHABET, 'x');
+
+        assertThat(mNode.getChildFor(ALPHABET, 'b'), is(nullValue()));
+        assertThat(mNode.getChildFor(ALPHABET, 'a'), is(mChildren.get(2)));
+        assertThat(mNode.getChildFor(ALPHABET, 'c'), is(mChildren.get(1)));
+        assertThat(mNode.childrenCount(), is(2));
+
+        mNode.removeChild(ALPHABET, 'a');
+        mNode.removeChild(ALPHABET, 'c');
+
+        assertThat(mNode.hasChildren(), is(false));
+        assertThat(mNode.mBitmap, is(0L));
+    }
+
+    @Test
+    public void testChildren_OrderedBySymbols() {
+        for (int i = mChildren.size() - 1; i >= 0; i--) {
+            mNode.addChild(ALPHABET, (char) ('a' + i), mChildren.get(i));
+        }
+
+        List<Character> symbols = new ArrayList<>();
+        List<HashTrie.Node<Object>> children = new ArrayList<>();
+        for (Map.Entry<Character, HashTrie.Node<Object>> child : mNode.children(ALPHABET)) {
+            symbols.add(child.getKey());
+            children.add(child.getValue());
+        }
+
+        assertThat(mNode.children(ALPHABET).size(), is(mChildren.size()));
+        assertThat(symbols.get(0), is('a'));
+        assertThat(symbols.get(25), is('z'));
+        assertThat(children, is(mChildren));
+    }
+
+    @Test
+    public void testChildren_IteratorRemove() {
+        mNode.addChild(ALPHABET, 'a', mChildren.get(0));
+        mNode.addChild(ALPHABET, 'b', mChildren.get(1));
+        mNode.addChild(ALPHABET, 'c', mChildren.get(2));
+
+        Iterator<Map.Entry<Character, HashTrie.Node<Object>>> iterator = mNode.children(ALPHABET).iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getKey() != 'b') {
+                iterator.remove();
+            }
+        }
+
+        assertThat(mNode.childrenCount(), is(1));
+        assertThat(mNode.getChildFor(ALPHABET, 'b'), is(mChildren.get(1)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testChildren_IteratorRemoveBeforeNext() {
+        mNode.addChild(ALPHABET, 'a', mChildren.get(0));
+
+        mNode.children(ALPHABET).iterator().remove();
+    }
+
+    @Test
+    public void testChildren_Empty() {
+        assertThat(mNode.children(ALPHABET).iterator().hasNext(), is(false));
+        assertThat(mNode.children(ALPHABET).size(), is(0));
+    }
+
+}
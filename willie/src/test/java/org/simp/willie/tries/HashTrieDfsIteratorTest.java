@@ -56,7 +56,8 @@ public class HashTrieDfsIteratorTest {
     public void testConstructor_WithPredefinedValues() {
         mTrie.put("sd", mObject1);
 
-        HashTrie.DfsIterator iterator = mTrie.new DfsIterator(mTrie.mRoot.getChildFor('s').getChildFor('d'), "sd") {
+        HashTrie.Node<Object> node = mTrie.mRoot.getChildFor(mTrie.mAlphabet, 's').getChildFor(mTrie.mAlphabet, 'd');
+        HashTrie.DfsIterator iterator = mTrie.new DfsIterator(node, "sd") {
         };
 
         assertThat(iterator.mExpectedModCount, is(mTrie.mModCount));
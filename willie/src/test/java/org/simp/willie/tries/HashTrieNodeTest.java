@@ -27,6 +27,8 @@ import static org.hamcrest.MatcherAssert.assertThat;
 
 public class HashTrieNodeTest {
 
+    private static final KeyAlphabet ALPHABET = KeyAlphabet.UNICODE;
+
     private Object mObject;
 
     private List<HashTrie.Node<Object>> mChildren;
@@ -36,12 +38,12 @@ public class HashTrieNodeTest {
     @Before
     @SuppressWarnings("unchecked")
     public void setUp() {
-        mNode = new HashTrie.Node<>();
+        mNode = new HashTrie.MapNode<>();
         mObject = new Object();
 
         mChildren = new ArrayList<>();
         for (int i = 0; i < 26; i++) {
-            mChildren.add(new HashTrie.Node<>());
+            mChildren.add(new HashTrie.MapNode<>());
         }
     }
 
@@ -71,35 +73,55 @@ public class HashTrieNodeTest {
     public void testHasChildren() {
         assertThat(mNode.hasChildren(), is(false));
 
-        mNode.addChild('a', mChildren.get(0));
+        mNode.addChild(ALPHABET, 'a', mChildren.get(0));
 
         assertThat(mNode.hasChildren(), is(true));
     }
 
     @Test
     public void testGetChildFor() {
-        assertThat(mNode.getChildFor('b'), is(nullValue()));
+        assertThat(mNode.getChildFor(ALPHABET, 'b'), is(nullValue()));
 
-        mNode.addChild('b', mChildren.get(0));
+        mNode.addChild(ALPHABET, 'b', mChildren.get(0));
 
-        assertThat(mNode.getChildFor('b'), is(mChildren.get(0)));
+        assertThat(mNode.getChildFor(ALPHABET, 'b'), is(mChildren.get(0)));
     }
 
     @Test
     public void testRemoveChild() {
-        mNode.addChild('b', mChildren.get(0));
-        mNode.removeChild('b');
+        mNode.addChild(ALPHABET, 'b', mChildren.get(0));
+        mNode.removeChild(ALPHABET, 'b');
 
-        assertThat(mNode.getChildFor('b'), is(nullValue()));
+        assertThat(mNode.getChildFor(ALPHABET, 'b'), is(nullValue()));
     }
 
     @Test
     public void testChildren() {
         for (int i = 0; i < mChildren.size(); i++) {
-            mNode.addChild((char) ('a' + i), mChildren.get(i));
+            mNode.addChild(ALPHABET, (char) ('a' + i), mChildren.get(i));
         }
 
-        assertThat(mNode.children().size(), is(mChildren.size()));
+        assertThat(mNode.children(ALPHABET).size(), is(mChildren.size()));
+    }
+
+    @Test
+    public void testEstimatedBytes_TableAfterRemovals() {
+        for (int i = 0; i < 100; i++) {
+            mNode.addChild(ALPHABET, (char) ('a' + i), mChildren.get(i % mChildren.size()));
+        }
+
+        for (int i = 10; i < 100; i++) {
+            mNode.removeChild(ALPHABET, (char) ('a' + i));
+        }
+
+        long bytes = mNode.childrenBytes();
+        HashTrie.Node<Object> compacted = mNode.compacted();
+
+        // table of 256 references is replaced with table of 16 references
+        assertThat(bytes - compacted.childrenBytes(), is(MemoryLayout.array(256, MemoryLayout.REFERENCE)
+                - MemoryLayout.array(16, MemoryLayout.REFERENCE)));
+        assertThat(compacted.childrenCount(), is(10));
+        assertThat(compacted.getChildFor(ALPHABET, 'j'), is(mChildren.get(9)));
     }
 
 }
@@ -24,9 +24,20 @@ import java.io.IOException;
 import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
@@ -34,6 +45,7 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
 
@@ -99,12 +111,12 @@ public class HashTrieTest {
 
         mTrie.put(Character.toString(key), mObject1);
 
-        assertThat(mTrie.mRoot.getChildFor(key), is(notNullValue()));
-        assertThat(mTrie.mRoot.children().size(), is(1));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, key), is(notNullValue()));
+        assertThat(mTrie.mRoot.children(mTrie.mAlphabet).size(), is(1));
         assertThat(mTrie.mRoot.hasValue(), is(false));
 
-        assertThat(mTrie.mRoot.getChildFor(key).mValue, is(mObject1));
-        assertThat(mTrie.mRoot.getChildFor(key).hasChildren(), is(false));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, key).mValue, is(mObject1));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, key).hasChildren(), is(false));
     }
 
     @Test
@@ -114,12 +126,12 @@ public class HashTrieTest {
         mTrie.put(Character.toString(key), mObject1);
         mTrie.put(Character.toString(key), mObject2);
 
-        assertThat(mTrie.mRoot.getChildFor(key), is(notNullValue()));
-        assertThat(mTrie.mRoot.children().size(), is(1));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, key), is(notNullValue()));
+        assertThat(mTrie.mRoot.children(mTrie.mAlphabet).size(), is(1));
         assertThat(mTrie.mRoot.hasValue(), is(false));
 
-        assertThat(mTrie.mRoot.getChildFor(key).mValue, is(mObject2));
-        assertThat(mTrie.mRoot.getChildFor(key).hasChildren(), is(false));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, key).mValue, is(mObject2));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, key).hasChildren(), is(false));
     }
 
     @Test
@@ -128,16 +140,16 @@ public class HashTrieTest {
 
         mTrie.put(key, mObject1);
 
-        assertThat(mTrie.mRoot.getChildFor(key.charAt(0)), is(notNullValue()));
-        assertThat(mTrie.mRoot.children().size(), is(1));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, key.charAt(0)), is(notNullValue()));
+        assertThat(mTrie.mRoot.children(mTrie.mAlphabet).size(), is(1));
         assertThat(mTrie.mRoot.hasValue(), is(false));
 
-        HashTrie.Node<Object> child1 = mTrie.mRoot.getChildFor(key.charAt(0));
-        assertThat(child1.getChildFor(key.charAt(1)), is(notNullValue()));
+        HashTrie.Node<Object> child1 = mTrie.mRoot.getChildFor(mTrie.mAlphabet, key.charAt(0));
+        assertThat(child1.getChildFor(mTrie.mAlphabet, key.charAt(1)), is(notNullValue()));
         assertThat(child1.hasValue(), is(false));
-        assertThat(child1.children().size(), is(1));
+        assertThat(child1.children(mTrie.mAlphabet).size(), is(1));
 
-        HashTrie.Node<Object> child2 = child1.getChildFor(key.charAt(1));
+        HashTrie.Node<Object> child2 = child1.getChildFor(mTrie.mAlphabet, key.charAt(1));
         assertThat(child2.hasChildren(), is(false));
         assertThat(child2.mValue, is(mObject1));
     }
@@ -149,16 +161,16 @@ public class HashTrieTest {
         mTrie.put(key, mObject1);
         mTrie.put(key, mObject2);
 
-        assertThat(mTrie.mRoot.getChildFor(key.charAt(0)), is(notNullValue()));
-        assertThat(mTrie.mRoot.children().size(), is(1));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, key.charAt(0)), is(notNullValue()));
+        assertThat(mTrie.mRoot.children(mTrie.mAlphabet).size(), is(1));
         assertThat(mTrie.mRoot.hasValue(), is(false));
 
-        HashTrie.Node<Object> child1 = mTrie.mRoot.getChildFor(key.charAt(0));
-        assertThat(child1.getChildFor(key.charAt(1)), is(notNullValue()));
+        HashTrie.Node<Object> child1 = mTrie.mRoot.getChildFor(mTrie.mAlphabet, key.charAt(0));
+        assertThat(child1.getChildFor(mTrie.mAlphabet, key.charAt(1)), is(notNullValue()));
         assertThat(child1.hasValue(), is(false));
-        assertThat(child1.children().size(), is(1));
+        assertThat(child1.children(mTrie.mAlphabet).size(), is(1));
 
-        HashTrie.Node<Object> child2 = child1.getChildFor(key.charAt(1));
+        HashTrie.Node<Object> child2 = child1.getChildFor(mTrie.mAlphabet, key.charAt(1));
         assertThat(child2.hasChildren(), is(false));
         assertThat(child2.mValue, is(mObject2));
     }
@@ -175,30 +187,30 @@ public class HashTrieTest {
 
         // check root
         HashTrie.Node<Object> root = mTrie.mRoot;
-        assertThat(root.getChildFor(key2.charAt(0)), is(notNullValue()));
-        assertThat(root.getChildFor(key3.charAt(0)), is(notNullValue()));
-        assertThat(root.children().size(), is(2));
+        assertThat(root.getChildFor(mTrie.mAlphabet, key2.charAt(0)), is(notNullValue()));
+        assertThat(root.getChildFor(mTrie.mAlphabet, key3.charAt(0)), is(notNullValue()));
+        assertThat(root.children(mTrie.mAlphabet).size(), is(2));
         assertThat(root.hasValue(), is(false));
 
         // check child1
-        HashTrie.Node<Object> child1 = root.getChildFor(key1.charAt(0));
-        assertThat(child1.getChildFor(key1.charAt(1)), is(notNullValue()));
+        HashTrie.Node<Object> child1 = root.getChildFor(mTrie.mAlphabet, key1.charAt(0));
+        assertThat(child1.getChildFor(mTrie.mAlphabet, key1.charAt(1)), is(notNullValue()));
         assertThat(child1.mValue, is(mObject2));
-        assertThat(child1.children().size(), is(1));
+        assertThat(child1.children(mTrie.mAlphabet).size(), is(1));
 
         // check child2
-        HashTrie.Node<Object> child2 = child1.getChildFor(key1.charAt(1));
+        HashTrie.Node<Object> child2 = child1.getChildFor(mTrie.mAlphabet, key1.charAt(1));
         assertThat(child2.hasChildren(), is(false));
         assertThat(child2.mValue, is(mObject1));
 
         // check child3
-        HashTrie.Node<Object> child3 = root.getChildFor(key3.charAt(0));
-        assertThat(child3.getChildFor(key3.charAt(1)), is(notNullValue()));
-        assertThat(child3.children().size(), is(1));
+        HashTrie.Node<Object> child3 = root.getChildFor(mTrie.mAlphabet, key3.charAt(0));
+        assertThat(child3.getChildFor(mTrie.mAlphabet, key3.charAt(1)), is(notNullValue()));
+        assertThat(child3.children(mTrie.mAlphabet).size(), is(1));
         assertThat(child3.hasValue(), is(false));
 
         // check child4
-        HashTrie.Node<Object> child4 = child3.getChildFor(key3.charAt(1));
+        HashTrie.Node<Object> child4 = child3.getChildFor(mTrie.mAlphabet, key3.charAt(1));
         assertThat(child4.hasChildren(), is(false));
         assertThat(child4.mValue, is(mObject3));
     }
@@ -244,11 +256,11 @@ public class HashTrieTest {
 
         mTrie.remove("abc");
 
-        assertThat(mTrie.mRoot.children().size(), is(1));
+        assertThat(mTrie.mRoot.children(mTrie.mAlphabet).size(), is(1));
         assertThat(mTrie.mRoot.hasValue(), is(false));
-        assertThat(mTrie.mRoot.getChildFor('a'), is(notNullValue()));
-        assertThat(mTrie.mRoot.getChildFor('a').hasChildren(), is(false));
-        assertThat(mTrie.mRoot.getChildFor('a').mValue, is(mObject1));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, 'a'), is(notNullValue()));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, 'a').hasChildren(), is(false));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, 'a').mValue, is(mObject1));
         assertThat(mTrie.mSize, is(1));
     }
 
@@ -458,29 +470,28 @@ public class HashTrieTest {
         mTrie.put("sf", mObject1);
         mTrie.put("sfg", mObject2);
 
-        HashTrie.KeySet keySet = mTrie.new KeySet(mTrie.mRoot, "");
+        HashTrie.KeySet keySet = mTrie.new KeySet("");
 
         assertThat(keySet.size(), is(mTrie.mSize));
-        assertThat((HashTrie.Node<Object>) keySet.mNode, is(mTrie.mRoot));
         assertThat(keySet.mPrefix, is(""));
         assertThat(keySet.iterator(), is(instanceOf(HashTrie.KeyIterator.class)));
     }
 
     @Test(expected = UnsupportedOperationException.class)
     public void testKeysSet_AddIsUnsupported() {
-        mTrie.new KeySet(mTrie.mRoot, "").add("a");
+        mTrie.new KeySet("").add("a");
     }
 
     @Test(expected = UnsupportedOperationException.class)
     public void testKeysSet_RemoveIsUnsupported() {
         mTrie.put("d", mObject1);
-        mTrie.new KeySet(mTrie.mRoot, "").remove("d");
+        mTrie.new KeySet("").remove("d");
     }
 
     @Test(expected = UnsupportedOperationException.class)
     public void testKeySet_ClearIsUnsupported() {
         mTrie.put("d", mObject1);
-        mTrie.new KeySet(mTrie.mRoot, "").clear();
+        mTrie.new KeySet("").clear();
     }
 
     @Test
@@ -592,6 +603,18 @@ public class HashTrieTest {
         assertThat(keys, containsInAnyOrder("sf"));
     }
 
+    @Test
+    public void testKeysWithPrefix_PrefixWithoutValue() {
+        mTrie.put("sfgh", mObject1);
+        mTrie.put("sfxy", mObject2);
+        mTrie.put("q", mObject1);
+
+        Set<String> keys = mTrie.keysWithPrefix("sf");
+
+        assertThat(keys, containsInAnyOrder("sfgh", "sfxy"));
+        assertThat(keys.size(), is(2));
+    }
+
     @Test
     public void testSerialization_EmptyTrie() throws IOException, ClassNotFoundException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -673,4 +696,1061 @@ public class HashTrieTest {
         assertThat(clonedTrie.size(), is(2));
     }
 
+    @Test(expected = NullPointerException.class)
+    public void testMerge_NullTrie() {
+        mTrie.merge(null, new MergeFunction<Object>() {
+            @Override
+            public Object merge(Object oldValue, Object newValue) {
+                return newValue;
+            }
+        });
+    }
+
+    @Test
+    public void testMerge_DisjointTries() {
+        mTrie.put("abc", mObject1);
+
+        HashTrie<Object> otherTrie = new HashTrie<>();
+        otherTrie.put("abd", mObject2);
+        otherTrie.put("x", mObject3);
+
+        mTrie.merge(otherTrie, new MergeFunction<Object>() {
+            @Override
+            public Object merge(Object oldValue, Object newValue) {
+                throw new AssertionError("Keys are disjoint");
+            }
+        });
+
+        assertThat(mTrie.size(), is(3));
+        assertThat(mTrie.get("abc"), is(mObject1));
+        assertThat(mTrie.get("abd"), is(mObject2));
+        assertThat(mTrie.get("x"), is(mObject3));
+
+        otherTrie.put("xy", mObject1);
+
+        assertThat(mTrie.containsKey("xy"), is(false));
+    }
+
+    @Test
+    public void testMerge_CommonKeys() {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("ab", "1");
+        trie.put("abc", "2");
+
+        HashTrie<String> otherTrie = new HashTrie<>();
+        otherTrie.put("ab", "3");
+        otherTrie.put("a", "4");
+
+        trie.merge(otherTrie, new MergeFunction<String>() {
+            @Override
+            public String merge(String oldValue, String newValue) {
+                return oldValue + newValue;
+            }
+        });
+
+        assertThat(trie.size(), is(3));
+        assertThat(trie.get("a"), is("4"));
+        assertThat(trie.get("ab"), is("13"));
+        assertThat(trie.get("abc"), is("2"));
+    }
+
+    @Test
+    public void testMerge_NullResultRemovesMapping() {
+        mTrie.put("abc", mObject1);
+        mTrie.put("d", mObject1);
+
+        HashTrie<Object> otherTrie = new HashTrie<>();
+        otherTrie.put("abc", mObject2);
+
+        mTrie.merge(otherTrie, new MergeFunction<Object>() {
+            @Override
+            public Object merge(Object oldValue, Object newValue) {
+                return null;
+            }
+        });
+
+        assertThat(mTrie.size(), is(1));
+        assertThat(mTrie.containsKey("abc"), is(false));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, 'a'), is(nullValue()));
+    }
+
+    @Test
+    public void testMerge_ItSelf() {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("ab", "1");
+        trie.put("abc", "2");
+
+        trie.merge(trie, new MergeFunction<String>() {
+            @Override
+            public String merge(String oldValue, String newValue) {
+                return oldValue + newValue;
+            }
+        });
+
+        assertThat(trie.size(), is(2));
+        assertThat(trie.get("ab"), is("11"));
+        assertThat(trie.get("abc"), is("22"));
+    }
+
+    @Test
+    public void testMerge_UnmodifiableView() {
+        HashTrie<Object> otherTrie = new HashTrie<>();
+        otherTrie.put("ab", mObject2);
+
+        mTrie.merge(Tries.unmodifiableTrie(otherTrie), new MergeFunction<Object>() {
+            @Override
+            public Object merge(Object oldValue, Object newValue) {
+                return newValue;
+            }
+        });
+
+        assertThat(mTrie.size(), is(1));
+        assertThat(mTrie.get("ab"), is(mObject2));
+    }
+
+    @Test
+    public void testIntersect() {
+        mTrie.put("abc", mObject1);
+        mTrie.put("ab", mObject2);
+        mTrie.put("abd", mObject3);
+        mTrie.put("x", mObject1);
+
+        HashTrie<String> otherTrie = new HashTrie<>();
+        otherTrie.put("abc", "c");
+        otherTrie.put("a", "a");
+        otherTrie.put("y", "y");
+
+        assertThat(mTrie.intersect(otherTrie), is(true));
+
+        assertThat(mTrie.size(), is(1));
+        assertThat(mTrie.get("abc"), is(mObject1));
+        assertThat(mTrie.mRoot.children(mTrie.mAlphabet).size(), is(1));
+        HashTrie.Node<Object> node = mTrie.mRoot.getChildFor(mTrie.mAlphabet, 'a').getChildFor(mTrie.mAlphabet, 'b');
+        assertThat(node.children(mTrie.mAlphabet).size(), is(1));
+    }
+
+    @Test
+    public void testIntersect_NothingChanged() {
+        mTrie.put("abc", mObject1);
+
+        HashTrie<String> otherTrie = new HashTrie<>();
+        otherTrie.put("abc", "c");
+        otherTrie.put("abcd", "d");
+
+        assertThat(mTrie.intersect(otherTrie), is(false));
+        assertThat(mTrie.intersect(mTrie), is(false));
+        assertThat(mTrie.size(), is(1));
+    }
+
+    @Test
+    public void testIntersect_EmptyTrie() {
+        mTrie.put("abc", mObject1);
+
+        assertThat(mTrie.intersect(new HashTrie<String>()), is(true));
+
+        assertThat(mTrie.isEmpty(), is(true));
+        assertThat(mTrie.mRoot.hasChildren(), is(false));
+    }
+
+    @Test
+    public void testSubtract() {
+        mTrie.put("abc", mObject1);
+        mTrie.put("ab", mObject2);
+        mTrie.put("x", mObject1);
+
+        HashTrie<String> otherTrie = new HashTrie<>();
+        otherTrie.put("abc", "c");
+        otherTrie.put("abcd", "d");
+        otherTrie.put("a", "a");
+        otherTrie.put("y", "y");
+
+        assertThat(mTrie.subtract(otherTrie), is(true));
+
+        assertThat(mTrie.size(), is(2));
+        assertThat(mTrie.get("ab"), is(mObject2));
+        assertThat(mTrie.get("x"), is(mObject1));
+        HashTrie.Node<Object> node = mTrie.mRoot.getChildFor(mTrie.mAlphabet, 'a').getChildFor(mTrie.mAlphabet, 'b');
+        assertThat(node.hasChildren(), is(false));
+    }
+
+    @Test
+    public void testSubtract_ItSelf() {
+        mTrie.put("abc", mObject1);
+
+        assertThat(mTrie.subtract(mTrie), is(true));
+        assertThat(mTrie.isEmpty(), is(true));
+        assertThat(mTrie.subtract(mTrie), is(false));
+    }
+
+    @Test
+    public void testMerge_DeepChain() {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put(deepKey('a'), "1");
+
+        HashTrie<String> otherTrie = new HashTrie<>();
+        otherTrie.put(deepKey('a'), "2");
+        otherTrie.put(deepKey('b'), "3");
+
+        trie.merge(otherTrie, new MergeFunction<String>() {
+            @Override
+            public String merge(String oldValue, String newValue) {
+                return oldValue + newValue;
+            }
+        });
+
+        assertThat(trie.size(), is(2));
+        assertThat(trie.get(deepKey('a')), is("12"));
+        assertThat(trie.get(deepKey('b')), is("3"));
+        assertThat(trie.hashCode(), is(entriesHashCode(trie)));
+    }
+
+    @Test
+    public void testIntersectAndSubtract_DeepChain() {
+        mTrie.put(deepKey('a'), mObject1);
+        mTrie.put(deepKey('b'), mObject2);
+
+        HashTrie<String> otherTrie = new HashTrie<>();
+        otherTrie.put(deepKey('a'), "a");
+
+        HashTrie<Object> intersected = mTrie.clone();
+        assertThat(intersected.intersect(otherTrie), is(true));
+        assertThat(intersected.keys(), contains(deepKey('a')));
+        assertThat(intersected.hashCode(), is(entriesHashCode(intersected)));
+
+        assertThat(mTrie.subtract(otherTrie), is(true));
+        assertThat(mTrie.keys(), contains(deepKey('b')));
+        assertThat(mTrie.hashCode(), is(entriesHashCode(mTrie)));
+    }
+
+    @Test
+    public void testHashCode_MatchesEntries() {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("abc", "1");
+        trie.put("ab", "2");
+        trie.put("x", "3");
+        trie.put("ab", "4");
+        trie.remove("x");
+        trie.remove("y");
+
+        assertThat(trie.hashCode(), is(entriesHashCode(trie)));
+
+        HashTrie<String> otherTrie = new HashTrie<>();
+        otherTrie.put("abd", "5");
+        otherTrie.put("ab", "6");
+        otherTrie.put("z", "7");
+
+        trie.merge(otherTrie, new MergeFunction<String>() {
+            @Override
+            public String merge(String oldValue, String newValue) {
+                return oldValue + newValue;
+            }
+        });
+        assertThat(trie.hashCode(), is(entriesHashCode(trie)));
+
+        otherTrie.remove("z");
+        trie.intersect(otherTrie);
+        assertThat(trie.hashCode(), is(entriesHashCode(trie)));
+
+        otherTrie.remove("abd");
+        trie.subtract(otherTrie);
+        assertThat(trie.hashCode(), is(entriesHashCode(trie)));
+        assertThat(trie.size(), is(1));
+
+        trie.clear();
+        assertThat(trie.hashCode(), is(0));
+    }
+
+    @Test
+    public void testStructuralHash_IndependentOfModificationOrder() {
+        HashTrie<String> firstTrie = new HashTrie<>();
+        firstTrie.put("abc", "1");
+        firstTrie.put("abd", "2");
+        firstTrie.put("b", "3");
+
+        HashTrie<String> secondTrie = new HashTrie<>();
+        secondTrie.put("b", "3");
+        secondTrie.put("abd", "2");
+        secondTrie.put("abdf", "4");
+        secondTrie.put("abc", "1");
+        secondTrie.remove("abdf");
+
+        assertStructuralHashes(firstTrie.mAlphabet, firstTrie.mRoot);
+        assertStructuralHashes(secondTrie.mAlphabet, secondTrie.mRoot);
+        assertThat(firstTrie.mRoot.mHash, is(secondTrie.mRoot.mHash));
+
+        secondTrie.put("abd", "5");
+
+        assertStructuralHashes(secondTrie.mAlphabet, secondTrie.mRoot);
+        assertThat(firstTrie.mRoot.mHash == secondTrie.mRoot.mHash, is(false));
+    }
+
+    @Test
+    public void testEquals() {
+        HashTrie<String> firstTrie = new HashTrie<>();
+        firstTrie.put("abc", "1");
+        firstTrie.put("b", "2");
+
+        HashTrie<String> secondTrie = new HashTrie<>();
+        secondTrie.put("b", "2");
+        secondTrie.put("abc", "1");
+
+        assertThat(firstTrie.equals(secondTrie), is(true));
+        assertThat(firstTrie.equals(Tries.unmodifiableTrie(secondTrie)), is(true));
+        assertThat(firstTrie.hashCode(), is(secondTrie.hashCode()));
+
+        secondTrie.put("abc", "3");
+
+        assertThat(firstTrie.equals(secondTrie), is(false));
+
+        secondTrie.put("abc", "1");
+        secondTrie.put("ab", "1");
+
+        assertThat(firstTrie.equals(secondTrie), is(false));
+    }
+
+    @Test
+    public void testEquals_SameHashCodeDifferentKeys() {
+        // "Aa" and "BB" have same hash codes
+        HashTrie<String> firstTrie = new HashTrie<>();
+        firstTrie.put("Aa", "1");
+
+        HashTrie<String> secondTrie = new HashTrie<>();
+        secondTrie.put("BB", "1");
+
+        assertThat(firstTrie.hashCode(), is(secondTrie.hashCode()));
+        assertThat(firstTrie.equals(secondTrie), is(false));
+    }
+
+    @Test
+    public void testEquals_DeepChain() {
+        HashTrie<String> firstTrie = new HashTrie<>();
+        firstTrie.put(deepKey('a'), "1");
+        firstTrie.put(deepKey('b'), "2");
+
+        HashTrie<String> secondTrie = new HashTrie<>();
+        secondTrie.put(deepKey('b'), "2");
+        secondTrie.put(deepKey('a'), "1");
+
+        assertThat(firstTrie.equals(secondTrie), is(true));
+
+        secondTrie.put(deepKey('b'), "3");
+
+        assertThat(firstTrie.equals(secondTrie), is(false));
+    }
+
+    /**
+     * Returns key whose nodes form a chain that is deeper than the call stack could walk.
+     */
+    private static String deepKey(char last) {
+        char[] key = new char[20000];
+        Arrays.fill(key, 'a');
+        key[key.length - 1] = last;
+
+        return new String(key);
+    }
+
+    private static int entriesHashCode(Trie<?> trie) {
+        int hashCode = 0;
+        for (Map.Entry<String, ?> entry : trie.entrySet()) {
+            hashCode += entry.hashCode();
+        }
+
+        return hashCode;
+    }
+
+    private static void assertStructuralHashes(KeyAlphabet alphabet, HashTrie.Node<?> node) {
+        for (Map.Entry<Character, ? extends HashTrie.Node<?>> child : node.children(alphabet)) {
+            assertStructuralHashes(alphabet, child.getValue());
+        }
+
+        int hash = node.mHash;
+        node.rehash(alphabet);
+
+        assertThat(hash, is(node.mHash));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructor_NullAlphabet() {
+        new HashTrie<>(null);
+    }
+
+    @Test
+    public void testAlphabet_BitmapIndexedNodes() {
+        HashTrie<Object> trie = new HashTrie<>(KeyAlphabet.ALPHANUMERIC);
+        trie.put("ab1", mObject1);
+        trie.put("aZ", mObject2);
+
+        assertThat(trie.alphabet(), is(KeyAlphabet.ALPHANUMERIC));
+        assertThat(trie.mRoot, is(instanceOf(BitmapNode.class)));
+        assertThat(trie.mRoot.getChildFor(trie.mAlphabet, 'a'), is(instanceOf(BitmapNode.class)));
+        assertThat(trie.get("ab1"), is(mObject1));
+        assertThat(trie.get("aZ"), is(mObject2));
+        assertThat(trie.keys(), contains("aZ", "ab1"));
+
+        trie.remove("ab1");
+
+        assertThat(trie.mRoot.getChildFor(trie.mAlphabet, 'a').childrenCount(), is(1));
+    }
+
+    @Test
+    public void testAlphabet_UnicodeUsesMapNodes() {
+        assertThat(mTrie.alphabet(), is(KeyAlphabet.UNICODE));
+        assertThat(mTrie.mRoot, is(instanceOf(HashTrie.MapNode.class)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAlphabet_RejectsKey() {
+        new HashTrie<>(KeyAlphabet.LOWERCASE).put("abC", mObject1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAlphabet_RejectsQuery() {
+        new HashTrie<>(KeyAlphabet.DIGITS).get("12a");
+    }
+
+    @Test
+    public void testMerge_NarrowerAlphabet() {
+        HashTrie<Object> trie = new HashTrie<>(KeyAlphabet.HEX);
+        trie.put("ab", mObject1);
+
+        HashTrie<Object> otherTrie = new HashTrie<>(KeyAlphabet.DIGITS);
+        otherTrie.put("12", mObject2);
+
+        trie.merge(otherTrie, new MergeFunction<Object>() {
+            @Override
+            public Object merge(Object oldValue, Object newValue) {
+                return newValue;
+            }
+        });
+
+        assertThat(trie.get("12"), is(mObject2));
+        assertThat(trie.mRoot.getChildFor(trie.mAlphabet, '1'), is(instanceOf(BitmapNode.class)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMerge_WiderAlphabet() {
+        HashTrie<Object> trie = new HashTrie<>(KeyAlphabet.DIGITS);
+
+        HashTrie<Object> otherTrie = new HashTrie<>(KeyAlphabet.HEX);
+        otherTrie.put("1f", mObject2);
+
+        trie.merge(otherTrie, new MergeFunction<Object>() {
+            @Override
+            public Object merge(Object oldValue, Object newValue) {
+                return newValue;
+            }
+        });
+    }
+
+    @Test
+    public void testMergeIntersectAndSubtract_BitmapAlphabetsOfDifferentOrder() {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.ALPHANUMERIC);
+        trie.put("ab", "1");
+        trie.put("Ab", "2");
+
+        HashTrie<String> otherTrie = new HashTrie<>(KeyAlphabet.LOWERCASE);
+        otherTrie.put("ab", "3");
+        otherTrie.put("cd", "4");
+
+        trie.merge(otherTrie, new MergeFunction<String>() {
+            @Override
+            public String merge(String oldValue, String newValue) {
+                return oldValue + newValue;
+            }
+        });
+
+        assertThat(trie.keys(), contains("Ab", "ab", "cd"));
+        assertThat(trie.get("ab"), is("13"));
+        assertStructuralHashes(trie.mAlphabet, trie.mRoot);
+
+        HashTrie<String> intersection = trie.clone();
+        intersection.intersect(otherTrie);
+
+        assertThat(intersection.keys(), contains("ab", "cd"));
+
+        trie.subtract(otherTrie);
+
+        assertThat(trie.keys(), contains("Ab"));
+        assertStructuralHashes(trie.mAlphabet, trie.mRoot);
+
+        otherTrie.remove("ab");
+        otherTrie.put("cd", "1");
+        otherTrie.put("ab", "2");
+        trie.put("cd", "1");
+        trie.put("ab", "2");
+        trie.remove("Ab");
+
+        assertThat(trie.equals(otherTrie), is(true));
+    }
+
+    @Test
+    public void testEquals_DifferentAlphabets() {
+        HashTrie<String> firstTrie = new HashTrie<>(KeyAlphabet.LOWERCASE);
+        firstTrie.put("abc", "1");
+
+        HashTrie<String> secondTrie = new HashTrie<>();
+        secondTrie.put("abc", "1");
+
+        assertThat(firstTrie.equals(secondTrie), is(true));
+        assertThat(firstTrie.mRoot.mHash, is(secondTrie.mRoot.mHash));
+    }
+
+    @Test
+    public void testSerialization_KeepsAlphabet() throws IOException, ClassNotFoundException {
+        HashTrie<String> orgTrie = new HashTrie<>(KeyAlphabet.HEX);
+        orgTrie.put("af09", "v");
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream outStream = new ObjectOutputStream(bos);
+
+        outStream.writeObject(orgTrie);
+        outStream.close();
+
+        ObjectInputStream inStream = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+
+        HashTrie<String> dstTrie = (HashTrie<String>) inStream.readObject();
+
+        inStream.close();
+
+        assertThat(dstTrie.alphabet(), is(KeyAlphabet.HEX));
+        assertThat(dstTrie.mRoot, is(instanceOf(BitmapNode.class)));
+        assertThat(dstTrie.get("af09"), is("v"));
+        assertThat(dstTrie, is((Trie<String>) orgTrie));
+    }
+
+    @Test
+    public void testCompact() {
+        for (int i = 0; i < 100; i++) {
+            mTrie.put("a" + i, i);
+        }
+        mTrie.put("b", mObject1);
+        for (int i = 0; i < 100; i++) {
+            mTrie.remove("a" + i);
+        }
+        mTrie.put("a5", mObject2);
+
+        final int hashCode = mTrie.hashCode();
+        final int rootHash = mTrie.mRoot.mHash;
+
+        assertThat(mTrie.compact() > 0, is(true));
+
+        assertThat(mTrie.size(), is(2));
+        assertThat(mTrie.get("b"), is(mObject1));
+        assertThat(mTrie.get("a5"), is(mObject2));
+        assertThat(mTrie.keys(), containsInAnyOrder("a5", "b"));
+        assertThat(mTrie.hashCode(), is(hashCode));
+        assertThat(mTrie.mRoot.mHash, is(rootHash));
+        assertThat(mTrie.mRoot, is(instanceOf(HashTrie.ArrayNode.class)));
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, 'a'), is(instanceOf(HashTrie.ArrayNode.class)));
+        assertStructuralHashes(mTrie.mAlphabet, mTrie.mRoot);
+    }
+
+    @Test
+    public void testCompact_ModificationsAfterwards() {
+        mTrie.put("ab", mObject1);
+        mTrie.put("ac", mObject2);
+        mTrie.compact();
+
+        for (int i = 0; i < 20; i++) {
+            mTrie.put("a" + i, i);
+        }
+        mTrie.remove("ab");
+
+        assertThat(mTrie.size(), is(21));
+        assertThat(mTrie.get("ac"), is(mObject2));
+        assertThat(mTrie.get("a19"), is((Object) 19));
+        assertStructuralHashes(mTrie.mAlphabet, mTrie.mRoot);
+
+        mTrie.compact();
+
+        assertThat(mTrie.mRoot.getChildFor(mTrie.mAlphabet, 'a'), is(instanceOf(HashTrie.MapNode.class)));
+        assertThat(mTrie.get("a19"), is((Object) 19));
+        assertThat(mTrie.compact(), is(0L));
+    }
+
+    @Test
+    public void testCompact_DeepChain() {
+        mTrie.put(deepKey('a'), mObject1);
+        mTrie.put(deepKey('b'), mObject2);
+        mTrie.remove(deepKey('b'));
+
+        assertThat(mTrie.compact() > 0, is(true));
+        assertThat(mTrie.get(deepKey('a')), is(mObject1));
+        assertThat(mTrie.size(), is(1));
+    }
+
+    @Test
+    public void testCompact_KeysViewFollowsRoot() {
+        final Set<String> keys = mTrie.keys();
+        mTrie.put("ab", mObject1);
+        mTrie.compact();
+
+        assertThat(keys, contains("ab"));
+    }
+
+    @Test
+    public void testCompact_BitmapIndexed() {
+        HashTrie<Object> trie = new HashTrie<>(KeyAlphabet.LOWERCASE);
+        trie.put("abc", mObject1);
+
+        assertThat(trie.compact(), is(0L));
+        assertThat(trie.mRoot, is(instanceOf(BitmapNode.class)));
+        assertThat(trie.get("abc"), is(mObject1));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testCompact_InvalidatesIterators() {
+        mTrie.put("ab", mObject1);
+        mTrie.put("ac", mObject2);
+
+        final Iterator<String> iterator = mTrie.keys().iterator();
+        iterator.next();
+        mTrie.compact();
+        iterator.next();
+    }
+
+    @Test
+    public void testWritePrefixTo() throws IOException {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("car", "1");
+        trie.put("cart", "2");
+        trie.put("cat", "3");
+        trie.put("dog", "4");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        long count = trie.writePrefixTo("ca", stream, "\n");
+
+        assertThat(count, is(3L));
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8).split("\n"),
+                is(trie.keysWithPrefix("ca").toArray(new String[0])));
+    }
+
+    @Test
+    public void testWritePrefixTo_AllKeys() throws IOException {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("b", "1");
+        trie.put("a", "2");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        assertThat(trie.writePrefixTo("", stream, ", "), is(2L));
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8).split(", "),
+                is(trie.keys().toArray(new String[0])));
+    }
+
+    @Test
+    public void testWritePrefixTo_MissingPrefix() throws IOException {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("car", "1");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        assertThat(trie.writePrefixTo("dog", stream, "\n"), is(0L));
+        assertThat(stream.size(), is(0));
+    }
+
+    @Test
+    public void testWritePrefixTo_MultiByteKeys() throws IOException {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("café", "1");
+        trie.put("caf日本", "2");
+        trie.put("cafе", "3");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        trie.writePrefixTo("caf", Channels.newChannel(stream), "\n");
+
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8).split("\n"),
+                is(trie.keysWithPrefix("caf").toArray(new String[0])));
+    }
+
+    @Test
+    public void testWritePrefixTo_CompactedNodes() throws IOException {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("car", "1");
+        trie.put("cart", "2");
+        trie.put("cat", "3");
+        trie.put("cab", "4");
+        trie.compact();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        assertThat(trie.writePrefixTo("c", stream, "\n"), is(4L));
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8).split("\n"),
+                is(trie.keysWithPrefix("c").toArray(new String[0])));
+    }
+
+    @Test
+    public void testWritePrefixTo_AfterFailedWrite() throws IOException {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.DIGITS);
+        for (int i = 0; i < 20000; i++) {
+            trie.put(String.valueOf(i), "value");
+        }
+
+        boolean failed = false;
+        try {
+            trie.writePrefixTo("", new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer source) throws IOException {
+                    throw new IOException("Disk is full.");
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            }, "\n");
+        } catch (IOException excep) {
+            failed = true;
+        }
+
+        assertThat(failed, is(true));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        trie.writePrefixTo("1999", stream, "\n");
+
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8).split("\n"),
+                is(trie.keysWithPrefix("1999").toArray(new String[0])));
+    }
+
+    @Test
+    public void testWritePrefixTo_LargerThanBuffer() throws IOException {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.DIGITS);
+        StringBuilder longKey = new StringBuilder();
+        for (int i = 0; i < KeyWriter.BUFFER_BYTES + 100; i++) {
+            longKey.append((char) ('0' + i % 10));
+        }
+
+        trie.put(longKey.toString(), "long");
+        for (int i = 0; i < 20000; i++) {
+            trie.put("1" + i, "value");
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        long count = trie.writePrefixTo("", stream, "\n");
+
+        assertThat(count, is((long) trie.size()));
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8).split("\n"),
+                is(trie.keys().toArray(new String[0])));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWritePrefixTo_InvalidPrefix() throws IOException {
+        new HashTrie<String>().writePrefixTo("a b", new ByteArrayOutputStream(), "\n");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testWritePrefixTo_NullChannel() throws IOException {
+        new HashTrie<String>().writePrefixTo("a", (WritableByteChannel) null, "\n");
+    }
+
+    @Test
+    public void testGetAll() {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("car", "1");
+        trie.put("cart", "2");
+        trie.put("carton", "3");
+        trie.put("dog", "4");
+
+        String[] values = new String[7];
+        int found = trie.getAll(Arrays.asList("dog", "carton", "ca", "car", "cartoon", "cart", "car"), values);
+
+        assertThat(found, is(5));
+        assertThat(values, is(new String[]{"4", "3", null, "1", null, "2", "1"}));
+    }
+
+    @Test
+    public void testGetAll_LongerArray() {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("a", "1");
+
+        String[] values = {"x", "x", "x"};
+
+        assertThat(trie.getAll(Arrays.asList("b", "a"), values), is(1));
+        assertThat(values, is(new String[]{null, "1", "x"}));
+    }
+
+    @Test
+    public void testGetAll_Empty() {
+        assertThat(new HashTrie<String>().getAll(Collections.<String>emptyList(), new String[0]), is(0));
+    }
+
+    @Test
+    public void testGetAll_MatchesGet() {
+        HashTrie<Integer> trie = new HashTrie<>(KeyAlphabet.DIGITS);
+        List<String> keys = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            String key = Integer.toString(random.nextInt(100000));
+            keys.add(key);
+            if (i % 3 == 0) {
+                trie.put(key, i);
+            }
+        }
+
+        Integer[] values = new Integer[keys.size()];
+        int found = trie.getAll(keys, values);
+
+        int expectedFound = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            assertThat(values[i], is(trie.get(keys.get(i))));
+            expectedFound += values[i] == null ? 0 : 1;
+        }
+
+        assertThat(found, is(expectedFound));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAll_ShortArray() {
+        new HashTrie<String>().getAll(Arrays.asList("a", "b"), new String[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAll_InvalidKey() {
+        new HashTrie<String>().getAll(Arrays.asList("a", ""), new String[2]);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testGetAll_NullKey() {
+        new HashTrie<String>().getAll(Arrays.asList("a", null), new String[2]);
+    }
+
+    @Test
+    public void testContainsAll() {
+        HashTrie<String> trie = new HashTrie<>();
+        trie.put("car", "1");
+        trie.put("cart", "2");
+        trie.put("dog", "3");
+
+        assertThat(trie.containsAll(Arrays.asList("cart", "dog", "car", "car")), is(true));
+        assertThat(trie.containsAll(Arrays.asList("cart", "ca")), is(false));
+        assertThat(trie.containsAll(Arrays.asList("cartoon", "car")), is(false));
+        assertThat(trie.containsAll(Collections.<String>emptyList()), is(true));
+    }
+
+    @Test
+    public void testFolding_Case() {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        trie.put("Berlin", "Berlin");
+        trie.put("BERN", "Bern");
+
+        assertThat(trie.folding(), is(KeyFolding.CASE));
+        assertThat(trie.size(), is(2));
+        assertThat(trie.get("berlin"), is("Berlin"));
+        assertThat(trie.get("BERLİN"), is("Berlin"));
+        assertThat(trie.containsKey("bErN"), is(true));
+        assertThat(trie.keys(), containsInAnyOrder("berlin", "bern"));
+        assertThat(trie.keysWithPrefix("BER"), containsInAnyOrder("berlin", "bern"));
+        assertThat(trie.keysWithPrefix("berl"), contains("berlin"));
+
+        assertThat(trie.put("berlin", "berlin"), is("Berlin"));
+        assertThat(trie.remove("BERLIN"), is("berlin"));
+        assertThat(trie.keys(), contains("bern"));
+        assertThat(trie.hashCode(), is(entriesHashCode(trie)));
+        assertStructuralHashes(trie.mAlphabet, trie.mRoot);
+    }
+
+    @Test
+    public void testFolding_CaseAndDiacritics() {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.LOWERCASE, KeyFolding.CASE_AND_DIACRITICS);
+        trie.put("Zürich", "Zürich");
+        trie.put("Genève", "Genève");
+
+        assertThat(trie.get("zurich"), is("Zürich"));
+        assertThat(trie.get("GENEVE"), is("Genève"));
+        assertThat(trie.keysWithPrefix("Zü"), contains("zurich"));
+        assertThat(trie.mRoot, is(instanceOf(BitmapNode.class)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFolding_SymbolOutOfAlphabet() {
+        new HashTrie<String>(KeyAlphabet.LOWERCASE, KeyFolding.CASE).put("Straße", "Straße");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testFolding_Null() {
+        new HashTrie<String>(KeyAlphabet.UNICODE, null);
+    }
+
+    @Test
+    public void testFolding_Batch() {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        trie.put("Oslo", "Oslo");
+        trie.put("Paris", "Paris");
+
+        String[] values = new String[3];
+
+        assertThat(trie.getAll(Arrays.asList("PARIS", "rome", "oslo"), values), is(2));
+        assertThat(Arrays.asList(values), contains("Paris", null, "Oslo"));
+        assertThat(trie.containsAll(Arrays.asList("OSLO", "paris")), is(true));
+    }
+
+    @Test
+    public void testFolding_StructuralOperations() {
+        HashTrie<String> folded = new HashTrie<>(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        folded.put("Berlin", "Berlin");
+        folded.put("Rome", "Rome");
+
+        HashTrie<String> plain = new HashTrie<>();
+        plain.put("Berlin", "Berlin");
+        plain.put("Oslo", "Oslo");
+
+        HashTrie<String> union = folded.clone();
+        union.merge(plain, new MergeFunction<String>() {
+            @Override
+            public String merge(String oldValue, String newValue) {
+                return oldValue;
+            }
+        });
+        assertThat(union.keys(), containsInAnyOrder("berlin", "rome", "oslo"));
+
+        HashTrie<String> intersection = plain.clone();
+        intersection.intersect(folded);
+        assertThat(intersection.keys(), contains("Berlin"));
+
+        HashTrie<String> difference = folded.clone();
+        difference.subtract(plain);
+        assertThat(difference.keys(), contains("rome"));
+        assertStructuralHashes(union.mAlphabet, union.mRoot);
+    }
+
+    @Test
+    public void testFolding_WritePrefixTo() throws IOException {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        trie.put("Cat", "Cat");
+        trie.put("CAR", "CAR");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        assertThat(trie.writePrefixTo("CA", stream, " "), is(2L));
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8), is("car cat"));
+    }
+
+    @Test
+    public void testFolding_Serialization() throws IOException, ClassNotFoundException {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        trie.put("Berlin", "Berlin");
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream outStream = new ObjectOutputStream(bos);
+        outStream.writeObject(trie);
+        outStream.close();
+
+        ObjectInputStream inStream = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        HashTrie<String> copy = (HashTrie<String>) inStream.readObject();
+        inStream.close();
+
+        assertThat(copy.folding(), is(KeyFolding.CASE));
+        assertThat(copy.get("BERLIN"), is("Berlin"));
+    }
+
+    @Test
+    public void testClone_CopiesNodes() {
+        HashTrie<String> orgTrie = new HashTrie<>(KeyAlphabet.LOWERCASE, KeyFolding.CASE);
+        orgTrie.put("abc", "1");
+        orgTrie.put("abd", "2");
+        orgTrie.put("b", "3");
+        orgTrie.compact();
+
+        HashTrie<String> clonedTrie = orgTrie.clone();
+
+        assertThat(clonedTrie.mRoot != orgTrie.mRoot, is(true));
+        assertThat(clonedTrie.folding(), is(KeyFolding.CASE));
+        assertThat(clonedTrie.equals(orgTrie), is(true));
+        assertThat(clonedTrie.hashCode(), is(orgTrie.hashCode()));
+        assertThat(clonedTrie.mRoot.mHash, is(orgTrie.mRoot.mHash));
+
+        clonedTrie.remove("ABC");
+
+        assertThat(orgTrie.get("abc"), is("1"));
+        assertThat(clonedTrie.size(), is(2));
+    }
+
+    @Test
+    public void testLazyClone() {
+        HashTrie<String> orgTrie = new HashTrie<>();
+        orgTrie.put("asd", "1");
+        orgTrie.put("asf", "2");
+
+        HashTrie<String> clonedTrie = orgTrie.lazyClone();
+
+        assertThat(clonedTrie.mRoot, is(orgTrie.mRoot));
+        assertThat(clonedTrie.equals(orgTrie), is(true));
+        assertThat(clonedTrie.hashCode(), is(orgTrie.hashCode()));
+
+        clonedTrie.put("asd", "3");
+
+        assertThat(clonedTrie.mRoot != orgTrie.mRoot, is(true));
+        assertThat(orgTrie.get("asd"), is("1"));
+        assertThat(clonedTrie.get("asd"), is("3"));
+        HashTrie<String> expected = new HashTrie<>();
+        expected.put("asd", "3");
+        expected.put("asf", "2");
+        assertThat(clonedTrie.hashCode(), is(expected.hashCode()));
+        assertThat(clonedTrie.mRoot.mHash, is(expected.mRoot.mHash));
+
+        // the original is the last sharer, so it is modified in place
+        HashTrie.Node<String> root = orgTrie.mRoot;
+        orgTrie.remove("asf");
+
+        assertThat(orgTrie.mRoot, is(root));
+        assertThat(clonedTrie.get("asf"), is("2"));
+    }
+
+    @Test
+    public void testLazyClone_ViewTakenBefore() {
+        HashTrie<String> orgTrie = new HashTrie<>();
+        orgTrie.put("ab", "1");
+        orgTrie.put("abc", "2");
+
+        Set<String> keys = orgTrie.keysWithPrefix("ab");
+        HashTrie<String> clonedTrie = orgTrie.lazyClone();
+
+        orgTrie.put("abz", "3");
+        clonedTrie.put("abq", "4");
+
+        assertThat(keys, containsInAnyOrder("ab", "abc", "abz"));
+        assertThat(keys.size(), is(3));
+        assertThat(clonedTrie.keysWithPrefix("ab"), containsInAnyOrder("ab", "abc", "abq"));
+    }
+
+    @Test
+    public void testLazyClone_DeepChain() {
+        HashTrie<String> orgTrie = new HashTrie<>();
+        orgTrie.put(deepKey('a'), "1");
+
+        HashTrie<String> clonedTrie = orgTrie.clone();
+        HashTrie<String> lazyClonedTrie = orgTrie.lazyClone();
+        lazyClonedTrie.put(deepKey('b'), "2");
+
+        assertThat(clonedTrie.get(deepKey('a')), is("1"));
+        assertThat(lazyClonedTrie.size(), is(2));
+        assertThat(orgTrie.size(), is(1));
+        assertThat(orgTrie.get(deepKey('b')), is(nullValue()));
+    }
+
+    @Test
+    public void testLazyClone_OriginalModified() {
+        HashTrie<String> orgTrie = new HashTrie<>();
+        orgTrie.put("asd", "1");
+
+        HashTrie<String> firstClone = orgTrie.lazyClone();
+        HashTrie<String> secondClone = firstClone.lazyClone();
+
+        orgTrie.clear();
+        firstClone.merge(secondClone, new MergeFunction<String>() {
+            @Override
+            public String merge(String oldValue, String newValue) {
+                return oldValue + newValue;
+            }
+        });
+
+        assertThat(orgTrie.isEmpty(), is(true));
+        assertThat(firstClone.get("asd"), is("11"));
+        assertThat(secondClone.get("asd"), is("1"));
+    }
+
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class InstrumentedTrieTest {
+
+    private Trie<String> mTrie;
+    private MetricsSink mSink;
+    private Trie<String> mInstrumentedTrie;
+
+    @Before
+    public void setUp() {
+        mTrie = new HashTrie<>();
+        mTrie.put("a", "1");
+        mTrie.put("ab", "2");
+        mTrie.put("abc", "3");
+        mTrie.put("b", "4");
+
+        mSink = mock(MetricsSink.class);
+        mInstrumentedTrie = Tries.instrumentedTrie(mTrie, mSink);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructor_NullTrie() {
+        Tries.instrumentedTrie(null, mSink);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructor_NullSink() {
+        Tries.instrumentedTrie(mTrie, null);
+    }
+
+    @Test
+    public void testGet() {
+        assertThat(mInstrumentedTrie.get("ab"), is("2"));
+        assertThat(mInstrumentedTrie.containsKey("abc"), is(true));
+
+        verify(mSink, times(2)).recordLatency(eq(MetricsSink.Operation.GET), anyLong());
+        verifyNoMoreInteractions(mSink);
+    }
+
+    @Test
+    public void testPut() {
+        assertThat(mInstrumentedTrie.put("abcd", "5"), is((String) null));
+        assertThat(mTrie.get("abcd"), is("5"));
+
+        verify(mSink, times(1)).recordLatency(eq(MetricsSink.Operation.PUT), anyLong());
+        verifyNoMoreInteractions(mSink);
+    }
+
+    @Test
+    public void testRemove() {
+        assertThat(mInstrumentedTrie.remove("ab"), is("2"));
+        assertThat(mTrie.containsKey("ab"), is(false));
+
+        verify(mSink, times(1)).recordLatency(eq(MetricsSink.Operation.REMOVE), anyLong());
+        verifyNoMoreInteractions(mSink);
+    }
+
+    @Test
+    public void testKeysWithPrefix() {
+        Set<String> keys = mInstrumentedTrie.keysWithPrefix("a");
+
+        assertThat(keys.contains("ab"), is(true));
+        verifyNoMoreInteractions(mSink);
+
+        assertThat(keys, containsInAnyOrder("a", "ab", "abc"));
+
+        verify(mSink, times(1)).recordLatency(eq(MetricsSink.Operation.PREFIX_QUERY), anyLong());
+        verify(mSink, times(1)).recordVisitedKeys(3);
+        verifyNoMoreInteractions(mSink);
+    }
+
+    @Test
+    public void testKeysWithPrefix_RecordedOnce() {
+        Iterator<String> iterator = mInstrumentedTrie.keysWithPrefix("b").iterator();
+        iterator.next();
+
+        assertThat(iterator.hasNext(), is(false));
+        assertThat(iterator.hasNext(), is(false));
+
+        verify(mSink, times(1)).recordLatency(eq(MetricsSink.Operation.PREFIX_QUERY), anyLong());
+        verify(mSink, times(1)).recordVisitedKeys(1);
+    }
+
+    @Test
+    public void testKeysWithPrefix_Abandoned() {
+        Iterator<String> iterator = mInstrumentedTrie.keysWithPrefix("a").iterator();
+        iterator.next();
+
+        verify(mSink, never()).recordVisitedKeys(anyLong());
+    }
+
+    @Test
+    public void testKeysWithPrefix_Closed() throws IOException {
+        Iterator<String> iterator = mInstrumentedTrie.keysWithPrefix("a").iterator();
+        iterator.next();
+
+        ((Closeable) iterator).close();
+        ((Closeable) iterator).close();
+
+        verify(mSink, times(1)).recordLatency(eq(MetricsSink.Operation.PREFIX_QUERY), anyLong());
+        verify(mSink, times(1)).recordVisitedKeys(1);
+    }
+
+    @Test
+    public void testHistogramMetricsSink() {
+        HistogramMetricsSink sink = new HistogramMetricsSink();
+        Trie<String> trie = Tries.instrumentedTrie(mTrie, sink);
+
+        trie.get("a");
+        trie.get("c");
+        trie.put("c", "5");
+        for (String key : trie.keysWithPrefix("a")) {
+            assertThat(key.startsWith("a"), is(true));
+        }
+
+        assertThat(sink.latencies(MetricsSink.Operation.GET).count(), is(2L));
+        assertThat(sink.latencies(MetricsSink.Operation.PUT).count(), is(1L));
+        assertThat(sink.latencies(MetricsSink.Operation.REMOVE).count(), is(0L));
+        assertThat(sink.latencies(MetricsSink.Operation.PREFIX_QUERY).count(), is(1L));
+        assertThat(sink.visitedKeys().max(), is(3L));
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        assertThat(mInstrumentedTrie.equals(mTrie), is(true));
+        assertThat(mTrie.equals(mInstrumentedTrie), is(true));
+        assertThat(mInstrumentedTrie.hashCode(), is(mTrie.hashCode()));
+        assertThat(mInstrumentedTrie.toString(), is(mTrie.toString()));
+    }
+
+    @Test
+    public void testSerializable() throws IOException, ClassNotFoundException {
+        Trie<String> trie = Tries.instrumentedTrie(mTrie, new CountingSink());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream outStream = new ObjectOutputStream(bos);
+
+        outStream.writeObject(trie);
+        outStream.close();
+
+        ObjectInputStream inStream = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        Trie<String> dstTrie = (Trie<String>) inStream.readObject();
+        inStream.close();
+
+        assertThat(dstTrie.get("abc"), is("3"));
+        assertThat(((CountingSink) ((Tries.InstrumentedTrie<String>) dstTrie).mSink).mCount, is(1));
+    }
+
+    private static class CountingSink implements MetricsSink, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        int mCount;
+
+        @Override
+        public void recordLatency(Operation operation, long nanos) {
+            mCount++;
+        }
+
+        @Override
+        public void recordVisitedKeys(long keys) {
+            mCount++;
+        }
+
+    }
+
+}
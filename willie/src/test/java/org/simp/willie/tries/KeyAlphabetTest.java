@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KeyAlphabetTest {
+
+    @Test
+    public void testUnicode() {
+        assertThat(KeyAlphabet.UNICODE.contains('a'), is(true));
+        assertThat(KeyAlphabet.UNICODE.contains('к'), is(true));
+        assertThat(KeyAlphabet.UNICODE.contains('例'), is(true));
+        assertThat(KeyAlphabet.UNICODE.contains('7'), is(true));
+        assertThat(KeyAlphabet.UNICODE.contains('.'), is(false));
+        assertThat(KeyAlphabet.UNICODE.contains(' '), is(false));
+        assertThat(KeyAlphabet.UNICODE.isBitmapIndexed(), is(false));
+    }
+
+    @Test
+    public void testUnicode_MatchesCharacterClass() {
+        for (int character = 0; character <= Character.MAX_VALUE; character++) {
+            assertThat(KeyAlphabet.UNICODE.contains((char) character), is(Character.isLetterOrDigit(character)));
+        }
+    }
+
+    @Test
+    public void testPredefinedAlphabets() {
+        assertThat(KeyAlphabet.ALPHANUMERIC.size(), is(62));
+        assertThat(KeyAlphabet.DIGITS.size(), is(10));
+        assertThat(KeyAlphabet.HEX.size(), is(22));
+        assertThat(KeyAlphabet.LOWERCASE.size(), is(26));
+
+        assertThat(KeyAlphabet.ALPHANUMERIC.isBitmapIndexed(), is(true));
+        assertThat(KeyAlphabet.HEX.contains('F'), is(true));
+        assertThat(KeyAlphabet.HEX.contains('g'), is(false));
+        assertThat(KeyAlphabet.LOWERCASE.contains('A'), is(false));
+        assertThat(KeyAlphabet.DIGITS.contains('к'), is(false));
+    }
+
+    @Test
+    public void testIndexOf() {
+        assertThat(KeyAlphabet.ALPHANUMERIC.indexOf('0'), is(0));
+        assertThat(KeyAlphabet.ALPHANUMERIC.indexOf('A'), is(10));
+        assertThat(KeyAlphabet.ALPHANUMERIC.indexOf('z'), is(61));
+        assertThat(KeyAlphabet.ALPHANUMERIC.indexOf('-'), is(-1));
+        assertThat(KeyAlphabet.ALPHANUMERIC.indexOf('к'), is(-1));
+        assertThat(KeyAlphabet.ALPHANUMERIC.symbolAt(10), is('A'));
+    }
+
+    @Test
+    public void testOf() {
+        KeyAlphabet alphabet = KeyAlphabet.of("zyxк");
+
+        assertThat(alphabet.size(), is(4));
+        assertThat(alphabet.contains('к'), is(true));
+        assertThat(alphabet.indexOf('x'), is(0));
+        assertThat(alphabet.indexOf('к'), is(3));
+        assertThat(alphabet.equals(KeyAlphabet.of("xyzк")), is(true));
+        assertThat(alphabet.hashCode(), is(KeyAlphabet.of("xyzк").hashCode()));
+    }
+
+    @Test
+    public void testOf_ReturnsPredefinedAlphabet() {
+        assertThat(KeyAlphabet.of("9876543210"), is(KeyAlphabet.DIGITS));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testOf_Null() {
+        KeyAlphabet.of(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOf_Empty() {
+        KeyAlphabet.of("");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOf_Duplicates() {
+        KeyAlphabet.of("abca");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOf_NonAlphanumeric() {
+        KeyAlphabet.of("ab.");
+    }
+
+    @Test
+    public void testContainsAll() {
+        assertThat(KeyAlphabet.UNICODE.containsAll(KeyAlphabet.HEX), is(true));
+        assertThat(KeyAlphabet.ALPHANUMERIC.containsAll(KeyAlphabet.HEX), is(true));
+        assertThat(KeyAlphabet.HEX.containsAll(KeyAlphabet.ALPHANUMERIC), is(false));
+        assertThat(KeyAlphabet.HEX.containsAll(KeyAlphabet.UNICODE), is(false));
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        assertThat(serializeAndDeserialize(KeyAlphabet.UNICODE), is(KeyAlphabet.UNICODE));
+        assertThat(serializeAndDeserialize(KeyAlphabet.LOWERCASE), is(KeyAlphabet.LOWERCASE));
+
+        KeyAlphabet alphabet = serializeAndDeserialize(KeyAlphabet.of("abк"));
+
+        assertThat(alphabet, is(KeyAlphabet.of("abк")));
+        assertThat(alphabet.indexOf('к'), is(2));
+    }
+
+    private static KeyAlphabet serializeAndDeserialize(KeyAlphabet alphabet)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream outStream = new ObjectOutputStream(bos);
+        outStream.writeObject(alphabet);
+        outStream.close();
+
+        ObjectInputStream inStream = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        KeyAlphabet result = (KeyAlphabet) inStream.readObject();
+        inStream.close();
+
+        return result;
+    }
+
+}
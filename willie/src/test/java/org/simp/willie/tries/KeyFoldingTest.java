@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KeyFoldingTest {
+
+    @Test
+    public void testNone() {
+        assertThat(KeyFolding.NONE.fold('A'), is('A'));
+        assertThat(KeyFolding.NONE.fold('é'), is('é'));
+        assertThat(KeyFolding.NONE.fold("Berlin"), is("Berlin"));
+    }
+
+    @Test
+    public void testCase() {
+        assertThat(KeyFolding.CASE.fold('A'), is('a'));
+        assertThat(KeyFolding.CASE.fold('a'), is('a'));
+        assertThat(KeyFolding.CASE.fold('É'), is('é'));
+        assertThat(KeyFolding.CASE.fold('Ж'), is('ж'));
+        assertThat(KeyFolding.CASE.fold('İ'), is('i'));
+        assertThat(KeyFolding.CASE.fold('ς'), is('σ'));
+        assertThat(KeyFolding.CASE.fold('7'), is('7'));
+        assertThat(KeyFolding.CASE.fold('.'), is('.'));
+        assertThat(KeyFolding.CASE.fold("BerLIN"), is("berlin"));
+    }
+
+    @Test
+    public void testCaseAndDiacritics() {
+        assertThat(KeyFolding.CASE_AND_DIACRITICS.fold('É'), is('e'));
+        assertThat(KeyFolding.CASE_AND_DIACRITICS.fold('ü'), is('u'));
+        assertThat(KeyFolding.CASE_AND_DIACRITICS.fold('Ç'), is('c'));
+        assertThat(KeyFolding.CASE_AND_DIACRITICS.fold('й'), is('и'));
+        assertThat(KeyFolding.CASE_AND_DIACRITICS.fold('ø'), is('ø'));
+        assertThat(KeyFolding.CASE_AND_DIACRITICS.fold('Z'), is('z'));
+        assertThat(KeyFolding.CASE_AND_DIACRITICS.fold("Crème Brûlée"), is("creme brulee"));
+    }
+
+    @Test
+    public void testFold_SameInstanceIfUnchanged() {
+        String key = "berlin";
+
+        assertThat(KeyFolding.CASE.fold(key), is(sameInstance(key)));
+        assertThat(KeyFolding.CASE_AND_DIACRITICS.fold(key), is(sameInstance(key)));
+    }
+
+    @Test
+    public void testFold_Idempotent() {
+        for (KeyFolding folding : KeyFolding.values()) {
+            for (int character = 0; character <= Character.MAX_VALUE; character++) {
+                final char folded = folding.fold((char) character);
+
+                assertThat(folding.fold(folded), is(folded));
+                assertThat(Character.isLetterOrDigit(folded), is(Character.isLetterOrDigit(character)));
+            }
+        }
+    }
+
+}
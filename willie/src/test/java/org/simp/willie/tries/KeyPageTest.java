@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class KeyPageTest {
+
+    @Test
+    public void testPages() {
+        HashTrie<String> trie = newTrie("car", "cart", "carbon", "cat", "cab", "dog", "ca");
+
+        KeyPage page = trie.keysWithPrefix("ca", 3);
+        assertThat(page.keys(), contains("ca", "cab", "car"));
+        assertThat(page.hasNext(), is(true));
+        assertThat(page.cursor().prefix(), is("ca"));
+        assertThat(page.cursor().lastKey(), is("car"));
+
+        page = trie.keysWithPrefix(page.cursor(), 3);
+        assertThat(page.keys(), contains("carbon", "cart", "cat"));
+        assertThat(page.hasNext(), is(false));
+        assertThat(page.cursor(), is(nullValue()));
+    }
+
+    @Test
+    public void testPages_LastPageIsFull() {
+        HashTrie<String> trie = newTrie("a", "b");
+
+        KeyPage page = trie.keysWithPrefix("", 2);
+
+        assertThat(page.keys(), contains("a", "b"));
+        assertThat(page.hasNext(), is(false));
+    }
+
+    @Test
+    public void testPages_NoKeys() {
+        assertThat(new HashTrie<String>().keysWithPrefix("", 5).keys(), is(empty()));
+        assertThat(newTrie("dog").keysWithPrefix("cat", 5).keys(), is(empty()));
+        assertThat(newTrie("dog").keysWithPrefix("dog", 5).keys(), contains("dog"));
+    }
+
+    @Test
+    public void testPages_MatchSortedKeys() {
+        Random random = new Random(7);
+        HashTrie<String> trie = new HashTrie<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder key = new StringBuilder("k");
+            for (int j = random.nextInt(6); j >= 0; j--) {
+                key.append((char) ('a' + random.nextInt(5)));
+            }
+
+            trie.put(key.toString(), "value");
+        }
+
+        List<String> expected = new ArrayList<>(trie.keysWithPrefix("k"));
+        Collections.sort(expected);
+
+        List<String> actual = new ArrayList<>();
+        KeyPage page = trie.keysWithPrefix("k", 20);
+        actual.addAll(page.keys());
+        while (page.hasNext()) {
+            page = trie.keysWithPrefix(page.cursor(), 20);
+            actual.addAll(page.keys());
+        }
+
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void testPages_Modifications() {
+        HashTrie<String> trie = newTrie("ab", "ac", "ad", "ae");
+
+        KeyPage page = trie.keysWithPrefix("a", 2);
+        assertThat(page.keys(), contains("ab", "ac"));
+
+        trie.remove("ac");
+        trie.remove("ad");
+        trie.put("aa", "value");
+        trie.put("acz", "value");
+
+        page = trie.keysWithPrefix(page.cursor(), 10);
+        assertThat(page.keys(), contains("acz", "ae"));
+    }
+
+    @Test
+    public void testPages_BitmapNodes() {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.LOWERCASE);
+        trie.put("zeta", "value");
+        trie.put("alpha", "value");
+        trie.put("beta", "value");
+
+        KeyPage page = trie.keysWithPrefix("", 1);
+        assertThat(page.keys(), contains("alpha"));
+
+        page = trie.keysWithPrefix(page.cursor(), 5);
+        assertThat(page.keys(), contains("beta", "zeta"));
+    }
+
+    @Test
+    public void testPages_Folding() {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        trie.put("Berlin", "Berlin");
+        trie.put("Bern", "Bern");
+
+        KeyPage page = trie.keysWithPrefix("BER", 1);
+        assertThat(page.keys(), contains("berlin"));
+        assertThat(trie.keysWithPrefix(page.cursor(), 1).keys(), contains("bern"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPages_NotPositiveLimit() {
+        newTrie("a").keysWithPrefix("", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPages_InvalidPrefix() {
+        newTrie("a").keysWithPrefix("a b", 1);
+    }
+
+    @Test
+    public void testCursor_Serialization() throws IOException, ClassNotFoundException {
+        HashTrie<String> trie = newTrie("one", "two", "three");
+        KeyPage.Cursor cursor = trie.keysWithPrefix("t", 1).cursor();
+
+        KeyPage.Cursor copy = (KeyPage.Cursor) deserialize(serialize(cursor));
+
+        assertThat(copy, is(cursor));
+        assertThat(copy.hashCode(), is(cursor.hashCode()));
+        assertThat(trie.keysWithPrefix(copy, 1).keys(), contains("two"));
+    }
+
+    @Test(expected = InvalidObjectException.class)
+    public void testCursor_InvalidStream() throws IOException, ClassNotFoundException {
+        byte[] bytes = serialize(new KeyPage.Cursor("ab", "abc"));
+        byte[] prefix = "ab".getBytes("UTF-8");
+
+        // changes either the prefix or the last key, so the last key does not start with the prefix
+        for (int i = 0; i + 1 < bytes.length; i++) {
+            if (bytes[i] == prefix[0] && bytes[i + 1] == prefix[1]) {
+                bytes[i] = 'x';
+                break;
+            }
+        }
+
+        deserialize(bytes);
+    }
+
+    private static HashTrie<String> newTrie(String... keys) {
+        HashTrie<String> trie = new HashTrie<>();
+        for (String key : keys) {
+            trie.put(key, key);
+        }
+
+        return trie;
+    }
+
+    private static byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream outStream = new ObjectOutputStream(bos);
+        outStream.writeObject(object);
+        outStream.close();
+
+        return bos.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        ObjectInputStream inStream = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        Object object = inStream.readObject();
+        inStream.close();
+
+        return object;
+    }
+
+}
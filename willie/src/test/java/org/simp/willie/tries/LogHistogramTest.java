@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class LogHistogramTest {
+
+    @Test
+    public void testBucketOf_Linear() {
+        for (int value = 0; value < LogHistogram.LINEAR_VALUES; value++) {
+            assertThat(LogHistogram.bucketOf(value), is(value));
+            assertThat(LogHistogram.lowestValueOf(value), is((long) value));
+        }
+    }
+
+    @Test
+    public void testBucketOf_Bounds() {
+        assertThat(LogHistogram.bucketOf(Long.MAX_VALUE), is(LogHistogram.BUCKETS - 1));
+
+        for (int bucket = 1; bucket < LogHistogram.BUCKETS; bucket++) {
+            final long lowest = LogHistogram.lowestValueOf(bucket);
+
+            assertThat(LogHistogram.bucketOf(lowest), is(bucket));
+            assertThat(LogHistogram.bucketOf(lowest - 1), is(bucket - 1));
+            assertThat(LogHistogram.bucketOf(LogHistogram.highestValueOf(bucket)), is(bucket));
+        }
+    }
+
+    @Test
+    public void testBucketOf_RelativeError() {
+        for (int bucket = LogHistogram.LINEAR_VALUES; bucket < LogHistogram.BUCKETS - 1; bucket++) {
+            final double lowest = LogHistogram.lowestValueOf(bucket);
+            final double highest = LogHistogram.highestValueOf(bucket);
+
+            assertThat((highest - lowest) / lowest, lessThanOrEqualTo(0.125));
+        }
+    }
+
+    @Test
+    public void testSnapshot_Empty() {
+        LogHistogram.Snapshot snapshot = new LogHistogram().snapshot();
+
+        assertThat(snapshot.count(), is(0L));
+        assertThat(snapshot.max(), is(0L));
+        assertThat(snapshot.mean(), is(0.0));
+        assertThat(snapshot.percentile(50), is(0L));
+    }
+
+    @Test
+    public void testSnapshot() {
+        LogHistogram histogram = new LogHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        LogHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.count(), is(1000L));
+        assertThat(snapshot.max(), is(1000L));
+        assertThat(snapshot.percentile(100), is(1000L));
+        assertThat(snapshot.percentile(0), is(1L));
+        assertThat(snapshot.percentile(50), greaterThanOrEqualTo(500L));
+        assertThat(snapshot.percentile(50), lessThanOrEqualTo(563L));
+        assertThat(snapshot.percentile(99), greaterThanOrEqualTo(990L));
+        assertThat(Math.abs(snapshot.mean() - 500.5) < 500.5 * 0.0625, is(true));
+    }
+
+    @Test
+    public void testSnapshot_IsCopy() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(5);
+
+        LogHistogram.Snapshot snapshot = histogram.snapshot();
+        histogram.record(7);
+
+        assertThat(snapshot.count(), is(1L));
+        assertThat(snapshot.max(), is(5L));
+        assertThat(histogram.snapshot().count(), is(2L));
+    }
+
+    @Test
+    public void testRecord_Negative() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(-5);
+
+        assertThat(histogram.snapshot().count(), is(1L));
+        assertThat(histogram.snapshot().max(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPercentile_OutOfRange() {
+        new LogHistogram().snapshot().percentile(101);
+    }
+
+    @Test
+    public void testRecord_Concurrent() throws InterruptedException {
+        final LogHistogram histogram = new LogHistogram();
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            final int offset = i;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int value = 0; value < 10000; value++) {
+                        histogram.record(value * 4 + offset);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(histogram.snapshot().count(), is(40000L));
+        assertThat(histogram.snapshot().max(), is(39999L));
+    }
+
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+public class LsmTrieTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Path mDirectory;
+
+    private LsmTrie<String> mTrie;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mFolder.getRoot().toPath().resolve("trie");
+        mTrie = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mTrie.close();
+    }
+
+    private LsmTrie<String> open() throws IOException {
+        return LsmTrie.open(mDirectory, ValueCodecs.STRING, 4, 100);
+    }
+
+    private LsmTrie<String> reopen() throws IOException {
+        mTrie.close();
+        mTrie = open();
+        return mTrie;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpen_ZeroMemtable() throws IOException {
+        LsmTrie.open(mDirectory.resolve("other"), ValueCodecs.STRING, 0, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpen_SingleSegment() throws IOException {
+        LsmTrie.open(mDirectory.resolve("other"), ValueCodecs.STRING, 4, 1);
+    }
+
+    @Test
+    public void testPutAndGet_Memtable() {
+        assertThat(mTrie.put("abc", "1"), is((String) null));
+        assertThat(mTrie.put("abc", "2"), is("1"));
+        assertThat(mTrie.get("abc"), is("2"));
+        assertThat(mTrie.get("ab"), is((String) null));
+        assertThat(mTrie.segmentCount(), is(0));
+    }
+
+    @Test
+    public void testFlush() {
+        for (int i = 0; i < 10; i++) {
+            mTrie.put("key" + i, "value" + i);
+        }
+
+        assertThat(mTrie.segmentCount(), is(2));
+        for (int i = 0; i < 10; i++) {
+            assertThat(mTrie.get("key" + i), is("value" + i));
+        }
+
+        assertThat(mTrie.size(), is(10));
+    }
+
+    @Test
+    public void testRemove_Tombstone() throws IOException {
+        mTrie.put("abc", "1");
+        mTrie.put("abd", "2");
+        mTrie.flush();
+
+        mTrie.remove("abc");
+        assertThat(mTrie.get("abc"), is((String) null));
+        assertThat(mTrie.containsKey("abc"), is(false));
+
+        mTrie.flush();
+
+        assertThat(mTrie.segmentCount(), is(2));
+        assertThat(mTrie.get("abc"), is((String) null));
+        assertThat(mTrie.keys(), contains("abd"));
+    }
+
+    @Test
+    public void testKeysWithPrefix_MergesInOrder() throws IOException {
+        mTrie.put("abz", "1");
+        mTrie.put("b", "2");
+        mTrie.flush();
+
+        mTrie.put("abc", "3");
+        mTrie.put("ab", "4");
+        mTrie.flush();
+
+        mTrie.put("abm", "5");
+        mTrie.remove("abz");
+
+        assertThat(mTrie.keysWithPrefix("ab"), contains("ab", "abc", "abm"));
+        assertThat(mTrie.keysWithPrefix("abc"), contains("abc"));
+        assertThat(mTrie.keysWithPrefix("x").isEmpty(), is(true));
+        assertThat(mTrie.keys(), contains("ab", "abc", "abm", "b"));
+        assertThat(mTrie.values(), contains("4", "3", "5", "2"));
+    }
+
+    @Test
+    public void testKeysWithPrefix_AcrossBlocks() throws IOException {
+        final TreeMap<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 500; i++) {
+            final String key = (i % 2 == 0 ? "a" : "b") + i;
+            mTrie.put(key, "v" + i);
+            expected.put(key, "v" + i);
+        }
+        mTrie.flush();
+        mTrie.compact();
+
+        assertThat(mTrie.segmentCount(), is(1));
+
+        List<String> keys = new ArrayList<>(mTrie.keysWithPrefix("b"));
+        assertThat(keys, is((List<String>) new ArrayList<>(expected.subMap("b", "c").keySet())));
+
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            assertThat(mTrie.get(entry.getKey()), is(entry.getValue()));
+        }
+
+        assertThat(mTrie.get("a1"), is((String) null));
+        assertThat(mTrie.get("c"), is((String) null));
+    }
+
+    @Test
+    public void testCompact_DropsShadowedAndTombstones() throws IOException {
+        mTrie.put("a", "1");
+        mTrie.put("b", "2");
+        mTrie.flush();
+        mTrie.put("a", "3");
+        mTrie.remove("b");
+        mTrie.flush();
+
+        mTrie.compact();
+
+        assertThat(mTrie.segmentCount(), is(1));
+        assertThat(mTrie.get("a"), is("3"));
+        assertThat(mTrie.get("b"), is((String) null));
+        assertThat(mTrie.size(), is(1));
+
+        int files = 0;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(mDirectory, "segment-*")) {
+            for (Path ignored : segments) {
+                files++;
+            }
+        }
+        assertThat(files, is(1));
+    }
+
+    @Test
+    public void testBackgroundCompaction() throws IOException, InterruptedException, ExecutionException {
+        mTrie.close();
+        mTrie = LsmTrie.open(mDirectory, ValueCodecs.STRING, 2, 3);
+
+        for (int i = 0; i < 6; i++) {
+            mTrie.put("key" + i, "value" + i);
+        }
+        mTrie.awaitCompaction();
+
+        assertThat(mTrie.segmentCount(), is(1));
+        assertThat(mTrie.size(), is(6));
+    }
+
+    @Test
+    public void testBackgroundCompaction_LeavesLargeSegments()
+            throws IOException, InterruptedException, ExecutionException {
+        for (int i = 0; i < 20; i++) {
+            mTrie.put("key" + i, "value" + i);
+        }
+        mTrie.compact();
+
+        mTrie.close();
+        mTrie = LsmTrie.open(mDirectory, ValueCodecs.STRING, 2, 3);
+
+        mTrie.remove("key0");
+        mTrie.put("key1", "new");
+        mTrie.put("key20", "value20");
+        mTrie.put("key21", "value21");
+        mTrie.awaitCompaction();
+
+        // the two small segments are merged, the large one is left alone
+        assertThat(mTrie.segmentCount(), is(2));
+        assertThat(mTrie.get("key0"), is((String) null));
+        assertThat(mTrie.get("key1"), is("new"));
+        assertThat(mTrie.size(), is(21));
+
+        reopen();
+
+        assertThat(mTrie.get("key0"), is((String) null));
+        assertThat(mTrie.size(), is(21));
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        for (int i = 0; i < 6; i++) {
+            mTrie.put("key" + i, "value" + i);
+        }
+        mTrie.remove("key1");
+        mTrie.remove("key5");
+
+        reopen();
+
+        assertThat(mTrie.segmentCount(), is(1));
+        assertThat(mTrie.keys(), contains("key0", "key2", "key3", "key4"));
+    }
+
+    @Test
+    public void testRecovery_CoveredSegmentsDeleted() throws IOException {
+        mTrie.put("a", "1");
+        mTrie.flush();
+        mTrie.put("b", "2");
+        mTrie.flush();
+
+        final Path first = mDirectory.resolve(SortedSegment.fileName(0, 0));
+        final byte[] bytes = Files.readAllBytes(first);
+
+        mTrie.compact();
+        Files.write(first, bytes);
+
+        reopen();
+
+        assertThat(mTrie.segmentCount(), is(1));
+        assertThat(Files.exists(first), is(false));
+        assertThat(mTrie.keys(), contains("a", "b"));
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        mTrie.put("a", "1");
+        mTrie.flush();
+        mTrie.put("b", "2");
+        mTrie.clear();
+
+        assertThat(mTrie.isEmpty(), is(true));
+        assertThat(mTrie.segmentCount(), is(0));
+
+        mTrie.put("c", "3");
+        reopen();
+
+        assertThat(mTrie.keys(), contains("c"));
+    }
+
+    @Test
+    public void testClear_AfterIsEmpty() throws IOException {
+        mTrie.put("apple", "1");
+        mTrie.put("apricot", "2");
+        mTrie.flush();
+
+        assertThat(mTrie.isEmpty(), is(false));
+        mTrie.clear();
+
+        assertThat(Files.exists(mDirectory.resolve(SortedSegment.fileName(0, 0))), is(false));
+
+        mTrie.put("banana", "3");
+        mTrie.put("cherry", "4");
+        mTrie.flush();
+
+        reopen();
+
+        assertThat(mTrie.get("apple"), is((String) null));
+        assertThat(mTrie.keys(), contains("banana", "cherry"));
+    }
+
+    @Test
+    public void testClear_SegmentStillRead() throws IOException {
+        mTrie.put("apple", "1");
+        mTrie.put("apricot", "2");
+        mTrie.flush();
+
+        final Iterator<String> iterator = mTrie.keys().iterator();
+        assertThat(iterator.next(), is("apple"));
+
+        mTrie.clear();
+        mTrie.put("banana", "3");
+        mTrie.flush();
+
+        reopen();
+
+        assertThat(mTrie.get("apple"), is((String) null));
+        assertThat(mTrie.keys(), contains("banana"));
+    }
+
+    @Test
+    public void testPutAndRemove_PreviousValueInSegment() throws IOException {
+        mTrie.put("abc", "1");
+        mTrie.put("abd", "2");
+        mTrie.flush();
+
+        assertThat(mTrie.put("abc", "3"), is("1"));
+        assertThat(mTrie.remove("abd"), is("2"));
+        assertThat(mTrie.remove("abd"), is((String) null));
+        assertThat(mTrie.put("abd", "4"), is((String) null));
+    }
+
+    @Test
+    public void testIterator_SurvivesCompaction() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            mTrie.put("key" + i, "value" + i);
+        }
+
+        final Iterator<String> iterator = mTrie.keys().iterator();
+        mTrie.compact();
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+
+        assertThat(count, is(8));
+    }
+
+    @Test
+    public void testEquals() {
+        HashTrie<String> expected = new HashTrie<>();
+        for (int i = 0; i < 10; i++) {
+            mTrie.put("key" + i, "value" + i);
+            expected.put("key" + i, "value" + i);
+        }
+
+        assertThat(mTrie.equals(expected), is(true));
+        assertThat(expected.equals(mTrie), is(true));
+        assertThat(mTrie.hashCode(), is(expected.hashCode()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGet_Closed() throws IOException {
+        mTrie.close();
+        mTrie.get("a");
+    }
+
+}
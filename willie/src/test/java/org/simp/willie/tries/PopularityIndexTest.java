@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class PopularityIndexTest {
+
+    private static final long HALF_LIFE = 1000;
+
+    private static final long EPOCH = 1000000;
+
+    private static PopularityIndex newIndex(String... values) {
+        return new PopularityIndex(Arrays.asList(values), HALF_LIFE, EPOCH);
+    }
+
+    @Test
+    public void testPopularity_Decay() {
+        PopularityIndex index = newIndex("apple", "apricot");
+
+        assertThat(index.recordHit("apple", EPOCH), is(true));
+        assertThat(index.recordHit("apple", EPOCH), is(true));
+        assertThat(index.popularity("apple", EPOCH), closeTo(2, 1e-9));
+        assertThat(index.popularity("apple", EPOCH + HALF_LIFE), closeTo(1, 1e-9));
+
+        index.recordHit("apple", EPOCH + HALF_LIFE);
+        assertThat(index.popularity("apple", EPOCH + 2 * HALF_LIFE), closeTo(1, 1e-9));
+
+        assertThat(index.popularity("apricot", EPOCH), is(0.0));
+        assertThat(index.popularity("banana", EPOCH), is(0.0));
+        assertThat(index.recordHit("banana", EPOCH), is(false));
+        assertThat(index.recordHit("ap", EPOCH), is(false));
+    }
+
+    @Test
+    public void testPopularValues() {
+        PopularityIndex index = newIndex("car", "cart", "cat", "cab", "dog");
+        index.recordHit("cat", EPOCH);
+        index.recordHit("cart", EPOCH);
+        index.recordHit("cart", EPOCH);
+        index.recordHit("dog", EPOCH + 10 * HALF_LIFE);
+
+        assertThat(index.popularValuesWithPrefix("ca", 10), contains("cart", "cat", "cab", "car"));
+        assertThat(index.popularValuesWithPrefix("ca", 1), contains("cart"));
+        assertThat(index.popularValuesWithPrefix("", 2), contains("dog", "cart"));
+        assertThat(index.popularValuesWithPrefix("x", 2), is(empty()));
+        assertThat(index.popularValuesWithPrefix("ca", 0), is(empty()));
+    }
+
+    @Test
+    public void testPopularValues_RecentHitsWin() {
+        PopularityIndex index = newIndex("old", "new");
+        for (int i = 0; i < 4; i++) {
+            index.recordHit("old", EPOCH);
+        }
+
+        index.recordHit("new", EPOCH + 3 * HALF_LIFE);
+
+        assertThat(index.popularValuesWithPrefix("", 2), contains("new", "old"));
+    }
+
+    @Test
+    public void testRemove() {
+        PopularityIndex index = newIndex("car", "cart", "cat");
+        index.recordHit("cart", EPOCH);
+        index.recordHit("cart", EPOCH);
+        index.recordHit("cat", EPOCH);
+
+        index.remove("cart");
+        assertThat(index.popularValuesWithPrefix("ca", 10), contains("cat", "car"));
+        assertThat(index.popularity("cart", EPOCH), is(0.0));
+
+        index.add("cart");
+        assertThat(index.popularity("cart", EPOCH), is(0.0));
+        assertThat(index.popularValuesWithPrefix("car", 10), contains("car", "cart"));
+
+        index.remove("car");
+        index.remove("missing");
+        assertThat(index.popularValuesWithPrefix("car", 10), contains("cart"));
+
+        index.clear();
+        assertThat(index.popularValuesWithPrefix("", 10), is(empty()));
+    }
+
+    @Test
+    public void testRebuild_KeepsScores() {
+        PopularityIndex index = newIndex("one", "two", "three");
+        index.recordHit("two", EPOCH);
+        index.recordHit("three", EPOCH);
+        index.recordHit("three", EPOCH);
+
+        PopularityIndex rebuilt = index.rebuild(Arrays.asList("two", "three", "four"));
+
+        assertThat(rebuilt.popularity("three", EPOCH), closeTo(2, 1e-9));
+        assertThat(rebuilt.popularValuesWithPrefix("", 10), contains("three", "two", "four"));
+    }
+
+    @Test
+    public void testPopularValues_MatchSortedByPopularity() {
+        Random random = new Random(3);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            values.add("v" + Integer.toString(random.nextInt(5000), 7));
+        }
+
+        PopularityIndex index = new PopularityIndex(values, HALF_LIFE, EPOCH);
+        for (int i = 0; i < 2000; i++) {
+            index.recordHit(values.get(random.nextInt(values.size())), EPOCH + random.nextInt(5000));
+        }
+
+        final PopularityIndex scored = index;
+        List<String> expected = new ArrayList<>(new TreeSet<>(values));
+        Collections.sort(expected, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                int byPopularity = Double.compare(scored.popularity(second, EPOCH), scored.popularity(first, EPOCH));
+                return byPopularity != 0 ? byPopularity : first.compareTo(second);
+            }
+        });
+
+        assertThat(index.popularValuesWithPrefix("v", 25), is(expected.subList(0, 25)));
+        assertThat(index.popularValuesWithPrefix("", expected.size()), is(expected));
+    }
+
+    @Test
+    public void testRecordHit_Concurrent() throws InterruptedException {
+        final PopularityIndex index = newIndex("alpha", "alps", "beta");
+        final CountDownLatch start = new CountDownLatch(1);
+        final int hits = 5000;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final String value = t % 2 == 0 ? "alpha" : "alps";
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    for (int i = 0; i < hits; i++) {
+                        index.recordHit(value, EPOCH);
+                    }
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(index.popularity("alpha", EPOCH), closeTo(2 * hits, 1e-6));
+        assertThat(index.popularity("alps", EPOCH), closeTo(2 * hits, 1e-6));
+        assertThat(index.popularValuesWithPrefix("", 3).get(2), is("beta"));
+    }
+
+    @Test
+    public void testLogSum() {
+        assertThat(PopularityIndex.logSum(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY),
+                is(Double.NEGATIVE_INFINITY));
+        assertThat(PopularityIndex.logSum(Double.NEGATIVE_INFINITY, 3), is(3.0));
+        assertThat(PopularityIndex.logSum(3, 3), closeTo(4, 1e-12));
+        assertThat(PopularityIndex.logSum(1e6, 1e6), closeTo(1e6 + 1, 1e-6));
+    }
+
+}
@@ -24,10 +24,21 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -227,4 +238,624 @@ public class PrefixTreeTest {
         assertThat(clonedTree.size(), is(2));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testUnion() {
+        PrefixTree firstTree = new PrefixTree();
+        firstTree.add("ab");
+        firstTree.add("abc");
+
+        PrefixTree secondTree = new PrefixTree();
+        secondTree.add("abc");
+        secondTree.add("b");
+
+        assertThat(firstTree.union(secondTree), is(true));
+        assertThat(firstTree.toString(), is("{ab, abc, b}"));
+        assertThat(firstTree.union(secondTree), is(false));
+    }
+
+    @Test
+    public void testIntersect() {
+        PrefixTree firstTree = new PrefixTree();
+        firstTree.add("ab");
+        firstTree.add("abc");
+
+        PrefixTree secondTree = new PrefixTree();
+        secondTree.add("abc");
+        secondTree.add("b");
+
+        assertThat(firstTree.intersect(secondTree), is(true));
+        assertThat(firstTree.toString(), is("{abc}"));
+        assertThat(firstTree.intersect(secondTree), is(false));
+    }
+
+    @Test
+    public void testSubtract() {
+        PrefixTree firstTree = new PrefixTree();
+        firstTree.add("ab");
+        firstTree.add("abc");
+
+        PrefixTree secondTree = new PrefixTree();
+        secondTree.add("abc");
+        secondTree.add("b");
+
+        assertThat(firstTree.subtract(secondTree), is(true));
+        assertThat(firstTree.toString(), is("{ab}"));
+        assertThat(firstTree.subtract(secondTree), is(false));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIntersect_Unmodifiable() {
+        Tries.unmodifiablePrefixTree(new PrefixTree()).intersect(new PrefixTree());
+    }
+
+    @Test
+    public void testConstructor_WithAlphabet() {
+        PrefixTree tree = new PrefixTree(KeyAlphabet.LOWERCASE);
+        tree.add("abc");
+
+        assertThat(HashTrie.asHashTrie(tree.mTrie).alphabet(), is(KeyAlphabet.LOWERCASE));
+        assertThat(HashTrie.asHashTrie(tree.clone().mTrie).alphabet(), is(KeyAlphabet.LOWERCASE));
+    }
+
+    @Test
+    public void testCompact() {
+        mPrefixTree.compact();
+        verify((HashTrie<Boolean>) mTrie, times(1)).compact();
+
+        verifyNoMoreInteractions(mTrie);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCompact_Unmodifiable() {
+        Tries.unmodifiablePrefixTree(new PrefixTree()).compact();
+    }
+
+    @Test
+    public void testValuesWithPrefixLimit() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("ab");
+        tree.add("abc");
+        tree.add("abd");
+        tree.add("b");
+
+        assertThat(tree.valuesWithPrefix("ab", 10).size(), is(3));
+        assertThat(tree.valuesWithPrefix("ab", 2).size(), is(2));
+        assertThat(tree.valuesWithPrefix("ab", 0).size(), is(0));
+        assertThat(tree.valuesWithPrefix("x", 5).size(), is(0));
+        assertThat(tree.valuesWithPrefix("ab", 3).containsAll(tree.valuesWithPrefix("ab")), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValuesWithPrefixLimit_NegativeLimit() {
+        new PrefixTree().valuesWithPrefix("ab", -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValuesWithPrefixLimit_EmptyPrefixCached() {
+        PrefixTree tree = new PrefixTree();
+        tree.enablePrefixCache(4, 2);
+
+        tree.valuesWithPrefix("", 1);
+    }
+
+    @Test
+    public void testPrefixCache_Hit() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("ab");
+        tree.add("abc");
+        tree.enablePrefixCache(4, 2);
+
+        List<String> values = tree.valuesWithPrefix("ab", 5);
+
+        assertThat(tree.valuesWithPrefix("ab", 5) == values, is(true));
+        assertThat(tree.valuesWithPrefix("ab", 1).size(), is(1));
+        assertThat(tree.mPrefixCache.size(), is(1));
+    }
+
+    @Test
+    public void testPrefixCache_LongPrefixNotCached() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("abcd");
+        tree.enablePrefixCache(4, 2);
+
+        assertThat(tree.valuesWithPrefix("abc", 5).size(), is(1));
+        assertThat(tree.mPrefixCache.size(), is(0));
+    }
+
+    @Test
+    public void testPrefixCache_LargerLimit() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("ab");
+        tree.add("abc");
+        tree.add("abd");
+        tree.enablePrefixCache(4, 2);
+
+        assertThat(tree.valuesWithPrefix("ab", 1).size(), is(1));
+        assertThat(tree.valuesWithPrefix("ab", 5).size(), is(3));
+    }
+
+    @Test
+    public void testPrefixCache_InvalidatesPrefixesOfModifiedValue() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("ab");
+        tree.add("xy");
+        tree.enablePrefixCache(8, 2);
+
+        tree.valuesWithPrefix("a", 5);
+        tree.valuesWithPrefix("ab", 5);
+        List<String> other = tree.valuesWithPrefix("x", 5);
+
+        tree.add("abc");
+
+        assertThat(tree.mPrefixCache.size(), is(1));
+        assertThat(tree.valuesWithPrefix("x", 5) == other, is(true));
+        assertThat(tree.valuesWithPrefix("a", 5).size(), is(2));
+        assertThat(tree.valuesWithPrefix("ab", 5).size(), is(2));
+
+        tree.remove("ab");
+
+        assertThat(tree.valuesWithPrefix("a", 5).size(), is(1));
+
+        tree.remove("zz");
+        tree.add("abc");
+
+        assertThat(tree.mPrefixCache.size(), is(2));
+    }
+
+    @Test
+    public void testPrefixCache_PrefixOfLongerValue() {
+        PrefixCache.Prefix prefix = new PrefixCache.Prefix().set("ab", 2, "ab".hashCode());
+        PrefixCache.Prefix probe = new PrefixCache.Prefix().set("abc", 2, "ab".hashCode());
+
+        assertThat(probe.equals(prefix), is(true));
+        assertThat(probe.set("acb", 2, "ac".hashCode()).equals(prefix), is(false));
+        assertThat(probe.set("abc", 3, "abc".hashCode()).equals(prefix), is(false));
+    }
+
+    @Test
+    public void testPrefixCache_BulkOperationsClear() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("ab");
+        tree.enablePrefixCache(8, 2);
+
+        tree.valuesWithPrefix("a", 5);
+        PrefixTree other = new PrefixTree();
+        other.add("ac");
+        tree.union(other);
+
+        assertThat(tree.valuesWithPrefix("a", 5).size(), is(2));
+
+        tree.subtract(other);
+
+        assertThat(tree.valuesWithPrefix("a", 5).size(), is(1));
+
+        tree.intersect(other);
+
+        assertThat(tree.valuesWithPrefix("a", 5).size(), is(0));
+
+        tree.add("ab");
+        tree.valuesWithPrefix("a", 5);
+        tree.clear();
+
+        assertThat(tree.mPrefixCache.size(), is(0));
+    }
+
+    @Test
+    public void testPrefixCache_Eviction() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("abc");
+        tree.enablePrefixCache(2, 3);
+
+        tree.valuesWithPrefix("a", 5);
+        tree.valuesWithPrefix("ab", 5);
+        tree.valuesWithPrefix("a", 5);
+        tree.valuesWithPrefix("abc", 5);
+
+        assertThat(tree.mPrefixCache.size(), is(2));
+
+        tree.add("abd");
+
+        assertThat(tree.mPrefixCache.size(), is(1));
+        assertThat(tree.valuesWithPrefix("abc", 5).size(), is(1));
+    }
+
+    @Test
+    public void testPrefixCache_ConcurrentQueries() throws InterruptedException {
+        final PrefixTree tree = new PrefixTree();
+        for (int i = 0; i < 1000; i++) {
+            tree.add("v" + i);
+        }
+
+        tree.enablePrefixCache(8, 4);
+
+        final AtomicInteger mismatches = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int query = 0; query < 20000; query++) {
+                        final String prefix = "v" + (10 + query % 90);
+                        if (tree.valuesWithPrefix(prefix, 20).size() != 11) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(mismatches.get(), is(0));
+        assertThat(tree.mPrefixCache.size() <= 8, is(true));
+    }
+
+    @Test
+    public void testPrefixCache_Disable() {
+        PrefixTree tree = new PrefixTree();
+        tree.enablePrefixCache(2, 3);
+        tree.disablePrefixCache();
+
+        assertThat(tree.mPrefixCache == null, is(true));
+        assertThat(tree.clone().mPrefixCache == null, is(true));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPrefixCache_Unmodifiable() {
+        Tries.unmodifiablePrefixTree(new PrefixTree()).enablePrefixCache(2, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrefixCache_ZeroCapacity() {
+        new PrefixTree().enablePrefixCache(0, 3);
+    }
+
+    @Test
+    public void testWritePrefixTo() throws IOException {
+        PrefixTree tree = new PrefixTree();
+        tree.add("one");
+        tree.add("only");
+        tree.add("two");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        assertThat(tree.writePrefixTo("on", stream, "\n"), is(2L));
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8).split("\n"),
+                is(tree.valuesWithPrefix("on").toArray(new String[0])));
+    }
+
+    @Test
+    public void testWritePrefixTo_Unmodifiable() throws IOException {
+        PrefixTree tree = new PrefixTree();
+        tree.add("one");
+        tree.add("two");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        assertThat(Tries.unmodifiablePrefixTree(tree).writePrefixTo("t", stream, "\n"), is(1L));
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8), is("two"));
+    }
+
+    @Test
+    public void testWritePrefixTo_OtherTrie() throws IOException {
+        HashTrie<Boolean> trie = new HashTrie<>();
+        trie.put("één", true);
+        trie.put("eens", true);
+        trie.put("twee", true);
+
+        PrefixTree tree = new PrefixTree(Tries.instrumentedTrie(trie, new HistogramMetricsSink()));
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        assertThat(tree.writePrefixTo("", Channels.newChannel(stream), ";"), is(3L));
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8).split(";"),
+                is(trie.keys().toArray(new String[0])));
+    }
+
+    @Test
+    public void testValuesContaining_Index() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("sku123x");
+        tree.add("abc123");
+        tree.add("other");
+        tree.enableSubstringIndex();
+
+        assertThat(collect(tree.valuesContaining("123")), containsInAnyOrder("sku123x", "abc123"));
+
+        tree.add("x1234");
+        tree.remove("abc123");
+        assertThat(collect(tree.valuesContaining("123")), containsInAnyOrder("sku123x", "x1234"));
+
+        PrefixTree other = new PrefixTree();
+        other.add("z123z");
+        tree.union(other);
+        assertThat(collect(tree.valuesContaining("123")), containsInAnyOrder("sku123x", "x1234", "z123z"));
+
+        tree.subtract(other);
+        assertThat(collect(tree.valuesContaining("23z")), empty());
+
+        tree.clear();
+        assertThat(collect(tree.valuesContaining("123")), empty());
+    }
+
+    @Test
+    public void testValuesContaining_WithoutIndex() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("sku123x");
+        tree.add("abc123");
+        tree.add("other");
+
+        assertThat(collect(tree.valuesContaining("123")), containsInAnyOrder("sku123x", "abc123"));
+        assertThat(collect(tree.valuesContaining("zzz")), empty());
+
+        tree.enableSubstringIndex();
+        tree.disableSubstringIndex();
+        assertThat(collect(tree.valuesContaining("her")), containsInAnyOrder("other"));
+    }
+
+    @Test
+    public void testValuesContaining_CloneDropsIndex() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("abc");
+        tree.enableSubstringIndex();
+
+        PrefixTree clone = tree.clone();
+        clone.add("xbc");
+
+        assertThat(collect(clone.valuesContaining("bc")), containsInAnyOrder("abc", "xbc"));
+        assertThat(collect(tree.valuesContaining("bc")), containsInAnyOrder("abc"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValuesContaining_EmptyFragment() {
+        new PrefixTree().valuesContaining("");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testEnableSubstringIndex_Unmodifiable() {
+        Tries.unmodifiablePrefixTree(new PrefixTree()).enableSubstringIndex();
+    }
+
+    private static List<String> collect(Iterator<String> iterator) {
+        List<String> values = new ArrayList<>();
+        while (iterator.hasNext()) {
+            values.add(iterator.next());
+        }
+
+        return values;
+    }
+
+    @Test
+    public void testValuesWithSuffix_Index() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("examplecom");
+        tree.add("testcom");
+        tree.add("examplenet");
+        tree.enableSuffixIndex();
+
+        assertThat(tree.valuesWithSuffix("com"), containsInAnyOrder("examplecom", "testcom"));
+        assertThat(tree.valuesWithSuffix("com").contains("testcom"), is(true));
+        assertThat(tree.valuesWithSuffix("com").contains("examplenet"), is(false));
+        assertThat(tree.valuesWithSuffix("org"), empty());
+
+        tree.add("othercom");
+        tree.remove("testcom");
+        assertThat(tree.valuesWithSuffix("com"), containsInAnyOrder("examplecom", "othercom"));
+
+        PrefixTree other = new PrefixTree();
+        other.add("fooorg");
+        tree.union(other);
+        assertThat(tree.valuesWithSuffix("org"), containsInAnyOrder("fooorg"));
+
+        tree.clear();
+        assertThat(tree.valuesWithSuffix("com"), empty());
+    }
+
+    @Test
+    public void testValuesWithSuffix_WithoutIndex() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("filetxt");
+        tree.add("imagepng");
+        tree.add("notestxt");
+
+        assertThat(tree.valuesWithSuffix("txt"), containsInAnyOrder("filetxt", "notestxt"));
+        assertThat(tree.valuesWithSuffix("txt").size(), is(2));
+    }
+
+    @Test
+    public void testValuesWithPrefixAndSuffix() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("abc");
+        tree.add("abxc");
+        tree.add("xbc");
+        tree.add("ab");
+
+        assertThat(tree.valuesWithPrefixAndSuffix("ab", "c"), containsInAnyOrder("abc", "abxc"));
+        assertThat(tree.valuesWithPrefixAndSuffix("ab", "bc"), containsInAnyOrder("abc"));
+
+        tree.enableSuffixIndex();
+        assertThat(tree.valuesWithPrefixAndSuffix("a", "bc"), containsInAnyOrder("abc"));
+        assertThat(tree.valuesWithPrefixAndSuffix("ab", "c"), containsInAnyOrder("abc", "abxc"));
+        assertThat(tree.valuesWithPrefixAndSuffix("ab", "b"), containsInAnyOrder("ab"));
+        assertThat(tree.valuesWithPrefixAndSuffix("x", "abc"), empty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValuesWithSuffix_EmptySuffix() {
+        new PrefixTree().valuesWithSuffix("");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValuesWithSuffix_InvalidSuffix() {
+        PrefixTree tree = new PrefixTree();
+        tree.enableSuffixIndex();
+        tree.valuesWithSuffix("a.b");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testEnableSuffixIndex_Unmodifiable() {
+        Tries.unmodifiablePrefixTree(new PrefixTree()).enableSuffixIndex();
+    }
+
+    @Test
+    public void testFolding() {
+        PrefixTree tree = new PrefixTree(KeyAlphabet.UNICODE, KeyFolding.CASE_AND_DIACRITICS);
+        tree.add("Zürich");
+        tree.add("ZURICH");
+        tree.add("Genève");
+
+        assertThat(tree.size(), is(2));
+        assertThat(tree.contains("zurich"), is(true));
+        assertThat(tree.valuesWithPrefix("ZÜ"), containsInAnyOrder("Zürich"));
+        assertThat(tree.valuesWithSuffix("VE"), containsInAnyOrder("Genève"));
+        assertThat(collect(tree.valuesContaining("ÈV")), containsInAnyOrder("Genève"));
+
+        tree.remove("GENEVE");
+        assertThat(tree.contains("Genève"), is(false));
+        assertThat(tree.clone().contains("ZÜRICH"), is(true));
+    }
+
+    @Test
+    public void testFolding_Spelling() throws IOException {
+        PrefixTree tree = new PrefixTree(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        tree.add("Berlin");
+        tree.add("berlin");
+        tree.add("Bern");
+        tree.add("Bonn");
+
+        assertThat(tree.size(), is(3));
+        assertThat(tree.values(), containsInAnyOrder("Berlin", "Bern", "Bonn"));
+        assertThat(tree.valuesWithPrefix("ber"), containsInAnyOrder("Berlin", "Bern"));
+        assertThat(tree.valuesWithPrefix("ber").contains("Berlin"), is(true));
+        assertThat(collect(tree.shortestValuesWithPrefix("b", 2)), contains("Bern", "Bonn"));
+        assertThat(tree.valuesPage("b", 2).keys(), contains("Berlin", "Bern"));
+        assertThat(Tries.unmodifiablePrefixTree(tree).valuesWithPrefix("bo"), containsInAnyOrder("Bonn"));
+        assertThat(Tries.freeze(tree).valuesWithPrefix("bo"), containsInAnyOrder("Bonn"));
+        assertThat(tree.clone().values(), containsInAnyOrder("Berlin", "Bern", "Bonn"));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        assertThat(tree.writePrefixTo("bo", stream, "\n"), is(1L));
+        assertThat(stream.toString("UTF-8"), is("Bonn"));
+
+        PrefixTree other = new PrefixTree(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        other.add("BONN");
+        other.add("Hamburg");
+        tree.union(other);
+        assertThat(tree.values(), containsInAnyOrder("Berlin", "Bern", "Bonn", "Hamburg"));
+
+        tree.intersect(other);
+        assertThat(tree.values(), containsInAnyOrder("Bonn", "Hamburg"));
+
+        tree.remove("hamburg");
+        tree.add("HAMBURG");
+        assertThat(tree.values(), containsInAnyOrder("Bonn", "HAMBURG"));
+    }
+
+    @Test
+    public void testFolding_Indices() {
+        PrefixTree tree = new PrefixTree(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        tree.enablePrefixCache(4, 3);
+        tree.enableSubstringIndex();
+        tree.enableSuffixIndex();
+        tree.add("Berlin");
+
+        assertThat(tree.valuesWithPrefix("BER", 2), containsInAnyOrder("Berlin"));
+        assertThat(tree.valuesWithSuffix("LIN"), containsInAnyOrder("Berlin"));
+        assertThat(tree.valuesWithPrefixAndSuffix("B", "RLIN"), containsInAnyOrder("Berlin"));
+        assertThat(collect(tree.valuesContaining("ERL")), containsInAnyOrder("Berlin"));
+
+        tree.add("BERN");
+        assertThat(tree.valuesWithPrefix("ber", 2), containsInAnyOrder("Berlin", "BERN"));
+
+        tree.remove("berlin");
+        assertThat(tree.valuesWithSuffix("Lin"), empty());
+        assertThat(collect(tree.valuesContaining("rl")), empty());
+    }
+
+    @Test
+    public void testValuesPage() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("tea");
+        tree.add("ten");
+        tree.add("to");
+
+        KeyPage page = Tries.unmodifiablePrefixTree(tree).valuesPage("t", 2);
+        assertThat(page.keys(), contains("tea", "ten"));
+
+        tree.add("tenth");
+        assertThat(tree.valuesPage(page.cursor(), 2).keys(), contains("tenth", "to"));
+    }
+
+    @Test
+    public void testPopularity() {
+        PrefixTree tree = new PrefixTree(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        tree.add("Paris");
+        tree.add("Parma");
+        tree.add("Porto");
+        tree.enablePopularity(60000);
+
+        long now = System.currentTimeMillis();
+        assertThat(tree.recordHit("PARMA", now), is(true));
+        assertThat(tree.recordHit("porto", now), is(true));
+        assertThat(tree.recordHit("porto", now), is(true));
+        assertThat(tree.recordHit("Rome", now), is(false));
+
+        assertThat(tree.popularity("porto", now), closeTo(2, 1e-9));
+        assertThat(tree.popularValuesWithPrefix("P", 3), contains("Porto", "Parma", "Paris"));
+        assertThat(tree.popularValuesWithPrefix("pa", 1), contains("Parma"));
+
+        tree.add("Pisa");
+        tree.remove("Porto");
+        assertThat(tree.popularValuesWithPrefix("", 10), contains("Parma", "Paris", "Pisa"));
+
+        PrefixTree other = new PrefixTree(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        other.add("Paris");
+        tree.subtract(other);
+        assertThat(tree.popularValuesWithPrefix("", 10), contains("Parma", "Pisa"));
+        assertThat(tree.clone().mPopularity, is(nullValue()));
+
+        tree.clear();
+        assertThat(tree.popularValuesWithPrefix("", 10), is(empty()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPopularity_Disabled() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("value");
+        tree.enablePopularity(1000);
+        tree.disablePopularity();
+
+        tree.recordHit("value");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPopularity_NotPositiveHalfLife() {
+        new PrefixTree().enablePopularity(0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPopularity_Unmodifiable() {
+        Tries.unmodifiablePrefixTree(new PrefixTree()).enablePopularity(1000);
+    }
+
+    @Test
+    public void testClone_CopiesNodes() {
+        PrefixTree tree = new PrefixTree(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        tree.add("Rome");
+        tree.add("Roma");
+
+        PrefixTree clone = tree.clone();
+        clone.remove("rome");
+
+        assertThat(clone.contains("ROMA"), is(true));
+        assertThat(clone.contains("rome"), is(false));
+        assertThat(tree.contains("rome"), is(true));
+        assertThat(((HashTrie<Boolean>) clone.mTrie).mRoot != ((HashTrie<Boolean>) tree.mTrie).mRoot, is(true));
+    }
+
+}
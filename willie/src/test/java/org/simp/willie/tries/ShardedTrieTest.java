@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class ShardedTrieTest {
+
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    private ShardedTrie<Integer> newTrie(int shards, int maxShardSize) {
+        return new ShardedTrie<>(KeyAlphabet.LOWERCASE, shards, maxShardSize, mExecutor);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        ShardedTrie<Integer> trie = newTrie(4, 100);
+
+        assertThat(trie.isEmpty(), is(true));
+        assertThat(trie.put("apple", 1), nullValue());
+        assertThat(trie.put("zebra", 2), nullValue());
+        assertThat(trie.put("apple", 3), is(1));
+
+        assertThat(trie.size(), is(2));
+        assertThat(trie.get("apple"), is(3));
+        assertThat(trie.containsKey("zebra"), is(true));
+        assertThat(trie.get("mango"), nullValue());
+
+        assertThat(trie.remove("apple"), is(3));
+        assertThat(trie.remove("apple"), nullValue());
+        assertThat(trie.size(), is(1));
+    }
+
+    @Test
+    public void testInitialShards() {
+        assertThat(newTrie(4, 100).shardCount(), is(4));
+        assertThat(newTrie(100, 100).shardCount(), is(26));
+        assertThat(new ShardedTrie<Integer>().shardCount(), is(ShardedTrie.DEFAULT_SHARDS));
+    }
+
+    @Test
+    public void testKeysWithPrefix_AcrossShards() {
+        ShardedTrie<Integer> trie = newTrie(26, 100);
+        for (char first = 'a'; first <= 'z'; first++) {
+            trie.put(first + "x", first - 'a');
+            trie.put(first + "xy", first - 'a');
+        }
+
+        assertThat(trie.keysWithPrefix("b"), contains("bx", "bxy"));
+        assertThat(trie.keysWithPrefix("bxy"), contains("bxy"));
+        assertThat(trie.keysWithPrefix("bz"), empty());
+        assertThat(trie.keys().size(), is(52));
+        assertThat(trie.keys().iterator().next(), is("ax"));
+        assertThat(trie.keys().contains("qxy"), is(true));
+        assertThat(trie.keys().contains("qz"), is(false));
+    }
+
+    @Test
+    public void testSplit() {
+        ShardedTrie<Integer> trie = newTrie(1, 10);
+        for (int i = 0; i < 100; i++) {
+            trie.put(key(i), i);
+        }
+
+        assertThat(trie.shardCount() > 10, is(true));
+        assertThat(trie.size(), is(100));
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            assertThat(trie.get(key(i)), is(i));
+            expected.add(key(i));
+        }
+
+        assertThat(new ArrayList<>(trie.keys()), is(expected));
+        assertThat(trie.keysWithPrefix("aab").size(), is(10));
+    }
+
+    @Test
+    public void testKeysWithPrefix_SplitWithinPrefix() {
+        ShardedTrie<Integer> trie = newTrie(1, 4);
+        for (int i = 0; i < 50; i++) {
+            trie.put("common" + key(i), i);
+        }
+
+        assertThat(trie.shardCount() > 1, is(true));
+        assertThat(trie.keysWithPrefix("common").size(), is(50));
+        assertThat(trie.keysWithPrefix("commonaab").size(), is(10));
+    }
+
+    @Test
+    public void testValuesAndEntrySet() {
+        ShardedTrie<Integer> trie = newTrie(4, 100);
+        trie.put("zz", 3);
+        trie.put("aa", 1);
+        trie.put("mm", 2);
+
+        assertThat(trie.values(), contains(1, 2, 3));
+
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : trie.entrySet()) {
+            keys.add(entry.getKey());
+        }
+
+        assertThat(keys, contains("aa", "mm", "zz"));
+    }
+
+    @Test
+    public void testSnapshot() {
+        ShardedTrie<Integer> trie = newTrie(4, 100);
+        trie.put("aa", 1);
+
+        java.util.Set<String> keys = trie.keys();
+        trie.put("bb", 2);
+
+        assertThat(keys.size(), is(1));
+    }
+
+    @Test
+    public void testClear() {
+        ShardedTrie<Integer> trie = newTrie(2, 5);
+        for (int i = 0; i < 30; i++) {
+            trie.put(key(i), i);
+        }
+
+        trie.clear();
+
+        assertThat(trie.isEmpty(), is(true));
+        assertThat(trie.keys(), empty());
+    }
+
+    @Test
+    public void testEquals() {
+        ShardedTrie<Integer> trie = newTrie(3, 4);
+        HashTrie<Integer> expected = new HashTrie<>();
+        for (int i = 0; i < 40; i++) {
+            trie.put(key(i), i);
+            expected.put(key(i), i);
+        }
+
+        assertThat(trie.equals(expected), is(true));
+        assertThat(expected.equals(trie), is(true));
+        assertThat(trie.hashCode(), is(expected.hashCode()));
+    }
+
+    @Test
+    public void testConcurrentWrites() throws InterruptedException, ExecutionException {
+        final ShardedTrie<Integer> trie = newTrie(2, 50);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            futures.add(mExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = thread; i < 2000; i += 4) {
+                        trie.put(key(i), i);
+                        trie.keysWithPrefix(key(i).substring(0, 1));
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        assertThat(trie.size(), is(2000));
+        for (int i = 0; i < 2000; i++) {
+            assertThat(trie.get(key(i)), is(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPut_InvalidKey() {
+        newTrie(2, 10).put("ABC", 1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testGet_NullKey() {
+        newTrie(2, 10).get(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_InvalidShards() {
+        newTrie(0, 10);
+    }
+
+    /**
+     * Returns key made of lower case letters, keys are ordered as the numbers.
+     */
+    private static String key(int number) {
+        StringBuilder key = new StringBuilder();
+        for (int digit = 1000; digit > 0; digit /= 10) {
+            key.append((char) ('a' + number / digit % 10));
+        }
+
+        return key.toString();
+    }
+
+}
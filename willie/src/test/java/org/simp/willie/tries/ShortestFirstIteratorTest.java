@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class ShortestFirstIteratorTest {
+
+    private static final Comparator<String> LENGTH_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String first, String second) {
+            return first.length() != second.length() ? first.length() - second.length() : first.compareTo(second);
+        }
+    };
+
+    @Test
+    public void testOrder() {
+        HashTrie<String> trie = newTrie("carbonate", "cart", "car", "cab", "cat", "ca", "cards", "dog");
+
+        assertThat(collect(trie.keysWithPrefixByLength("ca")),
+                contains("ca", "cab", "car", "cat", "cart", "cards", "carbonate"));
+        assertThat(collect(trie.keysWithPrefixByLength("")),
+                contains("ca", "cab", "car", "cat", "dog", "cart", "cards", "carbonate"));
+    }
+
+    @Test
+    public void testLimit() {
+        HashTrie<String> trie = newTrie("carbonate", "cart", "car", "cab", "cat", "cards");
+
+        assertThat(collect(trie.shortestKeysWithPrefix("ca", 2)), contains("cab", "car"));
+        assertThat(collect(trie.shortestKeysWithPrefix("car", 3)), contains("car", "cart", "cards"));
+        assertThat(collect(trie.shortestKeysWithPrefix("ca", 0)), is(empty()));
+    }
+
+    @Test
+    public void testNoKeys() {
+        assertThat(collect(new HashTrie<String>().keysWithPrefixByLength("")), is(empty()));
+        assertThat(collect(newTrie("dog").keysWithPrefixByLength("cat")), is(empty()));
+    }
+
+    @Test
+    public void testMatchesSortedKeys() {
+        Random random = new Random(11);
+        HashTrie<String> trie = new HashTrie<>();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder key = new StringBuilder("k");
+            for (int j = random.nextInt(8); j >= 0; j--) {
+                key.append((char) ('a' + random.nextInt(6)));
+            }
+
+            trie.put(key.toString(), "value");
+        }
+
+        List<String> expected = new ArrayList<>(trie.keysWithPrefix("k"));
+        Collections.sort(expected, LENGTH_ORDER);
+
+        assertThat(collect(trie.keysWithPrefixByLength("k")), is(expected));
+
+        for (int limit : new int[]{1, 7, 100, expected.size() - 1}) {
+            assertThat(collect(trie.shortestKeysWithPrefix("k", limit)), is(expected.subList(0, limit)));
+        }
+    }
+
+    @Test
+    public void testBitmapNodesAndFolding() {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.LOWERCASE, KeyFolding.CASE);
+        trie.put("Bee", "Bee");
+        trie.put("BA", "BA");
+        trie.put("bz", "bz");
+
+        assertThat(collect(trie.shortestKeysWithPrefix("B", 2)), contains("ba", "bz"));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testModification() {
+        HashTrie<String> trie = newTrie("a", "ab");
+        Iterator<String> iterator = trie.keysWithPrefixByLength("a");
+
+        trie.put("abc", "value");
+        iterator.next();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testNext_NoMoreKeys() {
+        Iterator<String> iterator = newTrie("a").keysWithPrefixByLength("a");
+
+        iterator.next();
+        iterator.next();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLimit() {
+        newTrie("a").shortestKeysWithPrefix("a", -1);
+    }
+
+    @Test
+    public void testPrefixTree() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("table");
+        tree.add("tab");
+        tree.add("tea");
+        tree.add("t");
+
+        assertThat(collect(tree.valuesWithPrefixByLength("t")), contains("t", "tab", "tea", "table"));
+        assertThat(collect(Tries.unmodifiablePrefixTree(tree).shortestValuesWithPrefix("ta", 1)), contains("tab"));
+    }
+
+    private static HashTrie<String> newTrie(String... keys) {
+        HashTrie<String> trie = new HashTrie<>();
+        for (String key : keys) {
+            trie.put(key, key);
+        }
+
+        return trie;
+    }
+
+    private static List<String> collect(Iterator<String> iterator) {
+        List<String> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next());
+        }
+
+        return keys;
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+
+public class SubstringIndexTest {
+
+    private static List<String> collect(Iterator<String> iterator) {
+        List<String> values = new ArrayList<>();
+        while (iterator.hasNext()) {
+            values.add(iterator.next());
+        }
+
+        return values;
+    }
+
+    @Test
+    public void testValuesContaining() {
+        SubstringIndex index = new SubstringIndex(Arrays.asList("abc123", "xabcx", "bca", "ab"));
+
+        assertThat(collect(index.valuesContaining("abc")), containsInAnyOrder("abc123", "xabcx"));
+        assertThat(collect(index.valuesContaining("bc")), containsInAnyOrder("abc123", "xabcx", "bca"));
+        assertThat(collect(index.valuesContaining("ab")), containsInAnyOrder("abc123", "xabcx", "ab"));
+        assertThat(collect(index.valuesContaining("123")), containsInAnyOrder("abc123"));
+        assertThat(collect(index.valuesContaining("abc123")), containsInAnyOrder("abc123"));
+        assertThat(collect(index.valuesContaining("cb")), empty());
+        assertThat(collect(index.valuesContaining("abc1234")), empty());
+    }
+
+    @Test
+    public void testValuesContaining_RepeatedFragment() {
+        SubstringIndex index = new SubstringIndex(Arrays.asList("aaaa", "aa", "baab"));
+
+        assertThat(collect(index.valuesContaining("a")), containsInAnyOrder("aaaa", "aa", "baab"));
+        assertThat(collect(index.valuesContaining("aaa")), containsInAnyOrder("aaaa"));
+    }
+
+    @Test
+    public void testValuesContaining_InterleavedIterators() {
+        SubstringIndex index = new SubstringIndex(Arrays.asList("abab", "ab", "bab"));
+
+        Iterator<String> first = index.valuesContaining("ab");
+        Iterator<String> second = index.valuesContaining("b");
+        List<String> firstValues = new ArrayList<>();
+        List<String> secondValues = new ArrayList<>();
+        while (first.hasNext() || second.hasNext()) {
+            if (first.hasNext()) {
+                firstValues.add(first.next());
+            }
+
+            if (second.hasNext()) {
+                secondValues.add(second.next());
+            }
+        }
+
+        assertThat(firstValues, containsInAnyOrder("abab", "ab", "bab"));
+        assertThat(secondValues, containsInAnyOrder("abab", "ab", "bab"));
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        SubstringIndex index = new SubstringIndex(Arrays.asList("alpha", "beta"));
+
+        index.add("gamma");
+        index.add("alpha");
+        assertThat(collect(index.valuesContaining("ma")), containsInAnyOrder("gamma"));
+        assertThat(collect(index.valuesContaining("a")), containsInAnyOrder("alpha", "beta", "gamma"));
+
+        index.remove("alpha");
+        index.remove("delta");
+        assertThat(collect(index.valuesContaining("a")), containsInAnyOrder("beta", "gamma"));
+
+        index.add("alpha");
+        assertThat(collect(index.valuesContaining("lph")), containsInAnyOrder("alpha"));
+
+        index.clear();
+        assertThat(collect(index.valuesContaining("a")), empty());
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        Random random = new Random(7);
+        Set<String> values = new HashSet<>();
+        SubstringIndex index = new SubstringIndex(new ArrayList<String>());
+
+        for (int round = 0; round < 3000; round++) {
+            String value = randomString(random, 1 + random.nextInt(8));
+            if (random.nextInt(3) == 0) {
+                values.remove(value);
+                index.remove(value);
+            } else {
+                values.add(value);
+                index.add(value);
+            }
+
+            if (round % 50 == 0) {
+                String fragment = randomString(random, 1 + random.nextInt(3));
+
+                List<String> expected = new ArrayList<>();
+                for (String candidate : values) {
+                    if (candidate.contains(fragment)) {
+                        expected.add(candidate);
+                    }
+                }
+
+                List<String> actual = collect(index.valuesContaining(fragment));
+                assertThat(actual.size(), is(expected.size()));
+                assertThat(new HashSet<>(actual), is(new HashSet<>(expected)));
+            }
+        }
+    }
+
+    @Test
+    public void testRebuildAfterRemovals() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            values.add("v" + i);
+        }
+
+        SubstringIndex index = new SubstringIndex(values);
+        for (int i = 0; i < 190; i++) {
+            index.remove("v" + i);
+        }
+
+        assertThat(collect(index.valuesContaining("19")), containsInAnyOrder("v190", "v191", "v192",
+                "v193", "v194", "v195", "v196", "v197", "v198", "v199"));
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testIterator_ConcurrentModification() {
+        SubstringIndex index = new SubstringIndex(Arrays.asList("ab", "abc"));
+
+        Iterator<String> iterator = index.valuesContaining("ab");
+        index.add("xab");
+        iterator.next();
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(3)));
+        }
+
+        return builder.toString();
+    }
+
+}
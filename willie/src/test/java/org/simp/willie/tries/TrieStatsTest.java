@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 Dmytro Ivanov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.simp.willie.tries;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TrieStatsTest {
+
+    private HashTrie<String> mTrie;
+
+    @Before
+    public void setUp() {
+        mTrie = new HashTrie<>();
+    }
+
+    @Test
+    public void testEmptyTrie() {
+        TrieStats stats = mTrie.stats();
+
+        assertThat(stats.nodeCount(), is(1L));
+        assertThat(stats.leafCount(), is(1L));
+        assertThat(stats.valueCount(), is(0L));
+        assertThat(stats.maxDepth(), is(0));
+        assertThat(stats.depthHistogram(), is(new long[]{1}));
+        assertThat(stats.fanOutHistogram(), is(new long[]{1}));
+        assertThat(stats.singleChildChains(), is(0L));
+        assertThat(stats.nodeCount(TrieStats.NodeType.HASH_MAP), is(1L));
+        assertThat(stats.estimatedBytes() > 0, is(true));
+    }
+
+    @Test
+    public void testShape() {
+        mTrie.put("abcd", "1");
+        mTrie.put("ab", "2");
+        mTrie.put("axyz", "3");
+        mTrie.put("b", "4");
+
+        TrieStats stats = mTrie.stats();
+
+        // root, a, b, ab, abc, abcd, ax, axy, axyz
+        assertThat(stats.nodeCount(), is(9L));
+        assertThat(stats.leafCount(), is(3L));
+        assertThat(stats.valueCount(), is(4L));
+        assertThat(stats.maxDepth(), is(4));
+        assertThat(stats.depthHistogram(), is(new long[]{1, 2, 2, 2, 2}));
+        assertThat(stats.fanOutHistogram(), is(new long[]{3, 4, 2}));
+        // abc and ax, axy are chains, ab is not since it has a value
+        assertThat(stats.singleChildChains(), is(2L));
+        assertThat(stats.singleChildChainNodes(), is(3L));
+    }
+
+    @Test
+    public void testDeepChain() {
+        char[] key = new char[20000];
+        Arrays.fill(key, 'a');
+        mTrie.put(new String(key), "1");
+
+        TrieStats stats = mTrie.stats();
+
+        assertThat(stats.nodeCount(), is(20001L));
+        assertThat(stats.maxDepth(), is(20000));
+        assertThat(stats.singleChildChains(), is(1L));
+        assertThat(stats.singleChildChainNodes(), is(19999L));
+    }
+
+    @Test
+    public void testNodeTypes() {
+        mTrie.put("abc", "1");
+        mTrie.put("abd", "2");
+
+        long mapBytes = mTrie.stats().estimatedBytes();
+
+        mTrie.compact();
+
+        TrieStats stats = mTrie.stats();
+
+        assertThat(stats.nodeCount(TrieStats.NodeType.HASH_MAP), is(0L));
+        assertThat(stats.nodeCount(TrieStats.NodeType.SORTED_ARRAY), is(5L));
+        assertThat(stats.estimatedBytes() < mapBytes, is(true));
+        assertThat(stats.estimatedBytes(), is(stats.nodeBytes(TrieStats.NodeType.SORTED_ARRAY)
+                + stats.childrenBytes(TrieStats.NodeType.SORTED_ARRAY)));
+    }
+
+    @Test
+    public void testCompactReportsReclaimedBytes() {
+        for (int i = 0; i < 50; i++) {
+            mTrie.put("k" + i, "v");
+        }
+
+        long oldBytes = mTrie.stats().estimatedBytes();
+        long reclaimed = mTrie.compact();
+
+        assertThat(mTrie.stats().estimatedBytes(), is(oldBytes - reclaimed));
+    }
+
+    @Test
+    public void testBitmapNodes() {
+        HashTrie<String> trie = new HashTrie<>(KeyAlphabet.DIGITS);
+        trie.put("12", "1");
+
+        TrieStats stats = trie.stats();
+
+        assertThat(stats.nodeCount(TrieStats.NodeType.BITMAP), is(3L));
+        assertThat(stats.nodeCount(TrieStats.NodeType.HASH_MAP), is(0L));
+        assertThat(stats.toString(), containsString("BITMAP={nodes=3"));
+    }
+
+    @Test
+    public void testHistogramsAreCopies() {
+        TrieStats stats = mTrie.stats();
+        stats.depthHistogram()[0] = 5;
+        stats.fanOutHistogram()[0] = 5;
+
+        assertThat(stats.depthHistogram()[0], is(1L));
+        assertThat(stats.fanOutHistogram()[0], is(1L));
+    }
+
+    @Test
+    public void testPrefixTree() {
+        PrefixTree tree = new PrefixTree();
+        tree.add("abc");
+
+        assertThat(tree.stats().valueCount(), is(1L));
+        assertThat(Tries.unmodifiablePrefixTree(tree).stats().nodeCount(), is(4L));
+    }
+
+}
@@ -52,4 +52,59 @@ public class TriesTest {
         assertThat(((Tries.UnmodifiableTrie<Object>) unmodifiableTrie).mTrie, is(trie));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testFreezeTrie() {
+        Trie<Integer> trie = new HashTrie<>();
+        trie.put("key", 1);
+        Trie<Integer> frozen = Tries.freeze(trie);
+
+        assertThat(frozen, is(instanceOf(FrozenTrie.class)));
+        assertThat(Tries.freeze(frozen), is(frozen));
+        assertThat(frozen.equals(trie), is(true));
+
+        trie.put("other", 2);
+        assertThat(frozen.size(), is(1));
+    }
+
+    @Test
+    public void testFreezePrefixTree() {
+        PrefixTree prefixTree = new PrefixTree();
+        prefixTree.add("value");
+        PrefixTree frozenTree = Tries.freeze(prefixTree);
+
+        assertThat(frozenTree.mTrie, is(instanceOf(FrozenTrie.class)));
+        assertThat(frozenTree.contains("value"), is(true));
+        assertThat(frozenTree.valuesWithPrefix("va").contains("value"), is(true));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFreezePrefixTree_Add() {
+        Tries.freeze(new PrefixTree()).add("value");
+    }
+
+    @Test
+    public void testFreezeShared() {
+        Trie<Integer> trie = new HashTrie<>(KeyAlphabet.UNICODE, KeyFolding.CASE);
+        trie.put("Key", 1);
+        Trie<Integer> frozen = Tries.freezeShared(Tries.freeze(trie));
+
+        assertThat(frozen, is(instanceOf(FrozenTrie.class)));
+        assertThat(frozen.get("KEY"), is(1));
+        assertThat(frozen.equals(trie), is(true));
+    }
+
+    @Test
+    public void testFreezeSharedPrefixTree() {
+        PrefixTree prefixTree = new PrefixTree();
+        prefixTree.add("ax");
+        prefixTree.add("ay");
+        prefixTree.add("bx");
+        prefixTree.add("by");
+        PrefixTree frozenTree = Tries.freezeShared(prefixTree);
+
+        assertThat(frozenTree.mTrie, is(instanceOf(FrozenTrie.class)));
+        assertThat(((FrozenTrie<Boolean>) frozenTree.mTrie).nodeCount(), is(5));
+        assertThat(frozenTree.contains("by"), is(true));
+    }
+
+}
@@ -97,6 +97,11 @@ public class UnmodifiableTrieTest {
         mUnmodifTrie.clear();
     }
 
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMerge() {
+        mUnmodifTrie.merge(new HashTrie<String>(), null);
+    }
+
     @Test
     public void testKeys() {
         mUnmodifTrie.keys();